@@ -0,0 +1,212 @@
+package ru.practicum.stats.aggregator;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.slf4j.LoggerFactory;
+import ru.practicum.ewm.stats.avro.EventSimilarityAvro;
+import ru.practicum.ewm.stats.avro.UserActionAvro;
+import ru.practicum.ewm.stats.avro.serializer.GeneralAvroSerializer;
+import ru.practicum.stats.aggregator.config.KafkaConfig;
+import ru.practicum.stats.aggregator.config.SnapshotConfig;
+import ru.practicum.stats.aggregator.emit.EmissionMetrics;
+import ru.practicum.stats.aggregator.service.EventsSimilarityServiceImpl;
+import ru.practicum.stats.aggregator.snapshot.SnapshotServiceImpl;
+import ru.practicum.stats.aggregator.state.PrimitiveSimilarityStateStore;
+import ru.practicum.stats.aggregator.state.StateStoreFootprintBenchmark;
+import ru.practicum.stats.aggregator.state.collection.LongPairDoubleHashMap;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Сравнивает пропускную способность цикла агрегатора в режиме at-least-once и в транзакционном режиме.
+ * Вместо брокера используются MockConsumer и MockProducer: замер показывает накладные расходы цикла
+ * и клиента, но не сетевые задержки фиксации транзакций на брокере.
+ * Аргументы: [число действий] [число пользователей] [число мероприятий] [сообщений за poll].
+ */
+public class DeliveryModeThroughputBenchmark {
+
+    private static final String TOPIC = "stats.user-actions.v1";
+
+    private static final int PARTITIONS = 3;
+
+    public static void main(String[] args) {
+        int actions = args.length > 0 ? Integer.parseInt(args[0]) : 300_000;
+        int users = args.length > 1 ? Integer.parseInt(args[1]) : 30_000;
+        int events = args.length > 2 ? Integer.parseInt(args[2]) : 3_000;
+        int pollSize = args.length > 3 ? Integer.parseInt(args[3]) : 500;
+
+        ((Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.OFF);
+
+        UserActionAvro[] stream = StateStoreFootprintBenchmark.generate(actions, users, events);
+        GeneralAvroSerializer serializer = new GeneralAvroSerializer();
+        byte[][] values = new byte[stream.length][];
+        for (int i = 0; i < stream.length; i++) {
+            values[i] = serializer.serialize(TOPIC, stream[i]);
+        }
+
+        System.out.printf("actions=%d users=%d events=%d poll=%d%n", actions, users, events, pollSize);
+        System.out.printf("%-14s %10s %12s %12s %12s%n", "mode", "ms", "actions/s", "sent", "transactions");
+        // Первый прогон прогревает JIT
+        for (int round = 0; round < 2; round++) {
+            run(false, stream, values, pollSize, round == 1);
+            run(true, stream, values, pollSize, round == 1);
+        }
+    }
+
+    private static void run(boolean transactional, UserActionAvro[] stream, byte[][] values, int pollSize,
+                            boolean print) {
+        MockConsumer<Long, byte[]> consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        GeneralAvroSerializer serializer = new GeneralAvroSerializer();
+        MockProducer<String, EventSimilarityAvro> producer = new MockProducer<>(true,
+                new StringSerializer(), serializer::serialize);
+        BenchmarkKafkaConfig kafka = new BenchmarkKafkaConfig(consumer, producer, transactional);
+
+        SnapshotConfig snapshotConfig = new SnapshotConfig();
+        EventsSimilarityServiceImpl service = new EventsSimilarityServiceImpl(
+                () -> new PrimitiveSimilarityStateStore(LongPairDoubleHashMap::new), 1);
+        AggregationStarter starter = new AggregationStarter(kafka, service,
+                new SnapshotServiceImpl(snapshotConfig, service), new EmissionMetrics(new SimpleMeterRegistry()));
+
+        long[] sent = new long[1];
+        schedule(consumer, producer, stream, values, pollSize, sent);
+
+        long started = System.nanoTime();
+        starter.start();
+        long millis = (System.nanoTime() - started) / 1_000_000;
+
+        if (print) {
+            System.out.printf("%-14s %10d %12.0f %12d %12d%n",
+                    transactional ? "transactional" : "at-least-once",
+                    millis,
+                    stream.length * 1000.0 / Math.max(millis, 1),
+                    sent[0],
+                    producer.commitCount());
+        }
+    }
+
+    // Каждый poll отдаёт очередную пачку сообщений, после последней консьюмер будится и воркер завершается
+    private static void schedule(MockConsumer<Long, byte[]> consumer,
+                                 MockProducer<String, EventSimilarityAvro> producer,
+                                 UserActionAvro[] stream,
+                                 byte[][] values,
+                                 int pollSize,
+                                 long[] sent) {
+        List<TopicPartition> partitions = new ArrayList<>();
+        Map<TopicPartition, Long> beginning = new HashMap<>();
+        for (int p = 0; p < PARTITIONS; p++) {
+            TopicPartition partition = new TopicPartition(TOPIC, p);
+            partitions.add(partition);
+            beginning.put(partition, 0L);
+        }
+
+        consumer.schedulePollTask(() -> {
+            consumer.rebalance(partitions);
+            consumer.updateBeginningOffsets(beginning);
+        });
+
+        long[] offsets = new long[PARTITIONS];
+        for (int from = 0; from < stream.length; from += pollSize) {
+            int start = from;
+            int end = Math.min(from + pollSize, stream.length);
+            consumer.schedulePollTask(() -> {
+                drainHistory(producer, sent);
+                for (int i = start; i < end; i++) {
+                    UserActionAvro action = stream[i];
+                    int partition = (int) (action.getUserId() % PARTITIONS);
+                    consumer.addRecord(new ConsumerRecord<>(TOPIC, partition, offsets[partition]++,
+                            action.getUserId(), values[i]));
+                }
+            });
+        }
+        consumer.schedulePollTask(() -> {
+            drainHistory(producer, sent);
+            consumer.wakeup();
+        });
+    }
+
+    // MockProducer хранит все отправленные сообщения, поэтому историю считаем и очищаем на каждом poll
+    private static void drainHistory(MockProducer<String, EventSimilarityAvro> producer, long[] sent) {
+        sent[0] += producer.history().size();
+        producer.clear();
+    }
+
+    private static class BenchmarkKafkaConfig implements KafkaConfig {
+
+        private final Consumer<Long, byte[]> consumer;
+
+        private final Producer<String, EventSimilarityAvro> producer;
+
+        private final boolean transactional;
+
+        BenchmarkKafkaConfig(Consumer<Long, byte[]> consumer,
+                             Producer<String, EventSimilarityAvro> producer,
+                             boolean transactional) {
+            this.consumer = consumer;
+            this.producer = producer;
+            this.transactional = transactional;
+        }
+
+        @Override
+        public Duration userActionsPollTimeout() {
+            return Duration.ZERO;
+        }
+
+        @Override
+        public List<String> userActionsTopics() {
+            return List.of(TOPIC);
+        }
+
+        @Override
+        public List<String> eventSimilarityTopics() {
+            return List.of("stats.events-similarity.v1");
+        }
+
+        @Override
+        public boolean coalesceSimilarities() {
+            return true;
+        }
+
+        @Override
+        public int similarityTopK() {
+            return 0;
+        }
+
+        @Override
+        public boolean transactional() {
+            return transactional;
+        }
+
+        @Override
+        public int shards() {
+            return 1;
+        }
+
+        @Override
+        public List<Consumer<Long, byte[]>> userActionsConsumers() {
+            return List.of(consumer);
+        }
+
+        @Override
+        public List<Producer<String, EventSimilarityAvro>> eventSimilarityProducers() {
+            return List.of(producer);
+        }
+
+        @Override
+        public void stop() {
+        }
+    }
+
+}
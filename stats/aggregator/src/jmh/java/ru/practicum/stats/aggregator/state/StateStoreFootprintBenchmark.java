@@ -0,0 +1,92 @@
+package ru.practicum.stats.aggregator.state;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import org.slf4j.LoggerFactory;
+import ru.practicum.ewm.stats.avro.ActionTypeAvro;
+import ru.practicum.ewm.stats.avro.UserActionAvro;
+import ru.practicum.stats.aggregator.service.EventsSimilarityServiceImpl;
+import ru.practicum.stats.aggregator.state.collection.LongPairDoubleHashMap;
+import ru.practicum.stats.aggregator.state.collection.OffHeapLongPairDoubleHashMap;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.time.Instant;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Сравнивает занимаемую память хранилищ состояния агрегатора на синтетическом потоке действий.
+ * Аргументы: [число действий] [число пользователей] [число мероприятий].
+ */
+public class StateStoreFootprintBenchmark {
+
+    public static void main(String[] args) {
+        int actions = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        int users = args.length > 1 ? Integer.parseInt(args[1]) : 50_000;
+        int events = args.length > 2 ? Integer.parseInt(args[2]) : 5_000;
+
+        ((Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+
+        UserActionAvro[] stream = generate(actions, users, events);
+
+        System.out.printf("actions=%d users=%d events=%d%n", actions, users, events);
+        System.out.printf("%-10s %12s %12s %10s%n", "store", "heap MiB", "direct MiB", "fill ms");
+        measure(StateStoreType.HASH_MAP, HashMapSimilarityStateStore::new, stream);
+        measure(StateStoreType.PRIMITIVE, () -> new PrimitiveSimilarityStateStore(LongPairDoubleHashMap::new), stream);
+        measure(StateStoreType.OFF_HEAP, () -> new PrimitiveSimilarityStateStore(OffHeapLongPairDoubleHashMap::new), stream);
+    }
+
+    private static void measure(StateStoreType type, Supplier<SimilarityStateStore> factory, UserActionAvro[] stream) {
+        long heapBefore = usedHeap();
+        long directBefore = usedDirect();
+
+        SimilarityStateStore store = factory.get();
+        EventsSimilarityServiceImpl service = new EventsSimilarityServiceImpl(() -> store, 1);
+
+        long started = System.nanoTime();
+        for (UserActionAvro action : stream) {
+            service.updateState(action, similarity -> { });
+        }
+        long fillMillis = (System.nanoTime() - started) / 1_000_000;
+
+        long heap = usedHeap() - heapBefore;
+        long direct = usedDirect() - directBefore;
+        System.out.printf("%-10s %12.1f %12.1f %10d%n", type, heap / 1048576.0, direct / 1048576.0, fillMillis);
+
+        java.lang.ref.Reference.reachabilityFence(service);
+    }
+
+    // Степенное распределение по мероприятиям: как и в реальном трафике, большинство действий приходится на немногие мероприятия
+    public static UserActionAvro[] generate(int actions, int users, int events) {
+        Random random = new Random(42);
+        ActionTypeAvro[] types = ActionTypeAvro.values();
+        UserActionAvro[] stream = new UserActionAvro[actions];
+        Instant now = Instant.now();
+        for (int i = 0; i < actions; i++) {
+            long eventId = 1 + (long) (events * Math.pow(random.nextDouble(), 3));
+            stream[i] = UserActionAvro.newBuilder()
+                    .setUserId(1 + random.nextInt(users))
+                    .setEventId(eventId)
+                    .setActionType(types[random.nextInt(types.length)])
+                    .setTimestamp(now.plusMillis(i))
+                    .build();
+        }
+        return stream;
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static long usedDirect() {
+        return ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class).stream()
+                .filter(pool -> pool.getName().equals("direct"))
+                .mapToLong(BufferPoolMXBean::getMemoryUsed)
+                .sum();
+    }
+
+}
@@ -8,19 +8,38 @@ import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.OffsetAndMetadata;
 import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.KafkaException;
 import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.AuthorizationException;
+import org.apache.kafka.common.errors.OutOfOrderSequenceException;
+import org.apache.kafka.common.errors.ProducerFencedException;
 import org.apache.kafka.common.errors.WakeupException;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 import ru.practicum.ewm.stats.avro.EventSimilarityAvro;
 import ru.practicum.ewm.stats.avro.UserActionAvro;
+import ru.practicum.ewm.stats.avro.deserializer.UserActionDeserializer;
+import ru.practicum.ewm.stats.avro.header.SimilarityVersionHeader;
 import ru.practicum.stats.aggregator.config.KafkaConfig;
+import ru.practicum.stats.aggregator.emit.EmissionMetrics;
+import ru.practicum.stats.aggregator.emit.SimilarityBatch;
+import ru.practicum.stats.aggregator.emit.SimilarityUpdate;
+import ru.practicum.stats.aggregator.emit.SimilarityVersionClock;
+import ru.practicum.stats.aggregator.emit.TopKSimilarityFilter;
 import ru.practicum.stats.aggregator.service.EventsSimilarityService;
+import ru.practicum.stats.aggregator.snapshot.SnapshotService;
+import ru.practicum.stats.aggregator.state.collection.LongPairDoubleMap;
 
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 @Slf4j
 @RequiredArgsConstructor
@@ -31,65 +50,347 @@ public class AggregationStarter {
 
     private final EventsSimilarityService eventsSimilarityService;
 
-    private final Map<TopicPartition, OffsetAndMetadata> currentOffsets = new HashMap<>();
+    private final SnapshotService snapshotService;
 
-    private final int BATCH_SIZE = 10;
+    // Смещения, обработанные всеми воркерами, для снапшота
+    private final Map<TopicPartition, OffsetAndMetadata> processedOffsets = new ConcurrentHashMap<>();
+
+    // Воркеры обрабатывают пачки под read-блокировкой, снапшот снимается под write-блокировкой
+    private final ReadWriteLock snapshotLock = new ReentrantReadWriteLock();
+
+    // Воркер завершился с ошибкой: состояние может содержать изменения пачки, которой нет в processedOffsets
+    private final AtomicBoolean workerFailed = new AtomicBoolean();
+
+    private final EmissionMetrics emissionMetrics;
+
+    private final SimilarityVersionClock versions;
+
+    // null, если отправляются все сходства
+    private TopKSimilarityFilter topKFilter;
+
+    // Сверка отправленных пар с восстановленным состоянием, отправляется первым воркером до чтения действий
+    private List<SimilarityUpdate> reconciliation = List.of();
+
+    // Сколько раз повторяем транзакцию с уже рассчитанными сходствами, прежде чем остановить воркер
+    private static final int MAX_TRANSACTION_ATTEMPTS = 3;
+
+    // Пауза перед восстановлением после ошибки воркера, чтобы постоянная ошибка не перезапускала агрегацию в цикле
+    private static final long RESTART_DELAY_MS = 5_000;
+
+    // Консьюмеры текущего запуска воркеров, будятся хуком остановки и упавшим воркером
+    private volatile List<Consumer<Long, byte[]>> consumers;
+
+    private volatile boolean stopping;
 
 
     @EventListener(ApplicationReadyEvent.class)
     public void start() {
-        final Consumer<Long, UserActionAvro> consumer = kafka.userActionsConsumer();
-        final Producer<String, EventSimilarityAvro> producer = kafka.eventSimilarityProducer();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            log.info("Получен сигнал на завершение работы в {}", AggregationStarter.class.getSimpleName());
+            stopping = true;
+            List<Consumer<Long, byte[]>> running = consumers;
+            if (running != null) {
+                running.forEach(Consumer::wakeup);
+            }
+        }));
+
+        createTopKFilter();
+        if (!snapshotService.restore(topKFilter)) {
+            reconcile();
+        }
+
+        while (runWorkers() && !stopping) {
+            log.warn("Воркер агрегации завершился с ошибкой, через {} мс состояние будет восстановлено из снапшота",
+                    RESTART_DELAY_MS);
+            try {
+                Thread.sleep(RESTART_DELAY_MS);
+            } catch (InterruptedException e) {
+                log.error("Прервано ожидание перезапуска воркеров агрегации", e);
+                Thread.currentThread().interrupt();
+                return;
+            }
+            recover();
+        }
+    }
+
+    /**
+     * Запускает воркеры на новых консьюмерах и продюсерах и ждёт их завершения.
+     *
+     * @return true, если воркер завершился с ошибкой и состояние нужно восстановить
+     */
+    private boolean runWorkers() {
+        // Сначала публикуем консьюмеры, потом проверяем stopping: хук остановки делает то же в обратном порядке,
+        // поэтому либо он разбудит новые консьюмеры, либо воркеры не запустятся
+        consumers = kafka.userActionsConsumers();
+        final List<Producer<String, EventSimilarityAvro>> producers = kafka.eventSimilarityProducers();
 
         try {
-            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-                log.info("Получен сигнал на завершение работы в {}", AggregationStarter.class.getSimpleName());
-                consumer.wakeup();
-            }));
+            if (stopping) {
+                return false;
+            }
 
-            consumer.subscribe(kafka.userActionsTopics());
+            if (consumers.size() == 1) {
+                runWorker(consumers.getFirst(), producers.getFirst(), reconciliation);
+            } else {
+                log.info("Запускаем {} воркеров агрегации", consumers.size());
+                List<Thread> workers = new ArrayList<>();
+                for (int i = 0; i < consumers.size(); i++) {
+                    Consumer<Long, byte[]> consumer = consumers.get(i);
+                    Producer<String, EventSimilarityAvro> producer = producers.get(i);
+                    List<SimilarityUpdate> initial = i == 0 ? reconciliation : List.of();
+                    Thread worker = new Thread(() -> runWorker(consumer, producer, initial), "aggregator-worker-" + i);
+                    worker.start();
+                    workers.add(worker);
+                }
+                for (Thread worker : workers) {
+                    worker.join();
+                }
+            }
+        } catch (InterruptedException e) {
+            log.error("Прервано ожидание воркеров агрегации", e);
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                producers.stream().distinct().forEach(Producer::flush);
+                if (workerFailed.get()) {
+                    log.warn("Снапшот не сохраняется: воркер агрегации завершился с ошибкой");
+                } else {
+                    snapshotService.snapshot(processedOffsets, topKFilter);
+                }
+            } finally {
+                kafka.stop();
+            }
+        }
+        return workerFailed.get() && !Thread.currentThread().isInterrupted();
+    }
+
+    /**
+     * Изменения упавшей пачки уже внесены в состояние, а её смещения не зафиксированы. Повторная обработка
+     * поверх такого состояния не пересчитала бы сходства (старый вес уже не меньше нового), поэтому
+     * состояние строится заново из последнего снапшота, а действия перечитываются с его смещений.
+     */
+    private void recover() {
+        workerFailed.set(false);
+        processedOffsets.clear();
+        eventsSimilarityService.resetState();
+        reconciliation = List.of();
+        createTopKFilter();
+        if (!snapshotService.reload(topKFilter)) {
+            reconcile();
+        }
+    }
+
+    private void createTopKFilter() {
+        if (kafka.similarityTopK() > 0) {
+            topKFilter = new TopKSimilarityFilter(kafka.similarityTopK(), versions);
+            log.info("Отправляются только пары из top-{} похожих мероприятий", kafka.similarityTopK());
+        }
+    }
+
+    /**
+     * Кучи top-K не восстановлены из снапшота (он снят с другим K или без фильтра), поэтому неизвестно, какие пары
+     * анализатор уже получил. Кучи строятся заново по состоянию, удерживаемые пары отправляются заново,
+     * остальные удаляются; без фильтра отправляются все пары.
+     */
+    private void reconcile() {
+        SimilarityBatch batch = new SimilarityBatch(false);
+        LongPairDoubleMap scores = eventsSimilarityService.getSimilarityScores();
+        Instant timestamp = Instant.ofEpochMilli(eventsSimilarityService.getEventTime());
+        if (topKFilter != null) {
+            topKFilter.reconcile(scores, timestamp, batch);
+        } else {
+            scores.forEach((eventA, eventB, score) -> batch.add(EventSimilarityAvro.newBuilder()
+                    .setEventA(eventA)
+                    .setEventB(eventB)
+                    .setScore(score)
+                    .setTimestamp(timestamp)
+                    .build(), versions.next()));
+        }
+        reconciliation = batch.drain();
+        log.info("Подготовлена сверка отправленных пар: {} обновлений сходства", reconciliation.size());
+    }
+
+    private void runWorker(
+            Consumer<Long, byte[]> consumer,
+            Producer<String, EventSimilarityAvro> producer,
+            List<SimilarityUpdate> initial
+    ) {
+        final boolean transactional = kafka.transactional();
+        final SimilarityBatch batch = new SimilarityBatch(kafka.coalesceSimilarities());
+        // Сообщения приходят байтами и по одному читаются в одну и ту же запись
+        final UserActionDeserializer deserializer = new UserActionDeserializer();
+        final UserActionAvro action = new UserActionAvro();
+
+        try {
+            if (transactional) {
+                producer.initTransactions();
+            }
+            if (!initial.isEmpty()) {
+                sendInitial(initial, consumer, producer);
+            }
+            consumer.subscribe(kafka.userActionsTopics(), snapshotService.seekListener(consumer));
 
             while (true) {
-                ConsumerRecords<Long, UserActionAvro> records = consumer.poll(kafka.userActionsPollTimeout());
-                int count = 0;
+                ConsumerRecords<Long, byte[]> records = consumer.poll(kafka.userActionsPollTimeout());
 
-                for (ConsumerRecord<Long, UserActionAvro> record : records) {
-                    handleRecord(record, producer);
-                    manageOffsets(consumer, record, count);
-                    count++;
+                if (!records.isEmpty()) {
+                    // Только партиции текущей пачки: отобранные при ребалансировке партиции воркер больше не фиксирует
+                    final Map<TopicPartition, OffsetAndMetadata> currentOffsets = new HashMap<>();
+
+                    snapshotLock.readLock().lock();
+                    try {
+                        for (ConsumerRecord<Long, byte[]> record : records) {
+                            handleRecord(deserializer.deserialize(record.topic(), record.value(), action), batch);
+                            manageOffsets(currentOffsets, record);
+                        }
+                        if (transactional) {
+                            sendTransaction(drain(batch), currentOffsets, consumer, producer);
+                        } else {
+                            sendBatch(batch, producer);
+                        }
+                        processedOffsets.putAll(currentOffsets);
+                    } catch (RuntimeException e) {
+                        // Флаг ставится до снятия блокировки, чтобы другой воркер не снял снапшот с недообработанной пачкой
+                        workerFailed.set(true);
+                        throw e;
+                    } finally {
+                        snapshotLock.readLock().unlock();
+                    }
+
+                    if (!transactional) {
+                        commitOffsets(consumer, currentOffsets);
+                    }
                 }
 
-                consumer.commitAsync();
+                // Проверяется и после пустого poll: при отсутствии трафика снапшот тоже должен сниматься по интервалу
+                if (snapshotService.isSnapshotDue()) {
+                    takeSnapshot(producer);
+                }
             }
         } catch (WakeupException ignored) {
             log.error("Получен WakeupException");
         } catch (Exception e) {
+            workerFailed.set(true);
             log.error("Ошибка во время обработки действий пользователя", e);
+            // Остальные воркеры тоже останавливаются: состояние восстанавливается из снапшота целиком
+            consumers.stream()
+                    .filter(other -> other != consumer)
+                    .forEach(Consumer::wakeup);
         } finally {
-            try {
+            if (!transactional) {
                 log.debug("Очистка буфера и фиксация смещений");
                 producer.flush();
-                consumer.commitSync();
-            } finally {
-                kafka.stop();
+                // После ошибки позиция консьюмера может стоять за необработанной пачкой, фиксировать её нельзя
+                if (!workerFailed.get()) {
+                    consumer.commitSync();
+                }
+            }
+            if (workerFailed.get()) {
+                // Партиции остановленного воркера сразу переходят к другим участникам группы
+                consumer.close();
+            }
+        }
+    }
+
+    private void takeSnapshot(Producer<String, EventSimilarityAvro> producer) {
+        snapshotLock.writeLock().lock();
+        try {
+            if (!workerFailed.get() && snapshotService.isSnapshotDue()) {
+                producer.flush();
+                snapshotService.snapshot(processedOffsets, topKFilter);
             }
+        } finally {
+            snapshotLock.writeLock().unlock();
         }
     }
 
-    private void handleRecord(ConsumerRecord<Long, UserActionAvro> record, Producer<String, EventSimilarityAvro> producer) {
-        UserActionAvro event = record.value();
-        log.info("Получено событие от пользователя: {}", event.toString());
+    private void handleRecord(UserActionAvro event, SimilarityBatch batch) {
+        if (event == null) {
+            return;
+        }
+        log.debug("Получено событие от пользователя: {}", event);
 
-        List<EventSimilarityAvro> similarities = eventsSimilarityService.updateState(event);
+        eventsSimilarityService.updateState(event, similarity -> {
+            if (topKFilter != null) {
+                topKFilter.apply(similarity, batch);
+            } else {
+                batch.add(similarity, versions.next());
+            }
+        });
+    }
 
-        similarities.forEach(similarity -> {
-            String key = getSimilarityKey(similarity.getEventA(), similarity.getEventB());
+    private void sendBatch(SimilarityBatch batch, Producer<String, EventSimilarityAvro> producer) {
+        send(drain(batch), producer);
+    }
+
+    // Сверка отправляется до первого poll и дожидается подтверждения, чтобы не потеряться при новой ошибке воркера
+    private void sendInitial(
+            List<SimilarityUpdate> initial,
+            Consumer<Long, byte[]> consumer,
+            Producer<String, EventSimilarityAvro> producer
+    ) {
+        if (kafka.transactional()) {
+            sendTransaction(initial, Map.of(), consumer, producer);
+        } else {
+            send(initial, producer);
+            producer.flush();
+        }
+        reconciliation = List.of();
+        log.info("Сверка отправленных пар передана в Kafka: {} обновлений сходства", initial.size());
+    }
+
+    /**
+     * Отправляет сходства пачки и смещения её сообщений в одной транзакции. Состояние к этому моменту уже обновлено,
+     * поэтому после отмены транзакции повторяется отправка тех же сходств, а не обработка сообщений.
+     * Если все попытки не удались или продюсер отстранён, воркер падает и состояние восстанавливается из снапшота.
+     */
+    private void sendTransaction(
+            List<SimilarityUpdate> similarities,
+            Map<TopicPartition, OffsetAndMetadata> currentOffsets,
+            Consumer<Long, byte[]> consumer,
+            Producer<String, EventSimilarityAvro> producer
+    ) {
+        for (int attempt = 1; ; attempt++) {
+            producer.beginTransaction();
+            try {
+                send(similarities, producer);
+                if (!currentOffsets.isEmpty()) {
+                    producer.sendOffsetsToTransaction(currentOffsets, consumer.groupMetadata());
+                }
+                producer.commitTransaction();
+                log.debug("Транзакция зафиксирована, смещения: {}", currentOffsets);
+                return;
+            } catch (ProducerFencedException | OutOfOrderSequenceException | AuthorizationException e) {
+                // Продюсер больше не может работать с транзакциями, воркер останавливается
+                throw e;
+            } catch (KafkaException e) {
+                producer.abortTransaction();
+                if (attempt >= MAX_TRANSACTION_ATTEMPTS) {
+                    throw e;
+                }
+                log.warn("Транзакция отменена, попытка {} из {}", attempt, MAX_TRANSACTION_ATTEMPTS, e);
+            }
+        }
+    }
+
+    private List<SimilarityUpdate> drain(SimilarityBatch batch) {
+        emissionMetrics.record(batch);
+        log.debug("Рассчитано {} обновлений сходства, к отправке {} после схлопывания", batch.getReceived(), batch.size());
+        return batch.drain();
+    }
+
+    private void send(List<SimilarityUpdate> similarities, Producer<String, EventSimilarityAvro> producer) {
+        for (SimilarityUpdate update : similarities) {
+            String key = update.key();
+            EventSimilarityAvro similarity = update.similarity();
 
             kafka.eventSimilarityTopics().forEach(topic -> {
                 ProducerRecord<String, EventSimilarityAvro> message = new ProducerRecord<>(
                         topic,
+                        null,
                         key,
-                        similarity
+                        similarity,
+                        List.of(SimilarityVersionHeader.of(update.version()))
                 );
 
                 log.debug("Отправляем сходство мероприятий в кафку: {}", similarity);
@@ -104,33 +405,32 @@ public class AggregationStarter {
                     }
                 });
             });
-        });
+        }
     }
 
     private void manageOffsets(
-            Consumer<Long, UserActionAvro> consumer,
-            ConsumerRecord<Long, UserActionAvro> record,
-            int count
+            Map<TopicPartition, OffsetAndMetadata> currentOffsets,
+            ConsumerRecord<Long, byte[]> record
     ) {
         currentOffsets.put(
                 new TopicPartition(record.topic(), record.partition()),
                 new OffsetAndMetadata(record.offset() + 1)
         );
-
-        if (count % BATCH_SIZE == 0) {
-            log.debug("Асинхронно фиксируем смещения обработанных сообщений");
-            consumer.commitAsync(currentOffsets, (offsets, exception) -> {
-                if (exception != null) {
-                    log.warn("Ошибка при фиксации смещений: {}", offsets, exception);
-                } else {
-                    log.debug("Успешно зафиксированы смещения: {}", offsets);
-                }
-            });
-        }
     }
 
-    private String getSimilarityKey(long eventA, long eventB) {
-        return Math.min(eventA, eventB) + ":" + Math.max(eventA, eventB);
+    // Смещения фиксируются после того, как сходства всей пачки переданы продюсеру
+    private void commitOffsets(
+            Consumer<Long, byte[]> consumer,
+            Map<TopicPartition, OffsetAndMetadata> currentOffsets
+    ) {
+        log.debug("Асинхронно фиксируем смещения обработанных сообщений");
+        consumer.commitAsync(currentOffsets, (offsets, exception) -> {
+            if (exception != null) {
+                log.warn("Ошибка при фиксации смещений: {}", offsets, exception);
+            } else {
+                log.debug("Успешно зафиксированы смещения: {}", offsets);
+            }
+        });
     }
 
 }
@@ -0,0 +1,23 @@
+package ru.practicum.stats.aggregator.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "stats.aggregator.decay")
+@Getter
+@Setter
+public class DecayConfig {
+    private boolean enabled = false;
+    private Long halfLifeMs = Duration.ofDays(7).toMillis();
+    private double epsilon = 0.001;
+
+    // Скорость затухания в 1/мс: за halfLifeMs вес уменьшается вдвое
+    public double getLambda() {
+        return Math.log(2) / halfLifeMs;
+    }
+}
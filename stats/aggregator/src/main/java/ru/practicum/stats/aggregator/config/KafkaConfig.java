@@ -3,7 +3,6 @@ package ru.practicum.stats.aggregator.config;
 import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.producer.Producer;
 import ru.practicum.ewm.stats.avro.EventSimilarityAvro;
-import ru.practicum.ewm.stats.avro.UserActionAvro;
 
 import java.time.Duration;
 import java.util.List;
@@ -16,10 +15,26 @@ public interface KafkaConfig {
 
     List<String> eventSimilarityTopics();
 
-    Consumer<Long, UserActionAvro> userActionsConsumer();
+    boolean coalesceSimilarities();
 
-    Producer<String, EventSimilarityAvro> eventSimilarityProducer();
+    /**
+     * Размер top-K похожих мероприятий, вне которого сходства не отправляются; 0 — отправлять все.
+     */
+    int similarityTopK();
 
+    boolean transactional();
+
+    int shards();
+
+    List<Consumer<Long, byte[]>> userActionsConsumers();
+
+    /**
+     * Продюсеры сходств по одному на воркер. В транзакционном режиме у каждого свой transactional.id,
+     * иначе все элементы списка — один общий продюсер.
+     */
+    List<Producer<String, EventSimilarityAvro>> eventSimilarityProducers();
+
+    // Закрывает консьюмеры и продюсеры, следующий вызов userActionsConsumers/eventSimilarityProducers создаёт новые
     void stop();
 
 }
@@ -7,12 +7,13 @@ import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
 import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerConfig;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 import ru.practicum.ewm.stats.avro.EventSimilarityAvro;
-import ru.practicum.ewm.stats.avro.UserActionAvro;
 
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
 
@@ -23,6 +24,7 @@ import java.util.Properties;
 public class KafkaConfigImpl implements KafkaConfig {
     private UserActions userActions;
     private EventsSimilarity eventsSimilarity;
+    private int shards = 1;
 
     @Getter
     @Setter
@@ -42,6 +44,15 @@ public class KafkaConfigImpl implements KafkaConfig {
     @Setter
     private static class EventsSimilarity {
         List<String> topics;
+        boolean coalesce = true;
+        int topK = 0;
+        boolean transactional = false;
+        // Постоянный для экземпляра и свой у каждого: после перезапуска initTransactions прерывает
+        // незавершённую транзакцию прошлого запуска с тем же transactional.id
+        String transactionalIdPrefix = "aggregator-0";
+        // Через столько брокер прерывает незавершённую транзакцию, которую никто не прервал: консьюмеры
+        // read_committed стоят на ней всё это время. Транзакция одного poll воркера должна в него укладываться
+        Long transactionTimeoutMs = 10_000L;
         Producer producer;
 
         @Getter
@@ -66,37 +77,80 @@ public class KafkaConfigImpl implements KafkaConfig {
         return eventsSimilarity.topics;
     }
 
-    private Consumer<Long, UserActionAvro> consumer;
+    @Override
+    public int similarityTopK() {
+        return eventsSimilarity.topK;
+    }
+
+    @Override
+    public boolean transactional() {
+        return eventsSimilarity.transactional;
+    }
+
+    @Override
+    public boolean coalesceSimilarities() {
+        return eventsSimilarity.coalesce;
+    }
+
+    private List<Consumer<Long, byte[]>> consumers;
 
-    private Producer<String, EventSimilarityAvro> producer;
+    private List<Producer<String, EventSimilarityAvro>> producers;
+
+    @Override
+    public int shards() {
+        return shards;
+    }
 
     @Override
-    public Consumer<Long, UserActionAvro> userActionsConsumer() {
-        if (consumer == null) {
-            consumer = new KafkaConsumer<>(userActions.consumer.getProperties());
-            log.info("Создали косьюмер с groupId = {}", userActions.consumer.getProperties().get("group.id"));
+    public List<Consumer<Long, byte[]>> userActionsConsumers() {
+        if (consumers == null) {
+            consumers = new ArrayList<>();
+            for (int i = 0; i < shards; i++) {
+                consumers.add(new KafkaConsumer<>(userActions.consumer.getProperties()));
+            }
+            log.info("Создали {} косьюмеров с groupId = {}", shards, userActions.consumer.getProperties().get("group.id"));
         }
-        return consumer;
+        return consumers;
     }
 
     @Override
-    public Producer<String, EventSimilarityAvro> eventSimilarityProducer() {
-        if (producer == null) {
-            producer = new KafkaProducer<>(eventsSimilarity.producer.getProperties());
-            log.info("Создали продюсер");
+    public List<Producer<String, EventSimilarityAvro>> eventSimilarityProducers() {
+        if (producers == null) {
+            producers = new ArrayList<>();
+            if (eventsSimilarity.transactional) {
+                // Транзакция не может быть общей для нескольких потоков, поэтому у каждого воркера свой продюсер
+                for (int i = 0; i < shards; i++) {
+                    Properties properties = new Properties();
+                    properties.putAll(eventsSimilarity.producer.getProperties());
+                    properties.put(ProducerConfig.TRANSACTIONAL_ID_CONFIG, eventsSimilarity.transactionalIdPrefix + "-" + i);
+                    properties.putIfAbsent(ProducerConfig.TRANSACTION_TIMEOUT_CONFIG,
+                            String.valueOf(eventsSimilarity.transactionTimeoutMs));
+                    producers.add(new KafkaProducer<>(properties));
+                }
+                log.info("Создали {} транзакционных продюсеров с префиксом transactional.id = {}",
+                        shards, eventsSimilarity.transactionalIdPrefix);
+            } else {
+                Producer<String, EventSimilarityAvro> producer = new KafkaProducer<>(eventsSimilarity.producer.getProperties());
+                for (int i = 0; i < shards; i++) {
+                    producers.add(producer);
+                }
+                log.info("Создали продюсер");
+            }
         }
-        return producer;
+        return producers;
     }
 
     @Override
     public void stop() {
-        if (consumer != null) {
-            log.info("Закрываем косьюмер");
-            consumer.close();
+        if (consumers != null) {
+            log.info("Закрываем косьюмеры");
+            consumers.forEach(Consumer::close);
+            consumers = null;
         }
-        if (producer != null) {
-            log.info("Закрываем продюсер");
-            producer.close();
+        if (producers != null) {
+            log.info("Закрываем продюсеры");
+            producers.stream().distinct().forEach(Producer::close);
+            producers = null;
         }
     }
 
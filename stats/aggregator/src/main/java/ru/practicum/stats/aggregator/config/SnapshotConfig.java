@@ -0,0 +1,23 @@
+package ru.practicum.stats.aggregator.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "stats.aggregator.snapshot")
+@Getter
+@Setter
+public class SnapshotConfig {
+    private boolean enabled = false;
+    private Path directory;
+    private Long intervalMs = 60_000L;
+
+    public Duration getInterval() {
+        return Duration.ofMillis(intervalMs);
+    }
+}
@@ -0,0 +1,9 @@
+package ru.practicum.stats.aggregator.config;
+
+import ru.practicum.stats.aggregator.state.SimilarityStateStore;
+
+public interface StateConfig {
+
+    SimilarityStateStore createStateStore();
+
+}
@@ -0,0 +1,32 @@
+package ru.practicum.stats.aggregator.config;
+
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import ru.practicum.stats.aggregator.state.HashMapSimilarityStateStore;
+import ru.practicum.stats.aggregator.state.PrimitiveSimilarityStateStore;
+import ru.practicum.stats.aggregator.state.SimilarityStateStore;
+import ru.practicum.stats.aggregator.state.StateStoreType;
+import ru.practicum.stats.aggregator.state.collection.LongPairDoubleHashMap;
+import ru.practicum.stats.aggregator.state.collection.OffHeapLongPairDoubleHashMap;
+
+@Configuration
+@ConfigurationProperties(prefix = "stats.aggregator.state")
+@Slf4j
+@Setter
+public class StateConfigImpl implements StateConfig {
+    private StateStoreType store = StateStoreType.PRIMITIVE;
+    private int initialCapacity = 1024;
+
+    @Override
+    public SimilarityStateStore createStateStore() {
+        log.info("Создаём хранилище состояния агрегатора типа {}", store);
+        return switch (store) {
+            case HASH_MAP -> new HashMapSimilarityStateStore();
+            case PRIMITIVE -> new PrimitiveSimilarityStateStore(() -> new LongPairDoubleHashMap(initialCapacity));
+            case OFF_HEAP -> new PrimitiveSimilarityStateStore(() -> new OffHeapLongPairDoubleHashMap(initialCapacity));
+        };
+    }
+
+}
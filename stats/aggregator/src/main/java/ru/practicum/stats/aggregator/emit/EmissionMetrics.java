@@ -0,0 +1,53 @@
+package ru.practicum.stats.aggregator.emit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+@Component
+public class EmissionMetrics {
+
+    private final Counter received;
+
+    private final Counter sent;
+
+    private final Counter coalesced;
+
+    private final Counter coalescedBytes;
+
+    private final Counter removed;
+
+    private final Counter skipped;
+
+    public EmissionMetrics(MeterRegistry registry) {
+        this.received = Counter.builder("aggregator.similarities.received")
+                .description("Рассчитанные обновления сходства до схлопывания")
+                .register(registry);
+        this.sent = Counter.builder("aggregator.similarities.sent")
+                .description("Отправленные в Kafka сообщения о сходстве")
+                .register(registry);
+        this.coalesced = Counter.builder("aggregator.similarities.coalesced")
+                .description("Сообщения, не отправленные благодаря схлопыванию по паре мероприятий")
+                .register(registry);
+        this.coalescedBytes = Counter.builder("aggregator.similarities.coalesced.bytes")
+                .description("Сэкономленные байты ключей и значений")
+                .baseUnit("bytes")
+                .register(registry);
+        this.removed = Counter.builder("aggregator.similarities.removed")
+                .description("Пары, вытесненные из top-K обоих мероприятий")
+                .register(registry);
+        this.skipped = Counter.builder("aggregator.similarities.skipped")
+                .description("Обновления сходства, не попавшие в top-K ни одного из мероприятий")
+                .register(registry);
+    }
+
+    public void record(SimilarityBatch batch) {
+        received.increment(batch.getReceived());
+        coalesced.increment(batch.getCoalesced());
+        coalescedBytes.increment(batch.getCoalescedBytes());
+        removed.increment(batch.getRemoved());
+        skipped.increment(batch.getSkipped());
+        sent.increment(batch.size());
+    }
+
+}
@@ -0,0 +1,121 @@
+package ru.practicum.stats.aggregator.emit;
+
+/**
+ * K наиболее похожих мероприятий для одного мероприятия: min-куча по оценке,
+ * в корне лежит самое слабое из удерживаемых. K невелико, поэтому мероприятие в куче ищется перебором.
+ */
+class EventTopK {
+
+    private final long[] events;
+
+    private final double[] scores;
+
+    private int size;
+
+    EventTopK(int capacity) {
+        events = new long[capacity];
+        scores = new double[capacity];
+    }
+
+    int indexOf(long eventId) {
+        for (int i = 0; i < size; i++) {
+            if (events[i] == eventId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    boolean contains(long eventId) {
+        return indexOf(eventId) >= 0;
+    }
+
+    boolean isFull() {
+        return size == events.length;
+    }
+
+    int size() {
+        return size;
+    }
+
+    long eventAt(int index) {
+        return events[index];
+    }
+
+    double scoreAt(int index) {
+        return scores[index];
+    }
+
+    double minScore() {
+        return scores[0];
+    }
+
+    void insert(long eventId, double score) {
+        events[size] = eventId;
+        scores[size] = score;
+        siftUp(size++);
+    }
+
+    void update(int index, double score) {
+        double old = scores[index];
+        scores[index] = score;
+        if (score < old) {
+            siftUp(index);
+        } else {
+            siftDown(index);
+        }
+    }
+
+    /**
+     * Заменяет самое слабое мероприятие новым.
+     *
+     * @return вытесненное мероприятие
+     */
+    long replaceMin(long eventId, double score) {
+        long evicted = events[0];
+        events[0] = eventId;
+        scores[0] = score;
+        siftDown(0);
+        return evicted;
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (scores[parent] <= scores[index]) {
+                return;
+            }
+            swap(index, parent);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index) {
+        while (true) {
+            int smallest = index;
+            int left = 2 * index + 1;
+            int right = left + 1;
+            if (left < size && scores[left] < scores[smallest]) {
+                smallest = left;
+            }
+            if (right < size && scores[right] < scores[smallest]) {
+                smallest = right;
+            }
+            if (smallest == index) {
+                return;
+            }
+            swap(index, smallest);
+            index = smallest;
+        }
+    }
+
+    private void swap(int i, int j) {
+        long event = events[i];
+        events[i] = events[j];
+        events[j] = event;
+        double score = scores[i];
+        scores[i] = scores[j];
+        scores[j] = score;
+    }
+
+}
@@ -0,0 +1,126 @@
+package ru.practicum.stats.aggregator.emit;
+
+import ru.practicum.ewm.stats.avro.EventSimilarityAvro;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Сходства, рассчитанные за один poll. В режиме схлопывания для каждой пары мероприятий
+ * остаётся только последняя оценка: промежуточные анализатор всё равно перезапишет.
+ * Значение null означает удаление пары (tombstone). Версии пар воркера растут в порядке добавления,
+ * поэтому последняя оценка пары несёт и её наибольшую версию.
+ */
+public class SimilarityBatch {
+
+    private final boolean coalesce;
+
+    private final Map<String, SimilarityUpdate> latest = new LinkedHashMap<>();
+
+    private final List<SimilarityUpdate> all = new ArrayList<>();
+
+    private int received;
+
+    private int coalesced;
+
+    private long coalescedBytes;
+
+    private int removed;
+
+    private int skipped;
+
+    public SimilarityBatch(boolean coalesce) {
+        this.coalesce = coalesce;
+    }
+
+    public void add(EventSimilarityAvro similarity, long version) {
+        received++;
+        put(new SimilarityUpdate(getSimilarityKey(similarity.getEventA(), similarity.getEventB()), similarity, version));
+    }
+
+    public void remove(long eventA, long eventB, long version) {
+        removed++;
+        put(new SimilarityUpdate(getSimilarityKey(eventA, eventB), null, version));
+    }
+
+    // Рассчитанное сходство, которое не нужно отправлять
+    public void skip() {
+        received++;
+        skipped++;
+    }
+
+    private void put(SimilarityUpdate update) {
+        if (!coalesce) {
+            all.add(update);
+            return;
+        }
+        SimilarityUpdate replaced = latest.put(update.key(), update);
+        if (replaced != null) {
+            coalesced++;
+            coalescedBytes += replaced.key().length()
+                    + (replaced.similarity() == null ? 0 : serializedSize(replaced.similarity()));
+        }
+    }
+
+    public List<SimilarityUpdate> drain() {
+        List<SimilarityUpdate> result = new ArrayList<>(all);
+        result.addAll(latest.values());
+        latest.clear();
+        all.clear();
+        received = 0;
+        coalesced = 0;
+        coalescedBytes = 0;
+        removed = 0;
+        skipped = 0;
+        return result;
+    }
+
+    public int size() {
+        return coalesce ? latest.size() : all.size();
+    }
+
+    public int getReceived() {
+        return received;
+    }
+
+    public int getCoalesced() {
+        return coalesced;
+    }
+
+    public long getCoalescedBytes() {
+        return coalescedBytes;
+    }
+
+    public int getRemoved() {
+        return removed;
+    }
+
+    public int getSkipped() {
+        return skipped;
+    }
+
+    public static String getSimilarityKey(long eventA, long eventB) {
+        return Math.min(eventA, eventB) + ":" + Math.max(eventA, eventB);
+    }
+
+    // Размер в бинарном Avro: long-поля кодируются zigzag varint, double занимает 8 байт
+    static int serializedSize(EventSimilarityAvro similarity) {
+        return varLongSize(similarity.getEventA())
+                + varLongSize(similarity.getEventB())
+                + Double.BYTES
+                + varLongSize(similarity.getTimestamp().toEpochMilli());
+    }
+
+    private static int varLongSize(long value) {
+        long zigzag = (value << 1) ^ (value >> 63);
+        int bytes = 1;
+        while ((zigzag & ~0x7FL) != 0) {
+            zigzag >>>= 7;
+            bytes++;
+        }
+        return bytes;
+    }
+
+}
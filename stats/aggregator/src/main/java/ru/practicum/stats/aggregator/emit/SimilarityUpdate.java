@@ -0,0 +1,9 @@
+package ru.practicum.stats.aggregator.emit;
+
+import ru.practicum.ewm.stats.avro.EventSimilarityAvro;
+
+/**
+ * Сообщение о сходстве к отправке. Значение null означает удаление пары (tombstone).
+ */
+public record SimilarityUpdate(String key, EventSimilarityAvro similarity, long version) {
+}
@@ -0,0 +1,36 @@
+package ru.practicum.stats.aggregator.emit;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Версии обновлений пар мероприятий: строго возрастают и не отстают от текущего времени в наносекундах
+ * (с точностью до миллисекунды). Последняя выданная версия сохраняется в снапшоте, и после перезапуска
+ * часы продолжают с неё, даже если системное время отошло назад. Версии, выданные после последнего снапшота,
+ * от отката времени не защищены.
+ */
+@Component
+public class SimilarityVersionClock {
+
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+
+    private final AtomicLong last = new AtomicLong();
+
+    public long next() {
+        long now = System.currentTimeMillis() * NANOS_PER_MILLI;
+        return last.updateAndGet(previous -> Math.max(previous + 1, now));
+    }
+
+    public long last() {
+        return last.get();
+    }
+
+    /**
+     * Следующая версия будет больше version, даже если текущее время меньше.
+     */
+    public void advanceTo(long version) {
+        last.accumulateAndGet(version, Math::max);
+    }
+
+}
@@ -0,0 +1,147 @@
+package ru.practicum.stats.aggregator.emit;
+
+import ru.practicum.ewm.stats.avro.EventSimilarityAvro;
+import ru.practicum.stats.aggregator.state.collection.LongPairDoubleMap;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Пропускает дальше только пары, входящие в top-K похожих хотя бы одного из двух мероприятий.
+ * Пара, вытесненная из top-K обоих мероприятий, отправляется как удаление.
+ * Общий для всех воркеров, поэтому методы синхронизированы. Версии пропущенных пар и удалений выдаются
+ * под той же блокировкой: порядок решений фильтра по паре совпадает с порядком её версий.
+ * Кучи сохраняются в снапшоте вместе с состоянием, иначе после перезапуска отправленные ранее пары не удалялись бы.
+ */
+public class TopKSimilarityFilter {
+
+    private final int k;
+
+    private final SimilarityVersionClock versions;
+
+    private final Map<Long, EventTopK> topByEvent = new HashMap<>();
+
+    public TopKSimilarityFilter(int k, SimilarityVersionClock versions) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("Размер top-K должен быть положительным: " + k);
+        }
+        this.k = k;
+        this.versions = versions;
+    }
+
+    public int getK() {
+        return k;
+    }
+
+    public synchronized void apply(EventSimilarityAvro similarity, SimilarityBatch batch) {
+        long eventA = similarity.getEventA();
+        long eventB = similarity.getEventB();
+        double score = similarity.getScore();
+
+        boolean retainedByA = offer(eventA, eventB, score, batch);
+        boolean retainedByB = offer(eventB, eventA, score, batch);
+
+        if (retainedByA || retainedByB) {
+            batch.add(similarity, versions.next());
+        } else {
+            batch.skip();
+        }
+    }
+
+    /**
+     * Строит кучи заново по оценкам всех пар состояния и сверяет с ними отправленное: удерживаемые пары
+     * отправляются заново, остальные удаляются. Нужна, когда кучи не восстановлены из снапшота.
+     *
+     * @param scores (eventA, eventB) -> оценка, eventA < eventB
+     */
+    public synchronized void reconcile(LongPairDoubleMap scores, Instant timestamp, SimilarityBatch batch) {
+        topByEvent.clear();
+        scores.forEach((eventA, eventB, score) -> {
+            offer(eventA, eventB, score, null);
+            offer(eventB, eventA, score, null);
+        });
+        scores.forEach((eventA, eventB, score) -> {
+            if (retains(eventA, eventB) || retains(eventB, eventA)) {
+                batch.add(EventSimilarityAvro.newBuilder()
+                        .setEventA(eventA)
+                        .setEventB(eventB)
+                        .setScore(score)
+                        .setTimestamp(timestamp)
+                        .build(), versions.next());
+            } else {
+                batch.remove(eventA, eventB, versions.next());
+            }
+        });
+    }
+
+    // Для снапшота: (мероприятие, удерживаемые мероприятия, их оценки, размер кучи)
+    public synchronized void forEachTop(TopConsumer consumer) {
+        topByEvent.forEach((eventId, top) -> {
+            long[] events = new long[top.size()];
+            double[] scores = new double[top.size()];
+            for (int i = 0; i < top.size(); i++) {
+                events[i] = top.eventAt(i);
+                scores[i] = top.scoreAt(i);
+            }
+            consumer.accept(eventId, events, scores);
+        });
+    }
+
+    public synchronized int topCount() {
+        return topByEvent.size();
+    }
+
+    // Сколько пар удерживают все кучи, для расчёта размера снапшота
+    public synchronized long entryCount() {
+        long count = 0;
+        for (EventTopK top : topByEvent.values()) {
+            count += top.size();
+        }
+        return count;
+    }
+
+    public synchronized void restoreTop(long eventId, long[] events, double[] scores) {
+        EventTopK top = new EventTopK(k);
+        for (int i = 0; i < events.length && i < k; i++) {
+            top.insert(events[i], scores[i]);
+        }
+        topByEvent.put(eventId, top);
+    }
+
+    private boolean retains(long event, long other) {
+        EventTopK top = topByEvent.get(event);
+        return top != null && top.contains(other);
+    }
+
+    // Возвращает, удерживает ли мероприятие event пару с other после обновления; batch == null - без удалений
+    private boolean offer(long event, long other, double score, SimilarityBatch batch) {
+        EventTopK top = topByEvent.computeIfAbsent(event, id -> new EventTopK(k));
+
+        int index = top.indexOf(other);
+        if (index >= 0) {
+            top.update(index, score);
+            return true;
+        }
+        if (!top.isFull()) {
+            top.insert(other, score);
+            return true;
+        }
+        if (score <= top.minScore()) {
+            return false;
+        }
+
+        long evicted = top.replaceMin(other, score);
+        EventTopK evictedTop = topByEvent.get(evicted);
+        if (batch != null && (evictedTop == null || !evictedTop.contains(event))) {
+            batch.remove(event, evicted, versions.next());
+        }
+        return true;
+    }
+
+    @FunctionalInterface
+    public interface TopConsumer {
+        void accept(long eventId, long[] events, double[] scores);
+    }
+
+}
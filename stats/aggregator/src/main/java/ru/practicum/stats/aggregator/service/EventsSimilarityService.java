@@ -2,11 +2,34 @@ package ru.practicum.stats.aggregator.service;
 
 import ru.practicum.ewm.stats.avro.EventSimilarityAvro;
 import ru.practicum.ewm.stats.avro.UserActionAvro;
+import ru.practicum.stats.aggregator.state.SimilarityStateStore;
+import ru.practicum.stats.aggregator.state.collection.LongPairDoubleMap;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface EventsSimilarityService {
 
-    List<EventSimilarityAvro> updateState(UserActionAvro action);
+    /**
+     * Обновляет состояние по действию и передаёт emitter пересчитанные сходства пар. emitter вызывается
+     * под блокировкой пары, поэтому версия, выданная внутри него, упорядочивает расчёты пары.
+     */
+    void updateState(UserActionAvro action, Consumer<EventSimilarityAvro> emitter);
+
+    List<SimilarityStateStore> getStateShards();
+
+    /**
+     * Текущие оценки всех пар из сумм минимальных весов: (eventA, eventB) -> оценка, eventA < eventB.
+     * Вклады шардов сливаются в отдельную таблицу, поэтому вызывается при остановленных воркерах.
+     */
+    LongPairDoubleMap getSimilarityScores();
+
+    // Заменяет шарды пустыми и сбрасывает время по событиям; вызывается, когда воркеры остановлены
+    void resetState();
+
+    // Время по событиям, к которому затухает состояние; сохраняется в снапшоте вместе с ним
+    long getEventTime();
+
+    void setEventTime(long eventTime);
 
 }
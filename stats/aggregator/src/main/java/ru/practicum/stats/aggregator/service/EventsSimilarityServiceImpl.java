@@ -1,69 +1,191 @@
 package ru.practicum.stats.aggregator.service;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import ru.practicum.ewm.stats.avro.ActionTypeAvro;
 import ru.practicum.ewm.stats.avro.EventSimilarityAvro;
 import ru.practicum.ewm.stats.avro.UserActionAvro;
-
-import java.util.Collections;
-import java.util.HashMap;
+import ru.practicum.stats.aggregator.config.DecayConfig;
+import ru.practicum.stats.aggregator.config.KafkaConfig;
+import ru.practicum.stats.aggregator.config.StateConfig;
+import ru.practicum.stats.aggregator.state.DecayClock;
+import ru.practicum.stats.aggregator.state.DecayingSimilarityStateStore;
+import ru.practicum.stats.aggregator.state.SimilarityStateStore;
+import ru.practicum.stats.aggregator.state.collection.LongPairDoubleHashMap;
+import ru.practicum.stats.aggregator.state.collection.LongPairDoubleMap;
+
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Состояние разбито на шарды по пользователю: веса пользователя и его вклад в суммы
+ * лежат в одном шарде, поэтому обновление по действию затрагивает только его.
+ * Итоговые суммы для расчёта сходства получаются слиянием вкладов всех шардов.
+ * В режиме затухания вес действия затухает от его timestamp до текущего времени по событиям.
+ * Оценка пары рассчитывается и передаётся дальше под блокировкой пары: более поздний расчёт
+ * видит все обновления, завершённые до более раннего, и получает более позднюю версию.
+ */
 @Service
 @Slf4j
 public class EventsSimilarityServiceImpl implements EventsSimilarityService {
 
+    private final StateConfig stateConfig;
+
+    private final DecayConfig decayConfig;
+
+    // Пересоздаются при сбросе состояния, пока воркеры остановлены
+    private volatile List<SimilarityStateStore> shards;
+
+    private final ReadWriteLock[] locks;
 
-    private final Map<Long, Map<Long, Double>> eventsUserActionsWeights = new HashMap<>();
+    private static final int PAIR_LOCK_STRIPES = 256;
 
+    private final Lock[] pairLocks = new Lock[PAIR_LOCK_STRIPES];
 
-    private final Map<Long, Double> eventsWeightsSum = new HashMap<>();
+    private final DecayClock clock = new DecayClock();
 
+    // 0, если затухание выключено
+    private final double lambda;
 
-    private final Map<Long, Map<Long, Double>> eventsPairMinWeightsSum = new HashMap<>();
+    @Autowired
+    public EventsSimilarityServiceImpl(StateConfig stateConfig, KafkaConfig kafkaConfig, DecayConfig decayConfig) {
+        this(stateConfig, kafkaConfig.shards(), decayConfig);
+    }
 
+    public EventsSimilarityServiceImpl(StateConfig stateConfig, int shardCount) {
+        this(stateConfig, shardCount, new DecayConfig());
+    }
 
+    public EventsSimilarityServiceImpl(StateConfig stateConfig, int shardCount, DecayConfig decayConfig) {
+        this.stateConfig = stateConfig;
+        this.decayConfig = decayConfig;
+        lambda = decayConfig.isEnabled() ? decayConfig.getLambda() : 0.0;
+        if (decayConfig.isEnabled()) {
+            log.info("Включено затухание весов: период полураспада {} мс, epsilon {}",
+                    decayConfig.getHalfLifeMs(), decayConfig.getEpsilon());
+        }
+
+        locks = new ReadWriteLock[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            locks[i] = new ReentrantReadWriteLock();
+        }
+        shards = createShards(shardCount);
+        for (int i = 0; i < PAIR_LOCK_STRIPES; i++) {
+            pairLocks[i] = new ReentrantLock();
+        }
+    }
 
     @Override
-    public List<EventSimilarityAvro> updateState(UserActionAvro action) {
+    public void updateState(UserActionAvro action, Consumer<EventSimilarityAvro> emitter) {
         long userId = action.getUserId();
         long eventId = action.getEventId();
+        long timestamp = action.getTimestamp().toEpochMilli();
+        long now = clock.advance(timestamp);
+
+        int shardIndex = shardOf(userId);
+        SimilarityStateStore shard = shards.get(shardIndex);
+        Lock lock = locks[shardIndex].writeLock();
+
+        long[] otherEventIds;
+        lock.lock();
+        try {
+            double oldWeight = shard.getWeight(eventId, userId);
+            double newWeight = mapNewUserActionWeight(action.getActionType()) * Math.exp(-lambda * (now - timestamp));
+
+            if (oldWeight >= newWeight) {
+                return;
+            }
+
+            shard.putWeight(eventId, userId, newWeight);
+            shard.putWeightsSum(eventId, shard.getWeightsSum(eventId) + newWeight - oldWeight);
+
+            otherEventIds = shard.getUserEvents(userId);
+            for (long otherEventId : otherEventIds) {
+                if (otherEventId != eventId) {
+                    updateMinWeightSum(shard, eventId, otherEventId, userId, oldWeight, newWeight);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
 
-        double oldWeight = getUserActionsWeight(action.getEventId(), action.getUserId());
-        double newWeight = mapNewUserActionWeight(action.getActionType());
-
-        if (oldWeight >= newWeight) {
-            return Collections.emptyList();
+        for (long otherEventId : otherEventIds) {
+            if (otherEventId == eventId) {
+                continue;
+            }
+            long eventIdA = Math.min(otherEventId, eventId);
+            long eventIdB = Math.max(otherEventId, eventId);
+
+            // Блокировки шардов к этому моменту сняты, поэтому порядок блокировок пара -> шард не даёт взаимоблокировки
+            Lock pairLock = pairLocks[LongPairDoubleMap.hash(eventIdA, eventIdB) & (PAIR_LOCK_STRIPES - 1)];
+            pairLock.lock();
+            try {
+                double similarityScore = calcSimilarity(eventIdA, eventIdB, getMinWeightsSum(eventIdA, eventIdB));
+
+                log.info("Similarity of event A: {} and event B: {} = {}", eventIdA, eventIdB, similarityScore);
+
+                emitter.accept(EventSimilarityAvro.newBuilder()
+                        .setEventA(eventIdA)
+                        .setEventB(eventIdB)
+                        .setScore(similarityScore)
+                        .setTimestamp(action.getTimestamp())
+                        .build());
+            } finally {
+                pairLock.unlock();
+            }
         }
+    }
 
-        putUserActionsWeight(action, newWeight);
+    @Override
+    public List<SimilarityStateStore> getStateShards() {
+        return shards;
+    }
 
-        double oldSum = getWeightsSum(eventId);
-        double newSum = oldSum + newWeight - oldWeight;
-        putWeightsSum(eventId, newSum);
+    @Override
+    public LongPairDoubleMap getSimilarityScores() {
+        LongPairDoubleMap minSums = new LongPairDoubleHashMap();
+        for (SimilarityStateStore shard : shards) {
+            shard.forEachMinWeightsSum((eventA, eventB, sum) ->
+                    minSums.put(eventA, eventB, minSums.get(eventA, eventB, 0.0) + sum));
+        }
+        LongPairDoubleMap scores = new LongPairDoubleHashMap(minSums.size());
+        minSums.forEach((eventA, eventB, sum) -> scores.put(eventA, eventB, calcSimilarity(eventA, eventB, sum)));
+        return scores;
+    }
 
-        return eventsUserActionsWeights.entrySet()
-                .stream()
-                .filter(e -> e.getValue().containsKey(action.getUserId()) && e.getKey() != action.getEventId())
-                .map(e -> {
-                    long eventIdA = Math.min(e.getKey(), action.getEventId());
-                    long eventIdB = Math.max(e.getKey(), action.getEventId());
+    @Override
+    public void resetState() {
+        shards = createShards(locks.length);
+        clock.set(0L);
+        log.info("Состояние агрегатора сброшено");
+    }
 
-                    double newSumMinWeight = updateMinWeightSum(eventId, e.getKey(), userId, oldWeight, newWeight);
-                    double similarityScore = calcSimilarity(eventId, e.getKey(), newSumMinWeight);
+    @Override
+    public long getEventTime() {
+        return clock.now();
+    }
 
-                    log.info("Similarity of event A: {} and event B: {} = {}", eventIdA, eventIdB, similarityScore);
+    @Override
+    public void setEventTime(long eventTime) {
+        clock.set(eventTime);
+    }
 
-                    return EventSimilarityAvro.newBuilder()
-                            .setEventA(eventIdA)
-                            .setEventB(eventIdB)
-                            .setScore(similarityScore)
-                            .setTimestamp(action.getTimestamp())
-                            .build();
-                })
-                .toList();
+    private List<SimilarityStateStore> createShards(int shardCount) {
+        List<SimilarityStateStore> stores = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            SimilarityStateStore store = stateConfig.createStateStore();
+            if (decayConfig.isEnabled()) {
+                store = new DecayingSimilarityStateStore(store, clock, lambda, decayConfig.getEpsilon());
+            }
+            stores.add(store);
+        }
+        return List.copyOf(stores);
     }
 
     private double calcSimilarity(long eventId, long otherEventId, double newSumMinPairWeight) {
@@ -82,36 +204,20 @@ public class EventsSimilarityServiceImpl implements EventsSimilarityService {
         return newSumMinPairWeight / (Math.sqrt(sumEventWeight) * Math.sqrt(sumOtherEventWeight));
     }
 
-    private double updateMinWeightSum(long eventId, long otherEventId, long userId, double oldWeight, double newWeight) {
-        double oldWeightOtherEvent = getUserActionsWeight(otherEventId, userId);
+    private void updateMinWeightSum(SimilarityStateStore shard, long eventId, long otherEventId, long userId,
+                                    double oldWeight, double newWeight) {
+        double oldWeightOtherEvent = shard.getWeight(otherEventId, userId);
 
         double oldMinPairWeight = Math.min(oldWeight, oldWeightOtherEvent);
         double newMinPairWeight = Math.min(newWeight, oldWeightOtherEvent);
 
+        if (oldMinPairWeight == newMinPairWeight) return;
+
         long firstEventId = Math.min(eventId, otherEventId);
         long secondEventId = Math.max(eventId, otherEventId);
 
-        double oldSumMinPairWeight = getMinWeightsSum(firstEventId, secondEventId);
-
-        if (oldMinPairWeight == newMinPairWeight) return oldSumMinPairWeight;
-
-        double newSumMinPairWeight = oldSumMinPairWeight - oldMinPairWeight + newMinPairWeight;
-
-        putMinWeightsSum(firstEventId, secondEventId, newSumMinPairWeight);
-
-        return newSumMinPairWeight;
-    }
-
-    private void putUserActionsWeight(UserActionAvro action, Double weight) {
-        eventsUserActionsWeights
-                .computeIfAbsent(action.getEventId(), e -> new HashMap<>())
-                .put(action.getUserId(), weight);
-    }
-
-    private Double getUserActionsWeight(long eventId, long userId) {
-        return eventsUserActionsWeights
-                .computeIfAbsent(eventId, e -> new HashMap<>())
-                .getOrDefault(userId, 0.0);
+        double oldSumMinPairWeight = shard.getMinWeightsSum(firstEventId, secondEventId);
+        shard.putMinWeightsSum(firstEventId, secondEventId, oldSumMinPairWeight - oldMinPairWeight + newMinPairWeight);
     }
 
     private static Double mapNewUserActionWeight(ActionTypeAvro actionType) {
@@ -122,24 +228,36 @@ public class EventsSimilarityServiceImpl implements EventsSimilarityService {
         };
     }
 
-    public void putMinWeightsSum(long eventA, long eventB, double minSum) {
-        eventsPairMinWeightsSum
-                .computeIfAbsent(eventA, e -> new HashMap<>())
-                .put(eventB, minSum);
-    }
-
-    public double getMinWeightsSum(long eventA, long eventB) {
-        return eventsPairMinWeightsSum
-                .computeIfAbsent(eventA, e -> new HashMap<>())
-                .getOrDefault(eventB, 0.0);
+    private double getMinWeightsSum(long eventA, long eventB) {
+        double sum = 0.0;
+        for (int i = 0; i < shards.size(); i++) {
+            Lock lock = locks[i].readLock();
+            lock.lock();
+            try {
+                sum += shards.get(i).getMinWeightsSum(eventA, eventB);
+            } finally {
+                lock.unlock();
+            }
+        }
+        return sum;
     }
 
-    private void putWeightsSum(long eventId, double newSum) {
-        eventsWeightsSum.put(eventId, newSum);
+    private double getWeightsSum(long eventId) {
+        double sum = 0.0;
+        for (int i = 0; i < shards.size(); i++) {
+            Lock lock = locks[i].readLock();
+            lock.lock();
+            try {
+                sum += shards.get(i).getWeightsSum(eventId);
+            } finally {
+                lock.unlock();
+            }
+        }
+        return sum;
     }
 
-    private Double getWeightsSum(long eventId) {
-        return eventsWeightsSum.getOrDefault(eventId, 0.0);
+    private int shardOf(long userId) {
+        return Math.floorMod(Long.hashCode(userId), shards.size());
     }
 
 }
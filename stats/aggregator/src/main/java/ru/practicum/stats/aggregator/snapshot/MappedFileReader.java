@@ -0,0 +1,75 @@
+package ru.practicum.stats.aggregator.snapshot;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+class MappedFileReader implements Closeable {
+
+    private static final long WINDOW_BYTES = 64L * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final long size;
+    private MappedByteBuffer window;
+    private long windowStart;
+
+    MappedFileReader(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.size = channel.size();
+        map(0);
+    }
+
+    long size() {
+        return size;
+    }
+
+    long position() {
+        return windowStart + window.position();
+    }
+
+    void seek(long position) throws IOException {
+        map(position);
+    }
+
+    int getInt() throws IOException {
+        return ensure(Integer.BYTES).getInt();
+    }
+
+    long getLong() throws IOException {
+        return ensure(Long.BYTES).getLong();
+    }
+
+    double getDouble() throws IOException {
+        return ensure(Double.BYTES).getDouble();
+    }
+
+    byte[] getBytes(int length) throws IOException {
+        byte[] bytes = new byte[length];
+        ensure(length).get(bytes);
+        return bytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private MappedByteBuffer ensure(int bytes) throws IOException {
+        if (window.remaining() < bytes) {
+            map(position());
+            if (window.remaining() < bytes) {
+                throw new IOException("Неожиданный конец файла снапшота на позиции " + position());
+            }
+        }
+        return window;
+    }
+
+    private void map(long position) throws IOException {
+        windowStart = position;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW_BYTES, size - position));
+    }
+
+}
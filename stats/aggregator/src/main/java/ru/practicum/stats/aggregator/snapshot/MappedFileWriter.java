@@ -0,0 +1,68 @@
+package ru.practicum.stats.aggregator.snapshot;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Последовательная запись в файл заранее известного размера через отображение в память.
+ * Файл отображается окнами, поэтому размер снапшота не ограничен 2 ГБ одного MappedByteBuffer.
+ */
+class MappedFileWriter implements Closeable {
+
+    private static final long WINDOW_BYTES = 64L * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final long size;
+    private MappedByteBuffer window;
+    private long windowStart;
+
+    MappedFileWriter(Path path, long size) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.size = size;
+        map(0);
+    }
+
+    void putInt(int value) throws IOException {
+        ensure(Integer.BYTES).putInt(value);
+    }
+
+    void putLong(long value) throws IOException {
+        ensure(Long.BYTES).putLong(value);
+    }
+
+    void putDouble(double value) throws IOException {
+        ensure(Double.BYTES).putDouble(value);
+    }
+
+    void putBytes(byte[] value) throws IOException {
+        ensure(value.length).put(value);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            window.force();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private MappedByteBuffer ensure(int bytes) throws IOException {
+        if (window.remaining() < bytes) {
+            window.force();
+            map(windowStart + window.position());
+        }
+        return window;
+    }
+
+    private void map(long position) throws IOException {
+        windowStart = position;
+        window = channel.map(FileChannel.MapMode.READ_WRITE, position, Math.min(WINDOW_BYTES, size - position));
+    }
+
+}
@@ -0,0 +1,56 @@
+package ru.practicum.stats.aggregator.snapshot;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * При первом назначении партиции переводит консьюмер на смещение, до которого построен загруженный снапшот.
+ * Если снапшота нет, партиция перечитывается с начала, иначе состояние в памяти не совпадёт с закоммиченными смещениями.
+ */
+@Slf4j
+public class SnapshotSeekListener implements ConsumerRebalanceListener {
+
+    private final Consumer<?, ?> consumer;
+
+    private final Map<TopicPartition, Long> offsets;
+
+    private final boolean replayMissing;
+
+    private final Set<TopicPartition> positioned;
+
+    public SnapshotSeekListener(Consumer<?, ?> consumer, Map<TopicPartition, Long> offsets,
+                                Set<TopicPartition> positioned, boolean replayMissing) {
+        this.consumer = consumer;
+        this.offsets = offsets;
+        this.positioned = positioned;
+        this.replayMissing = replayMissing;
+    }
+
+    @Override
+    public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+        for (TopicPartition partition : partitions) {
+            if (!positioned.add(partition)) {
+                continue;
+            }
+            Long offset = offsets.get(partition);
+            if (offset != null) {
+                log.info("Переходим к смещению снапшота {} для партиции {}", offset, partition);
+                consumer.seek(partition, offset);
+            } else if (replayMissing) {
+                log.info("Партиции {} нет в снапшоте, читаем её с начала", partition);
+                consumer.seekToBeginning(Set.of(partition));
+            }
+        }
+    }
+
+    @Override
+    public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+    }
+
+}
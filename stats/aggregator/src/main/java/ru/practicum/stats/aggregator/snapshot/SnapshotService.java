@@ -0,0 +1,35 @@
+package ru.practicum.stats.aggregator.snapshot;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import ru.practicum.stats.aggregator.emit.TopKSimilarityFilter;
+
+import java.util.Map;
+
+public interface SnapshotService {
+
+    /**
+     * Загружает снапшот в состояние и кучи top-K в topKFilter (null, если фильтр выключен).
+     *
+     * @return false, если состояние загружено, а кучи top-K в снапшоте сохранены с другим K: отправленные ранее
+     * пары нужно сверить с текущим фильтром
+     */
+    boolean restore(TopKSimilarityFilter topKFilter);
+
+    /**
+     * Заново загружает снапшот в сброшенное состояние. Партиции снова переводятся на смещения снапшота,
+     * а партиции без снапшота читаются с начала, даже если снапшоты выключены.
+     *
+     * @return то же, что и {@link #restore(TopKSimilarityFilter)}
+     */
+    boolean reload(TopKSimilarityFilter topKFilter);
+
+    ConsumerRebalanceListener seekListener(Consumer<?, ?> consumer);
+
+    boolean isSnapshotDue();
+
+    void snapshot(Map<TopicPartition, OffsetAndMetadata> processedOffsets, TopKSimilarityFilter topKFilter);
+
+}
@@ -0,0 +1,129 @@
+package ru.practicum.stats.aggregator.snapshot;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.stereotype.Service;
+import ru.practicum.stats.aggregator.config.SnapshotConfig;
+import ru.practicum.stats.aggregator.emit.SimilarityVersionClock;
+import ru.practicum.stats.aggregator.emit.TopKSimilarityFilter;
+import ru.practicum.stats.aggregator.service.EventsSimilarityService;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class SnapshotServiceImpl implements SnapshotService {
+
+    private static final String FILE_NAME = "aggregator-state.snapshot";
+
+    private final SnapshotConfig config;
+
+    private final EventsSimilarityService eventsSimilarityService;
+
+    private final SimilarityVersionClock versions;
+
+    // Смещения последнего снапшота: партиции, из которых с тех пор ничего не пришло, тоже должны попасть в следующий
+    private final Map<TopicPartition, Long> snapshotOffsets = new HashMap<>();
+
+    // Общее для всех консьюмеров: партиция, переехавшая к другому воркеру при ребалансировке, повторно не перематывается
+    private final Set<TopicPartition> positionedPartitions = ConcurrentHashMap.newKeySet();
+
+    private Map<TopicPartition, Long> restoredOffsets = Map.of();
+
+    private volatile long lastSnapshotAt = System.currentTimeMillis();
+
+    // Состояние строится заново после ошибки воркера: без снапшота его можно получить только с начала топика
+    private boolean replayAll;
+
+    @Override
+    public boolean restore(TopKSimilarityFilter topKFilter) {
+        if (!config.isEnabled()) {
+            return true;
+        }
+
+        boolean topKRestored = true;
+        Path path = snapshotPath();
+        if (Files.exists(path)) {
+            long started = System.currentTimeMillis();
+            try {
+                StateSnapshotFile.Contents contents = StateSnapshotFile.read(path,
+                        eventsSimilarityService.getStateShards(), eventsSimilarityService::setEventTime, topKFilter);
+                snapshotOffsets.putAll(contents.offsets());
+                versions.advanceTo(contents.lastVersion());
+                int topK = topKFilter == null ? 0 : topKFilter.getK();
+                if (contents.topK() != topK) {
+                    log.warn("Кучи top-K в снапшоте сохранены с K = {}, а сейчас K = {}: пары будут сверены",
+                            contents.topK(), topK);
+                    topKRestored = false;
+                }
+                log.info("Состояние восстановлено из снапшота {} за {} мс, смещения: {}, последняя версия: {}",
+                        path, System.currentTimeMillis() - started, snapshotOffsets, contents.lastVersion());
+            } catch (IOException e) {
+                log.error("Не удалось загрузить снапшот {}, состояние будет построено заново", path, e);
+            }
+        } else {
+            log.info("Снапшот {} не найден, состояние будет построено заново", path);
+        }
+
+        restoredOffsets = Map.copyOf(snapshotOffsets);
+        return topKRestored;
+    }
+
+    @Override
+    public boolean reload(TopKSimilarityFilter topKFilter) {
+        snapshotOffsets.clear();
+        positionedPartitions.clear();
+        restoredOffsets = Map.of();
+        replayAll = true;
+        return restore(topKFilter);
+    }
+
+    @Override
+    public ConsumerRebalanceListener seekListener(Consumer<?, ?> consumer) {
+        return new SnapshotSeekListener(consumer, restoredOffsets, positionedPartitions,
+                config.isEnabled() || replayAll);
+    }
+
+    @Override
+    public boolean isSnapshotDue() {
+        return config.isEnabled()
+                && System.currentTimeMillis() - lastSnapshotAt >= config.getInterval().toMillis();
+    }
+
+    @Override
+    public void snapshot(Map<TopicPartition, OffsetAndMetadata> processedOffsets, TopKSimilarityFilter topKFilter) {
+        if (!config.isEnabled()) {
+            return;
+        }
+
+        lastSnapshotAt = System.currentTimeMillis();
+        processedOffsets.forEach((partition, offset) -> snapshotOffsets.put(partition, offset.offset()));
+
+        Path path = snapshotPath();
+        try {
+            Files.createDirectories(path.getParent());
+            StateSnapshotFile.write(path, eventsSimilarityService.getStateShards(), topKFilter, snapshotOffsets,
+                    lastSnapshotAt, eventsSimilarityService.getEventTime(), versions.last());
+            log.info("Снапшот состояния записан в {} за {} мс, смещения: {}",
+                    path, System.currentTimeMillis() - lastSnapshotAt, snapshotOffsets);
+        } catch (IOException e) {
+            log.error("Ошибка при записи снапшота состояния в {}", path, e);
+        }
+    }
+
+    private Path snapshotPath() {
+        return config.getDirectory().resolve(FILE_NAME);
+    }
+
+}
@@ -0,0 +1,286 @@
+package ru.practicum.stats.aggregator.snapshot;
+
+import org.apache.kafka.common.TopicPartition;
+import ru.practicum.stats.aggregator.emit.TopKSimilarityFilter;
+import ru.practicum.stats.aggregator.state.SimilarityStateStore;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongConsumer;
+
+/**
+ * Формат файла снапшота (big-endian):
+ * <pre>
+ * MAGIC, VERSION, createdAt, eventTime, shardCount, offsetsCount
+ * offsetsCount * (topicLength, topic UTF-8, partition, nextOffset)
+ * shardCount * (weightsCount, weightsCount * (eventId, userId, weight),
+ *               sumsCount, sumsCount * (eventId, sum),
+ *               minSumsCount, minSumsCount * (eventA, eventB, minSum))
+ * topK, topCount, topCount * (eventId, size, size * (otherEventId, score))
+ * lastVersion
+ * MAGIC
+ * </pre>
+ * topK = 0, если фильтр top-K выключен; в снапшотах версии 2 секции top-K нет.
+ * lastVersion - последняя выданная версия обновлений пар; в снапшотах версий 2 и 3 её нет.
+ * Файл пишется во временный и атомарно переименовывается, поэтому на диске всегда лежит целый снапшот.
+ */
+public final class StateSnapshotFile {
+
+    private static final long MAGIC = 0x45574D534E415031L;
+    private static final int VERSION = 4;
+    private static final int VERSION_WITHOUT_LAST_VERSION = 3;
+    private static final int VERSION_WITHOUT_TOP_K = 2;
+
+    private static final int HEADER_BYTES = Long.BYTES + Integer.BYTES + 2 * Long.BYTES + Integer.BYTES + Integer.BYTES;
+    private static final int WEIGHT_BYTES = 3 * Long.BYTES;
+    private static final int SUM_BYTES = 2 * Long.BYTES;
+    private static final int MIN_SUM_BYTES = 3 * Long.BYTES;
+    private static final int TOP_ENTRY_BYTES = 2 * Long.BYTES;
+
+    private StateSnapshotFile() {
+    }
+
+    /**
+     * @param topKFilter  null, если фильтр top-K выключен
+     * @param lastVersion последняя выданная версия обновлений пар
+     */
+    public static void write(Path path, List<SimilarityStateStore> shards, TopKSimilarityFilter topKFilter,
+                             Map<TopicPartition, Long> offsets, long createdAt, long eventTime, long lastVersion)
+            throws IOException {
+        Map<TopicPartition, byte[]> topics = new HashMap<>();
+        offsets.keySet().forEach(tp -> topics.put(tp, tp.topic().getBytes(StandardCharsets.UTF_8)));
+
+        long size = HEADER_BYTES + Long.BYTES;
+        for (byte[] topic : topics.values()) {
+            size += Integer.BYTES + topic.length + Integer.BYTES + Long.BYTES;
+        }
+        for (SimilarityStateStore shard : shards) {
+            size += 3L * Integer.BYTES
+                    + (long) shard.weightsCount() * WEIGHT_BYTES
+                    + (long) shard.weightsSumsCount() * SUM_BYTES
+                    + (long) shard.minWeightsSumsCount() * MIN_SUM_BYTES;
+        }
+        size += 2L * Integer.BYTES + Long.BYTES;
+        if (topKFilter != null) {
+            size += (long) topKFilter.topCount() * (Long.BYTES + Integer.BYTES)
+                    + topKFilter.entryCount() * TOP_ENTRY_BYTES;
+        }
+
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (MappedFileWriter out = new MappedFileWriter(tmp, size)) {
+            out.putLong(MAGIC);
+            out.putInt(VERSION);
+            out.putLong(createdAt);
+            out.putLong(eventTime);
+            out.putInt(shards.size());
+            out.putInt(offsets.size());
+            for (Map.Entry<TopicPartition, Long> offset : offsets.entrySet()) {
+                byte[] topic = topics.get(offset.getKey());
+                out.putInt(topic.length);
+                out.putBytes(topic);
+                out.putInt(offset.getKey().partition());
+                out.putLong(offset.getValue());
+            }
+            for (SimilarityStateStore shard : shards) {
+                writeShard(out, shard);
+            }
+            writeTopK(out, topKFilter);
+            out.putLong(lastVersion);
+            out.putLong(MAGIC);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Загружает снапшот в пустые хранилища и возвращает смещения, до которых он построен.
+     * Перед загрузкой файл целиком проверяется, чтобы повреждённый снапшот не оставил состояние заполненным наполовину.
+     * Время по событиям передаётся в eventTimeRestorer до заполнения хранилищ. Кучи top-K загружаются в topKFilter,
+     * только если они сохранены с тем же K. Кучи с другим K пропускаются, поэтому последняя выданная версия
+     * читается при проверке файла.
+     */
+    public static Contents read(Path path, List<SimilarityStateStore> shards, LongConsumer eventTimeRestorer,
+                                TopKSimilarityFilter topKFilter) throws IOException {
+        try (MappedFileReader in = new MappedFileReader(path)) {
+            long[] header = new long[2];
+            Map<TopicPartition, Long> offsets = readHeader(in, shards.size(), header);
+            int version = (int) header[1];
+            boolean hasTopK = version != VERSION_WITHOUT_TOP_K;
+            long shardsStart = in.position();
+
+            long lastVersion = validate(in, shards.size(), version);
+            in.seek(shardsStart);
+
+            eventTimeRestorer.accept(header[0]);
+
+            for (SimilarityStateStore shard : shards) {
+                readShard(in, shard);
+            }
+            int topK = hasTopK ? readTopK(in, topKFilter) : 0;
+            return new Contents(offsets, topK, lastVersion);
+        }
+    }
+
+    /**
+     * @param topK        K, с которым сохранены кучи top-K; 0, если их в снапшоте нет
+     * @param lastVersion последняя выданная версия обновлений пар; 0, если её в снапшоте нет
+     */
+    public record Contents(Map<TopicPartition, Long> offsets, int topK, long lastVersion) {
+    }
+
+    private static void writeShard(MappedFileWriter out, SimilarityStateStore shard) throws IOException {
+        out.putInt(shard.weightsCount());
+        shard.forEachWeight((eventId, userId, weight) -> unchecked(() -> {
+            out.putLong(eventId);
+            out.putLong(userId);
+            out.putDouble(weight);
+        }));
+
+        out.putInt(shard.weightsSumsCount());
+        shard.forEachWeightsSum((eventId, sum) -> unchecked(() -> {
+            out.putLong(eventId);
+            out.putDouble(sum);
+        }));
+
+        out.putInt(shard.minWeightsSumsCount());
+        shard.forEachMinWeightsSum((eventA, eventB, sum) -> unchecked(() -> {
+            out.putLong(eventA);
+            out.putLong(eventB);
+            out.putDouble(sum);
+        }));
+    }
+
+    private static void writeTopK(MappedFileWriter out, TopKSimilarityFilter topKFilter) throws IOException {
+        if (topKFilter == null) {
+            out.putInt(0);
+            out.putInt(0);
+            return;
+        }
+        out.putInt(topKFilter.getK());
+        out.putInt(topKFilter.topCount());
+        topKFilter.forEachTop((eventId, events, scores) -> unchecked(() -> {
+            out.putLong(eventId);
+            out.putInt(events.length);
+            for (int i = 0; i < events.length; i++) {
+                out.putLong(events[i]);
+                out.putDouble(scores[i]);
+            }
+        }));
+    }
+
+    private static int readTopK(MappedFileReader in, TopKSimilarityFilter topKFilter) throws IOException {
+        int topK = in.getInt();
+        int topCount = in.getInt();
+        if (topKFilter == null || topKFilter.getK() != topK) {
+            return topK;
+        }
+        for (int i = 0; i < topCount; i++) {
+            long eventId = in.getLong();
+            int size = in.getInt();
+            long[] events = new long[size];
+            double[] scores = new double[size];
+            for (int j = 0; j < size; j++) {
+                events[j] = in.getLong();
+                scores[j] = in.getDouble();
+            }
+            topKFilter.restoreTop(eventId, events, scores);
+        }
+        return topK;
+    }
+
+    private static void readShard(MappedFileReader in, SimilarityStateStore shard) throws IOException {
+        int weights = in.getInt();
+        for (int i = 0; i < weights; i++) {
+            shard.putWeight(in.getLong(), in.getLong(), in.getDouble());
+        }
+        int sums = in.getInt();
+        for (int i = 0; i < sums; i++) {
+            shard.putWeightsSum(in.getLong(), in.getDouble());
+        }
+        int minSums = in.getInt();
+        for (int i = 0; i < minSums; i++) {
+            shard.putMinWeightsSum(in.getLong(), in.getLong(), in.getDouble());
+        }
+    }
+
+    // header[0] - время по событиям, header[1] - версия формата
+    private static Map<TopicPartition, Long> readHeader(MappedFileReader in, int expectedShards, long[] header)
+            throws IOException {
+        if (in.size() < HEADER_BYTES + Long.BYTES || in.getLong() != MAGIC) {
+            throw new IOException("Файл не является снапшотом агрегатора");
+        }
+        int version = in.getInt();
+        if (version != VERSION && version != VERSION_WITHOUT_LAST_VERSION && version != VERSION_WITHOUT_TOP_K) {
+            throw new IOException("Неподдерживаемая версия снапшота: " + version);
+        }
+        header[1] = version;
+        in.getLong();
+        header[0] = in.getLong();
+        int shardCount = in.getInt();
+        if (shardCount != expectedShards) {
+            throw new IOException("Снапшот содержит " + shardCount + " шардов, ожидалось " + expectedShards);
+        }
+        int offsetsCount = in.getInt();
+        Map<TopicPartition, Long> offsets = new HashMap<>();
+        for (int i = 0; i < offsetsCount; i++) {
+            String topic = new String(in.getBytes(in.getInt()), StandardCharsets.UTF_8);
+            offsets.put(new TopicPartition(topic, in.getInt()), in.getLong());
+        }
+        return offsets;
+    }
+
+    // Возвращает последнюю выданную версию обновлений пар, 0 для снапшотов без неё
+    private static long validate(MappedFileReader in, int shardCount, int version) throws IOException {
+        int[] sectionBytes = {WEIGHT_BYTES, SUM_BYTES, MIN_SUM_BYTES};
+        for (int shard = 0; shard < shardCount; shard++) {
+            for (int entryBytes : sectionBytes) {
+                long count = in.getInt();
+                skip(in, count * entryBytes);
+            }
+        }
+        if (version != VERSION_WITHOUT_TOP_K) {
+            in.getInt();
+            int topCount = in.getInt();
+            for (int i = 0; i < topCount; i++) {
+                in.getLong();
+                long size = in.getInt();
+                skip(in, size * TOP_ENTRY_BYTES);
+            }
+        }
+        long lastVersion = version == VERSION ? in.getLong() : 0;
+        if (in.position() != in.size() - Long.BYTES || in.getLong() != MAGIC) {
+            throw new IOException("Снапшот повреждён: неверный размер или маркер конца");
+        }
+        return lastVersion;
+    }
+
+    private static void skip(MappedFileReader in, long bytes) throws IOException {
+        long next = in.position() + bytes;
+        if (bytes < 0 || next > in.size() - Long.BYTES) {
+            throw new IOException("Снапшот повреждён: секция выходит за конец файла");
+        }
+        in.seek(next);
+    }
+
+    private static void unchecked(IoRunnable action) {
+        try {
+            action.run();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface IoRunnable {
+        void run() throws IOException;
+    }
+
+}
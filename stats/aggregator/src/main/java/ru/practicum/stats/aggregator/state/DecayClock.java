@@ -0,0 +1,26 @@
+package ru.practicum.stats.aggregator.state;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Время по событиям: наибольший timestamp обработанных действий.
+ * Общее для всех шардов, чтобы вклады шардов в суммы затухали к одному моменту.
+ */
+public class DecayClock {
+
+    private final AtomicLong now = new AtomicLong();
+
+    public long now() {
+        return now.get();
+    }
+
+    // Опоздавшее действие время назад не переводит
+    public long advance(long timestamp) {
+        return now.accumulateAndGet(timestamp, Math::max);
+    }
+
+    public void set(long timestamp) {
+        now.set(timestamp);
+    }
+
+}
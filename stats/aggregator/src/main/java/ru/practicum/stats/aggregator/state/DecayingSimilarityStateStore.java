@@ -0,0 +1,223 @@
+package ru.practicum.stats.aggregator.state;
+
+import ru.practicum.stats.aggregator.state.collection.LongDoubleConsumer;
+import ru.practicum.stats.aggregator.state.collection.LongPairDoubleHashMap;
+import ru.practicum.stats.aggregator.state.collection.LongPairDoubleMap;
+import ru.practicum.stats.aggregator.state.collection.LongPairDoubleMap.LongPairDoubleConsumer;
+import ru.practicum.stats.aggregator.state.collection.LongRingQueue;
+
+/**
+ * Экспоненциальное затухание поверх любого хранилища. Для каждой ячейки запоминается момент последней записи,
+ * значение затухает к текущему времени {@link DecayClock} при чтении. Все ячейки затухают с одной скоростью,
+ * поэтому суммы остаются согласованными с весами, а сходство меняется только за счёт новых действий.
+ * <p>
+ * Ячейка, затухшая ниже epsilon, читается как 0 и удаляется. Полного обхода нет: каждая созданная ячейка
+ * встаёт в очередь проверок, и каждая запись проверяет не больше {@value #CHECKS_PER_PUT} ячеек из её головы.
+ * Чтение хранилище не меняет, так как выполняется под read-блокировкой шарда.
+ */
+public class DecayingSimilarityStateStore implements SimilarityStateStore {
+
+    private static final long NO_KEY = 0L;
+
+    private static final double NO_STAMP = -1.0;
+
+    private static final long WEIGHT = 0;
+    private static final long WEIGHTS_SUM = 1;
+    private static final long MIN_WEIGHTS_SUM = 2;
+
+    private static final int CHECKS_PER_PUT = 2;
+
+    private final SimilarityStateStore delegate;
+
+    private final DecayClock clock;
+
+    // Скорость затухания, 1/мс
+    private final double lambda;
+
+    private final double epsilon;
+
+    // За это время вес 1.0 затухает ниже epsilon; столько ждёт ячейка в очереди до проверки
+    private final long checkDelay;
+
+    private final LongPairDoubleMap weightStamps = new LongPairDoubleHashMap();
+
+    private final LongPairDoubleMap weightsSumStamps = new LongPairDoubleHashMap();
+
+    private final LongPairDoubleMap minWeightsSumStamps = new LongPairDoubleHashMap();
+
+    // Четвёрки (тип ячейки, key1, key2, время проверки); время проверки не убывает от головы к хвосту
+    private final LongRingQueue checks = new LongRingQueue();
+
+    public DecayingSimilarityStateStore(SimilarityStateStore delegate, DecayClock clock, double lambda, double epsilon) {
+        this.delegate = delegate;
+        this.clock = clock;
+        this.lambda = lambda;
+        this.epsilon = epsilon;
+        this.checkDelay = (long) Math.ceil(Math.log(1.0 / epsilon) / lambda);
+    }
+
+    @Override
+    public double getWeight(long eventId, long userId) {
+        return decayed(delegate.getWeight(eventId, userId), weightStamps, eventId, userId);
+    }
+
+    @Override
+    public void putWeight(long eventId, long userId, double weight) {
+        delegate.putWeight(eventId, userId, weight);
+        touch(WEIGHT, weightStamps, eventId, userId);
+    }
+
+    @Override
+    public void removeWeight(long eventId, long userId) {
+        delegate.removeWeight(eventId, userId);
+        weightStamps.remove(eventId, userId);
+    }
+
+    @Override
+    public long[] getUserEvents(long userId) {
+        return delegate.getUserEvents(userId);
+    }
+
+    @Override
+    public double getWeightsSum(long eventId) {
+        return decayed(delegate.getWeightsSum(eventId), weightsSumStamps, eventId, NO_KEY);
+    }
+
+    @Override
+    public void putWeightsSum(long eventId, double sum) {
+        delegate.putWeightsSum(eventId, sum);
+        touch(WEIGHTS_SUM, weightsSumStamps, eventId, NO_KEY);
+    }
+
+    @Override
+    public void removeWeightsSum(long eventId) {
+        delegate.removeWeightsSum(eventId);
+        weightsSumStamps.remove(eventId, NO_KEY);
+    }
+
+    @Override
+    public double getMinWeightsSum(long eventA, long eventB) {
+        return decayed(delegate.getMinWeightsSum(eventA, eventB), minWeightsSumStamps, eventA, eventB);
+    }
+
+    @Override
+    public void putMinWeightsSum(long eventA, long eventB, double sum) {
+        delegate.putMinWeightsSum(eventA, eventB, sum);
+        touch(MIN_WEIGHTS_SUM, minWeightsSumStamps, eventA, eventB);
+    }
+
+    @Override
+    public void removeMinWeightsSum(long eventA, long eventB) {
+        delegate.removeMinWeightsSum(eventA, eventB);
+        minWeightsSumStamps.remove(eventA, eventB);
+    }
+
+    @Override
+    public int weightsCount() {
+        return delegate.weightsCount();
+    }
+
+    @Override
+    public int weightsSumsCount() {
+        return delegate.weightsSumsCount();
+    }
+
+    @Override
+    public int minWeightsSumsCount() {
+        return delegate.minWeightsSumsCount();
+    }
+
+    // Значения отдаются затухшими к текущему времени, в том числе ниже epsilon: число элементов должно совпасть с *Count()
+    @Override
+    public void forEachWeight(LongPairDoubleConsumer consumer) {
+        delegate.forEachWeight((eventId, userId, weight) ->
+                consumer.accept(eventId, userId, decay(weight, weightStamps.get(eventId, userId, clock.now()))));
+    }
+
+    @Override
+    public void forEachWeightsSum(LongDoubleConsumer consumer) {
+        delegate.forEachWeightsSum((eventId, sum) ->
+                consumer.accept(eventId, decay(sum, weightsSumStamps.get(eventId, NO_KEY, clock.now()))));
+    }
+
+    @Override
+    public void forEachMinWeightsSum(LongPairDoubleConsumer consumer) {
+        delegate.forEachMinWeightsSum((eventA, eventB, sum) ->
+                consumer.accept(eventA, eventB, decay(sum, minWeightsSumStamps.get(eventA, eventB, clock.now()))));
+    }
+
+    private double decayed(double value, LongPairDoubleMap stamps, long key1, long key2) {
+        if (value == 0.0) {
+            return 0.0;
+        }
+        double decayed = decay(value, stamps.get(key1, key2, clock.now()));
+        return decayed < epsilon ? 0.0 : decayed;
+    }
+
+    private double decay(double value, double stamp) {
+        return value * Math.exp(-lambda * (clock.now() - stamp));
+    }
+
+    private void touch(long kind, LongPairDoubleMap stamps, long key1, long key2) {
+        long now = clock.now();
+        boolean created = stamps.get(key1, key2, NO_STAMP) == NO_STAMP;
+        stamps.put(key1, key2, now);
+        if (created) {
+            enqueue(kind, key1, key2, now + checkDelay);
+        }
+        expire(now);
+    }
+
+    private void enqueue(long kind, long key1, long key2, long checkAt) {
+        checks.add(kind);
+        checks.add(key1);
+        checks.add(key2);
+        checks.add(checkAt);
+    }
+
+    private void expire(long now) {
+        for (int i = 0; i < CHECKS_PER_PUT && !checks.isEmpty() && checks.peek(3) <= now; i++) {
+            long kind = checks.poll();
+            long key1 = checks.poll();
+            long key2 = checks.poll();
+            checks.poll();
+
+            LongPairDoubleMap stamps = stampsOf(kind);
+            double stamp = stamps.get(key1, key2, NO_STAMP);
+            if (stamp == NO_STAMP) {
+                continue;
+            }
+
+            if (decay(rawValue(kind, key1, key2), stamp) < epsilon) {
+                remove(kind, key1, key2);
+            } else {
+                enqueue(kind, key1, key2, now + checkDelay);
+            }
+        }
+    }
+
+    private LongPairDoubleMap stampsOf(long kind) {
+        if (kind == WEIGHT) {
+            return weightStamps;
+        }
+        return kind == WEIGHTS_SUM ? weightsSumStamps : minWeightsSumStamps;
+    }
+
+    private double rawValue(long kind, long key1, long key2) {
+        if (kind == WEIGHT) {
+            return delegate.getWeight(key1, key2);
+        }
+        return kind == WEIGHTS_SUM ? delegate.getWeightsSum(key1) : delegate.getMinWeightsSum(key1, key2);
+    }
+
+    private void remove(long kind, long key1, long key2) {
+        if (kind == WEIGHT) {
+            removeWeight(key1, key2);
+        } else if (kind == WEIGHTS_SUM) {
+            removeWeightsSum(key1);
+        } else {
+            removeMinWeightsSum(key1, key2);
+        }
+    }
+
+}
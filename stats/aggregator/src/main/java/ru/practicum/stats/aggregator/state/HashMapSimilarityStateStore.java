@@ -0,0 +1,134 @@
+package ru.practicum.stats.aggregator.state;
+
+import ru.practicum.stats.aggregator.state.collection.LongDoubleConsumer;
+import ru.practicum.stats.aggregator.state.collection.LongPairDoubleMap.LongPairDoubleConsumer;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+public class HashMapSimilarityStateStore implements SimilarityStateStore {
+
+    private final Map<Long, Map<Long, Double>> eventsUserActionsWeights = new HashMap<>();
+
+    private final Map<Long, Double> eventsWeightsSum = new HashMap<>();
+
+    private final Map<Long, Map<Long, Double>> eventsPairMinWeightsSum = new HashMap<>();
+
+    private final Map<Long, Set<Long>> userInteractedEvents = new HashMap<>();
+
+    @Override
+    public double getWeight(long eventId, long userId) {
+        return eventsUserActionsWeights
+                .getOrDefault(eventId, Collections.emptyMap())
+                .getOrDefault(userId, 0.0);
+    }
+
+    @Override
+    public void putWeight(long eventId, long userId, double weight) {
+        eventsUserActionsWeights
+                .computeIfAbsent(eventId, e -> new HashMap<>())
+                .put(userId, weight);
+
+        userInteractedEvents
+                .computeIfAbsent(userId, u -> new HashSet<>())
+                .add(eventId);
+    }
+
+    @Override
+    public void removeWeight(long eventId, long userId) {
+        removeNested(eventsUserActionsWeights, eventId, userId);
+
+        Set<Long> events = userInteractedEvents.get(userId);
+        if (events != null && events.remove(eventId) && events.isEmpty()) {
+            userInteractedEvents.remove(userId);
+        }
+    }
+
+    @Override
+    public long[] getUserEvents(long userId) {
+        return userInteractedEvents.getOrDefault(userId, Collections.emptySet())
+                .stream()
+                .mapToLong(Long::longValue)
+                .toArray();
+    }
+
+    @Override
+    public double getWeightsSum(long eventId) {
+        return eventsWeightsSum.getOrDefault(eventId, 0.0);
+    }
+
+    @Override
+    public void putWeightsSum(long eventId, double sum) {
+        eventsWeightsSum.put(eventId, sum);
+    }
+
+    @Override
+    public void removeWeightsSum(long eventId) {
+        eventsWeightsSum.remove(eventId);
+    }
+
+    @Override
+    public double getMinWeightsSum(long eventA, long eventB) {
+        return eventsPairMinWeightsSum
+                .getOrDefault(eventA, Collections.emptyMap())
+                .getOrDefault(eventB, 0.0);
+    }
+
+    @Override
+    public void putMinWeightsSum(long eventA, long eventB, double sum) {
+        eventsPairMinWeightsSum
+                .computeIfAbsent(eventA, e -> new HashMap<>())
+                .put(eventB, sum);
+    }
+
+    @Override
+    public void removeMinWeightsSum(long eventA, long eventB) {
+        removeNested(eventsPairMinWeightsSum, eventA, eventB);
+    }
+
+    @Override
+    public int weightsCount() {
+        return eventsUserActionsWeights.values().stream().mapToInt(Map::size).sum();
+    }
+
+    @Override
+    public int weightsSumsCount() {
+        return eventsWeightsSum.size();
+    }
+
+    @Override
+    public int minWeightsSumsCount() {
+        return eventsPairMinWeightsSum.values().stream().mapToInt(Map::size).sum();
+    }
+
+    @Override
+    public void forEachWeight(LongPairDoubleConsumer consumer) {
+        eventsUserActionsWeights.forEach((eventId, weights) ->
+                weights.forEach((userId, weight) -> consumer.accept(eventId, userId, weight)));
+    }
+
+    @Override
+    public void forEachWeightsSum(LongDoubleConsumer consumer) {
+        eventsWeightsSum.forEach(consumer::accept);
+    }
+
+    @Override
+    public void forEachMinWeightsSum(LongPairDoubleConsumer consumer) {
+        eventsPairMinWeightsSum.forEach((eventA, sums) ->
+                sums.forEach((eventB, sum) -> consumer.accept(eventA, eventB, sum)));
+    }
+
+    private static void removeNested(Map<Long, Map<Long, Double>> map, long outerKey, long innerKey) {
+        Map<Long, Double> inner = map.get(outerKey);
+        if (inner != null) {
+            inner.remove(innerKey);
+            if (inner.isEmpty()) {
+                map.remove(outerKey);
+            }
+        }
+    }
+
+}
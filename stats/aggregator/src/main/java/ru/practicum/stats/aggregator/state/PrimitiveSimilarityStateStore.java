@@ -0,0 +1,128 @@
+package ru.practicum.stats.aggregator.state;
+
+import ru.practicum.stats.aggregator.state.collection.LongDoubleConsumer;
+import ru.practicum.stats.aggregator.state.collection.LongHashSet;
+import ru.practicum.stats.aggregator.state.collection.LongPairDoubleMap;
+import ru.practicum.stats.aggregator.state.collection.LongPairDoubleMap.LongPairDoubleConsumer;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Хранилище на примитивных таблицах {@link LongPairDoubleMap}: ячейки не упаковываются в Long/Double.
+ * Где лежат сами таблицы (в куче или вне её) определяет переданная фабрика.
+ * Индекс мероприятий пользователя {@link #getUserEvents} всегда остаётся в куче, в том числе в режиме OFF_HEAP:
+ * вне кучи выносятся только три таблицы весов и сумм.
+ */
+public class PrimitiveSimilarityStateStore implements SimilarityStateStore {
+
+    private static final long NO_KEY = 0L;
+
+    private static final long[] NO_EVENTS = new long[0];
+
+    // (eventId, userId) -> вес
+    private final LongPairDoubleMap weights;
+
+    // (eventId, -) -> сумма весов
+    private final LongPairDoubleMap weightsSums;
+
+    // (min(eventA, eventB), max(eventA, eventB)) -> сумма минимальных весов
+    private final LongPairDoubleMap minWeightsSums;
+
+    // userId -> мероприятия пользователя; в куче при любой фабрике таблиц
+    private final Map<Long, LongHashSet> userInteractedEvents = new HashMap<>();
+
+    public PrimitiveSimilarityStateStore(Supplier<LongPairDoubleMap> mapFactory) {
+        this.weights = mapFactory.get();
+        this.weightsSums = mapFactory.get();
+        this.minWeightsSums = mapFactory.get();
+    }
+
+    @Override
+    public double getWeight(long eventId, long userId) {
+        return weights.get(eventId, userId, 0.0);
+    }
+
+    @Override
+    public void putWeight(long eventId, long userId, double weight) {
+        weights.put(eventId, userId, weight);
+        userInteractedEvents.computeIfAbsent(userId, u -> new LongHashSet()).add(eventId);
+    }
+
+    @Override
+    public void removeWeight(long eventId, long userId) {
+        weights.remove(eventId, userId);
+        LongHashSet events = userInteractedEvents.get(userId);
+        if (events != null && events.remove(eventId) && events.isEmpty()) {
+            userInteractedEvents.remove(userId);
+        }
+    }
+
+    @Override
+    public long[] getUserEvents(long userId) {
+        LongHashSet events = userInteractedEvents.get(userId);
+        return events == null ? NO_EVENTS : events.toArray();
+    }
+
+    @Override
+    public double getWeightsSum(long eventId) {
+        return weightsSums.get(eventId, NO_KEY, 0.0);
+    }
+
+    @Override
+    public void putWeightsSum(long eventId, double sum) {
+        weightsSums.put(eventId, NO_KEY, sum);
+    }
+
+    @Override
+    public void removeWeightsSum(long eventId) {
+        weightsSums.remove(eventId, NO_KEY);
+    }
+
+    @Override
+    public double getMinWeightsSum(long eventA, long eventB) {
+        return minWeightsSums.get(eventA, eventB, 0.0);
+    }
+
+    @Override
+    public void putMinWeightsSum(long eventA, long eventB, double sum) {
+        minWeightsSums.put(eventA, eventB, sum);
+    }
+
+    @Override
+    public void removeMinWeightsSum(long eventA, long eventB) {
+        minWeightsSums.remove(eventA, eventB);
+    }
+
+    @Override
+    public int weightsCount() {
+        return weights.size();
+    }
+
+    @Override
+    public int weightsSumsCount() {
+        return weightsSums.size();
+    }
+
+    @Override
+    public int minWeightsSumsCount() {
+        return minWeightsSums.size();
+    }
+
+    @Override
+    public void forEachWeight(LongPairDoubleConsumer consumer) {
+        weights.forEach(consumer);
+    }
+
+    @Override
+    public void forEachWeightsSum(LongDoubleConsumer consumer) {
+        weightsSums.forEach((eventId, ignored, sum) -> consumer.accept(eventId, sum));
+    }
+
+    @Override
+    public void forEachMinWeightsSum(LongPairDoubleConsumer consumer) {
+        minWeightsSums.forEach(consumer);
+    }
+
+}
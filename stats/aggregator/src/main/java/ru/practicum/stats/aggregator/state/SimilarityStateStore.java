@@ -0,0 +1,49 @@
+package ru.practicum.stats.aggregator.state;
+
+import ru.practicum.stats.aggregator.state.collection.LongDoubleConsumer;
+import ru.practicum.stats.aggregator.state.collection.LongPairDoubleMap.LongPairDoubleConsumer;
+
+/**
+ * Состояние агрегатора: веса действий пользователей по мероприятиям,
+ * суммы весов мероприятий и суммы минимальных весов для пар мероприятий.
+ * Реализации не потокобезопасны.
+ */
+public interface SimilarityStateStore {
+
+    double getWeight(long eventId, long userId);
+
+    void putWeight(long eventId, long userId, double weight);
+
+    // Удаляет вес и мероприятие из списка мероприятий пользователя
+    void removeWeight(long eventId, long userId);
+
+    long[] getUserEvents(long userId);
+
+    double getWeightsSum(long eventId);
+
+    void putWeightsSum(long eventId, double sum);
+
+    void removeWeightsSum(long eventId);
+
+    double getMinWeightsSum(long eventA, long eventB);
+
+    void putMinWeightsSum(long eventA, long eventB, double sum);
+
+    void removeMinWeightsSum(long eventA, long eventB);
+
+    int weightsCount();
+
+    int weightsSumsCount();
+
+    int minWeightsSumsCount();
+
+    // (eventId, userId, вес)
+    void forEachWeight(LongPairDoubleConsumer consumer);
+
+    // (eventId, сумма весов)
+    void forEachWeightsSum(LongDoubleConsumer consumer);
+
+    // (eventA, eventB, сумма минимальных весов), eventA < eventB
+    void forEachMinWeightsSum(LongPairDoubleConsumer consumer);
+
+}
@@ -0,0 +1,7 @@
+package ru.practicum.stats.aggregator.state;
+
+public enum StateStoreType {
+    HASH_MAP,
+    PRIMITIVE,
+    OFF_HEAP
+}
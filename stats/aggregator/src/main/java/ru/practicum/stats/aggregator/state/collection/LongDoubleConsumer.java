@@ -0,0 +1,6 @@
+package ru.practicum.stats.aggregator.state.collection;
+
+@FunctionalInterface
+public interface LongDoubleConsumer {
+    void accept(long key, double value);
+}
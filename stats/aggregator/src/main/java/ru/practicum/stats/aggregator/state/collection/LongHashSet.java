@@ -0,0 +1,105 @@
+package ru.practicum.stats.aggregator.state.collection;
+
+import java.util.Arrays;
+
+/**
+ * Компактное множество примитивных long с открытой адресацией.
+ */
+public class LongHashSet {
+
+    private static final long EMPTY = Long.MIN_VALUE;
+    private static final double LOAD_FACTOR = 0.6;
+
+    private long[] elements;
+    private int mask;
+    private int size;
+    private int resizeThreshold;
+
+    public LongHashSet() {
+        allocate(4);
+    }
+
+    public boolean add(long element) {
+        LongPairDoubleMap.checkKey(element);
+        int slot = LongPairDoubleMap.hash(element, 0) & mask;
+        while (elements[slot] != EMPTY) {
+            if (elements[slot] == element) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        elements[slot] = element;
+        if (++size > resizeThreshold) {
+            rehash();
+        }
+        return true;
+    }
+
+    public boolean remove(long element) {
+        int slot = LongPairDoubleMap.hash(element, 0) & mask;
+        while (elements[slot] != EMPTY) {
+            if (elements[slot] == element) {
+                shiftBack(slot);
+                size--;
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long[] toArray() {
+        long[] result = new long[size];
+        int i = 0;
+        for (long element : elements) {
+            if (element != EMPTY) {
+                result[i++] = element;
+            }
+        }
+        return result;
+    }
+
+    private void shiftBack(int freeSlot) {
+        int slot = freeSlot;
+        while (true) {
+            slot = (slot + 1) & mask;
+            long element = elements[slot];
+            if (element == EMPTY) {
+                break;
+            }
+            int ideal = LongPairDoubleMap.hash(element, 0) & mask;
+            if (((slot - ideal) & mask) >= ((slot - freeSlot) & mask)) {
+                elements[freeSlot] = element;
+                freeSlot = slot;
+            }
+        }
+        elements[freeSlot] = EMPTY;
+    }
+
+    private void rehash() {
+        long[] oldElements = elements;
+        allocate(oldElements.length << 1);
+        for (long element : oldElements) {
+            if (element != EMPTY) {
+                add(element);
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        elements = new long[capacity];
+        Arrays.fill(elements, EMPTY);
+        mask = capacity - 1;
+        size = 0;
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+}
@@ -0,0 +1,132 @@
+package ru.practicum.stats.aggregator.state.collection;
+
+import java.util.Arrays;
+
+/**
+ * Хеш-таблица с открытой адресацией и линейным пробированием поверх примитивных массивов.
+ */
+public class LongPairDoubleHashMap implements LongPairDoubleMap {
+
+    private static final double LOAD_FACTOR = 0.6;
+
+    private long[] keys;
+    private double[] values;
+    private int mask;
+    private int size;
+    private int resizeThreshold;
+
+    public LongPairDoubleHashMap() {
+        this(16);
+    }
+
+    public LongPairDoubleHashMap(int expectedSize) {
+        allocate(LongPairDoubleMap.tableSizeFor(expectedSize, LOAD_FACTOR));
+    }
+
+    @Override
+    public double get(long key1, long key2, double defaultValue) {
+        int slot = LongPairDoubleMap.hash(key1, key2) & mask;
+        while (keys[slot << 1] != EMPTY_KEY) {
+            if (keys[slot << 1] == key1 && keys[(slot << 1) + 1] == key2) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return defaultValue;
+    }
+
+    @Override
+    public void put(long key1, long key2, double value) {
+        LongPairDoubleMap.checkKey(key1);
+        int slot = LongPairDoubleMap.hash(key1, key2) & mask;
+        while (keys[slot << 1] != EMPTY_KEY) {
+            if (keys[slot << 1] == key1 && keys[(slot << 1) + 1] == key2) {
+                values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot << 1] = key1;
+        keys[(slot << 1) + 1] = key2;
+        values[slot] = value;
+        if (++size > resizeThreshold) {
+            rehash(values.length << 1);
+        }
+    }
+
+    @Override
+    public boolean remove(long key1, long key2) {
+        int slot = LongPairDoubleMap.hash(key1, key2) & mask;
+        while (keys[slot << 1] != EMPTY_KEY) {
+            if (keys[slot << 1] == key1 && keys[(slot << 1) + 1] == key2) {
+                shiftBack(slot);
+                size--;
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void forEach(LongPairDoubleConsumer consumer) {
+        for (int slot = 0; slot < values.length; slot++) {
+            if (keys[slot << 1] != EMPTY_KEY) {
+                consumer.accept(keys[slot << 1], keys[(slot << 1) + 1], values[slot]);
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(keys, EMPTY_KEY);
+        size = 0;
+    }
+
+    // Удаление без "надгробий": сдвигаем назад элементы цепочки, которые иначе стали бы недостижимы
+    private void shiftBack(int freeSlot) {
+        int slot = freeSlot;
+        while (true) {
+            slot = (slot + 1) & mask;
+            long key1 = keys[slot << 1];
+            if (key1 == EMPTY_KEY) {
+                break;
+            }
+            long key2 = keys[(slot << 1) + 1];
+            int ideal = LongPairDoubleMap.hash(key1, key2) & mask;
+            if (((slot - ideal) & mask) >= ((slot - freeSlot) & mask)) {
+                keys[freeSlot << 1] = key1;
+                keys[(freeSlot << 1) + 1] = key2;
+                values[freeSlot] = values[slot];
+                freeSlot = slot;
+            }
+        }
+        keys[freeSlot << 1] = EMPTY_KEY;
+    }
+
+    private void rehash(int newCapacity) {
+        long[] oldKeys = keys;
+        double[] oldValues = values;
+        allocate(newCapacity);
+        for (int slot = 0; slot < oldValues.length; slot++) {
+            if (oldKeys[slot << 1] != EMPTY_KEY) {
+                put(oldKeys[slot << 1], oldKeys[(slot << 1) + 1], oldValues[slot]);
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity << 1];
+        Arrays.fill(keys, EMPTY_KEY);
+        values = new double[capacity];
+        mask = capacity - 1;
+        size = 0;
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+}
@@ -0,0 +1,49 @@
+package ru.practicum.stats.aggregator.state.collection;
+
+/**
+ * Отображение пары long-ключей в примитивный double без упаковки.
+ * Значение {@link #EMPTY_KEY} зарезервировано под пустые ячейки и не может быть первым ключом.
+ */
+public interface LongPairDoubleMap {
+
+    long EMPTY_KEY = Long.MIN_VALUE;
+
+    double get(long key1, long key2, double defaultValue);
+
+    void put(long key1, long key2, double value);
+
+    boolean remove(long key1, long key2);
+
+    int size();
+
+    void forEach(LongPairDoubleConsumer consumer);
+
+    void clear();
+
+    static int hash(long key1, long key2) {
+        long h = key1 * 0x9E3779B97F4A7C15L + key2;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    static int tableSizeFor(int expectedSize, double loadFactor) {
+        int capacity = Integer.highestOneBit((int) Math.ceil(Math.max(expectedSize, 2) / loadFactor));
+        return capacity < expectedSize / loadFactor ? capacity << 1 : capacity;
+    }
+
+    static void checkKey(long key1) {
+        if (key1 == EMPTY_KEY) {
+            throw new IllegalArgumentException("Ключ " + EMPTY_KEY + " зарезервирован");
+        }
+    }
+
+    @FunctionalInterface
+    interface LongPairDoubleConsumer {
+        void accept(long key1, long key2, double value);
+    }
+
+}
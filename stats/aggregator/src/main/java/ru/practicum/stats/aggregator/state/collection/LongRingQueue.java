@@ -0,0 +1,61 @@
+package ru.practicum.stats.aggregator.state.collection;
+
+import java.util.NoSuchElementException;
+
+/**
+ * FIFO-очередь примитивных long на кольцевом буфере, растущем вдвое при заполнении.
+ */
+public class LongRingQueue {
+
+    private long[] elements;
+    private int head;
+    private int size;
+
+    public LongRingQueue() {
+        elements = new long[16];
+    }
+
+    public void add(long element) {
+        if (size == elements.length) {
+            grow();
+        }
+        elements[(head + size) & (elements.length - 1)] = element;
+        size++;
+    }
+
+    public long poll() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        long element = elements[head];
+        head = (head + 1) & (elements.length - 1);
+        size--;
+        return element;
+    }
+
+    // Элемент на заданном расстоянии от головы очереди
+    public long peek(int offset) {
+        if (offset >= size) {
+            throw new NoSuchElementException();
+        }
+        return elements[(head + offset) & (elements.length - 1)];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private void grow() {
+        long[] grown = new long[elements.length << 1];
+        int firstPart = Math.min(size, elements.length - head);
+        System.arraycopy(elements, head, grown, 0, firstPart);
+        System.arraycopy(elements, 0, grown, firstPart, size - firstPart);
+        elements = grown;
+        head = 0;
+    }
+
+}
@@ -0,0 +1,165 @@
+package ru.practicum.stats.aggregator.state.collection;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Та же открытая адресация, что и в {@link LongPairDoubleHashMap}, но ячейки лежат в DirectByteBuffer
+ * вне кучи: [key1: long][key2: long][value: double]. Один буфер вмещает до 2^26 ячеек.
+ */
+public class OffHeapLongPairDoubleHashMap implements LongPairDoubleMap {
+
+    private static final double LOAD_FACTOR = 0.6;
+    private static final int ENTRY_BYTES = 3 * Long.BYTES;
+    private static final int MAX_CAPACITY = 1 << 26;
+
+    private ByteBuffer buffer;
+    private int capacity;
+    private int mask;
+    private int size;
+    private int resizeThreshold;
+
+    public OffHeapLongPairDoubleHashMap() {
+        this(16);
+    }
+
+    public OffHeapLongPairDoubleHashMap(int expectedSize) {
+        allocate(Math.min(LongPairDoubleMap.tableSizeFor(expectedSize, LOAD_FACTOR), MAX_CAPACITY));
+    }
+
+    @Override
+    public double get(long key1, long key2, double defaultValue) {
+        int slot = LongPairDoubleMap.hash(key1, key2) & mask;
+        long current;
+        while ((current = key1(slot)) != EMPTY_KEY) {
+            if (current == key1 && key2(slot) == key2) {
+                return value(slot);
+            }
+            slot = (slot + 1) & mask;
+        }
+        return defaultValue;
+    }
+
+    @Override
+    public void put(long key1, long key2, double value) {
+        LongPairDoubleMap.checkKey(key1);
+        int slot = LongPairDoubleMap.hash(key1, key2) & mask;
+        long current;
+        while ((current = key1(slot)) != EMPTY_KEY) {
+            if (current == key1 && key2(slot) == key2) {
+                buffer.putDouble(offset(slot) + 2 * Long.BYTES, value);
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        write(slot, key1, key2, value);
+        if (++size > resizeThreshold) {
+            rehash();
+        }
+    }
+
+    @Override
+    public boolean remove(long key1, long key2) {
+        int slot = LongPairDoubleMap.hash(key1, key2) & mask;
+        long current;
+        while ((current = key1(slot)) != EMPTY_KEY) {
+            if (current == key1 && key2(slot) == key2) {
+                shiftBack(slot);
+                size--;
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void forEach(LongPairDoubleConsumer consumer) {
+        for (int slot = 0; slot < capacity; slot++) {
+            long key1 = key1(slot);
+            if (key1 != EMPTY_KEY) {
+                consumer.accept(key1, key2(slot), value(slot));
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        for (int slot = 0; slot < capacity; slot++) {
+            buffer.putLong(offset(slot), EMPTY_KEY);
+        }
+        size = 0;
+    }
+
+    private void shiftBack(int freeSlot) {
+        int slot = freeSlot;
+        while (true) {
+            slot = (slot + 1) & mask;
+            long key1 = key1(slot);
+            if (key1 == EMPTY_KEY) {
+                break;
+            }
+            long key2 = key2(slot);
+            int ideal = LongPairDoubleMap.hash(key1, key2) & mask;
+            if (((slot - ideal) & mask) >= ((slot - freeSlot) & mask)) {
+                write(freeSlot, key1, key2, value(slot));
+                freeSlot = slot;
+            }
+        }
+        buffer.putLong(offset(freeSlot), EMPTY_KEY);
+    }
+
+    private void rehash() {
+        if (capacity == MAX_CAPACITY) {
+            throw new IllegalStateException("Превышена максимальная ёмкость off-heap таблицы: " + MAX_CAPACITY);
+        }
+        ByteBuffer oldBuffer = buffer;
+        int oldCapacity = capacity;
+        allocate(oldCapacity << 1);
+        for (int slot = 0; slot < oldCapacity; slot++) {
+            int offset = slot * ENTRY_BYTES;
+            long key1 = oldBuffer.getLong(offset);
+            if (key1 != EMPTY_KEY) {
+                put(key1, oldBuffer.getLong(offset + Long.BYTES), oldBuffer.getDouble(offset + 2 * Long.BYTES));
+            }
+        }
+    }
+
+    private void allocate(int newCapacity) {
+        buffer = ByteBuffer.allocateDirect(newCapacity * ENTRY_BYTES).order(ByteOrder.nativeOrder());
+        capacity = newCapacity;
+        mask = newCapacity - 1;
+        size = 0;
+        resizeThreshold = (int) (newCapacity * LOAD_FACTOR);
+        clear();
+    }
+
+    private void write(int slot, long key1, long key2, double value) {
+        int offset = offset(slot);
+        buffer.putLong(offset, key1);
+        buffer.putLong(offset + Long.BYTES, key2);
+        buffer.putDouble(offset + 2 * Long.BYTES, value);
+    }
+
+    private long key1(int slot) {
+        return buffer.getLong(offset(slot));
+    }
+
+    private long key2(int slot) {
+        return buffer.getLong(offset(slot) + Long.BYTES);
+    }
+
+    private double value(int slot) {
+        return buffer.getDouble(offset(slot) + 2 * Long.BYTES);
+    }
+
+    private static int offset(int slot) {
+        return slot * ENTRY_BYTES;
+    }
+
+}
@@ -0,0 +1,149 @@
+package ru.practicum.stats.aggregator.snapshot;
+
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.practicum.ewm.stats.avro.EventSimilarityAvro;
+import ru.practicum.stats.aggregator.emit.SimilarityBatch;
+import ru.practicum.stats.aggregator.emit.SimilarityUpdate;
+import ru.practicum.stats.aggregator.emit.SimilarityVersionClock;
+import ru.practicum.stats.aggregator.emit.TopKSimilarityFilter;
+import ru.practicum.stats.aggregator.state.HashMapSimilarityStateStore;
+import ru.practicum.stats.aggregator.state.SimilarityStateStore;
+import ru.practicum.stats.aggregator.state.collection.LongPairDoubleHashMap;
+import ru.practicum.stats.aggregator.state.collection.LongPairDoubleMap;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class StateSnapshotFileTest {
+
+    private static final Map<TopicPartition, Long> OFFSETS = Map.of(new TopicPartition("stats.user-actions.v1", 0), 42L);
+
+    private final SimilarityVersionClock versions = new SimilarityVersionClock();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void restoredHeapsTombstonePairsEmittedBeforeRestart() throws IOException {
+        TopKSimilarityFilter filter = new TopKSimilarityFilter(1, versions);
+        SimilarityBatch batch = new SimilarityBatch(false);
+        filter.apply(similarity(1, 2, 0.5), batch);
+        filter.apply(similarity(1, 3, 0.9), batch);
+        assertEquals(0, tombstones(batch.drain()));
+
+        Path path = directory.resolve("state.snapshot");
+        StateSnapshotFile.write(path, List.of(shard()), filter, OFFSETS, 1L, 2L, versions.last());
+
+        TopKSimilarityFilter restored = new TopKSimilarityFilter(1, versions);
+        StateSnapshotFile.Contents contents = StateSnapshotFile.read(path, List.of(new HashMapSimilarityStateStore()),
+                eventTime -> assertEquals(2L, eventTime), restored);
+
+        assertEquals(OFFSETS, contents.offsets());
+        assertEquals(1, contents.topK());
+        assertEquals(filter.topCount(), restored.topCount());
+        assertEquals(filter.entryCount(), restored.entryCount());
+
+        // Пара 1:2 вытесняется из обеих куч и удаляется только потому, что кучи восстановлены
+        restored.apply(similarity(2, 3, 0.95), batch);
+        List<SimilarityUpdate> updates = batch.drain();
+        assertEquals(1, tombstones(updates));
+        assertEquals("1:2", updates.stream().filter(update -> update.similarity() == null).findFirst()
+                .orElseThrow().key());
+    }
+
+    @Test
+    void heapsWithOtherKAreNotLoaded() throws IOException {
+        TopKSimilarityFilter filter = new TopKSimilarityFilter(1, versions);
+        filter.apply(similarity(1, 2, 0.5), new SimilarityBatch(false));
+
+        Path path = directory.resolve("state.snapshot");
+        StateSnapshotFile.write(path, List.of(shard()), filter, OFFSETS, 1L, 2L, versions.last());
+
+        TopKSimilarityFilter restored = new TopKSimilarityFilter(2, versions);
+        StateSnapshotFile.Contents contents = StateSnapshotFile.read(path, List.of(new HashMapSimilarityStateStore()),
+                eventTime -> { }, restored);
+
+        assertEquals(1, contents.topK());
+        assertEquals(0, restored.topCount());
+        // Последняя версия читается и тогда, когда кучи пропускаются
+        assertEquals(versions.last(), contents.lastVersion());
+    }
+
+    @Test
+    void restoredClockContinuesAfterSavedVersion() throws IOException {
+        // Версия из будущего: системное время после перезапуска оказалось позади
+        long saved = (System.currentTimeMillis() + 60_000) * 1_000_000L;
+        Path path = directory.resolve("state.snapshot");
+        StateSnapshotFile.write(path, List.of(shard()), null, OFFSETS, 1L, 2L, saved);
+
+        StateSnapshotFile.Contents contents = StateSnapshotFile.read(path, List.of(new HashMapSimilarityStateStore()),
+                eventTime -> { }, null);
+        assertEquals(saved, contents.lastVersion());
+
+        SimilarityVersionClock restored = new SimilarityVersionClock();
+        restored.advanceTo(contents.lastVersion());
+        assertEquals(saved + 1, restored.next());
+        assertEquals(saved + 2, restored.next());
+    }
+
+    @Test
+    void snapshotWithoutFilterStoresZeroK() throws IOException {
+        Path path = directory.resolve("state.snapshot");
+        StateSnapshotFile.write(path, List.of(shard()), null, OFFSETS, 1L, 2L, 0L);
+
+        SimilarityStateStore shard = new HashMapSimilarityStateStore();
+        StateSnapshotFile.Contents contents = StateSnapshotFile.read(path, List.of(shard), eventTime -> { }, null);
+
+        assertEquals(0, contents.topK());
+        assertEquals(0.5, shard.getMinWeightsSum(1, 2));
+    }
+
+    @Test
+    void reconcileResendsRetainedPairsAndTombstonesTheRest() {
+        LongPairDoubleMap scores = new LongPairDoubleHashMap();
+        scores.put(1, 2, 0.5);
+        scores.put(1, 3, 0.9);
+        scores.put(2, 3, 0.95);
+
+        TopKSimilarityFilter filter = new TopKSimilarityFilter(1, versions);
+        SimilarityBatch batch = new SimilarityBatch(false);
+        filter.reconcile(scores, Instant.EPOCH, batch);
+
+        List<SimilarityUpdate> updates = batch.drain();
+        assertEquals(3, updates.size());
+        assertEquals(1, tombstones(updates));
+        assertEquals("1:2", updates.stream().filter(update -> update.similarity() == null).findFirst()
+                .orElseThrow().key());
+    }
+
+    private static SimilarityStateStore shard() {
+        SimilarityStateStore shard = new HashMapSimilarityStateStore();
+        shard.putWeight(1, 10, 0.5);
+        shard.putWeight(2, 10, 0.8);
+        shard.putWeightsSum(1, 0.5);
+        shard.putWeightsSum(2, 0.8);
+        shard.putMinWeightsSum(1, 2, 0.5);
+        return shard;
+    }
+
+    private static EventSimilarityAvro similarity(long eventA, long eventB, double score) {
+        return EventSimilarityAvro.newBuilder()
+                .setEventA(eventA)
+                .setEventB(eventB)
+                .setScore(score)
+                .setTimestamp(Instant.EPOCH)
+                .build();
+    }
+
+    private static long tombstones(List<SimilarityUpdate> updates) {
+        return updates.stream().filter(update -> update.similarity() == null).count();
+    }
+
+}
@@ -0,0 +1,66 @@
+package ru.practicum.stats.aggregator.state.collection;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LongHashSetTest {
+
+    private static final int OPERATIONS = 200_000;
+
+    @Test
+    void randomOperationsMatchHashSet() {
+        LongHashSet set = new LongHashSet();
+        Set<Long> expected = new HashSet<>();
+        Random random = new Random(7);
+
+        for (int i = 0; i < OPERATIONS; i++) {
+            long element = random.nextInt(1024) - 512;
+            if (random.nextInt(3) < 2) {
+                assertEquals(expected.add(element), set.add(element));
+            } else {
+                assertEquals(expected.remove(element), set.remove(element));
+            }
+            assertEquals(expected.size(), set.size());
+            assertEquals(expected.isEmpty(), set.isEmpty());
+        }
+
+        assertEquals(expected, toSet(set));
+    }
+
+    @Test
+    void removesEverythingAfterGrowth() {
+        LongHashSet set = new LongHashSet();
+        int count = 10_000;
+        for (long i = 0; i < count; i++) {
+            set.add(i * 31);
+        }
+        assertEquals(count, set.size());
+        for (long i = 0; i < count; i++) {
+            assertTrue(set.remove(i * 31));
+        }
+        assertTrue(set.isEmpty());
+        assertEquals(0, set.toArray().length);
+    }
+
+    @Test
+    void rejectsReservedElement() {
+        assertThrows(IllegalArgumentException.class, () -> new LongHashSet().add(Long.MIN_VALUE));
+    }
+
+    private static Set<Long> toSet(LongHashSet set) {
+        long[] elements = set.toArray();
+        Set<Long> result = Arrays.stream(elements).boxed().collect(Collectors.toSet());
+        assertEquals(elements.length, result.size());
+        return result;
+    }
+
+}
@@ -0,0 +1,98 @@
+package ru.practicum.stats.aggregator.state.collection;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LongPairDoubleMapTest {
+
+    private static final int OPERATIONS = 200_000;
+
+    static Stream<Arguments> maps() {
+        return Stream.of(
+                Arguments.of("LongPairDoubleHashMap", (Supplier<LongPairDoubleMap>) () -> new LongPairDoubleHashMap(2)),
+                Arguments.of("OffHeapLongPairDoubleHashMap", (Supplier<LongPairDoubleMap>) () -> new OffHeapLongPairDoubleHashMap(2))
+        );
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("maps")
+    void randomOperationsMatchHashMap(String name, Supplier<LongPairDoubleMap> factory) {
+        LongPairDoubleMap map = factory.get();
+        Map<Pair, Double> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < OPERATIONS; i++) {
+            // Узкий диапазон ключей даёт много коллизий и удалений из середины цепочек пробирования
+            long key1 = random.nextInt(512) - 256;
+            long key2 = random.nextInt(8);
+            Pair pair = new Pair(key1, key2);
+            switch (random.nextInt(3)) {
+                case 0, 1 -> {
+                    double value = random.nextDouble();
+                    map.put(key1, key2, value);
+                    expected.put(pair, value);
+                }
+                default -> assertEquals(expected.remove(pair) != null, map.remove(key1, key2));
+            }
+            assertEquals(expected.getOrDefault(pair, -1.0), map.get(key1, key2, -1.0));
+            assertEquals(expected.size(), map.size());
+        }
+
+        assertSameContent(expected, map);
+        map.clear();
+        assertEquals(0, map.size());
+        assertSameContent(Map.of(), map);
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("maps")
+    void growsAndShrinksToEmpty(String name, Supplier<LongPairDoubleMap> factory) {
+        LongPairDoubleMap map = factory.get();
+        int count = 50_000;
+        for (int i = 0; i < count; i++) {
+            map.put(i, -i, i * 0.5);
+        }
+        assertEquals(count, map.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(i * 0.5, map.get(i, -i, -1.0));
+        }
+        for (int i = 0; i < count; i += 2) {
+            map.remove(i, -i);
+        }
+        for (int i = 0; i < count; i++) {
+            assertEquals(i % 2 == 0 ? -1.0 : i * 0.5, map.get(i, -i, -1.0));
+        }
+        for (int i = 1; i < count; i += 2) {
+            map.remove(i, -i);
+        }
+        assertEquals(0, map.size());
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("maps")
+    void rejectsReservedKey(String name, Supplier<LongPairDoubleMap> factory) {
+        LongPairDoubleMap map = factory.get();
+        assertThrows(IllegalArgumentException.class, () -> map.put(LongPairDoubleMap.EMPTY_KEY, 1L, 1.0));
+        assertEquals(-1.0, map.get(LongPairDoubleMap.EMPTY_KEY, 1L, -1.0));
+    }
+
+    private static void assertSameContent(Map<Pair, Double> expected, LongPairDoubleMap map) {
+        Map<Pair, Double> actual = new HashMap<>();
+        map.forEach((key1, key2, value) -> actual.put(new Pair(key1, key2), value));
+        assertEquals(expected, actual);
+    }
+
+    private record Pair(long key1, long key2) {
+    }
+
+}
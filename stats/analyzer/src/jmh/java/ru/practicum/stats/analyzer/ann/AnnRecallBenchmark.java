@@ -0,0 +1,276 @@
+package ru.practicum.stats.analyzer.ann;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Limit;
+import ru.practicum.ewm.stats.proto.RecommendationEngineProto;
+import ru.practicum.ewm.stats.proto.RecommendedEventProto;
+import ru.practicum.ewm.stats.proto.UserPredictionsRequestProto;
+import ru.practicum.stats.analyzer.cache.RecommendationStoreImpl;
+import ru.practicum.stats.analyzer.config.DecayConfig;
+import ru.practicum.stats.analyzer.config.RecommendationEngineConfig;
+import ru.practicum.stats.analyzer.config.RecommendationStoreConfig;
+import ru.practicum.stats.analyzer.dal.dao.InteractionRepository;
+import ru.practicum.stats.analyzer.dal.model.interaction.Interaction;
+import ru.practicum.stats.analyzer.dal.model.interaction.InteractionId;
+import ru.practicum.stats.analyzer.dal.model.similarity.Similarity;
+import ru.practicum.stats.analyzer.dal.model.similarity.SimilarityId;
+import ru.practicum.stats.analyzer.dal.model.similarity.SimilarityTombstone;
+import ru.practicum.stats.analyzer.dal.storage.SimilarityStorage;
+import ru.practicum.stats.analyzer.service.RecommendationsService;
+import ru.practicum.stats.analyzer.service.RecommendationsServiceImpl;
+
+import java.lang.reflect.Proxy;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Сравнивает полноту и задержку приближённых рекомендаций с точными на синтетических данных. Точные считаются
+ * тем же RecommendationsServiceImpl по коэффициентам сходства, вычисленным по формуле агрегатора и лежащим в памяти,
+ * поэтому задержка обоих способов - только вычисления, без обращений к БД.
+ * <p>
+ * Полнота - доля точных рекомендаций, попавших в приближённые; полнота индекса - доля кандидатов полного
+ * перебора векторов, найденных при заданном probes.
+ * Аргументы: [число пользователей] [число мероприятий] [число запросов] [max_results] [dimensions].
+ */
+public class AnnRecallBenchmark {
+
+    private static final int GENRES = 30;
+
+    private static final double[] WEIGHTS = {0.4, 0.8, 1.0};
+
+    public static void main(String[] args) {
+        int users = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int events = args.length > 1 ? Integer.parseInt(args[1]) : 3_000;
+        int queries = args.length > 2 ? Integer.parseInt(args[2]) : 1_000;
+        int maxResults = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        int dimensions = args.length > 4 ? Integer.parseInt(args[4]) : new RecommendationEngineConfig().getDimensions();
+
+        ((Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+
+        Map<Long, List<Interaction>> interactions = generate(users, events);
+        long started = System.nanoTime();
+        InMemorySimilarityStorage storage = new InMemorySimilarityStorage(interactions);
+        long similaritiesMillis = (System.nanoTime() - started) / 1_000_000;
+
+        started = System.nanoTime();
+        ItemVectors vectors = new ItemVectors(dimensions);
+        interactions.values().forEach(list -> list.forEach(i ->
+                vectors.add(i.getId().getUserId(), i.getId().getEventId(), i.getRating())));
+        ItemVectorIndex index = vectors.build(0, new RecommendationEngineConfig().getIterations());
+        long indexMillis = (System.nanoTime() - started) / 1_000_000;
+
+        System.out.printf("users=%d events=%d interactions=%d pairs=%d queries=%d max_results=%d dimensions=%d lists=%d%n",
+                users, index.size(), interactions.values().stream().mapToInt(List::size).sum(), storage.size(),
+                queries, maxResults, dimensions, index.lists());
+        System.out.printf("similarities %d ms, vector index %d ms%n", similaritiesMillis, indexMillis);
+
+        Random random = new Random(7);
+        List<UserPredictionsRequestProto> exactRequests = new ArrayList<>();
+        List<UserPredictionsRequestProto> approximateRequests = new ArrayList<>();
+        for (int i = 0; i < queries; i++) {
+            long userId = 1 + random.nextInt(users);
+            exactRequests.add(request(userId, maxResults, RecommendationEngineProto.ENGINE_EXACT));
+            approximateRequests.add(request(userId, maxResults, RecommendationEngineProto.ENGINE_APPROXIMATE));
+        }
+
+        RecommendationsService exact = service(storage, interactions, (ratings, limit) -> Optional.empty());
+        List<List<RecommendedEventProto>> expected = new ArrayList<>();
+        long[] exactLatencies = measure(exact, exactRequests, expected);
+
+        RecommendationsService exhaustive = service(storage, interactions,
+                (ratings, limit) -> Optional.of(AnnRecommenderImpl.predict(index, ratings, limit, index.lists())));
+        List<List<RecommendedEventProto>> exhaustiveResults = new ArrayList<>();
+        measure(exhaustive, approximateRequests, exhaustiveResults);
+
+        System.out.printf("%-10s %10s %12s %10s %10s %10s%n", "engine", "probes", "index recall", "recall", "p50 us", "p99 us");
+        print("exact", "-", Double.NaN, 1.0, exactLatencies);
+        for (int probes : new int[]{1, 2, 4, 8, 16, index.lists()}) {
+            RecommendationsService approximate = service(storage, interactions,
+                    (ratings, limit) -> Optional.of(AnnRecommenderImpl.predict(index, ratings, limit, probes)));
+            List<List<RecommendedEventProto>> results = new ArrayList<>();
+            long[] latencies = measure(approximate, approximateRequests, results);
+            print("approx", String.valueOf(probes), recall(exhaustiveResults, results), recall(expected, results), latencies);
+        }
+    }
+
+    private static void print(String engine, String probes, double indexRecall, double recall, long[] latencies) {
+        System.out.printf("%-10s %10s %12.3f %10.3f %10.1f %10.1f%n", engine, probes, indexRecall, recall,
+                latencies[latencies.length / 2] / 1000.0, latencies[(int) (latencies.length * 0.99)] / 1000.0);
+    }
+
+    // Средняя по запросам доля ожидаемых мероприятий, найденных в ответе; запросы без ожидаемых не учитываются
+    private static double recall(List<List<RecommendedEventProto>> expected, List<List<RecommendedEventProto>> actual) {
+        double sum = 0.0;
+        int counted = 0;
+        for (int i = 0; i < expected.size(); i++) {
+            if (expected.get(i).isEmpty()) {
+                continue;
+            }
+            Set<Long> found = new HashSet<>();
+            actual.get(i).forEach(event -> found.add(event.getEventId()));
+            long hits = expected.get(i).stream().filter(event -> found.contains(event.getEventId())).count();
+            sum += (double) hits / expected.get(i).size();
+            counted++;
+        }
+        return counted == 0 ? Double.NaN : sum / counted;
+    }
+
+    // Прогрев одним проходом, затем задержка каждого запроса; возвращает отсортированные задержки в нс
+    private static long[] measure(RecommendationsService service, List<UserPredictionsRequestProto> requests,
+                                  List<List<RecommendedEventProto>> results) {
+        for (UserPredictionsRequestProto request : requests) {
+            service.getRecommendationsForUser(request);
+        }
+        long[] latencies = new long[requests.size()];
+        for (int i = 0; i < requests.size(); i++) {
+            long started = System.nanoTime();
+            results.add(service.getRecommendationsForUser(requests.get(i)));
+            latencies[i] = System.nanoTime() - started;
+        }
+        Arrays.sort(latencies);
+        return latencies;
+    }
+
+    private static UserPredictionsRequestProto request(long userId, int maxResults, RecommendationEngineProto engine) {
+        return UserPredictionsRequestProto.newBuilder()
+                .setUserId(userId)
+                .setMaxResults(maxResults)
+                .setEngine(engine)
+                .build();
+    }
+
+    private static RecommendationsService service(SimilarityStorage storage, Map<Long, List<Interaction>> interactions,
+                                                  AnnRecommender annRecommender) {
+        InteractionRepository repository = (InteractionRepository) Proxy.newProxyInstance(
+                InteractionRepository.class.getClassLoader(), new Class<?>[]{InteractionRepository.class},
+                (proxy, method, args) -> {
+                    if (!method.getName().equals("findAllById_UserIdOrderByActionDateTimeDesc")) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    List<Interaction> recent = interactions.getOrDefault((Long) args[0], List.of());
+                    return recent.subList(0, Math.min(recent.size(), ((Limit) args[1]).max()));
+                });
+        // Хранилище рассчитанных рекомендаций выключено: каждый запрос считается заново
+        RecommendationStoreConfig storeConfig = new RecommendationStoreConfig();
+        storeConfig.setEnabled(false);
+        return new RecommendationsServiceImpl(storage, repository, null, new DecayConfig(), null, null,
+                annRecommender, new RecommendationEngineConfig(), new RecommendationStoreImpl(null, storeConfig), storeConfig);
+    }
+
+    // У каждого пользователя любимый жанр: 80% действий приходится на его мероприятия, остальные - на любые.
+    // Внутри жанра и среди всех мероприятий распределение степенное. Взаимодействия по убыванию времени
+    private static Map<Long, List<Interaction>> generate(int users, int events) {
+        Random random = new Random(42);
+        int genreSize = Math.max(1, events / GENRES);
+        Instant now = Instant.now();
+        Map<Long, List<Interaction>> interactions = new HashMap<>();
+        for (long userId = 1; userId <= users; userId++) {
+            int genre = random.nextInt(GENRES);
+            int actions = 10 + random.nextInt(30);
+            Map<Long, Interaction> byEvent = new LinkedHashMap<>();
+            for (int action = 0; action < actions; action++) {
+                long eventId = random.nextDouble() < 0.8
+                        ? 1 + Math.min(events - 1, genre * genreSize + (long) (genreSize * Math.pow(random.nextDouble(), 2)))
+                        : 1 + (long) (events * Math.pow(random.nextDouble(), 3));
+                double weight = WEIGHTS[random.nextInt(WEIGHTS.length)];
+                Interaction previous = byEvent.remove(eventId);
+                double rating = previous == null ? weight : Math.max(weight, previous.getRating());
+                byEvent.put(eventId, new Interaction(InteractionId.of(userId, eventId), rating, now.plusMillis(action)));
+            }
+            List<Interaction> list = new ArrayList<>(byEvent.values());
+            Collections.reverse(list);
+            interactions.put(userId, list);
+        }
+        return interactions;
+    }
+
+    /**
+     * Коэффициенты сходства по формуле агрегатора: сумма минимумов оценок пары,
+     * делённая на корень из произведения сумм оценок каждого мероприятия.
+     */
+    private static class InMemorySimilarityStorage implements SimilarityStorage {
+
+        private final Map<Long, List<Similarity>> neighbors = new HashMap<>();
+
+        private int size;
+
+        InMemorySimilarityStorage(Map<Long, List<Interaction>> interactions) {
+            Map<Long, Double> sums = new HashMap<>();
+            Map<SimilarityId, double[]> minSums = new HashMap<>();
+            for (List<Interaction> list : interactions.values()) {
+                for (int a = 0; a < list.size(); a++) {
+                    Interaction first = list.get(a);
+                    sums.merge(first.getId().getEventId(), first.getRating(), Double::sum);
+                    for (int b = a + 1; b < list.size(); b++) {
+                        Interaction second = list.get(b);
+                        SimilarityId id = SimilarityId.of(first.getId().getEventId(), second.getId().getEventId());
+                        minSums.computeIfAbsent(id, key -> new double[1])[0] += Math.min(first.getRating(), second.getRating());
+                    }
+                }
+            }
+            Instant now = Instant.now();
+            minSums.forEach((id, minSum) -> {
+                double similarity = minSum[0] / Math.sqrt(sums.get(id.getEvent1()) * sums.get(id.getEvent2()));
+                Similarity pair = new Similarity(id, similarity, now, 0L);
+                neighbors.computeIfAbsent(id.getEvent1(), key -> new ArrayList<>()).add(pair);
+                neighbors.computeIfAbsent(id.getEvent2(), key -> new ArrayList<>()).add(pair);
+            });
+            neighbors.values().forEach(list -> list.sort(Comparator.comparingDouble(Similarity::getSimilarity).reversed()));
+            size = minSums.size();
+        }
+
+        int size() {
+            return size;
+        }
+
+        @Override
+        public List<Similarity> findAllByOneOf(Set<Long> eventIds, int limit) {
+            List<Similarity> found = new ArrayList<>();
+            for (Long eventId : eventIds) {
+                for (Similarity similarity : neighbors.getOrDefault(eventId, List.of())) {
+                    if (!eventIds.contains(other(similarity, eventId))) {
+                        found.add(similarity);
+                    }
+                }
+            }
+            found.sort(Comparator.comparingDouble(Similarity::getSimilarity).reversed());
+            return found.subList(0, Math.min(found.size(), limit));
+        }
+
+        @Override
+        public List<Similarity> findAllBetween(Set<Long> eventIds, Set<Long> otherEventIds) {
+            List<Similarity> found = new ArrayList<>();
+            for (Long eventId : otherEventIds) {
+                for (Similarity similarity : neighbors.getOrDefault(eventId, List.of())) {
+                    if (eventIds.contains(other(similarity, eventId))) {
+                        found.add(similarity);
+                    }
+                }
+            }
+            return found;
+        }
+
+        @Override
+        public List<Similarity> findNeighbors(long eventId, Set<Long> excluded, int limit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<SimilarityId> saveAll(Collection<Similarity> similarities) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<SimilarityId> deleteAll(Collection<SimilarityTombstone> tombstones) {
+            throw new UnsupportedOperationException();
+        }
+
+        private static long other(Similarity similarity, long eventId) {
+            long event1 = similarity.getId().getEvent1();
+            return event1 == eventId ? similarity.getId().getEvent2() : event1;
+        }
+    }
+
+}
@@ -0,0 +1,178 @@
+package ru.practicum.stats.analyzer.controller;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import org.slf4j.LoggerFactory;
+import ru.practicum.ewm.stats.proto.RecommendationsControllerGrpc;
+import ru.practicum.ewm.stats.proto.RecommendedEventProto;
+import ru.practicum.ewm.stats.proto.UserPredictionsRequestProto;
+import ru.practicum.stats.analyzer.config.GrpcServerConfig;
+import ru.practicum.stats.analyzer.config.StreamingConfig;
+import ru.practicum.stats.analyzer.service.RecommendationsService;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Нагрузка на GetRecommendationsForUser при разных исполнителях вызовов gRPC: виртуальные потоки
+ * из GrpcServerConfig, фиксированный пул потоков платформы и пул gRPC по умолчанию (неограниченный кэширующий
+ * пул потоков платформы). Сервис вместо обращения к БД спит dbLatencyMs, то есть вызов блокируется так же,
+ * как на чтении из сокета JDBC.
+ * <p>
+ * Для каждого режима выводятся пропускная способность, p50 и p99 задержки и пиковое число потоков платформы.
+ * Аргументы: [одновременных вызовов] [вызовов] [dbLatencyMs] [потоков фиксированного пула].
+ */
+public class GrpcExecutorLoadBenchmark {
+
+    private static final int RECOMMENDATIONS = 10;
+
+    public static void main(String[] args) throws Exception {
+        int concurrency = args.length > 0 ? Integer.parseInt(args[0]) : 1_000;
+        int calls = args.length > 1 ? Integer.parseInt(args[1]) : 50_000;
+        long dbLatencyMs = args.length > 2 ? Long.parseLong(args[2]) : 20;
+        int fixedThreads = args.length > 3 ? Integer.parseInt(args[3]) : 200;
+
+        ((Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+
+        RecommendationsController controller = new RecommendationsController(service(dbLatencyMs), new StreamingConfig());
+
+        System.out.printf("Одновременных вызовов %d, вызовов %d, задержка БД %d мс%n", concurrency, calls, dbLatencyMs);
+        System.out.printf("%-14s %12s %10s %10s %16s%n", "исполнитель", "вызовов/с", "p50, мс", "p99, мс", "пик потоков");
+
+        run("virtual", controller, builder -> {
+            GrpcServerConfig config = new GrpcServerConfig();
+            ExecutorService executor = config.grpcServerExecutor();
+            config.virtualThreadGrpcServerConfigurer(executor).accept(builder);
+            return executor;
+        }, concurrency, calls);
+        run("fixed-" + fixedThreads, controller, builder -> {
+            ExecutorService executor = Executors.newFixedThreadPool(fixedThreads);
+            builder.executor(executor);
+            return executor;
+        }, concurrency, calls);
+        // Последним: потоки общего пула gRPC живут ещё минуту и попали бы в пик следующих режимов
+        run("default", controller, builder -> null, concurrency, calls);
+    }
+
+    private static void run(String mode, RecommendationsController controller, ExecutorCustomizer customizer,
+                            int concurrency, int calls) throws Exception {
+        String name = "load-" + mode;
+        InProcessServerBuilder serverBuilder = InProcessServerBuilder.forName(name).addService(controller);
+        ExecutorService executor = customizer.customize(serverBuilder);
+        Server server = serverBuilder.build().start();
+        ManagedChannel channel = InProcessChannelBuilder.forName(name).directExecutor().build();
+        RecommendationsControllerGrpc.RecommendationsControllerStub stub = RecommendationsControllerGrpc.newStub(channel);
+
+        try {
+            // Прогрев, затем замер с чистым пиком потоков
+            load(stub, concurrency, Math.max(calls / 10, concurrency));
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            threads.resetPeakThreadCount();
+
+            long started = System.nanoTime();
+            long[] latencies = load(stub, concurrency, calls);
+            double seconds = (System.nanoTime() - started) / 1e9;
+
+            Arrays.sort(latencies);
+            System.out.printf("%-14s %12.0f %10.1f %10.1f %16d%n", mode, calls / seconds,
+                    percentile(latencies, 0.50) / 1e6, percentile(latencies, 0.99) / 1e6,
+                    threads.getPeakThreadCount());
+        } finally {
+            channel.shutdownNow().awaitTermination(10, TimeUnit.SECONDS);
+            server.shutdownNow().awaitTermination(10, TimeUnit.SECONDS);
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    private static long[] load(RecommendationsControllerGrpc.RecommendationsControllerStub stub,
+                               int concurrency, int calls) throws InterruptedException {
+        long[] latencies = new long[calls];
+        Semaphore inFlight = new Semaphore(concurrency);
+        CountDownLatch done = new CountDownLatch(calls);
+        AtomicInteger failed = new AtomicInteger();
+
+        for (int i = 0; i < calls; i++) {
+            inFlight.acquire();
+            int call = i;
+            long started = System.nanoTime();
+            UserPredictionsRequestProto request = UserPredictionsRequestProto.newBuilder()
+                    .setUserId(call)
+                    .setMaxResults(RECOMMENDATIONS)
+                    .build();
+            stub.getRecommendationsForUser(request, new StreamObserver<>() {
+                @Override
+                public void onNext(RecommendedEventProto value) {
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    failed.incrementAndGet();
+                    finish();
+                }
+
+                @Override
+                public void onCompleted() {
+                    finish();
+                }
+
+                private void finish() {
+                    latencies[call] = System.nanoTime() - started;
+                    inFlight.release();
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        if (failed.get() > 0) {
+            throw new IllegalStateException("Неуспешных вызовов: " + failed.get());
+        }
+        return latencies;
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(quantile * sorted.length) - 1)];
+    }
+
+    private static RecommendationsService service(long dbLatencyMs) {
+        List<RecommendedEventProto> recommendations = new ArrayList<>(RECOMMENDATIONS);
+        for (int i = 0; i < RECOMMENDATIONS; i++) {
+            recommendations.add(RecommendedEventProto.newBuilder()
+                    .setEventId(i)
+                    .setScore(1.0 - i * 0.1)
+                    .build());
+        }
+        return (RecommendationsService) Proxy.newProxyInstance(RecommendationsService.class.getClassLoader(),
+                new Class<?>[]{RecommendationsService.class}, (proxy, method, methodArgs) -> {
+                    if (!method.getName().equals("getRecommendationsForUser")) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    Thread.sleep(dbLatencyMs);
+                    return recommendations;
+                });
+    }
+
+    @FunctionalInterface
+    private interface ExecutorCustomizer {
+        // Настраивает исполнитель сервера и возвращает его для остановки или null, если исполнитель по умолчанию
+        ExecutorService customize(ServerBuilder<?> builder);
+    }
+
+}
@@ -3,9 +3,11 @@ package ru.practicum.stats.analyzer;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
 @EnableAsync
+@EnableScheduling
 public class AnalyzerApp {
     public static void main(String[] args) {
         SpringApplication.run(AnalyzerApp.class, args);
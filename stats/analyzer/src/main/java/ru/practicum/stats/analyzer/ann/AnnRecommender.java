@@ -0,0 +1,20 @@
+package ru.practicum.stats.analyzer.ann;
+
+import ru.practicum.ewm.stats.proto.RecommendedEventProto;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+public interface AnnRecommender {
+
+    /**
+     * Рекомендации по векторному индексу мероприятий: кандидаты - ближайшие к сумме векторов просмотренных
+     * мероприятий, взвешенных оценками; предсказание - взвешенная сумма оценок по их приближённому сходству.
+     *
+     * @param ratings оценки пользователя по просмотренным мероприятиям
+     * @return пусто, пока индекс не построен
+     */
+    Optional<List<RecommendedEventProto>> recommend(Map<Long, Double> ratings, int maxResults);
+
+}
@@ -0,0 +1,161 @@
+package ru.practicum.stats.analyzer.ann;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.stereotype.Component;
+import ru.practicum.ewm.stats.proto.RecommendedEventProto;
+import ru.practicum.stats.analyzer.config.DecayConfig;
+import ru.practicum.stats.analyzer.config.RecommendationEngineConfig;
+import ru.practicum.stats.analyzer.config.StreamingConfig;
+import ru.practicum.stats.analyzer.dal.dao.InteractionRepository;
+import ru.practicum.stats.analyzer.dal.model.interaction.Interaction;
+import ru.practicum.stats.analyzer.service.RecommendationEngineType;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Индекс строится в фоновом потоке по всем взаимодействиям из БД и заменяется целиком. Пока первого индекса нет,
+ * рекомендации считаются точно; устаревший индекс продолжает отвечать, пока строится новый.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class AnnRecommenderImpl implements AnnRecommender {
+
+    private final InteractionRepository interactionRepository;
+
+    private final RecommendationEngineConfig config;
+
+    private final DecayConfig decayConfig;
+
+    private final StreamingConfig streamingConfig;
+
+    private final ExecutorService builder = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ann-index-builder");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicBoolean building = new AtomicBoolean();
+
+    private volatile ItemVectorIndex index;
+
+    private volatile long builtAt;
+
+    // Если приближённый способ выбран по умолчанию, индекс строится сразу, а не к первому запросу
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStart() {
+        if (config.getType() == RecommendationEngineType.APPROXIMATE) {
+            scheduleBuild();
+        }
+    }
+
+    @Override
+    public Optional<List<RecommendedEventProto>> recommend(Map<Long, Double> ratings, int maxResults) {
+        ItemVectorIndex current = index;
+        if (current == null || System.currentTimeMillis() - builtAt > config.getRebuildIntervalMs()) {
+            scheduleBuild();
+        }
+        if (current == null) {
+            return Optional.empty();
+        }
+        return Optional.of(predict(current, ratings, maxResults, config.getProbes()));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        builder.shutdownNow();
+    }
+
+    static List<RecommendedEventProto> predict(ItemVectorIndex index, Map<Long, Double> ratings, int maxResults, int probes) {
+        float[] query = new float[index.dimensions()];
+        long[] interacted = new long[ratings.size()];
+        int[] positions = new int[ratings.size()];
+        float[] weights = new float[ratings.size()];
+        int known = 0;
+        int count = 0;
+        for (Map.Entry<Long, Double> rating : ratings.entrySet()) {
+            interacted[count++] = rating.getKey();
+            int position = index.indexOf(rating.getKey());
+            if (position >= 0) {
+                positions[known] = position;
+                weights[known] = rating.getValue().floatValue();
+                index.accumulate(position, weights[known], query);
+                known++;
+            }
+        }
+        if (known == 0) {
+            return List.of();
+        }
+        Arrays.sort(interacted);
+
+        List<RecommendedEventProto> recommendations = new ArrayList<>(maxResults);
+        for (ItemVectorIndex.Hit hit : index.search(query, probes, maxResults, interacted)) {
+            int candidate = index.indexOf(hit.eventId());
+            // Как и в точном расчёте, учитываются только мероприятия с положительным сходством
+            double numerator = 0.0;
+            double denominator = 0.0;
+            for (int i = 0; i < known; i++) {
+                float similarity = index.similarity(candidate, positions[i]);
+                if (similarity > 0f) {
+                    numerator += similarity * weights[i];
+                    denominator += similarity;
+                }
+            }
+            recommendations.add(RecommendedEventProto.newBuilder()
+                    .setEventId(hit.eventId())
+                    .setScore(denominator < 0.000001 ? 0.0 : numerator / denominator)
+                    .build());
+        }
+        recommendations.sort(Comparator.comparingDouble(RecommendedEventProto::getScore).reversed());
+        return recommendations;
+    }
+
+    private void scheduleBuild() {
+        if (building.compareAndSet(false, true)) {
+            builder.execute(() -> {
+                try {
+                    build();
+                } catch (RuntimeException e) {
+                    log.error("Не удалось построить векторный индекс мероприятий", e);
+                } finally {
+                    building.set(false);
+                }
+            });
+        }
+    }
+
+    private void build() {
+        long started = System.currentTimeMillis();
+        Instant now = Instant.now();
+        ItemVectors vectors = new ItemVectors(config.getDimensions());
+        int interactions = 0;
+        try (CloseableIterator<Interaction> cursor = interactionRepository.streamAll(streamingConfig.getFetchSize())) {
+            while (cursor.hasNext()) {
+                Interaction interaction = cursor.next();
+                vectors.add(interaction.getId().getUserId(), interaction.getId().getEventId(),
+                        decayConfig.decay(interaction.getRating(), interaction.getActionDateTime(), now));
+                interactions++;
+            }
+        }
+        ItemVectorIndex built = vectors.build(config.getLists(), config.getIterations());
+        index = built;
+        builtAt = started;
+        log.info("Построен векторный индекс: {} мероприятий, {} кластеров по {} взаимодействиям за {} мс",
+                built.size(), built.lists(), interactions, System.currentTimeMillis() - started);
+    }
+
+}
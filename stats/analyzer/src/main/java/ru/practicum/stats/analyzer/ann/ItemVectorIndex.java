@@ -0,0 +1,264 @@
+package ru.practicum.stats.analyzer.ann;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Неизменяемый IVF-flat индекс нормированных векторов мероприятий. Векторы разбиты сферическим k-means
+ * на кластеры, поиск просматривает только probes кластеров с ближайшими центроидами и сравнивает запрос
+ * с каждым их вектором. Сходство - скалярное произведение, то есть косинус.
+ * <p>
+ * Векторы одного кластера лежат в памяти подряд, чтобы просмотр шёл последовательно.
+ */
+public final class ItemVectorIndex {
+
+    private final int dimensions;
+
+    // Идентификаторы по возрастанию и позиции их векторов в listVectors
+    private final long[] ids;
+    private final int[] positions;
+
+    private final int lists;
+    private final float[] centroids;
+
+    // Кластер l занимает позиции [listStarts[l], listStarts[l + 1]) в listIds и listVectors
+    private final int[] listStarts;
+    private final long[] listIds;
+    private final float[] listVectors;
+
+    // vectors - нормированные векторы мероприятий ids подряд, ids по возрастанию
+    ItemVectorIndex(long[] ids, float[] vectors, int dimensions, int lists, int iterations, long seed) {
+        this.dimensions = dimensions;
+        this.ids = ids;
+        this.lists = Math.min(lists, ids.length);
+        this.centroids = new float[this.lists * dimensions];
+
+        int[] assignment = cluster(vectors, iterations, new Random(seed));
+
+        listStarts = new int[this.lists + 1];
+        for (int list : assignment) {
+            listStarts[list + 1]++;
+        }
+        for (int list = 0; list < this.lists; list++) {
+            listStarts[list + 1] += listStarts[list];
+        }
+        positions = new int[ids.length];
+        listIds = new long[ids.length];
+        listVectors = new float[ids.length * dimensions];
+        int[] next = Arrays.copyOf(listStarts, this.lists);
+        for (int i = 0; i < ids.length; i++) {
+            int position = next[assignment[i]]++;
+            positions[i] = position;
+            listIds[position] = ids[i];
+            System.arraycopy(vectors, i * dimensions, listVectors, position * dimensions, dimensions);
+        }
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public int dimensions() {
+        return dimensions;
+    }
+
+    public int lists() {
+        return lists;
+    }
+
+    /**
+     * Позиция мероприятия в индексе или отрицательное число, если его нет.
+     */
+    public int indexOf(long eventId) {
+        return Arrays.binarySearch(ids, eventId);
+    }
+
+    // Сходство мероприятий на позициях a и b
+    public float similarity(int a, int b) {
+        return dot(listVectors, positions[a] * dimensions, listVectors, positions[b] * dimensions);
+    }
+
+    // target += weight * вектор мероприятия на позиции index
+    public void accumulate(int index, float weight, float[] target) {
+        int offset = positions[index] * dimensions;
+        for (int d = 0; d < dimensions; d++) {
+            target[d] += weight * listVectors[offset + d];
+        }
+    }
+
+    /**
+     * Не больше k мероприятий, наиболее близких к запросу, по убыванию сходства. Мероприятия из excluded
+     * (по возрастанию) пропускаются. При probes не меньше числа кластеров поиск точный.
+     */
+    public List<Hit> search(float[] query, int probes, int k, long[] excluded) {
+        TopK nearestLists = new TopK(Math.min(probes, lists));
+        for (int list = 0; list < lists; list++) {
+            nearestLists.offer(list, dot(query, 0, centroids, list * dimensions));
+        }
+
+        TopK nearest = new TopK(k);
+        int probed = nearestLists.sort();
+        for (int i = 0; i < probed; i++) {
+            int list = (int) nearestLists.keys[i];
+            for (int position = listStarts[list]; position < listStarts[list + 1]; position++) {
+                if (Arrays.binarySearch(excluded, listIds[position]) >= 0) {
+                    continue;
+                }
+                nearest.offer(listIds[position], dot(query, 0, listVectors, position * dimensions));
+            }
+        }
+
+        int found = nearest.sort();
+        List<Hit> hits = new ArrayList<>(found);
+        for (int i = 0; i < found; i++) {
+            hits.add(new Hit(nearest.keys[i], nearest.scores[i]));
+        }
+        return hits;
+    }
+
+    public record Hit(long eventId, float score) {
+    }
+
+    // Сферический k-means: центроид - нормированная сумма векторов кластера, вектор относится к центроиду
+    // с наибольшим скалярным произведением. Начальные центроиды - случайные различные векторы
+    private int[] cluster(float[] vectors, int iterations, Random random) {
+        int n = ids.length;
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        for (int list = 0; list < lists; list++) {
+            int pick = list + random.nextInt(n - list);
+            int swap = order[list];
+            order[list] = order[pick];
+            order[pick] = swap;
+            System.arraycopy(vectors, order[list] * dimensions, centroids, list * dimensions, dimensions);
+        }
+
+        int[] assignment = new int[n];
+        float[] sums = new float[centroids.length];
+        for (int iteration = 0; iteration < Math.max(1, iterations); iteration++) {
+            boolean changed = false;
+            for (int i = 0; i < n; i++) {
+                int best = 0;
+                float bestScore = Float.NEGATIVE_INFINITY;
+                for (int list = 0; list < lists; list++) {
+                    float score = dot(vectors, i * dimensions, centroids, list * dimensions);
+                    if (score > bestScore) {
+                        bestScore = score;
+                        best = list;
+                    }
+                }
+                changed |= iteration == 0 || assignment[i] != best;
+                assignment[i] = best;
+            }
+            if (!changed) {
+                break;
+            }
+
+            Arrays.fill(sums, 0f);
+            for (int i = 0; i < n; i++) {
+                int offset = assignment[i] * dimensions;
+                for (int d = 0; d < dimensions; d++) {
+                    sums[offset + d] += vectors[i * dimensions + d];
+                }
+            }
+            // Опустевший кластер сохраняет прежний центроид
+            for (int list = 0; list < lists; list++) {
+                int offset = list * dimensions;
+                float norm = (float) Math.sqrt(dot(sums, offset, sums, offset));
+                if (norm > 0f) {
+                    for (int d = 0; d < dimensions; d++) {
+                        centroids[offset + d] = sums[offset + d] / norm;
+                    }
+                }
+            }
+        }
+        return assignment;
+    }
+
+    private float dot(float[] a, int aOffset, float[] b, int bOffset) {
+        float sum = 0f;
+        for (int d = 0; d < dimensions; d++) {
+            sum += a[aOffset + d] * b[bOffset + d];
+        }
+        return sum;
+    }
+
+    // K ключей с наибольшей оценкой: min-куча, в корне самый слабый из удерживаемых
+    private static class TopK {
+        private final long[] keys;
+        private final float[] scores;
+        private int size;
+
+        TopK(int capacity) {
+            keys = new long[Math.max(capacity, 0)];
+            scores = new float[keys.length];
+        }
+
+        void offer(long key, float score) {
+            if (size < keys.length) {
+                keys[size] = key;
+                scores[size] = score;
+                siftUp(size++);
+            } else if (size > 0 && score > scores[0]) {
+                keys[0] = key;
+                scores[0] = score;
+                siftDown(0);
+            }
+        }
+
+        // Пирамидальная сортировка на месте: после неё keys и scores идут по убыванию оценки, куча пуста
+        int sort() {
+            int count = size;
+            while (size > 1) {
+                swap(0, --size);
+                siftDown(0);
+            }
+            size = 0;
+            return count;
+        }
+
+        private void siftUp(int index) {
+            while (index > 0) {
+                int parent = (index - 1) >>> 1;
+                if (scores[parent] <= scores[index]) {
+                    return;
+                }
+                swap(index, parent);
+                index = parent;
+            }
+        }
+
+        private void siftDown(int index) {
+            while (true) {
+                int smallest = index;
+                int left = 2 * index + 1;
+                int right = left + 1;
+                if (left < size && scores[left] < scores[smallest]) {
+                    smallest = left;
+                }
+                if (right < size && scores[right] < scores[smallest]) {
+                    smallest = right;
+                }
+                if (smallest == index) {
+                    return;
+                }
+                swap(index, smallest);
+                index = smallest;
+            }
+        }
+
+        private void swap(int i, int j) {
+            long key = keys[i];
+            keys[i] = keys[j];
+            keys[j] = key;
+            float score = scores[i];
+            scores[i] = scores[j];
+            scores[j] = score;
+        }
+    }
+
+}
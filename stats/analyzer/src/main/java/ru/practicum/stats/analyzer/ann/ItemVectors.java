@@ -0,0 +1,73 @@
+package ru.practicum.stats.analyzer.ann;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Собирает векторы мероприятий из матрицы оценок случайной проекцией: каждому пользователю соответствует
+ * вектор из ±1, детерминированно вычисляемый по его идентификатору, и оценка пользователя добавляет этот вектор
+ * к вектору мероприятия. Скалярное произведение нормированных векторов приближает косинус между столбцами
+ * оценок двух мероприятий с ошибкой порядка 1 / sqrt(dimensions).
+ */
+public class ItemVectors {
+
+    private static final long SEED = 42;
+
+    private final int dimensions;
+
+    private final Map<Long, float[]> sums = new HashMap<>();
+
+    public ItemVectors(int dimensions) {
+        this.dimensions = dimensions;
+    }
+
+    public void add(long userId, long eventId, double rating) {
+        if (rating == 0.0) {
+            return;
+        }
+        float[] sum = sums.computeIfAbsent(eventId, id -> new float[dimensions]);
+        float weight = (float) rating;
+        long signs = 0;
+        for (int d = 0; d < dimensions; d++) {
+            if ((d & 63) == 0) {
+                signs = mix(userId * 0x9E3779B97F4A7C15L + d);
+            }
+            sum[d] += (signs & 1L) == 0 ? weight : -weight;
+            signs >>>= 1;
+        }
+    }
+
+    public int size() {
+        return sums.size();
+    }
+
+    /**
+     * Нормирует векторы и строит по ним индекс. lists = 0 - корень из числа мероприятий.
+     */
+    public ItemVectorIndex build(int lists, int iterations) {
+        long[] ids = sums.keySet().stream().mapToLong(Long::longValue).sorted().toArray();
+        float[] vectors = new float[ids.length * dimensions];
+        for (int i = 0; i < ids.length; i++) {
+            float[] sum = sums.get(ids[i]);
+            double norm = 0.0;
+            for (float value : sum) {
+                norm += value * value;
+            }
+            float scale = norm > 0.0 ? (float) (1.0 / Math.sqrt(norm)) : 0f;
+            for (int d = 0; d < dimensions; d++) {
+                vectors[i * dimensions + d] = sum[d] * scale;
+            }
+        }
+        int listCount = lists > 0 ? lists : Math.max(1, (int) Math.round(Math.sqrt(ids.length)));
+        return new ItemVectorIndex(ids, vectors, dimensions, listCount, iterations, SEED);
+    }
+
+    // Финальное перемешивание splitmix64
+    private static long mix(long value) {
+        long z = value + SEED;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+}
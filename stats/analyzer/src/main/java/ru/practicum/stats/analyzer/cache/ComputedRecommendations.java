@@ -0,0 +1,13 @@
+package ru.practicum.stats.analyzer.cache;
+
+import ru.practicum.ewm.stats.proto.RecommendedEventProto;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Рекомендации пользователя, рассчитанные по его мероприятиям interactedEventIds.
+ */
+public record ComputedRecommendations(long userId, int maxResults, boolean approximate,
+                                      Set<Long> interactedEventIds, List<RecommendedEventProto> recommendations) {
+}
@@ -0,0 +1,38 @@
+package ru.practicum.stats.analyzer.cache;
+
+import ru.practicum.ewm.stats.proto.RecommendedEventProto;
+import ru.practicum.ewm.stats.proto.UserPredictionsRequestProto;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface RecommendationStore {
+
+    /**
+     * Рекомендации, рассчитанные ранее для тех же maxResults и способа расчёта. Устаревшие тоже отдаются:
+     * их пересчитывает фоновое обновление.
+     *
+     * @return пусто, если рекомендации нужно рассчитать и положить через {@link #putAll}
+     */
+    Optional<List<RecommendedEventProto>> find(long userId, int maxResults, boolean approximate);
+
+    void putAll(Collection<ComputedRecommendations> recommendations);
+
+    // Расчёт после промаха в find не удался: пользователь больше не считается рассчитываемым
+    void abandon(long userId);
+
+    // Изменились взаимодействия пользователей
+    void markUsersDirty(Collection<Long> userIds);
+
+    // Изменилось сходство мероприятий: устаревают рекомендации всех, кто с ними взаимодействовал
+    void markEventsDirty(Collection<Long> eventIds);
+
+    /**
+     * Забирает до limit устаревших пользователей в порядке устаревания.
+     *
+     * @return запросы, которыми их рекомендации были рассчитаны
+     */
+    List<UserPredictionsRequestProto> pollDirty(int limit);
+
+}
@@ -0,0 +1,272 @@
+package ru.practicum.stats.analyzer.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.practicum.ewm.stats.proto.RecommendationEngineProto;
+import ru.practicum.ewm.stats.proto.RecommendedEventProto;
+import ru.practicum.ewm.stats.proto.UserPredictionsRequestProto;
+import ru.practicum.stats.analyzer.config.RecommendationStoreConfig;
+import ru.practicum.stats.analyzer.dal.dao.UserRecommendationsRepository;
+import ru.practicum.stats.analyzer.dal.model.recommendation.UserRecommendations;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Рекомендации пользователей в памяти, не больше maxUsers, вытесняются по давности последнего чтения.
+ * Для каждого мероприятия запоминается, чьи рекомендации по нему рассчитаны, поэтому изменение сходства
+ * помечает устаревшими только этих пользователей.
+ * <p>
+ * Пользователь, чьи рекомендации сейчас рассчитываются после промаха, тоже помечается: иначе изменение,
+ * пришедшее во время расчёта, потерялось бы. Пометка, поставленная во время фонового пересчёта, сохраняется,
+ * и пользователь пересчитывается ещё раз.
+ */
+@Slf4j
+@Component
+public class RecommendationStoreImpl implements RecommendationStore {
+
+    private final UserRecommendationsRepository repository;
+
+    private final RecommendationStoreConfig config;
+
+    // Порядок вставки; чтение переставляет пользователя в конец, запись порядок не меняет
+    private final Map<Long, Entry> entries;
+
+    private final Map<Long, Set<Long>> usersByEvent = new HashMap<>();
+
+    private final Set<Long> dirty = new LinkedHashSet<>();
+
+    // Пользователи, рассчитываемые после промаха: true, если за время расчёта их данные изменились
+    private final Map<Long, Boolean> computing = new HashMap<>();
+
+    public RecommendationStoreImpl(UserRecommendationsRepository repository, RecommendationStoreConfig config) {
+        this.repository = repository;
+        this.config = config;
+        this.entries = new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                if (size() <= config.getMaxUsers()) {
+                    return false;
+                }
+                unindex(eldest.getKey(), eldest.getValue());
+                dirty.remove(eldest.getKey());
+                return true;
+            }
+        };
+    }
+
+    @Override
+    public Optional<List<RecommendedEventProto>> find(long userId, int maxResults, boolean approximate) {
+        if (!config.isEnabled()) {
+            return Optional.empty();
+        }
+
+        synchronized (this) {
+            Entry entry = entries.remove(userId);
+            if (entry != null) {
+                entries.put(userId, entry);
+                if (entry.matches(maxResults, approximate)) {
+                    if (System.currentTimeMillis() - entry.computedAt > config.getMaxAgeMs()) {
+                        markDirty(userId, entry);
+                    }
+                    return Optional.of(entry.recommendations);
+                }
+            }
+            computing.putIfAbsent(userId, false);
+            if (entry != null || !config.isPersistent()) {
+                return Optional.empty();
+            }
+        }
+
+        Optional<UserRecommendations> stored = repository.findById(userId)
+                .filter(user -> user.getMaxResults() == maxResults && user.getApproximate() == approximate);
+        if (stored.isEmpty()) {
+            return Optional.empty();
+        }
+
+        Entry entry = Entry.of(stored.get());
+        synchronized (this) {
+            computing.remove(userId);
+            if (!entries.containsKey(userId)) {
+                insert(userId, entry);
+                // Пока экземпляр не работал, входные данные могли измениться
+                markDirty(userId, entry);
+            }
+        }
+        log.debug("Рекомендации пользователя {} загружены из БД", userId);
+        return Optional.of(entry.recommendations);
+    }
+
+    @Override
+    public void putAll(Collection<ComputedRecommendations> recommendations) {
+        if (!config.isEnabled() || recommendations.isEmpty()) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            for (ComputedRecommendations computed : recommendations) {
+                Entry entry = Entry.of(computed, now);
+                Entry old = entries.get(computed.userId());
+                if (old != null) {
+                    unindex(computed.userId(), old);
+                    entry.dirty = old.dirty;
+                }
+                insert(computed.userId(), entry);
+                if (Boolean.TRUE.equals(computing.remove(computed.userId()))) {
+                    markDirty(computed.userId(), entry);
+                }
+            }
+        }
+
+        if (config.isPersistent()) {
+            repository.upsertAll(recommendations.stream()
+                    .map(computed -> toEntity(computed, now))
+                    .toList());
+        }
+    }
+
+    @Override
+    public synchronized void abandon(long userId) {
+        Entry entry = entries.get(userId);
+        // Изменение, пришедшее во время неудавшегося расчёта, не должно потеряться для прежних рекомендаций
+        if (Boolean.TRUE.equals(computing.remove(userId)) && entry != null) {
+            markDirty(userId, entry);
+        }
+    }
+
+    @Override
+    public synchronized void markUsersDirty(Collection<Long> userIds) {
+        for (Long userId : userIds) {
+            computing.computeIfPresent(userId, (id, changed) -> true);
+            Entry entry = entries.get(userId);
+            if (entry != null) {
+                markDirty(userId, entry);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void markEventsDirty(Collection<Long> eventIds) {
+        // Мероприятия рассчитываемых пользователей ещё неизвестны
+        computing.replaceAll((id, changed) -> true);
+        for (Long eventId : eventIds) {
+            for (Long userId : usersByEvent.getOrDefault(eventId, Set.of())) {
+                markDirty(userId, entries.get(userId));
+            }
+        }
+    }
+
+    @Override
+    public synchronized List<UserPredictionsRequestProto> pollDirty(int limit) {
+        List<UserPredictionsRequestProto> polled = new ArrayList<>(Math.min(limit, dirty.size()));
+        Iterator<Long> iterator = dirty.iterator();
+        while (iterator.hasNext() && polled.size() < limit) {
+            Long userId = iterator.next();
+            iterator.remove();
+            Entry entry = entries.get(userId);
+            entry.dirty = false;
+            polled.add(UserPredictionsRequestProto.newBuilder()
+                    .setUserId(userId)
+                    .setMaxResults(entry.maxResults)
+                    .setEngine(entry.approximate
+                            ? RecommendationEngineProto.ENGINE_APPROXIMATE
+                            : RecommendationEngineProto.ENGINE_EXACT)
+                    .build());
+        }
+        return polled;
+    }
+
+    private void markDirty(Long userId, Entry entry) {
+        if (!entry.dirty) {
+            entry.dirty = true;
+            dirty.add(userId);
+        }
+    }
+
+    private void insert(Long userId, Entry entry) {
+        entries.put(userId, entry);
+        for (long eventId : entry.interactedEventIds) {
+            usersByEvent.computeIfAbsent(eventId, id -> new HashSet<>()).add(userId);
+        }
+    }
+
+    private void unindex(Long userId, Entry entry) {
+        for (long eventId : entry.interactedEventIds) {
+            Set<Long> users = usersByEvent.get(eventId);
+            if (users != null && users.remove(userId) && users.isEmpty()) {
+                usersByEvent.remove(eventId);
+            }
+        }
+    }
+
+    private static UserRecommendations toEntity(ComputedRecommendations computed, long computedAt) {
+        List<RecommendedEventProto> recommendations = computed.recommendations();
+        long[] eventIds = new long[recommendations.size()];
+        double[] scores = new double[recommendations.size()];
+        for (int i = 0; i < recommendations.size(); i++) {
+            eventIds[i] = recommendations.get(i).getEventId();
+            scores[i] = recommendations.get(i).getScore();
+        }
+        return UserRecommendations.builder()
+                .userId(computed.userId())
+                .maxResults(computed.maxResults())
+                .approximate(computed.approximate())
+                .eventIds(eventIds)
+                .scores(scores)
+                .interactedEventIds(computed.interactedEventIds().stream().mapToLong(Long::longValue).toArray())
+                .computedAt(Instant.ofEpochMilli(computedAt))
+                .build();
+    }
+
+    private static class Entry {
+        private final int maxResults;
+        private final boolean approximate;
+        private final long[] interactedEventIds;
+        private final List<RecommendedEventProto> recommendations;
+        private final long computedAt;
+        private boolean dirty;
+
+        private Entry(int maxResults, boolean approximate, long[] interactedEventIds,
+                      List<RecommendedEventProto> recommendations, long computedAt) {
+            this.maxResults = maxResults;
+            this.approximate = approximate;
+            this.interactedEventIds = interactedEventIds;
+            this.recommendations = recommendations;
+            this.computedAt = computedAt;
+        }
+
+        static Entry of(ComputedRecommendations computed, long computedAt) {
+            return new Entry(computed.maxResults(), computed.approximate(),
+                    computed.interactedEventIds().stream().mapToLong(Long::longValue).toArray(),
+                    List.copyOf(computed.recommendations()), computedAt);
+        }
+
+        static Entry of(UserRecommendations stored) {
+            List<RecommendedEventProto> recommendations = new ArrayList<>(stored.getEventIds().length);
+            for (int i = 0; i < stored.getEventIds().length; i++) {
+                recommendations.add(RecommendedEventProto.newBuilder()
+                        .setEventId(stored.getEventIds()[i])
+                        .setScore(stored.getScores()[i])
+                        .build());
+            }
+            return new Entry(stored.getMaxResults(), stored.getApproximate(), stored.getInteractedEventIds(),
+                    List.copyOf(recommendations), stored.getComputedAt().toEpochMilli());
+        }
+
+        boolean matches(int maxResults, boolean approximate) {
+            return this.maxResults == maxResults && this.approximate == approximate;
+        }
+    }
+
+}
@@ -0,0 +1,23 @@
+package ru.practicum.stats.analyzer.cache;
+
+import ru.practicum.ewm.stats.proto.RecommendedEventProto;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+public interface SimilarityCache {
+
+    /**
+     * Наиболее похожие на eventId мероприятия, кроме excluded, по убыванию сходства.
+     * При промахе соседи загружаются из БД.
+     *
+     * @return пусто, если в кэше не хватает соседей и ответ нужно получить из БД
+     */
+    Optional<List<RecommendedEventProto>> findNeighbors(long eventId, Set<Long> excluded, int limit);
+
+    void put(long eventA, long eventB, double similarity);
+
+    void remove(long eventA, long eventB);
+
+}
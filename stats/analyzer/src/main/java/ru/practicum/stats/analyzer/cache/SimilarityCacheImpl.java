@@ -0,0 +1,206 @@
+package ru.practicum.stats.analyzer.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.practicum.ewm.stats.proto.RecommendedEventProto;
+import ru.practicum.stats.analyzer.config.SimilarityCacheConfig;
+import ru.practicum.stats.analyzer.dal.model.similarity.Similarity;
+import ru.practicum.stats.analyzer.dal.storage.SimilarityStorage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Для каждого мероприятия хранит N наиболее похожих соседей по убыванию сходства. Список загружается из БД
+ * при первом запросе и дальше обновляется сообщениями о сходстве, поэтому повторные запросы в БД не идут.
+ * <p>
+ * Если у мероприятия больше N соседей, вместе со списком хранится floor: сходство, выше которого нет ни одного
+ * соседа вне списка. Сосед со сходством ниже floor из списка убирается, так что список всегда остаётся точным
+ * началом полного. Когда после исключений в нём не хватает соседей, отвечает БД.
+ * <p>
+ * Мероприятия вытесняются по давности последнего чтения, не больше maxEvents. Кэш верен, пока все партиции
+ * топика сходства читает этот экземпляр анализатора.
+ */
+@Slf4j
+@Component
+public class SimilarityCacheImpl implements SimilarityCache {
+
+    private final SimilarityStorage similarityStorage;
+
+    private final SimilarityCacheConfig config;
+
+    // Порядок вставки; чтение переставляет мероприятие в конец, запись порядок не меняет
+    private final Map<Long, Neighbors> cache;
+
+    public SimilarityCacheImpl(SimilarityStorage similarityStorage, SimilarityCacheConfig config) {
+        this.similarityStorage = similarityStorage;
+        this.config = config;
+        this.cache = new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Neighbors> eldest) {
+                return size() > config.getMaxEvents();
+            }
+        };
+    }
+
+    @Override
+    public Optional<List<RecommendedEventProto>> findNeighbors(long eventId, Set<Long> excluded, int limit) {
+        if (!config.isEnabled()) {
+            return Optional.empty();
+        }
+
+        Neighbors placeholder;
+        synchronized (this) {
+            Neighbors neighbors = cache.remove(eventId);
+            if (neighbors != null) {
+                cache.put(eventId, neighbors);
+                // Соседей сейчас загружает другой запрос
+                return neighbors.loading ? Optional.empty() : neighbors.find(excluded, limit);
+            }
+            placeholder = new Neighbors(config.getNeighbors());
+            placeholder.loading = true;
+            cache.put(eventId, placeholder);
+        }
+
+        Neighbors loaded = null;
+        try {
+            List<Similarity> similarities = similarityStorage
+                    .findNeighbors(eventId, Collections.emptySet(), config.getNeighbors() + 1);
+            loaded = Neighbors.of(eventId, similarities, config.getNeighbors());
+            log.debug("Загружены соседи мероприятия {}: {}", eventId, similarities.size());
+            return loaded.find(excluded, limit);
+        } finally {
+            synchronized (this) {
+                // Запись, пришедшая во время загрузки, могла не попасть в прочитанные из БД данные
+                if (cache.get(eventId) == placeholder) {
+                    if (loaded != null && !placeholder.stale) {
+                        cache.put(eventId, loaded);
+                    } else {
+                        cache.remove(eventId);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized void put(long eventA, long eventB, double similarity) {
+        Neighbors neighbors = cached(eventA);
+        if (neighbors != null) {
+            neighbors.remove(eventB);
+            neighbors.insert(eventB, similarity);
+        }
+        neighbors = cached(eventB);
+        if (neighbors != null) {
+            neighbors.remove(eventA);
+            neighbors.insert(eventA, similarity);
+        }
+    }
+
+    @Override
+    public synchronized void remove(long eventA, long eventB) {
+        Neighbors neighbors = cached(eventA);
+        if (neighbors != null) {
+            neighbors.remove(eventB);
+        }
+        neighbors = cached(eventB);
+        if (neighbors != null) {
+            neighbors.remove(eventA);
+        }
+    }
+
+    // Загруженные соседи мероприятия; если они ещё загружаются, загрузка помечается устаревшей
+    private Neighbors cached(long eventId) {
+        Neighbors neighbors = cache.get(eventId);
+        if (neighbors != null && neighbors.loading) {
+            neighbors.stale = true;
+            return null;
+        }
+        return neighbors;
+    }
+
+    private static class Neighbors {
+
+        private final long[] events;
+
+        private final double[] scores;
+
+        private int size;
+
+        // Сходство, выше которого нет соседей вне списка; NEGATIVE_INFINITY, если в списке все соседи
+        private double floor = Double.NEGATIVE_INFINITY;
+
+        private boolean loading;
+
+        private boolean stale;
+
+        Neighbors(int capacity) {
+            events = new long[capacity];
+            scores = new double[capacity];
+        }
+
+        static Neighbors of(long eventId, List<Similarity> similarities, int capacity) {
+            Neighbors neighbors = new Neighbors(capacity);
+            for (Similarity s : similarities) {
+                long neighborId = s.getId().getEvent1() == eventId ? s.getId().getEvent2() : s.getId().getEvent1();
+                neighbors.insert(neighborId, s.getSimilarity());
+            }
+            return neighbors;
+        }
+
+        Optional<List<RecommendedEventProto>> find(Set<Long> excluded, int limit) {
+            List<RecommendedEventProto> result = new ArrayList<>(Math.min(limit, size));
+            for (int i = 0; i < size && result.size() < limit; i++) {
+                if (!excluded.contains(events[i])) {
+                    result.add(RecommendedEventProto.newBuilder()
+                            .setEventId(events[i])
+                            .setScore(scores[i])
+                            .build());
+                }
+            }
+            if (result.size() < limit && floor != Double.NEGATIVE_INFINITY) {
+                return Optional.empty();
+            }
+            return Optional.of(result);
+        }
+
+        void insert(long eventId, double score) {
+            if (score < floor) {
+                return;
+            }
+            if (size == events.length) {
+                if (score <= scores[size - 1]) {
+                    floor = Math.max(floor, score);
+                    return;
+                }
+                floor = Math.max(floor, scores[--size]);
+            }
+            int index = size;
+            while (index > 0 && scores[index - 1] < score) {
+                events[index] = events[index - 1];
+                scores[index] = scores[index - 1];
+                index--;
+            }
+            events[index] = eventId;
+            scores[index] = score;
+            size++;
+        }
+
+        void remove(long eventId) {
+            for (int i = 0; i < size; i++) {
+                if (events[i] == eventId) {
+                    System.arraycopy(events, i + 1, events, i, size - i - 1);
+                    System.arraycopy(scores, i + 1, scores, i, size - i - 1);
+                    size--;
+                    return;
+                }
+            }
+        }
+    }
+
+}
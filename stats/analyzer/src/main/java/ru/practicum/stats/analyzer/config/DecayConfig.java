@@ -0,0 +1,38 @@
+package ru.practicum.stats.analyzer.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.time.Instant;
+
+@Configuration
+@ConfigurationProperties(prefix = "stats.analyzer.decay")
+@Getter
+@Setter
+public class DecayConfig {
+    private boolean enabled = false;
+    private Long halfLifeMs = Duration.ofDays(7).toMillis();
+    private double epsilon = 0.001;
+
+    // Скорость затухания в 1/мс: за halfLifeMs оценка уменьшается вдвое
+    public double getLambda() {
+        return Math.log(2) / halfLifeMs;
+    }
+
+    // Оценка, выставленная в момент from, к моменту to; затухшая ниже epsilon считается нулевой
+    public double decay(double rating, Instant from, Instant to) {
+        if (!enabled) {
+            return rating;
+        }
+        double decayed = rating * Math.exp(-getLambda() * Math.max(0, Duration.between(from, to).toMillis()));
+        return decayed < epsilon ? 0.0 : decayed;
+    }
+
+    // Момент, раньше которого даже максимальная оценка 1.0 затухла ниже epsilon
+    public Instant negligibleBefore(Instant now) {
+        return now.minusMillis((long) Math.ceil(Math.log(1.0 / epsilon) / getLambda()));
+    }
+}
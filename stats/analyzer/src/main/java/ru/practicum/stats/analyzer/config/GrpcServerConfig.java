@@ -0,0 +1,32 @@
+package ru.practicum.stats.analyzer.config;
+
+import net.devh.boot.grpc.server.serverfactory.GrpcServerConfigurer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * При spring.threads.virtual.enabled виртуальные потоки получают и задачи @Async (консьюмеры Kafka),
+ * и @Scheduled, и вызовы gRPC: каждый вызов обслуживается своим виртуальным потоком, поэтому ожидание БД
+ * не занимает поток платформы. По умолчанию gRPC использует неограниченный кэширующий пул потоков платформы.
+ */
+@Configuration
+public class GrpcServerConfig {
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnThreading(Threading.VIRTUAL)
+    public ExecutorService grpcServerExecutor() {
+        return Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    @Bean
+    @ConditionalOnThreading(Threading.VIRTUAL)
+    public GrpcServerConfigurer virtualThreadGrpcServerConfigurer(ExecutorService grpcServerExecutor) {
+        return serverBuilder -> serverBuilder.executor(grpcServerExecutor);
+    }
+
+}
@@ -1,8 +1,6 @@
 package ru.practicum.stats.analyzer.config;
 
 import org.apache.kafka.clients.consumer.Consumer;
-import ru.practicum.ewm.stats.avro.EventSimilarityAvro;
-import ru.practicum.ewm.stats.avro.UserActionAvro;
 
 import java.time.Duration;
 import java.util.List;
@@ -17,9 +15,9 @@ public interface KafkaConfig {
 
     List<String> eventSimilarityTopics();
 
-    Consumer<Long, UserActionAvro> getUserActionsConsumer();
+    Consumer<Long, byte[]> getUserActionsConsumer();
 
-    Consumer<String, EventSimilarityAvro> getEventsSimilarityConsumer();
+    Consumer<String, byte[]> getEventsSimilarityConsumer();
 
     void stop();
 
@@ -7,8 +7,6 @@ import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
-import ru.practicum.ewm.stats.avro.EventSimilarityAvro;
-import ru.practicum.ewm.stats.avro.UserActionAvro;
 
 import java.time.Duration;
 import java.util.List;
@@ -70,12 +68,12 @@ public class KafkaConfigImpl implements KafkaConfig {
         return eventsSimilarity.topics;
     }
 
-    private Consumer<Long, UserActionAvro> userActionsConsumer;
+    private Consumer<Long, byte[]> userActionsConsumer;
 
-    private Consumer<String, EventSimilarityAvro> eventsSimilarityConsumer;
+    private Consumer<String, byte[]> eventsSimilarityConsumer;
 
     @Override
-    public Consumer<Long, UserActionAvro> getUserActionsConsumer() {
+    public Consumer<Long, byte[]> getUserActionsConsumer() {
         if (userActionsConsumer == null) {
             userActionsConsumer = new KafkaConsumer<>(userActions.consumer.getProperties());
             log.info("Создали косьюмер для user actions с groupId = {}", userActions.consumer.getProperties().get("group.id"));
@@ -84,7 +82,7 @@ public class KafkaConfigImpl implements KafkaConfig {
     }
 
     @Override
-    public Consumer<String, EventSimilarityAvro> getEventsSimilarityConsumer() {
+    public Consumer<String, byte[]> getEventsSimilarityConsumer() {
         if (eventsSimilarityConsumer == null) {
             eventsSimilarityConsumer = new KafkaConsumer<>(eventsSimilarity.consumer.getProperties());
             log.info("Создали косьюмер для events similarity с groupId = {}", eventsSimilarity.consumer.getProperties().get("group.id"));
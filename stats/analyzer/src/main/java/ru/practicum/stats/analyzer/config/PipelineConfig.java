@@ -0,0 +1,21 @@
+package ru.practicum.stats.analyzer.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "stats.analyzer.pipeline")
+@Getter
+@Setter
+public class PipelineConfig {
+    // Сколько результатов poll ждут слияния; при заполнении очереди партиции ставятся на паузу
+    private int pollQueueCapacity = 4;
+    // Сколько пачек ждут записи в БД, пока пишется текущая
+    private int batchQueueCapacity = 1;
+    // Больше стольких сообщений в одну пачку не сливается: слияние ждёт записи предыдущих пачек
+    private int maxBatchRecords = 10_000;
+    // Сколько при отзыве партиций и остановке ждать записи уже прочитанных сообщений
+    private Long drainTimeoutMs = 30_000L;
+}
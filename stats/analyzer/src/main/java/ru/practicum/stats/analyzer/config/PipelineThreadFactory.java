@@ -0,0 +1,29 @@
+package ru.practicum.stats.analyzer.config;
+
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Потоки стадий ConsumerPipeline: виртуальные при spring.threads.virtual.enabled, как и консьюмеры @Async,
+ * иначе потоки платформы. Потоки - демоны и не удерживают JVM от завершения.
+ */
+@Component
+public class PipelineThreadFactory implements ThreadFactory {
+
+    private final boolean virtual;
+
+    public PipelineThreadFactory(Environment environment) {
+        this.virtual = Threading.VIRTUAL.isActive(environment);
+    }
+
+    @Override
+    public Thread newThread(Runnable task) {
+        return virtual
+                ? Thread.ofVirtual().unstarted(task)
+                : Thread.ofPlatform().daemon().unstarted(task);
+    }
+
+}
@@ -0,0 +1,27 @@
+package ru.practicum.stats.analyzer.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import ru.practicum.stats.analyzer.service.RecommendationEngineType;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "stats.analyzer.recommendation-engine")
+@Getter
+@Setter
+public class RecommendationEngineConfig {
+    // Каким способом считаются рекомендации, если запрос не указал его сам
+    private RecommendationEngineType type = RecommendationEngineType.EXACT;
+    // Размерность векторов мероприятий
+    private int dimensions = 256;
+    // Число кластеров индекса; 0 - корень из числа мероприятий
+    private int lists = 0;
+    // Сколько ближайших кластеров просматривается при поиске
+    private int probes = 8;
+    private int iterations = 10;
+    // Индекс старше этого перестраивается в фоне, запросы тем временем обслуживает старый
+    private Long rebuildIntervalMs = Duration.ofMinutes(5).toMillis();
+}
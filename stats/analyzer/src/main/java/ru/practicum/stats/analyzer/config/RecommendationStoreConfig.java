@@ -0,0 +1,26 @@
+package ru.practicum.stats.analyzer.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "stats.analyzer.recommendation-store")
+@Getter
+@Setter
+public class RecommendationStoreConfig {
+    private boolean enabled = true;
+    // Копия рассчитанных рекомендаций в таблице user_recommendations, переживает перезапуск
+    private boolean persistent = false;
+    // Сколько пользователей держится в памяти; давно не запрошенные вытесняются
+    private int maxUsers = 100_000;
+    // Сколько пользователей пересчитывается за одну пачку
+    private int batchSize = 500;
+    private Long refreshIntervalMs = 1000L;
+    // Рекомендации старше этого пересчитываются, даже если входные данные не менялись: оценки затухают,
+    // а приближённый индекс перестраивается
+    private Long maxAgeMs = Duration.ofMinutes(10).toMillis();
+}
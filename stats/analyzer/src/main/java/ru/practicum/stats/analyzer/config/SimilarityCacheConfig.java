@@ -0,0 +1,18 @@
+package ru.practicum.stats.analyzer.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "stats.analyzer.similarity-cache")
+@Getter
+@Setter
+public class SimilarityCacheConfig {
+    private boolean enabled = true;
+    // Сколько мероприятий держится в кэше; давно не запрошенные вытесняются
+    private int maxEvents = 10_000;
+    // Сколько наиболее похожих соседей хранится для каждого мероприятия
+    private int neighbors = 100;
+}
@@ -0,0 +1,51 @@
+package ru.practicum.stats.analyzer.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import ru.practicum.stats.analyzer.dal.dao.EventNeighborRepository;
+import ru.practicum.stats.analyzer.dal.dao.SimilarityRepository;
+import ru.practicum.stats.analyzer.dal.storage.AdjacencySimilarityStorage;
+import ru.practicum.stats.analyzer.dal.storage.PairSimilarityStorage;
+import ru.practicum.stats.analyzer.dal.storage.SimilarityStorage;
+import ru.practicum.stats.analyzer.dal.storage.SimilarityStorageType;
+
+/**
+ * Пишется только таблица выбранного типа. При старте пустая таблица выбранного типа заполняется из другой,
+ * поэтому для перехода достаточно сменить тип; чтобы вернуться к прежнему типу, его таблицу нужно очистить.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "stats.analyzer.similarity-storage")
+@Slf4j
+@Getter
+@Setter
+public class SimilarityStorageConfig {
+    private SimilarityStorageType type = SimilarityStorageType.PAIRS;
+    // Сколько хранится версия удаления пары: дольше любой задержки между сообщениями разных воркеров агрегатора
+    private long tombstoneRetentionMs = 600_000;
+
+    @Bean
+    public SimilarityStorage similarityStorage(SimilarityRepository similarityRepository,
+                                               EventNeighborRepository eventNeighborRepository) {
+        log.info("Коэффициенты сходства хранятся в режиме {}", type);
+        return switch (type) {
+            case PAIRS -> {
+                int copied = eventNeighborRepository.copyToSimilarities();
+                if (copied > 0) {
+                    log.info("В similarities перенесено {} пар из event_neighbors", copied);
+                }
+                yield new PairSimilarityStorage(similarityRepository);
+            }
+            case ADJACENCY -> {
+                int copied = eventNeighborRepository.copyFromSimilarities();
+                if (copied > 0) {
+                    log.info("В event_neighbors перенесено {} строк из similarities", copied);
+                }
+                yield new AdjacencySimilarityStorage(eventNeighborRepository);
+            }
+        };
+    }
+}
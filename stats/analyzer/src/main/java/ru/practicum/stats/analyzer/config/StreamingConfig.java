@@ -0,0 +1,34 @@
+package ru.practicum.stats.analyzer.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "stats.analyzer.streaming")
+@Getter
+@Setter
+public class StreamingConfig {
+    // GetInteractionsCount отдаёт строки по мере чтения из БД, не собирая ответ целиком
+    private boolean enabled = false;
+    // Сколько строк драйвер получает из БД за один запрос к курсору
+    private int fetchSize = 500;
+    // Каждый поток держит соединение пула и открытую транзакцию, поэтому предел должен быть меньше размера пула;
+    // сверх предела суммы весов отдаются одним ответом
+    private int maxConcurrentStreams = 4;
+    // Курсор закрывается, если клиент столько времени не принимает строки
+    private Long idleTimeoutMs = 10_000L;
+    // Предельная длительность потока, после неё курсор закрывается, даже если клиент читает
+    private Long maxDurationMs = 60_000L;
+
+    public Duration getIdleTimeout() {
+        return Duration.ofMillis(idleTimeoutMs);
+    }
+
+    public Duration getMaxDuration() {
+        return Duration.ofMillis(maxDurationMs);
+    }
+}
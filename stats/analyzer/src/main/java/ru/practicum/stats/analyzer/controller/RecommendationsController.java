@@ -2,14 +2,25 @@ package ru.practicum.stats.analyzer.controller;
 
 import io.grpc.Status;
 import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import net.devh.boot.grpc.server.service.GrpcService;
+import org.springframework.data.util.CloseableIterator;
 import ru.practicum.ewm.stats.proto.*;
+import ru.practicum.stats.analyzer.config.StreamingConfig;
 import ru.practicum.stats.analyzer.service.RecommendationsService;
 
 import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 @GrpcService
 @Slf4j
@@ -18,6 +29,28 @@ public class RecommendationsController extends RecommendationsControllerGrpc.Rec
 
     private final RecommendationsService recommendationsService;
 
+    private final StreamingConfig streamingConfig;
+
+    // Закрывает курсоры потоков, превысивших таймаут простоя или общую длительность
+    private final ScheduledExecutorService streamWatchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "interactions-stream-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Каждый поток держит соединение пула, поэтому одновременных потоков не больше maxConcurrentStreams
+    private Semaphore streamPermits;
+
+    @PostConstruct
+    public void init() {
+        streamPermits = new Semaphore(streamingConfig.getMaxConcurrentStreams());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        streamWatchdog.shutdownNow();
+    }
+
     @Override
     public void getRecommendationsForUser(UserPredictionsRequestProto request, StreamObserver<RecommendedEventProto> responseObserver) {
         try {
@@ -68,6 +101,15 @@ public class RecommendationsController extends RecommendationsControllerGrpc.Rec
 
     @Override
     public void getInteractionsCount(InteractionsCountRequestProto request, StreamObserver<RecommendedEventProto> responseObserver) {
+        if (streamingConfig.isEnabled()) {
+            if (streamPermits.tryAcquire()) {
+                streamInteractionsCount(request, (ServerCallStreamObserver<RecommendedEventProto>) responseObserver);
+                return;
+            }
+            log.info("Достигнут предел в {} одновременных потоков, суммы весов отдаются одним ответом",
+                    streamingConfig.getMaxConcurrentStreams());
+        }
+
         try {
             log.info("Получение суммы весов для каждого мероприятия {}", request.getEventIdList());
 
@@ -89,4 +131,155 @@ public class RecommendationsController extends RecommendationsControllerGrpc.Rec
             ));
         }
     }
+
+    // Строки из курсора БД отправляются, пока транспорт готов принимать; когда буфер клиента заполнен,
+    // отправка продолжается из onReady. Колбэки gRPC и проверка сроков сторожем синхронизированы на отправителе,
+    // поэтому курсор не читается одновременно из нескольких потоков. Вызывается с полученным разрешением
+    // streamPermits, которое освобождается при завершении потока
+    private void streamInteractionsCount(InteractionsCountRequestProto request,
+                                         ServerCallStreamObserver<RecommendedEventProto> responseObserver) {
+        log.info("Потоковое получение суммы весов для {} мероприятий", request.getEventIdCount());
+
+        CloseableIterator<RecommendedEventProto> interactionsCounts;
+        try {
+            interactionsCounts = recommendationsService.streamInteractionsCounts(request);
+        } catch (Exception e) {
+            streamPermits.release();
+            log.error("Ошибка при открытии курсора сумм весов для {} мероприятий", request.getEventIdCount(), e);
+            responseObserver.onError(new StatusRuntimeException(
+                    Status.INTERNAL
+                            .withDescription(e.getLocalizedMessage())
+                            .withCause(e.getCause())
+            ));
+            return;
+        }
+
+        CursorSender sender = new CursorSender(interactionsCounts, responseObserver, streamPermits,
+                streamingConfig.getIdleTimeout().toMillis(), streamingConfig.getMaxDuration().toMillis());
+        sender.watch(streamWatchdog);
+        responseObserver.setOnCancelHandler(sender::cancel);
+        responseObserver.setOnReadyHandler(sender);
+        // Если транспорт стал готов до установки обработчика, первого onReady не будет
+        sender.run();
+    }
+
+    @RequiredArgsConstructor
+    private static class CursorSender implements Runnable {
+
+        private final CloseableIterator<RecommendedEventProto> cursor;
+
+        private final ServerCallStreamObserver<RecommendedEventProto> responseObserver;
+
+        private final Semaphore permits;
+
+        private final long idleTimeoutMs;
+
+        private final long maxDurationMs;
+
+        private final long startedAt = System.currentTimeMillis();
+
+        // Не монитор: run() читает курсор из JDBC и под synchronized закреплял бы виртуальный поток за носителем
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private long lastSentAt = startedAt;
+
+        private ScheduledFuture<?> watchdog;
+
+        private boolean done;
+
+        private int sent;
+
+        @Override
+        public void run() {
+            lock.lock();
+            try {
+                if (done) {
+                    return;
+                }
+                while (responseObserver.isReady() && cursor.hasNext()) {
+                    responseObserver.onNext(cursor.next());
+                    sent++;
+                    lastSentAt = System.currentTimeMillis();
+                }
+                if (!cursor.hasNext()) {
+                    finish();
+                    log.info("Отправлено {} сумм весов", sent);
+                    responseObserver.onCompleted();
+                }
+            } catch (Exception e) {
+                finish();
+                log.error("Ошибка при потоковой отправке сумм весов", e);
+                responseObserver.onError(new StatusRuntimeException(
+                        Status.INTERNAL
+                                .withDescription(e.getLocalizedMessage())
+                                .withCause(e.getCause())
+                ));
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Сроки проверяются с шагом в половину меньшего из них
+        void watch(ScheduledExecutorService executor) {
+            long periodMs = Math.max(1, Math.min(idleTimeoutMs, maxDurationMs) / 2);
+            lock.lock();
+            try {
+                watchdog = executor.scheduleWithFixedDelay(this::checkDeadlines, periodMs, periodMs,
+                        TimeUnit.MILLISECONDS);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void cancel() {
+            lock.lock();
+            try {
+                if (done) {
+                    return;
+                }
+                log.debug("Клиент отменил получение сумм весов после {} строк", sent);
+                finish();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Медленный клиент не должен бесконечно держать соединение пула и открытую транзакцию
+        void checkDeadlines() {
+            lock.lock();
+            try {
+                if (done) {
+                    return;
+                }
+                long now = System.currentTimeMillis();
+                String reason;
+                if (now - startedAt >= maxDurationMs) {
+                    reason = "Превышена длительность потока " + maxDurationMs + " мс";
+                } else if (now - lastSentAt >= idleTimeoutMs) {
+                    reason = "Клиент не принимал строки " + idleTimeoutMs + " мс";
+                } else {
+                    return;
+                }
+                finish();
+                log.warn("{}, курсор сумм весов закрыт после {} строк", reason, sent);
+                responseObserver.onError(new StatusRuntimeException(Status.DEADLINE_EXCEEDED.withDescription(reason)));
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void finish() {
+            done = true;
+            if (watchdog != null) {
+                watchdog.cancel(false);
+            }
+            try {
+                cursor.close();
+            } catch (RuntimeException e) {
+                log.warn("Ошибка при закрытии курсора сумм весов", e);
+            } finally {
+                permits.release();
+            }
+        }
+    }
 }
@@ -0,0 +1,51 @@
+package ru.practicum.stats.analyzer.dal.dao;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.StringJoiner;
+
+/**
+ * Сборка многострочных запросов: строки пачки делятся на части по {@value #ROWS_PER_STATEMENT},
+ * чтобы число параметров запроса оставалось в пределах протокола PostgreSQL.
+ */
+final class BatchStatements {
+
+    static final int ROWS_PER_STATEMENT = 1000;
+
+    private BatchStatements() {
+    }
+
+    static <T> List<List<T>> chunks(Collection<T> rows) {
+        List<List<T>> chunks = new ArrayList<>();
+        List<T> chunk = new ArrayList<>(Math.min(rows.size(), ROWS_PER_STATEMENT));
+        for (T row : rows) {
+            chunk.add(row);
+            if (chunk.size() == ROWS_PER_STATEMENT) {
+                chunks.add(chunk);
+                chunk = new ArrayList<>(ROWS_PER_STATEMENT);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    // "(row), (row), ..." для count строк
+    static String values(String row, int count) {
+        StringJoiner values = new StringJoiner(", ");
+        for (int i = 0; i < count; i++) {
+            values.add(row);
+        }
+        return values.toString();
+    }
+
+    static OffsetDateTime timestamp(Instant instant) {
+        return OffsetDateTime.ofInstant(instant, ZoneOffset.UTC);
+    }
+
+}
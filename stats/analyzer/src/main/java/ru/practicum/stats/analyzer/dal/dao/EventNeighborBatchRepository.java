@@ -0,0 +1,41 @@
+package ru.practicum.stats.analyzer.dal.dao;
+
+import ru.practicum.stats.analyzer.dal.model.similarity.Similarity;
+import ru.practicum.stats.analyzer.dal.model.similarity.SimilarityId;
+import ru.practicum.stats.analyzer.dal.model.similarity.SimilarityTombstone;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface EventNeighborBatchRepository {
+
+    /**
+     * Записывает каждую пару двумя строками, по одной со стороны каждого мероприятия. Версии сравниваются
+     * так же, как в {@link SimilarityBatchRepository#upsertAll}.
+     *
+     * @return записанные пары
+     */
+    List<SimilarityId> upsertAll(Collection<Similarity> similarities);
+
+    /**
+     * Удаляет обе строки пар, записанных с версией не новее удаления.
+     *
+     * @return удалённые пары
+     */
+    List<SimilarityId> deleteAll(Collection<SimilarityTombstone> tombstones);
+
+    /**
+     * Заполняет пустую таблицу соседей парами из similarities.
+     *
+     * @return число вставленных строк; 0, если таблица соседей уже не пуста
+     */
+    int copyFromSimilarities();
+
+    /**
+     * Заполняет пустую таблицу similarities парами из таблицы соседей.
+     *
+     * @return число вставленных пар; 0, если similarities уже не пуста
+     */
+    int copyToSimilarities();
+
+}
@@ -0,0 +1,128 @@
+package ru.practicum.stats.analyzer.dal.dao;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import ru.practicum.stats.analyzer.dal.model.similarity.Similarity;
+import ru.practicum.stats.analyzer.dal.model.similarity.SimilarityId;
+import ru.practicum.stats.analyzer.dal.model.similarity.SimilarityTombstone;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static ru.practicum.stats.analyzer.dal.dao.BatchStatements.chunks;
+import static ru.practicum.stats.analyzer.dal.dao.BatchStatements.timestamp;
+import static ru.practicum.stats.analyzer.dal.dao.BatchStatements.values;
+
+@RequiredArgsConstructor
+public class EventNeighborBatchRepositoryImpl implements EventNeighborBatchRepository {
+
+    // action_ts хранит момент первого расчёта пары и при обновлении не меняется. Старая версия пары
+    // не перезаписывает новую и не восстанавливает пару, удалённую с более новой версией
+    private static final String UPSERT = """
+            INSERT INTO event_neighbors (event_id, neighbor_id, similarity, action_ts, version)
+            SELECT v.event_id, v.neighbor_id, v.similarity, v.action_ts, v.version
+            FROM (VALUES %s) AS v(event_id, neighbor_id, similarity, action_ts, version)
+            WHERE NOT EXISTS (
+                SELECT 1 FROM similarity_tombstones t
+                WHERE t.event1 = LEAST(v.event_id, v.neighbor_id) AND t.event2 = GREATEST(v.event_id, v.neighbor_id)
+                  AND t.version > v.version
+            )
+            ON CONFLICT (event_id, neighbor_id) DO UPDATE
+            SET similarity = excluded.similarity, version = excluded.version
+            WHERE event_neighbors.version <= excluded.version
+            RETURNING event_id, neighbor_id
+            """;
+
+    private static final String DELETE = """
+            DELETE FROM event_neighbors n
+            USING (VALUES %s) AS d(event1, event2, version)
+            WHERE (n.event_id = d.event1 AND n.neighbor_id = d.event2
+               OR n.event_id = d.event2 AND n.neighbor_id = d.event1)
+              AND n.version <= d.version
+            RETURNING n.event_id, n.neighbor_id
+            """;
+
+    private static final String COPY_FROM_SIMILARITIES = """
+            INSERT INTO event_neighbors (event_id, neighbor_id, similarity, action_ts, version)
+            SELECT * FROM (
+                SELECT event1, event2, similarity, action_ts, version FROM similarities
+                UNION ALL
+                SELECT event2, event1, similarity, action_ts, version FROM similarities
+            ) AS pairs
+            WHERE NOT EXISTS (SELECT 1 FROM event_neighbors)
+            ON CONFLICT (event_id, neighbor_id) DO NOTHING
+            """;
+
+    private static final String COPY_TO_SIMILARITIES = """
+            INSERT INTO similarities (event1, event2, similarity, action_ts, version)
+            SELECT event_id, neighbor_id, similarity, action_ts, version FROM event_neighbors
+            WHERE event_id < neighbor_id AND NOT EXISTS (SELECT 1 FROM similarities)
+            ON CONFLICT (event1, event2) DO NOTHING
+            """;
+
+    // Типы столбцов VALUES задаются явно: из подзапроса они не выводятся по столбцам таблицы
+    private static final String NEIGHBOR_ROW = "(CAST(? AS BIGINT), CAST(? AS BIGINT), CAST(? AS DOUBLE PRECISION), "
+            + "CAST(? AS TIMESTAMPTZ), CAST(? AS BIGINT))";
+
+    private static final String TOMBSTONE_ROW = "(CAST(? AS BIGINT), CAST(? AS BIGINT), CAST(? AS BIGINT))";
+
+    // Строки обеих сторон пары дают одну пару
+    private static final RowMapper<SimilarityId> ID_MAPPER =
+            (rs, rowNum) -> SimilarityId.of(rs.getLong(1), rs.getLong(2));
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public List<SimilarityId> upsertAll(Collection<Similarity> similarities) {
+        Set<SimilarityId> upserted = new LinkedHashSet<>();
+        for (List<Similarity> chunk : chunks(similarities)) {
+            List<Object> args = new ArrayList<>(chunk.size() * 10);
+            for (Similarity similarity : chunk) {
+                addRow(args, similarity.getId().getEvent1(), similarity.getId().getEvent2(), similarity);
+                addRow(args, similarity.getId().getEvent2(), similarity.getId().getEvent1(), similarity);
+            }
+            upserted.addAll(jdbcTemplate.query(UPSERT.formatted(values(NEIGHBOR_ROW, chunk.size() * 2)), ID_MAPPER,
+                    args.toArray()));
+        }
+        return new ArrayList<>(upserted);
+    }
+
+    @Override
+    public List<SimilarityId> deleteAll(Collection<SimilarityTombstone> tombstones) {
+        Set<SimilarityId> deleted = new LinkedHashSet<>();
+        for (List<SimilarityTombstone> chunk : chunks(tombstones)) {
+            List<Object> args = new ArrayList<>(chunk.size() * 3);
+            for (SimilarityTombstone tombstone : chunk) {
+                args.add(tombstone.getId().getEvent1());
+                args.add(tombstone.getId().getEvent2());
+                args.add(tombstone.getVersion());
+            }
+            deleted.addAll(jdbcTemplate.query(DELETE.formatted(values(TOMBSTONE_ROW, chunk.size())), ID_MAPPER,
+                    args.toArray()));
+        }
+        return new ArrayList<>(deleted);
+    }
+
+    @Override
+    public int copyFromSimilarities() {
+        return jdbcTemplate.update(COPY_FROM_SIMILARITIES);
+    }
+
+    @Override
+    public int copyToSimilarities() {
+        return jdbcTemplate.update(COPY_TO_SIMILARITIES);
+    }
+
+    private static void addRow(List<Object> args, long eventId, long neighborId, Similarity similarity) {
+        args.add(eventId);
+        args.add(neighborId);
+        args.add(similarity.getSimilarity());
+        args.add(timestamp(similarity.getActionTimestamp()));
+        args.add(similarity.getVersion());
+    }
+
+}
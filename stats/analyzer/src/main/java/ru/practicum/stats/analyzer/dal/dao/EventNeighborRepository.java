@@ -0,0 +1,21 @@
+package ru.practicum.stats.analyzer.dal.dao;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import ru.practicum.stats.analyzer.dal.model.neighbor.EventNeighbor;
+import ru.practicum.stats.analyzer.dal.model.neighbor.EventNeighborId;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface EventNeighborRepository extends JpaRepository<EventNeighbor, EventNeighborId>, EventNeighborBatchRepository {
+
+    List<EventNeighbor> findAllById_EventIdInAndId_NeighborIdNotInOrderBySimilarityDesc(Collection<Long> eventIds, Collection<Long> neighborIds, Limit limit);
+
+    List<EventNeighbor> findAllById_EventIdInAndId_NeighborIdIn(Collection<Long> eventIds, Collection<Long> neighborIds);
+
+    List<EventNeighbor> findAllById_EventIdAndId_NeighborIdNotInOrderBySimilarityDesc(Long eventId, Collection<Long> neighborIds, Limit limit);
+
+    List<EventNeighbor> findAllById_EventIdOrderBySimilarityDesc(Long eventId, Limit limit);
+
+}
@@ -0,0 +1,13 @@
+package ru.practicum.stats.analyzer.dal.dao;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import ru.practicum.stats.analyzer.dal.model.rating.EventRatingTotal;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface EventRatingTotalRepository extends JpaRepository<EventRatingTotal, Long> {
+
+    List<EventRatingTotal> findAllByEventIdInOrderByRatingSumDesc(Collection<Long> eventIds);
+
+}
@@ -0,0 +1,32 @@
+package ru.practicum.stats.analyzer.dal.dao;
+
+import ru.practicum.stats.analyzer.dal.model.interaction.Interaction;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Методы вызываются в транзакции: записи пользователей защищены от параллельных изменений
+ * advisory-блокировками по user_id до её завершения.
+ */
+public interface InteractionBatchRepository {
+
+    /**
+     * Вставляет взаимодействия многострочными INSERT ... ON CONFLICT. Существующая запись заменяется,
+     * только если новая оценка больше старой, затухшей к моменту нового действия со скоростью lambda (1/мс).
+     * Суммы оценок мероприятий в event_rating_totals меняются на разницу записанных оценок.
+     *
+     * @return число вставленных и обновлённых строк
+     */
+    int upsertAllIfRatingHigher(Collection<Interaction> interactions, double lambda);
+
+    /**
+     * Удаляет взаимодействия каждого пользователя, совершённые раньше заданного для него момента,
+     * и вычитает их оценки из сумм мероприятий.
+     *
+     * @return число удалённых строк
+     */
+    int deleteAllByUserIdAndActionDateTimeBefore(Map<Long, Instant> beforeByUserId);
+
+}
@@ -0,0 +1,129 @@
+package ru.practicum.stats.analyzer.dal.dao;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.practicum.stats.analyzer.dal.model.interaction.Interaction;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import static ru.practicum.stats.analyzer.dal.dao.BatchStatements.chunks;
+import static ru.practicum.stats.analyzer.dal.dao.BatchStatements.timestamp;
+import static ru.practicum.stats.analyzer.dal.dao.BatchStatements.values;
+
+@RequiredArgsConstructor
+public class InteractionBatchRepositoryImpl implements InteractionBatchRepository {
+
+    // Действия одного пользователя приходят из разных партиций (коллектор по умолчанию ключует по мероприятию)
+    // и обрабатываются разными консьюмерами одновременно. Пока транзакция держит блокировки пользователей,
+    // их строки в interactions никто другой не меняет, поэтому снимок следующего запроса видит актуальные оценки
+    private static final String LOCK_USERS = """
+            SELECT COUNT(pg_advisory_xact_lock(u.user_id))
+            FROM (SELECT DISTINCT user_id FROM (VALUES %s) AS b(user_id) ORDER BY user_id) u
+            """;
+
+    // Строки пользователей заблокированы через LOCK_USERS, а все части запроса видят один снимок, поэтому old
+    // содержит оценки до обновления, и суммы мероприятий меняются ровно на разницу записанных оценок.
+    // Возраст старой оценки к моменту нового действия в мс; опоздавшее действие старую оценку не затухает
+    private static final String UPSERT = """
+            WITH input (user_id, event_id, rating, action_ts) AS (
+                VALUES %s
+            ), old AS (
+                SELECT i.user_id, i.event_id, i.rating
+                FROM interactions i
+                JOIN input USING (user_id, event_id)
+            ), upserted AS (
+                INSERT INTO interactions (user_id, event_id, rating, action_ts)
+                SELECT * FROM input
+                ON CONFLICT (user_id, event_id) DO UPDATE
+                SET rating = excluded.rating, action_ts = excluded.action_ts
+                WHERE excluded.rating > interactions.rating
+                    * EXP(-? * 1000 * GREATEST(0, EXTRACT(EPOCH FROM (excluded.action_ts - interactions.action_ts))))
+                RETURNING user_id, event_id, rating
+            ), totals AS (
+                INSERT INTO event_rating_totals (event_id, rating_sum)
+                SELECT u.event_id, SUM(u.rating - COALESCE(o.rating, 0))
+                FROM upserted u
+                LEFT JOIN old o USING (user_id, event_id)
+                GROUP BY u.event_id
+                ON CONFLICT (event_id) DO UPDATE
+                SET rating_sum = event_rating_totals.rating_sum + excluded.rating_sum
+            )
+            SELECT COUNT(*) FROM upserted
+            """;
+
+    private static final String DELETE_BEFORE = """
+            WITH deleted AS (
+                DELETE FROM interactions i
+                USING (VALUES %s) AS b(user_id, before_ts)
+                WHERE i.user_id = b.user_id AND i.action_ts < b.before_ts
+                RETURNING i.event_id, i.rating
+            ), totals AS (
+                UPDATE event_rating_totals t
+                SET rating_sum = t.rating_sum - d.rating_sum
+                FROM (SELECT event_id, SUM(rating) AS rating_sum FROM deleted GROUP BY event_id) d
+                WHERE t.event_id = d.event_id
+            )
+            SELECT COUNT(*) FROM deleted
+            """;
+
+    // Типы задаются в первой строке VALUES: из WITH они не выводятся по столбцам таблицы
+    private static final String INTERACTION_ROW =
+            "(CAST(? AS BIGINT), CAST(? AS BIGINT), CAST(? AS DOUBLE PRECISION), CAST(? AS TIMESTAMPTZ))";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public int upsertAllIfRatingHigher(Collection<Interaction> interactions, double lambda) {
+        TreeSet<Long> userIds = new TreeSet<>();
+        interactions.forEach(interaction -> userIds.add(interaction.getId().getUserId()));
+        lockUsers(userIds);
+
+        int updated = 0;
+        for (List<Interaction> chunk : chunks(interactions)) {
+            List<Object> args = new ArrayList<>(chunk.size() * 4 + 1);
+            for (Interaction interaction : chunk) {
+                args.add(interaction.getId().getUserId());
+                args.add(interaction.getId().getEventId());
+                args.add(interaction.getRating());
+                args.add(timestamp(interaction.getActionDateTime()));
+            }
+            args.add(lambda);
+            updated += jdbcTemplate.queryForObject(UPSERT.formatted(values(INTERACTION_ROW, chunk.size())),
+                    Integer.class, args.toArray());
+        }
+        return updated;
+    }
+
+    @Override
+    public int deleteAllByUserIdAndActionDateTimeBefore(Map<Long, Instant> beforeByUserId) {
+        lockUsers(new TreeSet<>(beforeByUserId.keySet()));
+
+        int deleted = 0;
+        for (List<Map.Entry<Long, Instant>> chunk : chunks(beforeByUserId.entrySet())) {
+            List<Object> args = new ArrayList<>(chunk.size() * 2);
+            for (Map.Entry<Long, Instant> before : chunk) {
+                args.add(before.getKey());
+                args.add(timestamp(before.getValue()));
+            }
+            deleted += jdbcTemplate.queryForObject(
+                    DELETE_BEFORE.formatted(values("(CAST(? AS BIGINT), CAST(? AS TIMESTAMPTZ))", chunk.size())),
+                    Integer.class, args.toArray());
+        }
+        return deleted;
+    }
+
+    // Блокировки берутся по возрастанию идентификаторов во всех частях, чтобы две транзакции не ждали друг друга.
+    // Повторная блокировка в той же транзакции не ждёт, снимаются все при её завершении
+    private void lockUsers(TreeSet<Long> userIds) {
+        for (List<Long> chunk : chunks(userIds)) {
+            jdbcTemplate.queryForObject(LOCK_USERS.formatted(values("(CAST(? AS BIGINT))", chunk.size())),
+                    Long.class, chunk.toArray());
+        }
+    }
+
+}
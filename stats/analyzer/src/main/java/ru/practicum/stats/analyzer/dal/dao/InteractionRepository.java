@@ -4,28 +4,31 @@ import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
-import ru.practicum.stats.analyzer.dal.dto.EventRatingDto;
+import ru.practicum.stats.analyzer.dal.dto.EventRatingSum;
 import ru.practicum.stats.analyzer.dal.model.interaction.Interaction;
 import ru.practicum.stats.analyzer.dal.model.interaction.InteractionId;
 
+import java.time.Instant;
 import java.util.List;
 
-public interface InteractionRepository extends JpaRepository<Interaction, InteractionId> {
+public interface InteractionRepository extends JpaRepository<Interaction, InteractionId>, InteractionBatchRepository,
+        InteractionStreamRepository {
 
     List<Interaction> findAllById_UserIdOrderByActionDateTimeDesc(Long userId, Limit limit);
 
     List<Interaction> findAllById_UserId(Long userId);
 
-    @Query("""
-            SELECT new ru.practicum.stats.analyzer.dal.dto.EventRatingDto(
-                i.id.eventId,
-                SUM(i.rating) as ratingSum
-            )
-            FROM Interaction i
-            WHERE i.id.eventId IN :eventIds
-            GROUP BY i.id.eventId
+    // Сумма оценок, затухших к моменту now: rating * e^(-lambda * возраст в мс)
+    @Query(value = """
+            SELECT i.event_id AS eventId,
+                   SUM(i.rating * EXP(-:lambda * 1000 * EXTRACT(EPOCH FROM (CAST(:now AS TIMESTAMPTZ) - i.action_ts)))) AS ratingSum
+            FROM interactions i
+            WHERE i.event_id IN :eventIds
+            GROUP BY i.event_id
             ORDER BY ratingSum DESC
-            """)
-    List<EventRatingDto> findGroupedRatingsAsDto(@Param("eventIds") List<Long> eventIds);
+            """, nativeQuery = true)
+    List<EventRatingSum> findDecayedRatingSums(@Param("eventIds") List<Long> eventIds,
+                                               @Param("lambda") double lambda,
+                                               @Param("now") Instant now);
 
 }
@@ -0,0 +1,29 @@
+package ru.practicum.stats.analyzer.dal.dao;
+
+import org.springframework.data.util.CloseableIterator;
+import ru.practicum.stats.analyzer.dal.dto.EventRatingDto;
+import ru.practicum.stats.analyzer.dal.model.interaction.Interaction;
+
+import java.time.Instant;
+import java.util.Collection;
+
+public interface InteractionStreamRepository {
+
+    /**
+     * Суммы оценок мероприятий, затухших к моменту now со скоростью lambda (1/мс), по убыванию суммы.
+     * Строки читаются из БД порциями по fetchSize по мере обхода; итератор нужно закрыть,
+     * чтобы вернуть соединение в пул.
+     */
+    CloseableIterator<EventRatingDto> streamRatingSums(Collection<Long> eventIds, double lambda, Instant now, int fetchSize);
+
+    /**
+     * Суммы оценок мероприятий без затухания из event_rating_totals, по убыванию суммы.
+     */
+    CloseableIterator<EventRatingDto> streamRatingTotals(Collection<Long> eventIds, int fetchSize);
+
+    /**
+     * Все взаимодействия в порядке хранения, например для построения векторов мероприятий.
+     */
+    CloseableIterator<Interaction> streamAll(int fetchSize);
+
+}
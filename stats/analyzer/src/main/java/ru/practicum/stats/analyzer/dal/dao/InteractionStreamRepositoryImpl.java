@@ -0,0 +1,99 @@
+package ru.practicum.stats.analyzer.dal.dao;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import ru.practicum.stats.analyzer.dal.dto.EventRatingDto;
+import ru.practicum.stats.analyzer.dal.model.interaction.Interaction;
+import ru.practicum.stats.analyzer.dal.model.interaction.InteractionId;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.Collection;
+
+import static ru.practicum.stats.analyzer.dal.dao.BatchStatements.timestamp;
+
+@RequiredArgsConstructor
+public class InteractionStreamRepositoryImpl implements InteractionStreamRepository {
+
+    // Идентификаторы передаются одним массивом: список IN на тысячи параметров дороже разбирать
+    private static final String RATING_SUMS = """
+            SELECT i.event_id,
+                   SUM(i.rating * EXP(-? * 1000 * EXTRACT(EPOCH FROM (CAST(? AS TIMESTAMPTZ) - i.action_ts)))) AS rating_sum
+            FROM interactions i
+            WHERE i.event_id = ANY(?)
+            GROUP BY i.event_id
+            ORDER BY rating_sum DESC
+            """;
+
+    private static final String RATING_TOTALS = """
+            SELECT t.event_id, t.rating_sum
+            FROM event_rating_totals t
+            WHERE t.event_id = ANY(?)
+            ORDER BY t.rating_sum DESC
+            """;
+
+    private static final String ALL = "SELECT user_id, event_id, rating, action_ts FROM interactions";
+
+    private static final RowMapper<EventRatingDto> RATING_MAPPER =
+            (rs, rowNum) -> new EventRatingDto(rs.getLong(1), rs.getDouble(2));
+
+    private static final RowMapper<Interaction> INTERACTION_MAPPER = (rs, rowNum) -> new Interaction(
+            InteractionId.of(rs.getLong(1), rs.getLong(2)),
+            rs.getDouble(3),
+            rs.getObject(4, OffsetDateTime.class).toInstant());
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public CloseableIterator<EventRatingDto> streamRatingSums(Collection<Long> eventIds, double lambda, Instant now, int fetchSize) {
+        return open(RATING_SUMS, fetchSize, RATING_MAPPER, (connection, statement) -> {
+            statement.setDouble(1, lambda);
+            statement.setObject(2, timestamp(now));
+            statement.setArray(3, connection.createArrayOf("bigint", eventIds.toArray()));
+        });
+    }
+
+    @Override
+    public CloseableIterator<EventRatingDto> streamRatingTotals(Collection<Long> eventIds, int fetchSize) {
+        return open(RATING_TOTALS, fetchSize, RATING_MAPPER, (connection, statement) ->
+                statement.setArray(1, connection.createArrayOf("bigint", eventIds.toArray())));
+    }
+
+    @Override
+    public CloseableIterator<Interaction> streamAll(int fetchSize) {
+        return open(ALL, fetchSize, INTERACTION_MAPPER, (connection, statement) -> {
+        });
+    }
+
+    private <T> CloseableIterator<T> open(String sql, int fetchSize, RowMapper<T> mapper, ParameterBinder binder) {
+        Connection connection = null;
+        try {
+            connection = jdbcTemplate.getDataSource().getConnection();
+            connection.setAutoCommit(false);
+            PreparedStatement statement = connection.prepareStatement(sql);
+            statement.setFetchSize(fetchSize);
+            binder.bind(connection, statement);
+            return new ResultCursor<>(connection, statement, mapper, jdbcTemplate.getExceptionTranslator());
+        } catch (SQLException e) {
+            if (connection != null) {
+                try {
+                    connection.close();
+                } catch (SQLException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            throw jdbcTemplate.getExceptionTranslator().translate("Открытие курсора", sql, e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ParameterBinder {
+        void bind(Connection connection, PreparedStatement statement) throws SQLException;
+    }
+
+}
@@ -0,0 +1,98 @@
+package ru.practicum.stats.analyzer.dal.dao;
+
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.support.SQLExceptionTranslator;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.NoSuchElementException;
+
+/**
+ * Строки запроса, которые драйвер читает порциями по fetchSize: PostgreSQL открывает курсор, только если
+ * автокоммит выключен. Соединение берётся из пула и возвращается в close(). Потокобезопасности нет,
+ * но методы можно вызывать из разных потоков по очереди.
+ */
+class ResultCursor<T> implements CloseableIterator<T> {
+
+    private final Connection connection;
+
+    private final PreparedStatement statement;
+
+    private final RowMapper<T> rowMapper;
+
+    private final SQLExceptionTranslator exceptionTranslator;
+
+    private ResultSet resultSet;
+
+    private int rowNum;
+
+    // Строка уже прочитана next() курсора, но ещё не отдана
+    private boolean advanced;
+
+    private boolean hasRow;
+
+    private boolean closed;
+
+    ResultCursor(Connection connection, PreparedStatement statement, RowMapper<T> rowMapper,
+                 SQLExceptionTranslator exceptionTranslator) {
+        this.connection = connection;
+        this.statement = statement;
+        this.rowMapper = rowMapper;
+        this.exceptionTranslator = exceptionTranslator;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (closed) {
+            return false;
+        }
+        if (!advanced) {
+            try {
+                if (resultSet == null) {
+                    resultSet = statement.executeQuery();
+                }
+                hasRow = resultSet.next();
+            } catch (SQLException e) {
+                close();
+                throw exceptionTranslator.translate("Чтение курсора", null, e);
+            }
+            advanced = true;
+        }
+        return hasRow;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        advanced = false;
+        try {
+            return rowMapper.mapRow(resultSet, rowNum++);
+        } catch (SQLException e) {
+            close();
+            throw exceptionTranslator.translate("Чтение курсора", null, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try (connection; statement) {
+            if (resultSet != null) {
+                resultSet.close();
+            }
+            connection.rollback();
+            connection.setAutoCommit(true);
+        } catch (SQLException e) {
+            throw exceptionTranslator.translate("Закрытие курсора", null, e);
+        }
+    }
+
+}
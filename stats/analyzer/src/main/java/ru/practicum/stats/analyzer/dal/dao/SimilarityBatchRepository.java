@@ -0,0 +1,37 @@
+package ru.practicum.stats.analyzer.dal.dao;
+
+import ru.practicum.stats.analyzer.dal.model.similarity.Similarity;
+import ru.practicum.stats.analyzer.dal.model.similarity.SimilarityId;
+import ru.practicum.stats.analyzer.dal.model.similarity.SimilarityTombstone;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface SimilarityBatchRepository {
+
+    /**
+     * Вставляет коэффициенты сходства многострочными INSERT ... ON CONFLICT. Существующая пара перезаписывается,
+     * только если её версия не новее; пара, удалённая с более новой версией, не восстанавливается.
+     *
+     * @return записанные пары
+     */
+    List<SimilarityId> upsertAll(Collection<Similarity> similarities);
+
+    /**
+     * Удаляет пары, записанные с версией не новее удаления.
+     *
+     * @return удалённые пары
+     */
+    List<SimilarityId> deleteAll(Collection<SimilarityTombstone> tombstones);
+
+    /**
+     * Запоминает версии удалений в similarity_tombstones, для пары хранится наибольшая.
+     */
+    void saveTombstones(Collection<SimilarityTombstone> tombstones);
+
+    /**
+     * @return число удалённых версий удалений старее version
+     */
+    int deleteTombstonesBefore(long version);
+
+}
@@ -0,0 +1,116 @@
+package ru.practicum.stats.analyzer.dal.dao;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import ru.practicum.stats.analyzer.dal.model.similarity.Similarity;
+import ru.practicum.stats.analyzer.dal.model.similarity.SimilarityId;
+import ru.practicum.stats.analyzer.dal.model.similarity.SimilarityTombstone;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static ru.practicum.stats.analyzer.dal.dao.BatchStatements.chunks;
+import static ru.practicum.stats.analyzer.dal.dao.BatchStatements.timestamp;
+import static ru.practicum.stats.analyzer.dal.dao.BatchStatements.values;
+
+@RequiredArgsConstructor
+public class SimilarityBatchRepositoryImpl implements SimilarityBatchRepository {
+
+    // action_ts хранит момент первого расчёта пары и при обновлении не меняется. Обновления пары от разных
+    // воркеров агрегатора приходят в произвольном порядке, поэтому старая версия не перезаписывает новую
+    private static final String UPSERT = """
+            INSERT INTO similarities (event1, event2, similarity, action_ts, version)
+            SELECT v.event1, v.event2, v.similarity, v.action_ts, v.version
+            FROM (VALUES %s) AS v(event1, event2, similarity, action_ts, version)
+            WHERE NOT EXISTS (
+                SELECT 1 FROM similarity_tombstones t
+                WHERE t.event1 = v.event1 AND t.event2 = v.event2 AND t.version > v.version
+            )
+            ON CONFLICT (event1, event2) DO UPDATE
+            SET similarity = excluded.similarity, version = excluded.version
+            WHERE similarities.version <= excluded.version
+            RETURNING event1, event2
+            """;
+
+    private static final String DELETE = """
+            DELETE FROM similarities s
+            USING (VALUES %s) AS d(event1, event2, version)
+            WHERE s.event1 = d.event1 AND s.event2 = d.event2 AND s.version <= d.version
+            RETURNING s.event1, s.event2
+            """;
+
+    private static final String SAVE_TOMBSTONES = """
+            INSERT INTO similarity_tombstones (event1, event2, version)
+            VALUES %s
+            ON CONFLICT (event1, event2) DO UPDATE
+            SET version = GREATEST(similarity_tombstones.version, excluded.version)
+            """;
+
+    private static final String DELETE_TOMBSTONES_BEFORE = """
+            DELETE FROM similarity_tombstones WHERE version < ?
+            """;
+
+    // Типы столбцов VALUES задаются явно: из подзапроса они не выводятся по столбцам таблицы
+    private static final String SIMILARITY_ROW = "(CAST(? AS BIGINT), CAST(? AS BIGINT), CAST(? AS DOUBLE PRECISION), "
+            + "CAST(? AS TIMESTAMPTZ), CAST(? AS BIGINT))";
+
+    private static final String TOMBSTONE_ROW = "(CAST(? AS BIGINT), CAST(? AS BIGINT), CAST(? AS BIGINT))";
+
+    private static final RowMapper<SimilarityId> ID_MAPPER =
+            (rs, rowNum) -> new SimilarityId(rs.getLong(1), rs.getLong(2));
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public List<SimilarityId> upsertAll(Collection<Similarity> similarities) {
+        List<SimilarityId> upserted = new ArrayList<>(similarities.size());
+        for (List<Similarity> chunk : chunks(similarities)) {
+            List<Object> args = new ArrayList<>(chunk.size() * 5);
+            for (Similarity similarity : chunk) {
+                args.add(similarity.getId().getEvent1());
+                args.add(similarity.getId().getEvent2());
+                args.add(similarity.getSimilarity());
+                args.add(timestamp(similarity.getActionTimestamp()));
+                args.add(similarity.getVersion());
+            }
+            upserted.addAll(jdbcTemplate.query(UPSERT.formatted(values(SIMILARITY_ROW, chunk.size())), ID_MAPPER,
+                    args.toArray()));
+        }
+        return upserted;
+    }
+
+    @Override
+    public List<SimilarityId> deleteAll(Collection<SimilarityTombstone> tombstones) {
+        List<SimilarityId> deleted = new ArrayList<>();
+        for (List<SimilarityTombstone> chunk : chunks(tombstones)) {
+            deleted.addAll(jdbcTemplate.query(DELETE.formatted(values(TOMBSTONE_ROW, chunk.size())), ID_MAPPER,
+                    tombstoneArgs(chunk)));
+        }
+        return deleted;
+    }
+
+    @Override
+    public void saveTombstones(Collection<SimilarityTombstone> tombstones) {
+        for (List<SimilarityTombstone> chunk : chunks(tombstones)) {
+            jdbcTemplate.update(SAVE_TOMBSTONES.formatted(values("(?, ?, ?)", chunk.size())), tombstoneArgs(chunk));
+        }
+    }
+
+    @Override
+    public int deleteTombstonesBefore(long version) {
+        return jdbcTemplate.update(DELETE_TOMBSTONES_BEFORE, version);
+    }
+
+    private static Object[] tombstoneArgs(List<SimilarityTombstone> tombstones) {
+        List<Object> args = new ArrayList<>(tombstones.size() * 3);
+        for (SimilarityTombstone tombstone : tombstones) {
+            args.add(tombstone.getId().getEvent1());
+            args.add(tombstone.getId().getEvent2());
+            args.add(tombstone.getVersion());
+        }
+        return args.toArray();
+    }
+
+}
@@ -0,0 +1,14 @@
+package ru.practicum.stats.analyzer.dal.dao;
+
+import ru.practicum.stats.analyzer.dal.model.recommendation.UserRecommendations;
+
+import java.util.Collection;
+
+public interface UserRecommendationsBatchRepository {
+
+    /**
+     * Вставляет или заменяет рекомендации пользователей многострочными INSERT ... ON CONFLICT.
+     */
+    void upsertAll(Collection<UserRecommendations> recommendations);
+
+}
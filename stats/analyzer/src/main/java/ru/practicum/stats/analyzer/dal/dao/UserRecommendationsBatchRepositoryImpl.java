@@ -0,0 +1,52 @@
+package ru.practicum.stats.analyzer.dal.dao;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.practicum.stats.analyzer.dal.model.recommendation.UserRecommendations;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static ru.practicum.stats.analyzer.dal.dao.BatchStatements.chunks;
+import static ru.practicum.stats.analyzer.dal.dao.BatchStatements.timestamp;
+import static ru.practicum.stats.analyzer.dal.dao.BatchStatements.values;
+
+@RequiredArgsConstructor
+public class UserRecommendationsBatchRepositoryImpl implements UserRecommendationsBatchRepository {
+
+    private static final String UPSERT = """
+            INSERT INTO user_recommendations
+                (user_id, max_results, approximate, event_ids, scores, interacted_event_ids, computed_ts)
+            VALUES %s
+            ON CONFLICT (user_id) DO UPDATE
+            SET max_results = excluded.max_results,
+                approximate = excluded.approximate,
+                event_ids = excluded.event_ids,
+                scores = excluded.scores,
+                interacted_event_ids = excluded.interacted_event_ids,
+                computed_ts = excluded.computed_ts
+            """;
+
+    private static final String ROW = "(?, ?, ?, CAST(? AS BIGINT[]), CAST(? AS DOUBLE PRECISION[]), CAST(? AS BIGINT[]), ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void upsertAll(Collection<UserRecommendations> recommendations) {
+        for (List<UserRecommendations> chunk : chunks(recommendations)) {
+            List<Object> args = new ArrayList<>(chunk.size() * 7);
+            for (UserRecommendations user : chunk) {
+                args.add(user.getUserId());
+                args.add(user.getMaxResults());
+                args.add(user.getApproximate());
+                args.add(user.getEventIds());
+                args.add(user.getScores());
+                args.add(user.getInteractedEventIds());
+                args.add(timestamp(user.getComputedAt()));
+            }
+            jdbcTemplate.update(UPSERT.formatted(values(ROW, chunk.size())), args.toArray());
+        }
+    }
+
+}
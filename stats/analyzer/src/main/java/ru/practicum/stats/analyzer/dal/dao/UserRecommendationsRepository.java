@@ -0,0 +1,8 @@
+package ru.practicum.stats.analyzer.dal.dao;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import ru.practicum.stats.analyzer.dal.model.recommendation.UserRecommendations;
+
+public interface UserRecommendationsRepository extends JpaRepository<UserRecommendations, Long>,
+        UserRecommendationsBatchRepository {
+}
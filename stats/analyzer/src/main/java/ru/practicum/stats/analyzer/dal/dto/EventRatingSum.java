@@ -0,0 +1,9 @@
+package ru.practicum.stats.analyzer.dal.dto;
+
+public interface EventRatingSum {
+
+    Long getEventId();
+
+    Double getRatingSum();
+
+}
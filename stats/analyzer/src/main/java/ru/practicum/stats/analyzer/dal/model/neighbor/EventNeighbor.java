@@ -0,0 +1,46 @@
+package ru.practicum.stats.analyzer.dal.model.neighbor;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.EmbeddedId;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Table;
+import lombok.*;
+
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * Коэффициент сходства, записанный со стороны одного мероприятия. Каждая пара хранится двумя строками,
+ * поэтому соседи мероприятия читаются диапазоном индекса (event_id, similarity DESC).
+ */
+@Entity
+@Table(name = "event_neighbors")
+@Getter
+@Setter
+@ToString
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class EventNeighbor {
+    @EmbeddedId
+    private EventNeighborId id;
+
+    @Column(name = "similarity", nullable = false)
+    private Double similarity;
+
+    @Column(name = "action_ts", nullable = false, updatable = false)
+    private Instant actionTimestamp;
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == null || getClass() != o.getClass()) return false;
+
+        EventNeighbor that = (EventNeighbor) o;
+        return Objects.equals(id, that.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(id);
+    }
+}
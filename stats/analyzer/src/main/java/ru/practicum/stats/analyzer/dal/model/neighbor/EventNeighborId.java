@@ -0,0 +1,21 @@
+package ru.practicum.stats.analyzer.dal.model.neighbor;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+import lombok.*;
+
+import java.io.Serializable;
+
+@Embeddable
+@Getter
+@EqualsAndHashCode
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+public class EventNeighborId implements Serializable {
+    @Column(name = "event_id", nullable = false, updatable = false)
+    private Long eventId;
+
+    @Column(name = "neighbor_id", nullable = false, updatable = false)
+    private Long neighborId;
+}
@@ -0,0 +1,44 @@
+package ru.practicum.stats.analyzer.dal.model.rating;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.*;
+
+import java.util.Objects;
+
+/**
+ * Сумма оценок мероприятия по всем пользователям, без затухания. Обновляется на разницу весов
+ * в том же запросе, что и сами взаимодействия, под блокировкой их пользователей, поэтому всегда равна
+ * SUM(rating) по interactions.
+ */
+@Entity
+@Table(name = "event_rating_totals")
+@Getter
+@Setter
+@ToString
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class EventRatingTotal {
+    @Id
+    @Column(name = "event_id", nullable = false, updatable = false)
+    private Long eventId;
+
+    @Column(name = "rating_sum", nullable = false)
+    private Double ratingSum;
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == null || getClass() != o.getClass()) return false;
+
+        EventRatingTotal that = (EventRatingTotal) o;
+        return Objects.equals(eventId, that.eventId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(eventId);
+    }
+}
@@ -0,0 +1,59 @@
+package ru.practicum.stats.analyzer.dal.model.recommendation;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.*;
+
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * Рассчитанные рекомендации пользователя: мероприятия и оценки по убыванию оценки, а также мероприятия,
+ * по которым они рассчитаны.
+ */
+@Entity
+@Table(name = "user_recommendations")
+@Getter
+@Setter
+@ToString
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class UserRecommendations {
+    @Id
+    @Column(name = "user_id", nullable = false, updatable = false)
+    private Long userId;
+
+    @Column(name = "max_results", nullable = false)
+    private Integer maxResults;
+
+    @Column(name = "approximate", nullable = false)
+    private Boolean approximate;
+
+    @Column(name = "event_ids", nullable = false)
+    private long[] eventIds;
+
+    @Column(name = "scores", nullable = false)
+    private double[] scores;
+
+    @Column(name = "interacted_event_ids", nullable = false)
+    private long[] interactedEventIds;
+
+    @Column(name = "computed_ts", nullable = false)
+    private Instant computedAt;
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == null || getClass() != o.getClass()) return false;
+
+        UserRecommendations that = (UserRecommendations) o;
+        return Objects.equals(userId, that.userId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(userId);
+    }
+}
@@ -27,6 +27,10 @@ public class Similarity {
     @Column(name = "action_ts", nullable = false, updatable = false)
     private Instant actionTimestamp;
 
+    // Версия обновления пары из агрегатора, пара перезаписывается только более новой
+    @Column(name = "version", nullable = false)
+    private Long version;
+
     @Override
     public boolean equals(Object o) {
         if (o == null || getClass() != o.getClass()) return false;
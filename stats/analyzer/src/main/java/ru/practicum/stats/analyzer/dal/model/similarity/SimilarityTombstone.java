@@ -0,0 +1,17 @@
+package ru.practicum.stats.analyzer.dal.model.similarity;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Удаление пары с версией: удаляется только пара, записанная с версией не новее.
+ */
+@Getter
+@AllArgsConstructor
+@ToString
+public class SimilarityTombstone {
+    private SimilarityId id;
+
+    private long version;
+}
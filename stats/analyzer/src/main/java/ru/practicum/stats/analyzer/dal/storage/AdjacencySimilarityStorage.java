@@ -0,0 +1,64 @@
+package ru.practicum.stats.analyzer.dal.storage;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Limit;
+import ru.practicum.stats.analyzer.dal.dao.EventNeighborRepository;
+import ru.practicum.stats.analyzer.dal.model.neighbor.EventNeighbor;
+import ru.practicum.stats.analyzer.dal.model.similarity.Similarity;
+import ru.practicum.stats.analyzer.dal.model.similarity.SimilarityId;
+import ru.practicum.stats.analyzer.dal.model.similarity.SimilarityTombstone;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Каждое условие запроса ставится на event_id, без OR по двум столбцам. Прочитанный коэффициент
+ * возвращается с event1 = event_id и event2 = neighbor_id.
+ */
+@RequiredArgsConstructor
+public class AdjacencySimilarityStorage implements SimilarityStorage {
+
+    private final EventNeighborRepository eventNeighborRepository;
+
+    @Override
+    public List<Similarity> findAllByOneOf(Set<Long> eventIds, int limit) {
+        return toSimilarities(eventNeighborRepository
+                .findAllById_EventIdInAndId_NeighborIdNotInOrderBySimilarityDesc(eventIds, eventIds, Limit.of(limit)));
+    }
+
+    @Override
+    public List<Similarity> findAllBetween(Set<Long> eventIds, Set<Long> otherEventIds) {
+        return toSimilarities(eventNeighborRepository.findAllById_EventIdInAndId_NeighborIdIn(eventIds, otherEventIds));
+    }
+
+    @Override
+    public List<Similarity> findNeighbors(long eventId, Set<Long> excluded, int limit) {
+        if (excluded.isEmpty()) {
+            return toSimilarities(eventNeighborRepository.findAllById_EventIdOrderBySimilarityDesc(eventId, Limit.of(limit)));
+        }
+        return toSimilarities(eventNeighborRepository
+                .findAllById_EventIdAndId_NeighborIdNotInOrderBySimilarityDesc(eventId, excluded, Limit.of(limit)));
+    }
+
+    @Override
+    public List<SimilarityId> saveAll(Collection<Similarity> similarities) {
+        return eventNeighborRepository.upsertAll(similarities);
+    }
+
+    @Override
+    public List<SimilarityId> deleteAll(Collection<SimilarityTombstone> tombstones) {
+        return eventNeighborRepository.deleteAll(tombstones);
+    }
+
+    private static List<Similarity> toSimilarities(List<EventNeighbor> neighbors) {
+        return neighbors.stream()
+                .map(n -> Similarity.builder()
+                        .id(new SimilarityId(n.getId().getEventId(), n.getId().getNeighborId()))
+                        .similarity(n.getSimilarity())
+                        .actionTimestamp(n.getActionTimestamp())
+                        .build())
+                .toList();
+    }
+
+}
@@ -0,0 +1,47 @@
+package ru.practicum.stats.analyzer.dal.storage;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Limit;
+import ru.practicum.stats.analyzer.dal.dao.SimilarityRepository;
+import ru.practicum.stats.analyzer.dal.model.similarity.Similarity;
+import ru.practicum.stats.analyzer.dal.model.similarity.SimilarityId;
+import ru.practicum.stats.analyzer.dal.model.similarity.SimilarityTombstone;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+@RequiredArgsConstructor
+public class PairSimilarityStorage implements SimilarityStorage {
+
+    private final SimilarityRepository similarityRepository;
+
+    @Override
+    public List<Similarity> findAllByOneOf(Set<Long> eventIds, int limit) {
+        return similarityRepository.findAllByEvent1InAndEvent2NotInOrderBySimilarityDesc(eventIds, Limit.of(limit));
+    }
+
+    @Override
+    public List<Similarity> findAllBetween(Set<Long> eventIds, Set<Long> otherEventIds) {
+        return similarityRepository.findAllBetweenOrderBySimilarityDesc(eventIds, otherEventIds);
+    }
+
+    @Override
+    public List<Similarity> findNeighbors(long eventId, Set<Long> excluded, int limit) {
+        if (excluded.isEmpty()) {
+            return similarityRepository.findAllByEventIdOrderBySimilarityDesc(eventId, Limit.of(limit));
+        }
+        return similarityRepository.findAllByEventIdAndNotInInteractedOrderBySimilarityDesc(eventId, excluded, limit);
+    }
+
+    @Override
+    public List<SimilarityId> saveAll(Collection<Similarity> similarities) {
+        return similarityRepository.upsertAll(similarities);
+    }
+
+    @Override
+    public List<SimilarityId> deleteAll(Collection<SimilarityTombstone> tombstones) {
+        return similarityRepository.deleteAll(tombstones);
+    }
+
+}
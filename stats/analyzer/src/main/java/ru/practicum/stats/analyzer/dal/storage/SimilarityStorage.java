@@ -0,0 +1,46 @@
+package ru.practicum.stats.analyzer.dal.storage;
+
+import ru.practicum.stats.analyzer.dal.model.similarity.Similarity;
+import ru.practicum.stats.analyzer.dal.model.similarity.SimilarityId;
+import ru.practicum.stats.analyzer.dal.model.similarity.SimilarityTombstone;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Хранилище коэффициентов сходства. В прочитанных коэффициентах event1 не обязательно меньше event2:
+ * чтобы найти второе мероприятие пары, её нужно сравнить с известным.
+ */
+public interface SimilarityStorage {
+
+    /**
+     * Пары, в которых ровно одно мероприятие из eventIds, по убыванию сходства.
+     */
+    List<Similarity> findAllByOneOf(Set<Long> eventIds, int limit);
+
+    /**
+     * Пары, в которых одно мероприятие из eventIds, а другое из otherEventIds.
+     */
+    List<Similarity> findAllBetween(Set<Long> eventIds, Set<Long> otherEventIds);
+
+    /**
+     * Соседи мероприятия, кроме excluded, по убыванию сходства.
+     */
+    List<Similarity> findNeighbors(long eventId, Set<Long> excluded, int limit);
+
+    /**
+     * Записывает пары, версия которых не старее записанной и не старее удаления пары.
+     *
+     * @return записанные пары
+     */
+    List<SimilarityId> saveAll(Collection<Similarity> similarities);
+
+    /**
+     * Удаляет пары, записанные с версией не новее удаления.
+     *
+     * @return удалённые пары
+     */
+    List<SimilarityId> deleteAll(Collection<SimilarityTombstone> tombstones);
+
+}
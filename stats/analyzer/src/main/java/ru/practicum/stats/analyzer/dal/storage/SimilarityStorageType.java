@@ -0,0 +1,8 @@
+package ru.practicum.stats.analyzer.dal.storage;
+
+public enum SimilarityStorageType {
+    // Одна строка на пару в similarities, event1 < event2
+    PAIRS,
+    // Две строки на пару в event_neighbors, по одной со стороны каждого мероприятия
+    ADJACENCY
+}
@@ -0,0 +1,310 @@
+package ru.practicum.stats.analyzer.handler;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import ru.practicum.stats.analyzer.config.PipelineConfig;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Чтение топика в три потока: poll, слияние сообщений в пачку и запись пачек в БД. Потоки связаны
+ * ограниченными очередями. Пока пишется пачка, слияние продолжает копить следующую, поэтому медленная БД
+ * приводит к более крупным пачкам, а не к простою poll. Когда и слияние упирается в maxBatchRecords,
+ * заполняется очередь результатов poll, и партиции ставятся на паузу до её освобождения; poll при этом
+ * продолжается и удерживает консьюмер в группе.
+ * <p>
+ * Смещения пачки фиксируются только после её записи, и только потоком poll: KafkaConsumer не потокобезопасен.
+ * Перед отзывом партиций и при остановке прочитанные сообщения дописываются в БД и смещения фиксируются
+ * синхронно. Если дописать не успели, пачки, прочитанные до отзыва, всё равно записываются, но их смещения
+ * больше не фиксируются: партиция уже у другого участника, и её смещение нельзя откатить назад.
+ */
+@Slf4j
+public class ConsumerPipeline<K, B> implements ConsumerRebalanceListener {
+
+    private static final long IDLE_WAIT_MS = 100;
+
+    private static final long HANDOFF_WAIT_MS = 10;
+
+    private final String name;
+
+    private final Consumer<K, byte[]> consumer;
+
+    private final Stages<K, B> stages;
+
+    private final PipelineConfig config;
+
+    private final BlockingQueue<Polled<K>> polled;
+
+    private final BlockingQueue<Batch<B>> merged;
+
+    // Смещения записанных в БД пачек, ещё не переданные потоку poll
+    private final Map<TopicPartition, Persisted> persisted = new ConcurrentHashMap<>();
+
+    // Результаты poll, ещё не записанные в БД
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final AtomicReference<Exception> failure = new AtomicReference<>();
+
+    private final List<Thread> workers;
+
+    private volatile boolean running = true;
+
+    // Растёт при каждом отзыве партиций; меняется только потоком poll внутри poll()
+    private volatile int generation;
+
+    // Дальше только поток poll
+    private final Map<TopicPartition, OffsetAndMetadata> currentOffsets = new HashMap<>();
+
+    private boolean paused;
+
+    public ConsumerPipeline(String name, Consumer<K, byte[]> consumer, Stages<K, B> stages, PipelineConfig config,
+                            ThreadFactory threadFactory) {
+        this.name = name;
+        this.consumer = consumer;
+        this.stages = stages;
+        this.config = config;
+        this.polled = new ArrayBlockingQueue<>(config.getPollQueueCapacity());
+        this.merged = new ArrayBlockingQueue<>(config.getBatchQueueCapacity());
+        this.workers = List.of(
+                newThread(threadFactory, name + "-merge", this::mergeLoop),
+                newThread(threadFactory, name + "-persist", this::persistLoop));
+    }
+
+    private static Thread newThread(ThreadFactory threadFactory, String name, Runnable task) {
+        Thread thread = threadFactory.newThread(task);
+        thread.setName(name);
+        return thread;
+    }
+
+    /**
+     * Подписывается на топики и читает их, пока консьюмер не разбудят или одна из стадий не упадёт.
+     */
+    public void run(Collection<String> topics, Duration pollTimeout) throws Exception {
+        consumer.subscribe(topics, this);
+        workers.forEach(Thread::start);
+
+        while (true) {
+            throwIfFailed();
+            commitPersisted(false);
+            updatePause();
+
+            ConsumerRecords<K, byte[]> records = consumer.poll(pollTimeout);
+            if (!records.isEmpty()) {
+                inFlight.incrementAndGet();
+                // Место есть: пока очередь полна, партиции на паузе, а забирает из неё только слияние
+                polled.add(new Polled<>(records, generation));
+            }
+        }
+    }
+
+    /**
+     * Дописывает прочитанное, останавливает стадии и синхронно фиксирует смещения записанного.
+     */
+    public void close() {
+        if (failure.get() == null) {
+            awaitPersisted();
+        }
+        running = false;
+        for (Thread worker : workers) {
+            try {
+                worker.join(config.getDrainTimeoutMs());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        commitPersisted(true);
+    }
+
+    @Override
+    public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+        if (failure.get() == null) {
+            awaitPersisted();
+        }
+        commitPersisted(true);
+        partitions.forEach(currentOffsets::remove);
+        // Смещения пачек, прочитанных до отзыва и записанных позже, отбрасываются в commitPersisted
+        generation++;
+    }
+
+    @Override
+    public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+        if (paused) {
+            consumer.pause(partitions);
+        }
+    }
+
+    private void updatePause() {
+        boolean full = polled.remainingCapacity() == 0;
+        if (full && !paused) {
+            consumer.pause(consumer.assignment());
+            paused = true;
+            log.debug("{}: запись в БД не успевает, партиции приостановлены", name);
+        } else if (!full && paused) {
+            consumer.resume(consumer.paused());
+            paused = false;
+            log.debug("{}: чтение партиций возобновлено", name);
+        }
+    }
+
+    // Сообщения сливаются в текущую пачку, пока запись занята предыдущей. В пачку попадают результаты poll
+    // только одного поколения назначения партиций
+    private void mergeLoop() {
+        Batch<B> batch = new Batch<>(stages.newBatch());
+        try {
+            while (running) {
+                Polled<K> next = batch.polls == 0
+                        ? polled.poll(IDLE_WAIT_MS, TimeUnit.MILLISECONDS)
+                        : polled.poll();
+                if (next != null) {
+                    if (batch.polls > 0 && batch.generation != next.generation()) {
+                        merged.put(batch);
+                        batch = new Batch<>(stages.newBatch());
+                    }
+                    batch.generation = next.generation();
+                    ConsumerRecords<K, byte[]> records = next.records();
+                    for (ConsumerRecord<K, byte[]> record : records) {
+                        stages.merge(record, batch.value);
+                        batch.offsets.put(new TopicPartition(record.topic(), record.partition()),
+                                new OffsetAndMetadata(record.offset() + 1));
+                    }
+                    batch.polls++;
+                    batch.records += records.count();
+                    if (batch.records >= config.getMaxBatchRecords()) {
+                        merged.put(batch);
+                        batch = new Batch<>(stages.newBatch());
+                    }
+                } else if (batch.polls > 0 && merged.offer(batch, HANDOFF_WAIT_MS, TimeUnit.MILLISECONDS)) {
+                    batch = new Batch<>(stages.newBatch());
+                }
+            }
+        } catch (Exception e) {
+            fail(e);
+        }
+    }
+
+    private void persistLoop() {
+        try {
+            while (running) {
+                Batch<B> batch = merged.poll(IDLE_WAIT_MS, TimeUnit.MILLISECONDS);
+                if (batch == null) {
+                    continue;
+                }
+                stages.persist(batch.value);
+                for (Map.Entry<TopicPartition, OffsetAndMetadata> offset : batch.offsets.entrySet()) {
+                    persisted.put(offset.getKey(), new Persisted(offset.getValue(), batch.generation));
+                }
+                inFlight.addAndGet(-batch.polls);
+                log.debug("{}: записана пачка из {} сообщений", name, batch.records);
+            }
+        } catch (Exception e) {
+            fail(e);
+        }
+    }
+
+    private void fail(Exception e) {
+        failure.compareAndSet(null, e);
+        running = false;
+    }
+
+    private void throwIfFailed() throws Exception {
+        Exception e = failure.get();
+        if (e != null) {
+            throw e;
+        }
+    }
+
+    private void awaitPersisted() {
+        long deadline = System.currentTimeMillis() + config.getDrainTimeoutMs();
+        try {
+            while (inFlight.get() > 0 && failure.get() == null) {
+                if (System.currentTimeMillis() > deadline) {
+                    log.warn("{}: за {} мс не записаны {} результатов poll, они будут прочитаны повторно",
+                            name, config.getDrainTimeoutMs(), inFlight.get());
+                    return;
+                }
+                Thread.sleep(HANDOFF_WAIT_MS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void commitPersisted(boolean sync) {
+        boolean changed = false;
+        for (Map.Entry<TopicPartition, Persisted> entry : persisted.entrySet()) {
+            // Запись могла успеть обновить смещение, тогда новое останется до следующей фиксации
+            if (!persisted.remove(entry.getKey(), entry.getValue())) {
+                continue;
+            }
+            // Прочитано до отзыва партиций: даже если партиция снова назначена, фиксировать старое смещение нельзя
+            if (entry.getValue().generation() != generation) {
+                log.debug("{}: смещение {} прочитано до отзыва партиций и не фиксируется", name, entry.getKey());
+                continue;
+            }
+            currentOffsets.put(entry.getKey(), entry.getValue().offset());
+            changed = true;
+        }
+
+        if (sync) {
+            log.debug("{}: синхронно фиксируем смещения {}", name, currentOffsets);
+            consumer.commitSync(currentOffsets);
+        } else if (changed) {
+            log.debug("{}: асинхронно фиксируем смещения сохранённых сообщений", name);
+            consumer.commitAsync(new HashMap<>(currentOffsets), (offsets, exception) -> {
+                if (exception != null) {
+                    log.warn("Ошибка при фиксации смещений: {}", offsets, exception);
+                } else {
+                    log.debug("Успешно зафиксированы смещения: {}", offsets);
+                }
+            });
+        }
+    }
+
+    /**
+     * Стадии обработки. merge вызывается только потоком слияния, persist - только потоком записи.
+     */
+    public interface Stages<K, B> {
+
+        B newBatch();
+
+        void merge(ConsumerRecord<K, byte[]> record, B batch);
+
+        void persist(B batch) throws Exception;
+
+    }
+
+    private record Polled<K>(ConsumerRecords<K, byte[]> records, int generation) {
+    }
+
+    private record Persisted(OffsetAndMetadata offset, int generation) {
+    }
+
+    private static class Batch<B> {
+        private final B value;
+        private final Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        private int polls;
+        private int records;
+        private int generation;
+
+        private Batch(B value) {
+            this.value = value;
+        }
+    }
+
+}
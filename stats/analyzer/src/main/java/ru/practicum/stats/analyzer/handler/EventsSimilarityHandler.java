@@ -4,21 +4,24 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
-import org.apache.kafka.clients.consumer.ConsumerRecords;
-import org.apache.kafka.clients.consumer.OffsetAndMetadata;
-import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.errors.WakeupException;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
 import ru.practicum.ewm.stats.avro.EventSimilarityAvro;
+import ru.practicum.ewm.stats.avro.deserializer.EventsSimilarityDeserializer;
+import ru.practicum.ewm.stats.avro.header.SimilarityVersionHeader;
+import ru.practicum.stats.analyzer.cache.RecommendationStore;
+import ru.practicum.stats.analyzer.cache.SimilarityCache;
 import ru.practicum.stats.analyzer.config.KafkaConfig;
+import ru.practicum.stats.analyzer.config.PipelineConfig;
+import ru.practicum.stats.analyzer.config.PipelineThreadFactory;
+import ru.practicum.stats.analyzer.dal.model.similarity.Similarity;
+import ru.practicum.stats.analyzer.dal.model.similarity.SimilarityTombstone;
+import ru.practicum.stats.analyzer.service.EventsSimilarityBatch;
 import ru.practicum.stats.analyzer.service.EventsSimilarityService;
 
-import java.util.HashMap;
-import java.util.Map;
-
 @Slf4j
 @RequiredArgsConstructor
 @Component
@@ -28,15 +31,20 @@ public class EventsSimilarityHandler {
 
     private final EventsSimilarityService eventsSimilarityService;
 
-    private final Map<TopicPartition, OffsetAndMetadata> currentOffsets = new HashMap<>();
+    private final SimilarityCache similarityCache;
+
+    private final RecommendationStore recommendationStore;
 
-    private final int BATCH_SIZE = 50;
+    private final PipelineConfig pipelineConfig;
 
+    private final PipelineThreadFactory pipelineThreadFactory;
 
     @Async
     @EventListener(ApplicationReadyEvent.class)
     public void saveEventsSimilarity() {
-        final Consumer<String, EventSimilarityAvro> consumer = kafka.getEventsSimilarityConsumer();
+        final Consumer<String, byte[]> consumer = kafka.getEventsSimilarityConsumer();
+        final ConsumerPipeline<String, EventsSimilarityBatch> pipeline =
+                new ConsumerPipeline<>("events-similarity", consumer, new Stages(), pipelineConfig, pipelineThreadFactory);
 
         try {
             Runtime.getRuntime().addShutdownHook(new Thread(() -> {
@@ -44,20 +52,7 @@ public class EventsSimilarityHandler {
                 consumer.wakeup();
             }));
 
-            consumer.subscribe(kafka.eventSimilarityTopics());
-
-            while (true) {
-                ConsumerRecords<String, EventSimilarityAvro> records = consumer.poll(kafka.eventSimilarityPollTimeout());
-                int count = 0;
-
-                for (ConsumerRecord<String, EventSimilarityAvro> record : records) {
-                    handleRecord(record);
-                    manageOffsets(consumer, record, count);
-                    count++;
-                }
-
-                consumer.commitAsync();
-            }
+            pipeline.run(kafka.eventSimilarityTopics(), kafka.eventSimilarityPollTimeout());
         } catch (WakeupException ignored) {
             log.error("Получен WakeupException");
         } catch (Exception e) {
@@ -65,40 +60,57 @@ public class EventsSimilarityHandler {
         } finally {
             try {
                 log.debug("Фиксация смещений");
-                consumer.commitSync();
+                pipeline.close();
             } finally {
                 kafka.stop();
             }
         }
     }
 
-    private void handleRecord(ConsumerRecord<String, EventSimilarityAvro> record) {
-        EventSimilarityAvro event = record.value();
+    private void updateCache(EventsSimilarityBatch batch) {
+        for (Similarity s : batch.getSaved()) {
+            similarityCache.put(s.getId().getEvent1(), s.getId().getEvent2(), s.getSimilarity());
+        }
+        for (SimilarityTombstone tombstone : batch.getDeleted()) {
+            similarityCache.remove(tombstone.getId().getEvent1(), tombstone.getId().getEvent2());
+        }
+    }
+
+    private class Stages implements ConsumerPipeline.Stages<String, EventsSimilarityBatch> {
+        // Сообщения приходят байтами и по одному читаются в одну и ту же запись
+        private final EventsSimilarityDeserializer deserializer = new EventsSimilarityDeserializer();
+        private final EventSimilarityAvro similarity = new EventSimilarityAvro();
 
-        log.info("Получено событие схожести: {}", event.toString());
+        @Override
+        public EventsSimilarityBatch newBatch() {
+            return new EventsSimilarityBatch();
+        }
 
-        eventsSimilarityService.save(event);
-    }
+        @Override
+        public void merge(ConsumerRecord<String, byte[]> record, EventsSimilarityBatch batch) {
+            EventSimilarityAvro event = deserializer.deserialize(record.topic(), record.value(), similarity);
+            long version = SimilarityVersionHeader.read(record.headers());
+            // Пустое значение: агрегатор вытеснил пару из top-K обоих мероприятий, ключ имеет вид "eventA:eventB"
+            if (event == null) {
+                log.debug("Получено удаление схожести: {}", record.key());
+
+                String[] eventIds = record.key().split(":");
+                batch.remove(Long.parseLong(eventIds[0]), Long.parseLong(eventIds[1]), version);
+                return;
+            }
+
+            log.debug("Получено событие схожести: {}", event);
+
+            batch.add(event, version);
+        }
 
-    private void manageOffsets(
-            Consumer<String, EventSimilarityAvro> consumer,
-            ConsumerRecord<String, EventSimilarityAvro> record,
-            int count
-    ) {
-        currentOffsets.put(
-                new TopicPartition(record.topic(), record.partition()),
-                new OffsetAndMetadata(record.offset() + 1)
-        );
-
-        if (count % BATCH_SIZE == 0) {
-            log.debug("Асинхронно фиксируем смещения обработанных сообщений");
-            consumer.commitAsync(currentOffsets, (offsets, exception) -> {
-                if (exception != null) {
-                    log.warn("Ошибка при фиксации смещений: {}", offsets, exception);
-                } else {
-                    log.debug("Успешно зафиксированы смещения: {}", offsets);
-                }
-            });
+        @Override
+        public void persist(EventsSimilarityBatch batch) {
+            eventsSimilarityService.saveAll(batch);
+            // Кэш обновляется после записи в БД, чтобы загрузка соседей не закэшировала данные старее записи.
+            // В пачке к этому моменту остались только применённые изменения
+            updateCache(batch);
+            recommendationStore.markEventsDirty(batch.getEventIds());
         }
     }
 }
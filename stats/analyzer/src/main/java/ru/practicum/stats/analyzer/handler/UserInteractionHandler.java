@@ -4,21 +4,20 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
-import org.apache.kafka.clients.consumer.ConsumerRecords;
-import org.apache.kafka.clients.consumer.OffsetAndMetadata;
-import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.errors.WakeupException;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
 import ru.practicum.ewm.stats.avro.UserActionAvro;
+import ru.practicum.ewm.stats.avro.deserializer.UserActionDeserializer;
+import ru.practicum.stats.analyzer.cache.RecommendationStore;
 import ru.practicum.stats.analyzer.config.KafkaConfig;
+import ru.practicum.stats.analyzer.config.PipelineConfig;
+import ru.practicum.stats.analyzer.config.PipelineThreadFactory;
+import ru.practicum.stats.analyzer.service.InteractionBatch;
 import ru.practicum.stats.analyzer.service.InteractionService;
 
-import java.util.HashMap;
-import java.util.Map;
-
 @Slf4j
 @RequiredArgsConstructor
 @Component
@@ -28,14 +27,18 @@ public class UserInteractionHandler {
 
     private final InteractionService interactionService;
 
-    private final Map<TopicPartition, OffsetAndMetadata> currentOffsets = new HashMap<>();
+    private final RecommendationStore recommendationStore;
+
+    private final PipelineConfig pipelineConfig;
 
-    private final int BATCH_SIZE = 50;
+    private final PipelineThreadFactory pipelineThreadFactory;
 
     @Async
     @EventListener(ApplicationReadyEvent.class)
     public void saveUserActions() {
-        final Consumer<Long, UserActionAvro> consumer = kafka.getUserActionsConsumer();
+        final Consumer<Long, byte[]> consumer = kafka.getUserActionsConsumer();
+        final ConsumerPipeline<Long, InteractionBatch> pipeline =
+                new ConsumerPipeline<>("user-actions", consumer, new Stages(), pipelineConfig, pipelineThreadFactory);
 
         try {
             Runtime.getRuntime().addShutdownHook(new Thread(() -> {
@@ -43,60 +46,47 @@ public class UserInteractionHandler {
                 consumer.wakeup();
             }));
 
-            consumer.subscribe(kafka.userActionsTopics());
-
-            while (true) {
-                ConsumerRecords<Long, UserActionAvro> records = consumer.poll(kafka.userActionsPollTimeout());
-                int count = 0;
-
-                for (ConsumerRecord<Long, UserActionAvro> record : records) {
-                    handleRecord(record);
-                    manageOffsets(consumer, record, count);
-                    count++;
-                }
-                consumer.commitAsync();
-            }
+            pipeline.run(kafka.userActionsTopics(), kafka.userActionsPollTimeout());
         } catch (WakeupException ignored) {
             log.error("Получен WakeupException");
         } catch (Exception e) {
-            log.error("Ошибка во время обработки коэффицентов сходства", e);
+            log.error("Ошибка во время обработки действий пользователей", e);
         } finally {
             try {
                 log.debug("Фиксация смещений");
-                consumer.commitSync();
+                pipeline.close();
             } finally {
                 kafka.stop();
             }
         }
     }
 
-    private void handleRecord(ConsumerRecord<Long, UserActionAvro> record) {
-        UserActionAvro event = record.value();
+    private class Stages implements ConsumerPipeline.Stages<Long, InteractionBatch> {
+        // Сообщения приходят байтами и по одному читаются в одну и ту же запись
+        private final UserActionDeserializer deserializer = new UserActionDeserializer();
+        private final UserActionAvro action = new UserActionAvro();
 
-        log.info("Получено событие действия пользователя: {}", event.toString());
+        @Override
+        public InteractionBatch newBatch() {
+            return interactionService.newBatch();
+        }
 
-        interactionService.saveIfWeightHigher(event);
-    }
+        @Override
+        public void merge(ConsumerRecord<Long, byte[]> record, InteractionBatch batch) {
+            UserActionAvro event = deserializer.deserialize(record.topic(), record.value(), action);
+            if (event == null) {
+                return;
+            }
+
+            log.debug("Получено событие действия пользователя: {}", event);
+
+            batch.add(event);
+        }
 
-    private void manageOffsets(
-            Consumer<Long, UserActionAvro> consumer,
-            ConsumerRecord<Long, UserActionAvro> record,
-            int count
-    ) {
-        currentOffsets.put(
-                new TopicPartition(record.topic(), record.partition()),
-                new OffsetAndMetadata(record.offset() + 1)
-        );
-
-        if (count % BATCH_SIZE == 0) {
-            log.debug("Асинхронно фиксируем смещения обработанных сообщений");
-            consumer.commitAsync(currentOffsets, (offsets, exception) -> {
-                if (exception != null) {
-                    log.warn("Ошибка при фиксации смещений: {}", offsets, exception);
-                } else {
-                    log.debug("Успешно зафиксированы смещения: {}", offsets);
-                }
-            });
+        @Override
+        public void persist(InteractionBatch batch) {
+            interactionService.saveAllIfWeightHigher(batch);
+            recommendationStore.markUsersDirty(batch.getUserIds());
         }
     }
 }
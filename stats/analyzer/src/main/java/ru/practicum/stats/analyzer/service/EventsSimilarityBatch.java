@@ -0,0 +1,109 @@
+package ru.practicum.stats.analyzer.service;
+
+import ru.practicum.ewm.stats.avro.EventSimilarityAvro;
+import ru.practicum.stats.analyzer.dal.model.similarity.Similarity;
+import ru.practicum.stats.analyzer.dal.model.similarity.SimilarityId;
+import ru.practicum.stats.analyzer.dal.model.similarity.SimilarityTombstone;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Коэффициенты сходства одного poll: для каждой пары мероприятий остаётся значение или удаление
+ * с наибольшей версией. Из сообщения сразу копируются значения, поэтому запись можно переиспользовать.
+ */
+public class EventsSimilarityBatch {
+
+    private final Map<SimilarityId, Similarity> saved = new LinkedHashMap<>();
+
+    private final Map<SimilarityId, SimilarityTombstone> deleted = new LinkedHashMap<>();
+
+    public void add(EventSimilarityAvro event, long version) {
+        SimilarityId id = SimilarityId.of(event.getEventA(), event.getEventB());
+        if (version < versionOf(id)) {
+            return;
+        }
+        deleted.remove(id);
+        saved.put(id, Similarity.builder()
+                .id(id)
+                .similarity(event.getScore())
+                .actionTimestamp(event.getTimestamp())
+                .version(version)
+                .build());
+    }
+
+    public void remove(long eventA, long eventB, long version) {
+        SimilarityId id = SimilarityId.of(eventA, eventB);
+        if (version < versionOf(id)) {
+            return;
+        }
+        saved.remove(id);
+        deleted.put(id, new SimilarityTombstone(id, version));
+    }
+
+    /**
+     * Оставляет в пачке только изменения, применённые в БД: пары, для которых в БД уже лежит
+     * более новая версия, не должны попасть в кэш.
+     */
+    public void retainApplied(Collection<SimilarityId> savedIds, Collection<SimilarityId> deletedIds) {
+        saved.keySet().retainAll(new HashSet<>(savedIds));
+        deleted.keySet().retainAll(new HashSet<>(deletedIds));
+    }
+
+    public int size() {
+        return saved.size() + deleted.size();
+    }
+
+    public boolean isEmpty() {
+        return saved.isEmpty() && deleted.isEmpty();
+    }
+
+    // Мероприятия всех сохранённых и удалённых пар
+    public Set<Long> getEventIds() {
+        Set<Long> eventIds = new HashSet<>();
+        for (SimilarityId id : saved.keySet()) {
+            eventIds.add(id.getEvent1());
+            eventIds.add(id.getEvent2());
+        }
+        for (SimilarityId id : deleted.keySet()) {
+            eventIds.add(id.getEvent1());
+            eventIds.add(id.getEvent2());
+        }
+        return eventIds;
+    }
+
+    public List<Similarity> getSaved() {
+        return new ArrayList<>(saved.values());
+    }
+
+    public List<SimilarityTombstone> getDeleted() {
+        return new ArrayList<>(deleted.values());
+    }
+
+    // Наибольшая версия пачки, 0 для пустой
+    public long getMaxVersion() {
+        long max = 0L;
+        for (Similarity similarity : saved.values()) {
+            max = Math.max(max, similarity.getVersion());
+        }
+        for (SimilarityTombstone tombstone : deleted.values()) {
+            max = Math.max(max, tombstone.getVersion());
+        }
+        return max;
+    }
+
+    private long versionOf(SimilarityId id) {
+        Similarity similarity = saved.get(id);
+        if (similarity != null) {
+            return similarity.getVersion();
+        }
+        SimilarityTombstone tombstone = deleted.get(id);
+        return tombstone == null ? Long.MIN_VALUE : tombstone.getVersion();
+    }
+
+}
@@ -1,10 +1,11 @@
 package ru.practicum.stats.analyzer.service;
 
-import ru.practicum.ewm.stats.avro.EventSimilarityAvro;
-import ru.practicum.stats.analyzer.dal.model.similarity.Similarity;
-
 public interface EventsSimilarityService {
 
-    Similarity save(EventSimilarityAvro event);
+    /**
+     * Записывает и удаляет коэффициенты сходства пачки в одной транзакции. Изменения, проигравшие более новой
+     * версии пары в БД, убираются из пачки.
+     */
+    void saveAll(EventsSimilarityBatch batch);
 
 }
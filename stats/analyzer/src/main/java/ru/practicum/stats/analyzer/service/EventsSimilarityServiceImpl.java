@@ -3,31 +3,67 @@ package ru.practicum.stats.analyzer.service;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
-import ru.practicum.ewm.stats.avro.EventSimilarityAvro;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.stats.analyzer.config.SimilarityStorageConfig;
 import ru.practicum.stats.analyzer.dal.dao.SimilarityRepository;
 import ru.practicum.stats.analyzer.dal.model.similarity.Similarity;
 import ru.practicum.stats.analyzer.dal.model.similarity.SimilarityId;
+import ru.practicum.stats.analyzer.dal.model.similarity.SimilarityTombstone;
+import ru.practicum.stats.analyzer.dal.storage.SimilarityStorage;
 
+import java.util.List;
+
+/**
+ * Версии удалений хранятся в similarity_tombstones при любом типе хранилища. Версия агрегатора - время
+ * в наносекундах, поэтому устаревшие удаления отсчитываются от наибольшей полученной версии.
+ */
 @Service
 @Slf4j
 @RequiredArgsConstructor
 public class EventsSimilarityServiceImpl implements EventsSimilarityService {
 
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+
+    private final SimilarityStorage similarityStorage;
+
     private final SimilarityRepository similarityRepository;
 
+    private final SimilarityStorageConfig storageConfig;
+
+    // Вызывается из одного потока записи конвейера
+    private long nextPurgeVersion;
+
     @Override
-    public Similarity save(EventSimilarityAvro event) {
-        SimilarityId id = SimilarityId.of(event.getEventA(), event.getEventB());
+    @Transactional
+    public void saveAll(EventsSimilarityBatch batch) {
+        List<Similarity> saved = batch.getSaved();
+        List<SimilarityTombstone> deleted = batch.getDeleted();
+        long maxVersion = batch.getMaxVersion();
+
+        log.debug("Сохраняем {} и удаляем {} коэффициентов сходства", saved.size(), deleted.size());
 
-        Similarity similarity = Similarity.builder()
-                .id(id)
-                .similarity(event.getScore())
-                .actionTimestamp(event.getTimestamp())
-                .build();
+        // Удаления запоминаются первыми: их версии проверяются при записи пар
+        similarityRepository.saveTombstones(deleted);
+        List<SimilarityId> savedIds = similarityStorage.saveAll(saved);
+        List<SimilarityId> deletedIds = similarityStorage.deleteAll(deleted);
 
-        log.info("Сохраняем похожесть событий {}", similarity);
+        if (savedIds.size() < saved.size() || deletedIds.size() < deleted.size()) {
+            log.debug("Пропущено {} обновлений сходства со старой версией",
+                    saved.size() - savedIds.size() + deleted.size() - deletedIds.size());
+        }
+        batch.retainApplied(savedIds, deletedIds);
+
+        purgeTombstones(maxVersion);
+    }
 
-        return similarityRepository.save(similarity);
+    private void purgeTombstones(long maxVersion) {
+        long retention = storageConfig.getTombstoneRetentionMs() * NANOS_PER_MILLI;
+        if (maxVersion < nextPurgeVersion || maxVersion <= retention) {
+            return;
+        }
+        int purged = similarityRepository.deleteTombstonesBefore(maxVersion - retention);
+        log.debug("Удалено {} устаревших версий удалений пар", purged);
+        nextPurgeVersion = maxVersion + retention / 10;
     }
 
 }
@@ -0,0 +1,79 @@
+package ru.practicum.stats.analyzer.service;
+
+import ru.practicum.ewm.stats.avro.ActionTypeAvro;
+import ru.practicum.ewm.stats.avro.UserActionAvro;
+import ru.practicum.stats.analyzer.config.DecayConfig;
+import ru.practicum.stats.analyzer.dal.model.interaction.Interaction;
+import ru.practicum.stats.analyzer.dal.model.interaction.InteractionId;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Действия одного poll: для каждой пары пользователь-мероприятие остаётся одно взаимодействие,
+ * выбранное по тому же правилу, что и при записи в БД: новый вес заменяет старый, только если больше
+ * старого, затухшего к моменту нового действия. Из действия сразу копируются значения,
+ * поэтому запись можно переиспользовать.
+ */
+public class InteractionBatch {
+
+    private final DecayConfig decayConfig;
+
+    private final Map<InteractionId, Interaction> interactions = new HashMap<>();
+
+    private final Map<Long, Instant> lastActionTimes = new HashMap<>();
+
+    InteractionBatch(DecayConfig decayConfig) {
+        this.decayConfig = decayConfig;
+    }
+
+    public void add(UserActionAvro action) {
+        InteractionId id = InteractionId.of(action.getUserId(), action.getEventId());
+        double weight = mapUserActionWeight(action.getActionType());
+        Instant actionTs = action.getTimestamp();
+
+        lastActionTimes.merge(id.getUserId(), actionTs, (a, b) -> a.isAfter(b) ? a : b);
+
+        Interaction old = interactions.get(id);
+        if (old == null || weight > decayConfig.decay(old.getRating(), old.getActionDateTime(), actionTs)) {
+            interactions.put(id, Interaction.builder()
+                    .id(id)
+                    .rating(weight)
+                    .actionDateTime(actionTs)
+                    .build());
+        }
+    }
+
+    public int size() {
+        return interactions.size();
+    }
+
+    public boolean isEmpty() {
+        return interactions.isEmpty();
+    }
+
+    public Set<Long> getUserIds() {
+        return lastActionTimes.keySet();
+    }
+
+    Collection<Interaction> getInteractions() {
+        return interactions.values();
+    }
+
+    // Время последнего действия каждого пользователя в пачке
+    Map<Long, Instant> getLastActionTimes() {
+        return lastActionTimes;
+    }
+
+    private static double mapUserActionWeight(ActionTypeAvro actionType) {
+        return switch (actionType) {
+            case VIEW -> 0.4;
+            case REGISTER -> 0.8;
+            case LIKE -> 1.0;
+        };
+    }
+
+}
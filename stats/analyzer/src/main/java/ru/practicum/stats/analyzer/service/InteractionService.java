@@ -1,9 +1,12 @@
 package ru.practicum.stats.analyzer.service;
 
-import ru.practicum.ewm.stats.avro.UserActionAvro;
-
 public interface InteractionService {
 
-    void saveIfWeightHigher(UserActionAvro action);
+    InteractionBatch newBatch();
+
+    /**
+     * Сохраняет взаимодействия пачки одним запросом, заменяя записанные только большим весом.
+     */
+    void saveAllIfWeightHigher(InteractionBatch batch);
 
 }
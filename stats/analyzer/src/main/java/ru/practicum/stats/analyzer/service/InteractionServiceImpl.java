@@ -4,13 +4,12 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import ru.practicum.ewm.stats.avro.ActionTypeAvro;
-import ru.practicum.ewm.stats.avro.UserActionAvro;
+import ru.practicum.stats.analyzer.config.DecayConfig;
 import ru.practicum.stats.analyzer.dal.dao.InteractionRepository;
-import ru.practicum.stats.analyzer.dal.model.interaction.Interaction;
-import ru.practicum.stats.analyzer.dal.model.interaction.InteractionId;
 
-import java.util.Optional;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
 
 @Service
 @Slf4j
@@ -20,30 +19,35 @@ public class InteractionServiceImpl implements InteractionService {
 
     private final InteractionRepository interactionRepository;
 
+    private final DecayConfig decayConfig;
+
     @Override
-    public void saveIfWeightHigher(UserActionAvro action) {
-        InteractionId id = InteractionId.of(action.getUserId(), action.getEventId());
+    public InteractionBatch newBatch() {
+        return new InteractionBatch(decayConfig);
+    }
 
-        Optional<Interaction> oldInteractionOpt = interactionRepository.findById(id);
+    @Override
+    public void saveAllIfWeightHigher(InteractionBatch batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
 
-        Double oldWeight = oldInteractionOpt.map(Interaction::getRating).orElse(0.0);
-        Double newWeight = mapUserActionWeight(action.getActionType());
+        if (decayConfig.isEnabled()) {
+            Map<Long, Instant> negligibleBefore = new HashMap<>();
+            batch.getLastActionTimes().forEach((userId, lastActionTs) ->
+                    negligibleBefore.put(userId, decayConfig.negligibleBefore(lastActionTs)));
 
-        if (newWeight > oldWeight) {
-            interactionRepository.save(Interaction.builder()
-                    .id(id)
-                    .rating(newWeight)
-                    .actionDateTime(action.getTimestamp())
-                    .build());
+            int evicted = interactionRepository.deleteAllByUserIdAndActionDateTimeBefore(negligibleBefore);
+            if (evicted > 0) {
+                log.debug("Удалено {} затухших взаимодействий {} пользователей", evicted, negligibleBefore.size());
+            }
         }
-    }
 
-    private static Double mapUserActionWeight(ActionTypeAvro actionType) {
-        return switch (actionType) {
-            case VIEW -> 0.4;
-            case REGISTER -> 0.8;
-            case LIKE -> 1.0;
-        };
+        // При выключенном затухании lambda = 0, и старая оценка сравнивается как есть
+        double lambda = decayConfig.isEnabled() ? decayConfig.getLambda() : 0.0;
+        int updated = interactionRepository.upsertAllIfRatingHigher(batch.getInteractions(), lambda);
+
+        log.debug("Из {} взаимодействий записано {}", batch.size(), updated);
     }
 
 }
@@ -0,0 +1,8 @@
+package ru.practicum.stats.analyzer.service;
+
+public enum RecommendationEngineType {
+    // Предсказание по коэффициентам сходства из БД
+    EXACT,
+    // Кандидаты и сходство по векторному индексу мероприятий в памяти
+    APPROXIMATE
+}
@@ -1,5 +1,6 @@
 package ru.practicum.stats.analyzer.service;
 
+import org.springframework.data.util.CloseableIterator;
 import ru.practicum.ewm.stats.proto.InteractionsCountRequestProto;
 import ru.practicum.ewm.stats.proto.RecommendedEventProto;
 import ru.practicum.ewm.stats.proto.SimilarEventsRequestProto;
@@ -15,4 +16,10 @@ public interface RecommendationsService {
 
     List<RecommendedEventProto> getInteractionsCounts(InteractionsCountRequestProto request);
 
+    /**
+     * То же, что getInteractionsCounts, но строки читаются из БД по мере обхода.
+     * Итератор держит соединение с БД, пока его не закроют.
+     */
+    CloseableIterator<RecommendedEventProto> streamInteractionsCounts(InteractionsCountRequestProto request);
+
 }
@@ -3,18 +3,31 @@ package ru.practicum.stats.analyzer.service;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Limit;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import ru.practicum.ewm.stats.proto.InteractionsCountRequestProto;
+import ru.practicum.ewm.stats.proto.RecommendationEngineProto;
 import ru.practicum.ewm.stats.proto.RecommendedEventProto;
 import ru.practicum.ewm.stats.proto.SimilarEventsRequestProto;
 import ru.practicum.ewm.stats.proto.UserPredictionsRequestProto;
+import ru.practicum.stats.analyzer.ann.AnnRecommender;
+import ru.practicum.stats.analyzer.cache.ComputedRecommendations;
+import ru.practicum.stats.analyzer.cache.RecommendationStore;
+import ru.practicum.stats.analyzer.cache.SimilarityCache;
+import ru.practicum.stats.analyzer.config.DecayConfig;
+import ru.practicum.stats.analyzer.config.RecommendationEngineConfig;
+import ru.practicum.stats.analyzer.config.RecommendationStoreConfig;
+import ru.practicum.stats.analyzer.config.StreamingConfig;
+import ru.practicum.stats.analyzer.dal.dao.EventRatingTotalRepository;
 import ru.practicum.stats.analyzer.dal.dao.InteractionRepository;
-import ru.practicum.stats.analyzer.dal.dao.SimilarityRepository;
 import ru.practicum.stats.analyzer.dal.dto.EventRatingDto;
 import ru.practicum.stats.analyzer.dal.model.interaction.Interaction;
 import ru.practicum.stats.analyzer.dal.model.similarity.Similarity;
+import ru.practicum.stats.analyzer.dal.storage.SimilarityStorage;
 
+import java.time.Instant;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -23,30 +36,115 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class RecommendationsServiceImpl implements RecommendationsService {
 
-    private final SimilarityRepository similarityRepository;
+    private final SimilarityStorage similarityStorage;
 
     private final InteractionRepository interactionRepository;
 
+    private final EventRatingTotalRepository eventRatingTotalRepository;
+
+    private final DecayConfig decayConfig;
+
+    private final SimilarityCache similarityCache;
+
+    private final StreamingConfig streamingConfig;
+
+    private final AnnRecommender annRecommender;
+
+    private final RecommendationEngineConfig engineConfig;
+
+    private final RecommendationStore recommendationStore;
+
+    private final RecommendationStoreConfig storeConfig;
+
+    // Без общей транзакции: рассчитанные рекомендации могут записываться в БД
     @Override
-    @Transactional(readOnly = true)
     public List<RecommendedEventProto> getRecommendationsForUser(UserPredictionsRequestProto request) {
+        boolean approximate = isApproximate(request.getEngine());
+
+        boolean completed = false;
+        try {
+            Optional<List<RecommendedEventProto>> stored = recommendationStore
+                    .find(request.getUserId(), request.getMaxResults(), approximate);
+            if (stored.isPresent()) {
+                log.debug("Рекомендации пользователя {} взяты из хранилища рассчитанных", request.getUserId());
+                completed = true;
+                return stored.get();
+            }
+
+            ComputedRecommendations computed = computeRecommendations(request.getUserId(), request.getMaxResults(),
+                    approximate);
+            recommendationStore.putAll(List.of(computed));
+            completed = true;
+            return computed.recommendations();
+        } finally {
+            if (!completed) {
+                recommendationStore.abandon(request.getUserId());
+            }
+        }
+    }
 
+    // Пересчитывает пачками пользователей, чьи входные данные изменились, пока не останется неполная пачка.
+    // Пользователи, которых не удалось пересчитать, снова помечаются устаревшими уже после прохода,
+    // чтобы не забирать их повторно в том же цикле
+    @Scheduled(fixedDelayString = "#{@recommendationStoreConfig.refreshIntervalMs}")
+    public void refreshDirtyRecommendations() {
+        List<Long> failed = new ArrayList<>();
+        try {
+            List<UserPredictionsRequestProto> dirty;
+            do {
+                dirty = recommendationStore.pollDirty(storeConfig.getBatchSize());
+                if (dirty.isEmpty()) {
+                    return;
+                }
+                List<ComputedRecommendations> refreshed = new ArrayList<>(dirty.size());
+                for (UserPredictionsRequestProto request : dirty) {
+                    try {
+                        refreshed.add(computeRecommendations(request.getUserId(), request.getMaxResults(),
+                                request.getEngine() == RecommendationEngineProto.ENGINE_APPROXIMATE));
+                    } catch (RuntimeException e) {
+                        log.warn("Не удалось пересчитать рекомендации пользователя {}", request.getUserId(), e);
+                        failed.add(request.getUserId());
+                    }
+                }
+                recommendationStore.putAll(refreshed);
+                log.debug("Пересчитаны рекомендации {} пользователей", refreshed.size());
+            } while (dirty.size() == storeConfig.getBatchSize());
+        } finally {
+            if (!failed.isEmpty()) {
+                recommendationStore.markUsersDirty(failed);
+            }
+        }
+    }
+
+    private ComputedRecommendations computeRecommendations(long userId, int maxResults, boolean approximate) {
         List<Interaction> interactions = interactionRepository
-                .findAllById_UserIdOrderByActionDateTimeDesc(request.getUserId(), Limit.of(request.getMaxResults()));
+                .findAllById_UserIdOrderByActionDateTimeDesc(userId, Limit.of(maxResults));
 
         log.debug("Получены N мероприятий недавно просмотренных пользователем: {}", interactions);
 
         if (interactions.isEmpty()) {
-            return Collections.emptyList();
+            return new ComputedRecommendations(userId, maxResults, approximate, Set.of(), List.of());
         }
 
-        Set<Long> interactedEventIds = interactions.stream()
-                .map(i -> i.getId().getEventId())
-                .collect(Collectors.toSet());
+        Instant now = Instant.now();
 
+        Map<Long, Double> ratings = interactions.stream()
+                .collect(Collectors.toMap(
+                        i -> i.getId().getEventId(),
+                        i -> decayConfig.decay(i.getRating(), i.getActionDateTime(), now)));
 
-        List<Similarity> notInteractedSimilarities = similarityRepository
-                .findAllByEvent1InAndEvent2NotInOrderBySimilarityDesc(interactedEventIds, Limit.of(request.getMaxResults()));
+        Set<Long> interactedEventIds = ratings.keySet();
+
+        if (approximate) {
+            Optional<List<RecommendedEventProto>> recommendations = annRecommender.recommend(ratings, maxResults);
+            if (recommendations.isPresent()) {
+                return new ComputedRecommendations(userId, maxResults, true, interactedEventIds, recommendations.get());
+            }
+            log.debug("Векторный индекс ещё строится, рекомендации для пользователя {} считаются точно", userId);
+        }
+
+        List<Similarity> notInteractedSimilarities = similarityStorage
+                .findAllByOneOf(interactedEventIds, maxResults);
 
         log.debug("Найдены похожие N, с котороми пользователь еще не взаимодействовал: {}", notInteractedSimilarities);
 
@@ -56,65 +154,43 @@ public class RecommendationsServiceImpl implements RecommendationsService {
 
         log.debug("Преобразованны к списку ID, с котороми пользователь еще не взаимодействовал: {}", notInteractedEventIds);
 
+        // Дальше рекомендации считаются точно, в том числе когда приближённый расчёт недоступен: хранилище
+        // не должно выдавать их за приближённые, иначе они не заменятся результатом индекса
+        if (notInteractedEventIds.isEmpty()) {
+            return new ComputedRecommendations(userId, maxResults, false, interactedEventIds, List.of());
+        }
 
-        return notInteractedEventIds.stream()
-                .map(predictedEventId -> {
-                    List<Similarity> topKSimilarInteractedEvents = similarityRepository
-                            .findAllByEvent1EqualsPredictedAndEvent2InInteractedOrderBySimilarityDesc(predictedEventId, interactedEventIds, request.getMaxResults());
-
-                    log.debug("Для мероприятия {} найдены K наиболее похожих уже просмотренных мероприятий пользователем {}", predictedEventId, topKSimilarInteractedEvents);
-
-                    if (topKSimilarInteractedEvents.isEmpty()) {
-                        return RecommendedEventProto.newBuilder()
-                                .setEventId(predictedEventId)
-                                .setScore(0.0)
-                                .build();
-                    }
-
-                    Map<Long, Double> neighborsSimilarities = topKSimilarInteractedEvents.stream()
-                            .collect(Collectors.toMap(
-                                    s -> s.getId().getEvent1().equals(predictedEventId) ? s.getId().getEvent2() : s.getId().getEvent1(),
-                                    Similarity::getSimilarity)
-                            );
-
-                    log.debug("Коэффициенты подобия ближайших соседей для мероприятия {}: {}", predictedEventId, neighborsSimilarities);
-
-
-                    Map<Long, Double> neighborsRatings = topKSimilarInteractedEvents.stream()
-                            .map(s -> s.getId().getEvent1().equals(predictedEventId) ? s.getId().getEvent2() : s.getId().getEvent1())
-                            .map(likedEventId -> {
-                                        Optional<Interaction> interactionOpt = interactions.stream()
-                                                .filter(i -> i.getId().getEventId().equals(likedEventId))
-                                                .findFirst();
-                                        if (interactionOpt.isEmpty()) {
-                                            log.error("Interaction not found for eventId: {}", likedEventId);
-                                        }
-                                        return interactionOpt;
-                                    }
-                            )
-                            .filter(Optional::isPresent)
-                            .map(Optional::get)
-                            .collect(Collectors.toMap(i -> i.getId().getEventId(), Interaction::getRating));
-
-                    log.debug("Оценки ближайших соседей для мероприятия {}: {}", predictedEventId, neighborsRatings);
-
-
-                    double numerator = neighborsSimilarities.entrySet().stream()
-                            .mapToDouble(s -> s.getValue() * neighborsRatings.getOrDefault(s.getKey(), 0.0))
-                            .sum();
-
-                    double denominator = neighborsSimilarities.values().stream()
-                            .mapToDouble(Double::doubleValue)
-                            .sum();
+        // Соседей у кандидата не больше, чем просмотренных мероприятий, то есть не больше max_results,
+        // поэтому все пары кандидат - просмотренное мероприятие выбираются одним запросом без ограничения K
+        List<Similarity> neighborsSimilarities = similarityStorage
+                .findAllBetween(notInteractedEventIds, interactedEventIds);
+
+        log.debug("Для {} мероприятий найдено {} коэффициентов подобия с просмотренными мероприятиями",
+                notInteractedEventIds.size(), neighborsSimilarities.size());
+
+        // Числитель и знаменатель взвешенной суммы по каждому кандидату
+        Map<Long, double[]> predictions = new HashMap<>();
+        for (Similarity s : neighborsSimilarities) {
+            Long event1 = s.getId().getEvent1();
+            Long event2 = s.getId().getEvent2();
+            Long predictedEventId = notInteractedEventIds.contains(event1) ? event1 : event2;
+            Long neighborEventId = predictedEventId.equals(event1) ? event2 : event1;
+
+            double[] sums = predictions.computeIfAbsent(predictedEventId, id -> new double[2]);
+            sums[0] += s.getSimilarity() * ratings.getOrDefault(neighborEventId, 0.0);
+            sums[1] += s.getSimilarity();
+        }
 
-                    log.debug("Numerator: {}, Denominator: {}", numerator, denominator);
+        List<RecommendedEventProto> recommendations = notInteractedEventIds.stream()
+                .map(predictedEventId -> {
+                    double[] sums = predictions.get(predictedEventId);
 
                     double prediction;
-                    if (denominator == 0 || Math.abs(denominator) < 0.000001) {
+                    if (sums == null || Math.abs(sums[1]) < 0.000001) {
                         log.debug("Denominator is zero or too small for event {}. Using default prediction.", predictedEventId);
                         prediction = 0.0;
                     } else {
-                        prediction = numerator / denominator;
+                        prediction = sums[0] / sums[1];
                     }
 
                     return RecommendedEventProto.newBuilder()
@@ -124,6 +200,16 @@ public class RecommendationsServiceImpl implements RecommendationsService {
                 })
                 .sorted(Comparator.comparingDouble(RecommendedEventProto::getScore).reversed()) // сортировка по убыванию рейтинга
                 .collect(Collectors.toList());
+
+        return new ComputedRecommendations(userId, maxResults, false, interactedEventIds, recommendations);
+    }
+
+    private boolean isApproximate(RecommendationEngineProto engine) {
+        return switch (engine) {
+            case ENGINE_EXACT -> false;
+            case ENGINE_APPROXIMATE -> true;
+            default -> engineConfig.getType() == RecommendationEngineType.APPROXIMATE;
+        };
     }
 
     @Override
@@ -137,10 +223,15 @@ public class RecommendationsServiceImpl implements RecommendationsService {
                 .map(i -> i.getId().getEventId())
                 .collect(Collectors.toSet());
 
-        return similarityRepository.findAllByEventIdAndNotInInteractedOrderBySimilarityDesc(request.getEventId(), interactedEventIds, request.getMaxResults())
+        return similarityCache.findNeighbors(request.getEventId(), interactedEventIds, request.getMaxResults())
+                .orElseGet(() -> findSimilarEvents(request.getEventId(), interactedEventIds, request.getMaxResults()));
+    }
+
+    private List<RecommendedEventProto> findSimilarEvents(long eventId, Set<Long> interactedEventIds, int maxResults) {
+        return similarityStorage.findNeighbors(eventId, interactedEventIds, maxResults)
                 .stream()
                 .map(s -> {
-                            Long similarEvent = s.getId().getEvent1().equals(request.getEventId()) ? s.getId().getEvent2() : s.getId().getEvent1();
+                            Long similarEvent = s.getId().getEvent1().equals(eventId) ? s.getId().getEvent2() : s.getId().getEvent1();
 
                             return RecommendedEventProto.newBuilder()
                                     .setEventId(similarEvent)
@@ -154,9 +245,42 @@ public class RecommendationsServiceImpl implements RecommendationsService {
     @Override
     @Transactional(readOnly = true)
     public List<RecommendedEventProto> getInteractionsCounts(InteractionsCountRequestProto request) {
-        return interactionRepository.findGroupedRatingsAsDto(request.getEventIdList()).stream()
-                .map(EventRatingDto::toProto)
+        if (decayConfig.isEnabled()) {
+            return interactionRepository.findDecayedRatingSums(request.getEventIdList(), decayConfig.getLambda(), Instant.now())
+                    .stream()
+                    .map(sum -> new EventRatingDto(sum.getEventId(), sum.getRatingSum()).toProto())
+                    .toList();
+        }
+
+        // Суммы без затухания поддерживаются при записи взаимодействий, здесь только чтение по ключу
+        return eventRatingTotalRepository.findAllByEventIdInOrderByRatingSumDesc(request.getEventIdList()).stream()
+                .map(total -> new EventRatingDto(total.getEventId(), total.getRatingSum()).toProto())
                 .toList();
     }
 
+    @Override
+    public CloseableIterator<RecommendedEventProto> streamInteractionsCounts(InteractionsCountRequestProto request) {
+        CloseableIterator<EventRatingDto> sums = decayConfig.isEnabled()
+                ? interactionRepository.streamRatingSums(request.getEventIdList(), decayConfig.getLambda(), Instant.now(),
+                        streamingConfig.getFetchSize())
+                : interactionRepository.streamRatingTotals(request.getEventIdList(), streamingConfig.getFetchSize());
+
+        return new CloseableIterator<>() {
+            @Override
+            public boolean hasNext() {
+                return sums.hasNext();
+            }
+
+            @Override
+            public RecommendedEventProto next() {
+                return sums.next().toProto();
+            }
+
+            @Override
+            public void close() {
+                sums.close();
+            }
+        };
+    }
+
 }
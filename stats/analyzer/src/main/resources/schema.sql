@@ -15,6 +15,55 @@ CREATE TABLE IF NOT EXISTS similarities (
     PRIMARY KEY (event1, event2)
 );
 
+-- Версия последнего записанного обновления пары (заголовок similarity-version сообщения агрегатора)
+ALTER TABLE similarities ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
+
+-- Версии удалений пар: обновление пары старее удаления, пришедшее после него, не восстанавливает пару.
+-- Общая для PAIRS и ADJACENCY, устаревшие строки удаляются по stats.analyzer.similarity-storage.tombstoneRetentionMs
+CREATE TABLE IF NOT EXISTS similarity_tombstones (
+    event1 BIGINT NOT NULL,
+    event2 BIGINT NOT NULL,
+    version BIGINT NOT NULL,
+    CHECK (event1 < event2),
+    PRIMARY KEY (event1, event2)
+);
+
+-- Суммы оценок мероприятий, обновляются вместе с interactions
+CREATE TABLE IF NOT EXISTS event_rating_totals (
+    event_id BIGINT PRIMARY KEY,
+    rating_sum DOUBLE PRECISION NOT NULL
+);
+
+-- Первое заполнение по уже накопленным взаимодействиям
+INSERT INTO event_rating_totals (event_id, rating_sum)
+SELECT event_id, SUM(rating)
+FROM interactions
+WHERE NOT EXISTS (SELECT 1 FROM event_rating_totals)
+GROUP BY event_id;
+
+-- Те же коэффициенты сходства, записанные с обеих сторон пары (stats.analyzer.similarity-storage.type: ADJACENCY)
+CREATE TABLE IF NOT EXISTS event_neighbors (
+    event_id BIGINT NOT NULL,
+    neighbor_id BIGINT NOT NULL,
+    similarity DOUBLE PRECISION NOT NULL,
+    action_ts TIMESTAMP WITH TIME ZONE NOT NULL,
+    CHECK (event_id <> neighbor_id),
+    PRIMARY KEY (event_id, neighbor_id)
+);
+
+ALTER TABLE event_neighbors ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
+
+-- Рассчитанные рекомендации пользователей (stats.analyzer.recommendation-store.persistent)
+CREATE TABLE IF NOT EXISTS user_recommendations (
+    user_id BIGINT PRIMARY KEY,
+    max_results INTEGER NOT NULL,
+    approximate BOOLEAN NOT NULL,
+    event_ids BIGINT[] NOT NULL,
+    scores DOUBLE PRECISION[] NOT NULL,
+    interacted_event_ids BIGINT[] NOT NULL,
+    computed_ts TIMESTAMP WITH TIME ZONE NOT NULL
+);
+
 DROP INDEX IF EXISTS interactions_user_id_idx;
 DROP INDEX IF EXISTS interactions_event_id_idx;
 DROP INDEX IF EXISTS similarities_event1_idx;
@@ -24,3 +73,5 @@ CREATE INDEX IF NOT EXISTS interactions_user_id_idx ON interactions(user_id);
 CREATE INDEX IF NOT EXISTS interactions_event_id_idx ON interactions(event_id);
 CREATE INDEX IF NOT EXISTS similarities_event1_idx ON similarities(event1);
 CREATE INDEX IF NOT EXISTS similarities_event2_idx ON similarities(event2);
+CREATE INDEX IF NOT EXISTS similarity_tombstones_version_idx ON similarity_tombstones(version);
+CREATE INDEX IF NOT EXISTS event_neighbors_event_similarity_idx ON event_neighbors(event_id, similarity DESC) INCLUDE (neighbor_id);
@@ -0,0 +1,206 @@
+package ru.practicum.stats.analyzer.cache;
+
+import org.junit.jupiter.api.Test;
+import ru.practicum.ewm.stats.proto.RecommendedEventProto;
+import ru.practicum.stats.analyzer.config.SimilarityCacheConfig;
+import ru.practicum.stats.analyzer.dal.model.similarity.Similarity;
+import ru.practicum.stats.analyzer.dal.model.similarity.SimilarityId;
+import ru.practicum.stats.analyzer.dal.model.similarity.SimilarityTombstone;
+import ru.practicum.stats.analyzer.dal.storage.SimilarityStorage;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SimilarityCacheImplTest {
+
+    private static final int EVENTS = 20;
+
+    private static final int NEIGHBORS = 5;
+
+    private static final int OPERATIONS = 200_000;
+
+    private final BruteForceStorage storage = new BruteForceStorage();
+
+    private final SimilarityCacheImpl cache = new SimilarityCacheImpl(storage, config(8));
+
+    // Ответ кэша, если он есть, совпадает с полным перебором: список соседей остаётся точным началом полного
+    // при вытеснении ниже floor, удалениях, вытеснении мероприятий и записях во время загрузки
+    @Test
+    void randomOperationsMatchBruteForce() {
+        Random random = new Random(42);
+        int hits = 0;
+        int misses = 0;
+
+        for (int i = 0; i < OPERATIONS; i++) {
+            switch (random.nextInt(4)) {
+                case 0 -> put(random);
+                case 1 -> remove(random);
+                default -> {
+                    long eventId = random.nextInt(EVENTS);
+                    Set<Long> excluded = new HashSet<>();
+                    for (int j = random.nextInt(4); j > 0; j--) {
+                        excluded.add((long) random.nextInt(EVENTS));
+                    }
+                    int limit = 1 + random.nextInt(NEIGHBORS + 1);
+
+                    // Ответ загрузки отражает данные на момент чтения из БД, до записи во время загрузки
+                    List<Long> expected = storage.neighbors(eventId, excluded, limit);
+
+                    // Иногда пара меняется между чтением из БД и сохранением загруженных соседей
+                    if (random.nextInt(5) == 0) {
+                        storage.duringLoad = random.nextBoolean() ? () -> put(random) : () -> remove(random);
+                    }
+                    Optional<List<RecommendedEventProto>> found = cache.findNeighbors(eventId, excluded, limit);
+                    storage.duringLoad = null;
+
+                    if (found.isPresent()) {
+                        assertEquals(expected, ids(found.get()),
+                                "соседи мероприятия " + eventId + " на шаге " + i);
+                        hits++;
+                    } else {
+                        misses++;
+                    }
+                }
+            }
+        }
+
+        assertTrue(hits > misses, "кэш отвечает на большинство запросов: " + hits + " из " + (hits + misses));
+    }
+
+    @Test
+    void writeDuringLoadDiscardsLoadedNeighbors() {
+        storage.put(1, 2, 0.5);
+        storage.duringLoad = () -> {
+            storage.put(1, 3, 0.9);
+            cache.put(1, 3, 0.9);
+        };
+
+        // Загрузка видела данные без пары 1:3 и не сохраняется
+        assertEquals(List.of(2L), ids(cache.findNeighbors(1, Set.of(), NEIGHBORS).orElseThrow()));
+        storage.duringLoad = null;
+
+        assertEquals(List.of(3L, 2L), ids(cache.findNeighbors(1, Set.of(), NEIGHBORS).orElseThrow()));
+        assertEquals(2, storage.loads);
+    }
+
+    @Test
+    void missWhenExclusionsExhaustPrefix() {
+        for (long neighbor = 2; neighbor <= NEIGHBORS + 2; neighbor++) {
+            storage.put(1, neighbor, neighbor / 10.0);
+        }
+        assertEquals(List.of(7L, 6L), ids(cache.findNeighbors(1, Set.of(), 2).orElseThrow()));
+
+        // В кэше пять лучших из шести соседей: без трёх лучших их не хватает на три результата
+        assertFalse(cache.findNeighbors(1, Set.of(7L, 6L, 5L), 3).isPresent());
+        assertEquals(List.of(4L, 3L), ids(cache.findNeighbors(1, Set.of(7L, 6L, 5L), 2).orElseThrow()));
+    }
+
+    private void put(Random random) {
+        long eventA = random.nextInt(EVENTS);
+        long eventB = random.nextInt(EVENTS);
+        if (eventA != eventB) {
+            double similarity = random.nextDouble();
+            storage.put(eventA, eventB, similarity);
+            cache.put(eventA, eventB, similarity);
+        }
+    }
+
+    private void remove(Random random) {
+        long eventA = random.nextInt(EVENTS);
+        long eventB = random.nextInt(EVENTS);
+        if (eventA != eventB) {
+            storage.similarities.remove(SimilarityId.of(eventA, eventB));
+            cache.remove(eventA, eventB);
+        }
+    }
+
+    private static List<Long> ids(List<RecommendedEventProto> neighbors) {
+        return neighbors.stream().map(RecommendedEventProto::getEventId).toList();
+    }
+
+    private static SimilarityCacheConfig config(int maxEvents) {
+        SimilarityCacheConfig config = new SimilarityCacheConfig();
+        config.setMaxEvents(maxEvents);
+        config.setNeighbors(NEIGHBORS);
+        return config;
+    }
+
+    // Пары в памяти; соседи находятся полным перебором
+    private static class BruteForceStorage implements SimilarityStorage {
+
+        private final Map<SimilarityId, Double> similarities = new HashMap<>();
+
+        private Runnable duringLoad;
+
+        private int loads;
+
+        void put(long eventA, long eventB, double similarity) {
+            similarities.put(SimilarityId.of(eventA, eventB), similarity);
+        }
+
+        List<Long> neighbors(long eventId, Set<Long> excluded, int limit) {
+            return top(eventId, excluded, limit).stream()
+                    .map(s -> neighbor(s.getId(), eventId))
+                    .toList();
+        }
+
+        @Override
+        public List<Similarity> findNeighbors(long eventId, Set<Long> excluded, int limit) {
+            List<Similarity> found = top(eventId, excluded, limit);
+            loads++;
+            if (duringLoad != null) {
+                Runnable write = duringLoad;
+                duringLoad = null;
+                write.run();
+            }
+            return found;
+        }
+
+        private List<Similarity> top(long eventId, Set<Long> excluded, int limit) {
+            return similarities.entrySet().stream()
+                    .filter(e -> e.getKey().getEvent1() == eventId || e.getKey().getEvent2() == eventId)
+                    .filter(e -> !excluded.contains(neighbor(e.getKey(), eventId)))
+                    .sorted(Map.Entry.<SimilarityId, Double>comparingByValue(Comparator.reverseOrder()))
+                    .limit(limit)
+                    .map(e -> new Similarity(e.getKey(), e.getValue(), Instant.EPOCH, 0L))
+                    .toList();
+        }
+
+        private static long neighbor(SimilarityId id, long eventId) {
+            return id.getEvent1() == eventId ? id.getEvent2() : id.getEvent1();
+        }
+
+        @Override
+        public List<Similarity> findAllByOneOf(Set<Long> eventIds, int limit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<Similarity> findAllBetween(Set<Long> eventIds, Set<Long> otherEventIds) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<SimilarityId> saveAll(Collection<Similarity> similarities) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<SimilarityId> deleteAll(Collection<SimilarityTombstone> tombstones) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+}
@@ -0,0 +1,213 @@
+package ru.practicum.stats.analyzer.dal.dao;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.stats.analyzer.dal.model.interaction.Interaction;
+import ru.practicum.stats.analyzer.dal.model.interaction.InteractionId;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class InteractionBatchRepositoryImplTest {
+
+    private static final double[] RATINGS = {0.4, 0.8, 1.0};
+
+    private static final long START = Instant.parse("2024-01-01T00:00:00Z").toEpochMilli();
+
+    private static EmbeddedPostgres postgres;
+
+    private static JdbcTemplate jdbcTemplate;
+
+    private static TransactionTemplate transactions;
+
+    private final InteractionBatchRepository repository = new InteractionBatchRepositoryImpl(jdbcTemplate);
+
+    @BeforeAll
+    static void startPostgres() throws IOException {
+        postgres = EmbeddedPostgres.start();
+        jdbcTemplate = new JdbcTemplate(postgres.getPostgresDatabase());
+        transactions = new TransactionTemplate(new DataSourceTransactionManager(postgres.getPostgresDatabase()));
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(postgres.getPostgresDatabase());
+    }
+
+    @AfterAll
+    static void stopPostgres() throws IOException {
+        postgres.close();
+    }
+
+    @BeforeEach
+    void truncate() {
+        jdbcTemplate.execute("TRUNCATE interactions, event_rating_totals");
+    }
+
+    @Test
+    void higherRatingReplacesRowAndMovesTotals() {
+        assertEquals(2, upsert(List.of(interaction(1, 10, 0.8, START), interaction(2, 10, 0.4, START)), 0));
+        assertEquals(Map.of(10L, 1.2), totals(), "суммы после вставки");
+
+        // Та же оценка не заменяет строку, большая заменяет вместе с action_ts
+        assertEquals(0, upsert(List.of(interaction(1, 10, 0.8, START + 1_000)), 0));
+        assertEquals(1, upsert(List.of(interaction(2, 10, 1.0, START + 2_000)), 0));
+
+        assertEquals(Map.of(
+                InteractionId.of(1, 10), new Row(0.8, START),
+                InteractionId.of(2, 10), new Row(1.0, START + 2_000)), rows());
+        assertEquals(Map.of(10L, 1.8), totals(), "суммы меняются на разницу оценок");
+    }
+
+    @Test
+    void decayedRatingIsReplacedByLowerOne() {
+        double lambda = 1e-4;
+        upsert(List.of(interaction(1, 10, 1.0, START)), lambda);
+
+        // Через 1 с оценка 1.0 затухает до 0.905: 0.8 её не заменяет, а через 3 с (0.741) заменяет
+        assertEquals(0, upsert(List.of(interaction(1, 10, 0.8, START + 1_000)), lambda));
+        assertEquals(1, upsert(List.of(interaction(1, 10, 0.8, START + 3_000)), lambda));
+        // Опоздавшее действие старую оценку не затухает
+        assertEquals(0, upsert(List.of(interaction(1, 10, 0.4, START - 60_000)), lambda));
+
+        assertEquals(Map.of(InteractionId.of(1, 10), new Row(0.8, START + 3_000)), rows());
+        assertEquals(Map.of(10L, 0.8), totals());
+    }
+
+    @Test
+    void deleteBeforeSubtractsRatingsFromTotals() {
+        upsert(List.of(
+                interaction(1, 10, 0.4, START),
+                interaction(1, 11, 0.8, START + 1_000),
+                interaction(1, 12, 1.0, START + 2_000),
+                interaction(2, 10, 1.0, START)), 0);
+
+        assertEquals(2, delete(Map.of(1L, Instant.ofEpochMilli(START + 2_000), 3L, Instant.ofEpochMilli(START))));
+
+        assertEquals(Map.of(
+                InteractionId.of(1, 12), new Row(1.0, START + 2_000),
+                InteractionId.of(2, 10), new Row(1.0, START)), rows());
+        assertEquals(Map.of(10L, 1.0, 11L, 0.0, 12L, 1.0), totals());
+    }
+
+    // Пачки больше ROWS_PER_STATEMENT проверяют деление на части и блокировки по частям
+    @ParameterizedTest(name = "lambda = {0}")
+    @ValueSource(doubles = {0, 1e-5})
+    void randomBatchesMatchModel(double lambda) {
+        Random random = new Random(7);
+        Map<InteractionId, Row> expected = new HashMap<>();
+
+        for (int round = 0; round < 30; round++) {
+            Map<InteractionId, Interaction> batch = new LinkedHashMap<>();
+            while (batch.size() < BatchStatements.ROWS_PER_STATEMENT * 3 / 2) {
+                long userId = random.nextInt(200);
+                long eventId = random.nextInt(100);
+                long timestamp = START + round * 20_000L + random.nextInt(100_000);
+                batch.put(InteractionId.of(userId, eventId),
+                        interaction(userId, eventId, RATINGS[random.nextInt(RATINGS.length)], timestamp));
+            }
+
+            int written = 0;
+            for (Interaction interaction : batch.values()) {
+                Row old = expected.get(interaction.getId());
+                Row row = new Row(interaction.getRating(), interaction.getActionDateTime().toEpochMilli());
+                if (old == null || row.rating() > old.decayedTo(row.timestamp(), lambda)) {
+                    expected.put(interaction.getId(), row);
+                    written++;
+                }
+            }
+            assertEquals(written, upsert(batch.values(), lambda), "записано в раунде " + round);
+
+            if (round % 5 == 4) {
+                Map<Long, Instant> before = new HashMap<>();
+                for (int i = 0; i < 50; i++) {
+                    before.put((long) random.nextInt(200),
+                            Instant.ofEpochMilli(START + round * 20_000L + random.nextInt(100_000)));
+                }
+                int removed = 0;
+                for (var iterator = expected.entrySet().iterator(); iterator.hasNext(); ) {
+                    var entry = iterator.next();
+                    Instant userBefore = before.get(entry.getKey().getUserId());
+                    if (userBefore != null && entry.getValue().timestamp() < userBefore.toEpochMilli()) {
+                        iterator.remove();
+                        removed++;
+                    }
+                }
+                assertEquals(removed, delete(before), "удалено в раунде " + round);
+            }
+
+            assertEquals(expected, rows(), "строки после раунда " + round);
+            assertTotals(expected);
+        }
+    }
+
+    private int upsert(Collection<Interaction> interactions, double lambda) {
+        return transactions.execute(status -> repository.upsertAllIfRatingHigher(interactions, lambda));
+    }
+
+    private int delete(Map<Long, Instant> beforeByUserId) {
+        return transactions.execute(status -> repository.deleteAllByUserIdAndActionDateTimeBefore(beforeByUserId));
+    }
+
+    private static void assertTotals(Map<InteractionId, Row> expected) {
+        Map<Long, Double> sums = new HashMap<>();
+        expected.forEach((id, row) -> sums.merge(id.getEventId(), row.rating(), Double::sum));
+        Map<Long, Double> actual = totals();
+
+        // Мероприятие, у которого удалены все взаимодействия, остаётся в суммах с нулём
+        Set<Long> events = new HashSet<>(actual.keySet());
+        events.addAll(sums.keySet());
+        for (long eventId : events) {
+            assertEquals(sums.getOrDefault(eventId, 0.0), actual.getOrDefault(eventId, 0.0), 1e-9,
+                    "сумма мероприятия " + eventId);
+        }
+    }
+
+    private static Map<InteractionId, Row> rows() {
+        Map<InteractionId, Row> rows = new HashMap<>();
+        jdbcTemplate.query("SELECT user_id, event_id, rating, action_ts FROM interactions", rs -> {
+            rows.put(InteractionId.of(rs.getLong(1), rs.getLong(2)),
+                    new Row(rs.getDouble(3), rs.getObject(4, OffsetDateTime.class).toInstant().toEpochMilli()));
+        });
+        return rows;
+    }
+
+    private static Map<Long, Double> totals() {
+        Map<Long, Double> totals = new HashMap<>();
+        jdbcTemplate.query("SELECT event_id, rating_sum FROM event_rating_totals", rs -> {
+            // Округление убирает погрешность сложения и вычитания оценок
+            totals.put(rs.getLong(1), Math.round(rs.getDouble(2) * 1e9) / 1e9);
+        });
+        return totals;
+    }
+
+    private static Interaction interaction(long userId, long eventId, double rating, long timestamp) {
+        return new Interaction(InteractionId.of(userId, eventId), rating, Instant.ofEpochMilli(timestamp));
+    }
+
+    private record Row(double rating, long timestamp) {
+
+        // Правило UPSERT: старая оценка затухает к моменту нового действия, опоздавшее действие её не затухает
+        double decayedTo(long actionTimestamp, double lambda) {
+            return rating * Math.exp(-lambda * Math.max(0, actionTimestamp - timestamp));
+        }
+    }
+
+}
@@ -0,0 +1,196 @@
+package ru.practicum.stats.analyzer.dal.dao;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.stats.analyzer.dal.model.similarity.Similarity;
+import ru.practicum.stats.analyzer.dal.model.similarity.SimilarityId;
+import ru.practicum.stats.analyzer.dal.model.similarity.SimilarityTombstone;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SimilarityBatchRepositoryImplTest {
+
+    private static final Instant CREATED = Instant.parse("2024-01-01T00:00:00Z");
+
+    private static EmbeddedPostgres postgres;
+
+    private static JdbcTemplate jdbcTemplate;
+
+    private static TransactionTemplate transactions;
+
+    private final SimilarityBatchRepository repository = new SimilarityBatchRepositoryImpl(jdbcTemplate);
+
+    @BeforeAll
+    static void startPostgres() throws IOException {
+        postgres = EmbeddedPostgres.start();
+        jdbcTemplate = new JdbcTemplate(postgres.getPostgresDatabase());
+        transactions = new TransactionTemplate(new DataSourceTransactionManager(postgres.getPostgresDatabase()));
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(postgres.getPostgresDatabase());
+    }
+
+    @AfterAll
+    static void stopPostgres() throws IOException {
+        postgres.close();
+    }
+
+    @BeforeEach
+    void truncate() {
+        jdbcTemplate.execute("TRUNCATE similarities, similarity_tombstones");
+    }
+
+    @Test
+    void olderUpdateDoesNotOverwriteNewerOne() {
+        assertEquals(List.of(SimilarityId.of(1, 2)), save(List.of(similarity(1, 2, 0.5, 20)), List.of()));
+        assertEquals(List.of(), save(List.of(similarity(1, 2, 0.9, 10)), List.of()));
+        assertEquals(List.of(SimilarityId.of(1, 2)), save(List.of(similarity(1, 2, 0.7, 20)), List.of()));
+
+        // action_ts остаётся от первой записи пары
+        assertEquals(Map.of(SimilarityId.of(1, 2), new Row(0.7, CREATED.plusMillis(20), 20)), rows());
+    }
+
+    @Test
+    void tombstoneBlocksOlderUpdateArrivingLater() {
+        save(List.of(similarity(1, 2, 0.5, 10), similarity(1, 3, 0.5, 10)), List.of());
+
+        // Удаление старее записанной пары её не удаляет, но запоминается
+        assertEquals(List.of(SimilarityId.of(1, 2)), save(List.of(), List.of(tombstone(1, 2, 30), tombstone(1, 3, 5))));
+        assertEquals(Map.of(SimilarityId.of(1, 2), 30L, SimilarityId.of(1, 3), 5L), tombstones());
+
+        // Обновление старее удаления пару не восстанавливает, новее — восстанавливает
+        assertEquals(List.of(), save(List.of(similarity(1, 2, 0.8, 20)), List.of()));
+        assertEquals(List.of(SimilarityId.of(1, 2)), save(List.of(similarity(1, 2, 0.6, 40)), List.of()));
+
+        // Для пары хранится наибольшая версия удаления
+        save(List.of(), List.of(tombstone(1, 2, 35)));
+        assertEquals(Map.of(SimilarityId.of(1, 2), 35L, SimilarityId.of(1, 3), 5L), tombstones());
+        assertEquals(Map.of(
+                SimilarityId.of(1, 2), new Row(0.6, CREATED.plusMillis(40), 40),
+                SimilarityId.of(1, 3), new Row(0.5, CREATED.plusMillis(10), 10)), rows());
+
+        int purged = transactions.execute(status -> repository.deleteTombstonesBefore(30));
+        assertEquals(1, purged);
+        assertEquals(Map.of(SimilarityId.of(1, 2), 35L), tombstones());
+    }
+
+    // Пачки больше ROWS_PER_STATEMENT, обновления и удаления пар приходят с версиями вразнобой
+    @Test
+    void randomBatchesMatchModel() {
+        Random random = new Random(11);
+        Map<SimilarityId, Row> expected = new HashMap<>();
+        Map<SimilarityId, Long> expectedTombstones = new HashMap<>();
+
+        for (int round = 0; round < 30; round++) {
+            Map<SimilarityId, Object> batch = new LinkedHashMap<>();
+            while (batch.size() < BatchStatements.ROWS_PER_STATEMENT * 3 / 2) {
+                long event1 = random.nextInt(80);
+                long event2 = event1 + 1 + random.nextInt(40);
+                long version = round * 100L + random.nextInt(500);
+                batch.put(SimilarityId.of(event1, event2), random.nextInt(4) == 0
+                        ? tombstone(event1, event2, version)
+                        : similarity(event1, event2, Math.round(random.nextDouble() * 1000) / 1000.0, version));
+            }
+            List<Similarity> saved = new ArrayList<>();
+            List<SimilarityTombstone> deleted = new ArrayList<>();
+            batch.values().forEach(update -> {
+                if (update instanceof Similarity similarity) {
+                    saved.add(similarity);
+                } else {
+                    deleted.add((SimilarityTombstone) update);
+                }
+            });
+
+            // Порядок EventsSimilarityServiceImpl: удаления запоминаются, пары записываются, затем удаляются
+            deleted.forEach(tombstone -> expectedTombstones.merge(tombstone.getId(), tombstone.getVersion(), Math::max));
+            Set<SimilarityId> written = new HashSet<>();
+            for (Similarity similarity : saved) {
+                Long tombstone = expectedTombstones.get(similarity.getId());
+                Row old = expected.get(similarity.getId());
+                if ((tombstone == null || tombstone <= similarity.getVersion())
+                        && (old == null || old.version() <= similarity.getVersion())) {
+                    expected.put(similarity.getId(), new Row(similarity.getSimilarity(),
+                            old == null ? similarity.getActionTimestamp() : old.created(), similarity.getVersion()));
+                    written.add(similarity.getId());
+                }
+            }
+            Set<SimilarityId> removed = new HashSet<>();
+            for (SimilarityTombstone tombstone : deleted) {
+                Row old = expected.get(tombstone.getId());
+                if (old != null && old.version() <= tombstone.getVersion()) {
+                    expected.remove(tombstone.getId());
+                    removed.add(tombstone.getId());
+                }
+            }
+
+            List<SimilarityId> actualWritten = new ArrayList<>();
+            List<SimilarityId> actualRemoved = transactions.execute(status -> {
+                repository.saveTombstones(deleted);
+                actualWritten.addAll(repository.upsertAll(saved));
+                return repository.deleteAll(deleted);
+            });
+
+            assertEquals(written, new HashSet<>(actualWritten), "записано в раунде " + round);
+            assertEquals(removed, new HashSet<>(actualRemoved), "удалено в раунде " + round);
+            assertEquals(expected, rows(), "пары после раунда " + round);
+            assertEquals(expectedTombstones, tombstones(), "версии удалений после раунда " + round);
+        }
+    }
+
+    private List<SimilarityId> save(List<Similarity> saved, List<SimilarityTombstone> deleted) {
+        return transactions.execute(status -> {
+            repository.saveTombstones(deleted);
+            List<SimilarityId> applied = new ArrayList<>(repository.upsertAll(saved));
+            applied.addAll(repository.deleteAll(deleted));
+            return applied;
+        });
+    }
+
+    private static Map<SimilarityId, Row> rows() {
+        Map<SimilarityId, Row> rows = new HashMap<>();
+        jdbcTemplate.query("SELECT event1, event2, similarity, action_ts, version FROM similarities", rs -> {
+            rows.put(SimilarityId.of(rs.getLong(1), rs.getLong(2)), new Row(rs.getDouble(3),
+                    rs.getObject(4, OffsetDateTime.class).toInstant(), rs.getLong(5)));
+        });
+        return rows;
+    }
+
+    private static Map<SimilarityId, Long> tombstones() {
+        Map<SimilarityId, Long> tombstones = new HashMap<>();
+        jdbcTemplate.query("SELECT event1, event2, version FROM similarity_tombstones", rs -> {
+            tombstones.put(SimilarityId.of(rs.getLong(1), rs.getLong(2)), rs.getLong(3));
+        });
+        return tombstones;
+    }
+
+    // action_ts каждой записи свой, чтобы было видно, что обновление его не меняет
+    private static Similarity similarity(long event1, long event2, double score, long version) {
+        return new Similarity(SimilarityId.of(event1, event2), score, CREATED.plusMillis(version), version);
+    }
+
+    private static SimilarityTombstone tombstone(long event1, long event2, long version) {
+        return new SimilarityTombstone(SimilarityId.of(event1, event2), version);
+    }
+
+    private record Row(double similarity, Instant created, long version) {
+    }
+
+}
@@ -0,0 +1,347 @@
+package ru.practicum.stats.collector.kafka;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.google.protobuf.Empty;
+import com.google.protobuf.Timestamp;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import io.grpc.stub.StreamObserver;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.avro.specific.SpecificRecordBase;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.Partitioner;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.serialization.LongSerializer;
+import org.apache.kafka.common.utils.Utils;
+import org.slf4j.LoggerFactory;
+import ru.practicum.ewm.stats.avro.serializer.GeneralAvroSerializer;
+import ru.practicum.ewm.stats.proto.ActionTypeProto;
+import ru.practicum.ewm.stats.proto.UserActionControllerGrpc;
+import ru.practicum.ewm.stats.proto.UserActionProto;
+import ru.practicum.ewm.stats.proto.UserActionsAckProto;
+import ru.practicum.stats.collector.config.DedupConfig;
+import ru.practicum.stats.collector.config.IngestConfig;
+import ru.practicum.stats.collector.config.JournalConfig;
+import ru.practicum.stats.collector.config.KafkaConfig;
+import ru.practicum.stats.collector.controller.UserActionController;
+import ru.practicum.stats.collector.dedup.UserActionDeduplicator;
+import ru.practicum.stats.collector.journal.UserActionJournal;
+import ru.practicum.stats.collector.mapper.useraction.UserActionMapperImpl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Синтетический поток действий через UserActionController в заглушку брокера: MockProducer с настоящими
+ * сериализаторами, записи которого подтверждает отдельный поток раз в brokerLatencyMs, как брокер отвечает
+ * на запрос с накопленной пачкой. Журнал и фильтр повторов выключены.
+ * <p>
+ * Для ключей EVENT и USER и для вызовов CollectUserAction и CollectUserActions выводятся устойчивая пропускная
+ * способность, p50 и p99 задержки подтверждения и перекос партиций (самая нагруженная партиция относительно
+ * средней). Популярность мероприятий распределена по Ципфу, пользователи равномерно. Для одиночных вызовов
+ * задержка — время ответа, который не ждёт Kafka, для потока — время до подтверждения записи в Kafka.
+ * Настройки профиля продюсера (linger.ms, сжатие) заглушка не моделирует, их нужно сравнивать на брокере.
+ * <p>
+ * Аргументы: [действий] [brokerLatencyMs] [одновременных вызовов или потоков] [партиций].
+ */
+public class CollectorThroughputBenchmark {
+
+    private static final String TOPIC = "stats.user-actions.v1";
+
+    private static final int USERS = 100_000;
+
+    private static final int EVENTS = 10_000;
+
+    public static void main(String[] args) throws Exception {
+        int actions = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        long brokerLatencyMs = args.length > 1 ? Long.parseLong(args[1]) : 2;
+        int clients = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        int partitions = args.length > 3 ? Integer.parseInt(args[3]) : 6;
+
+        ((Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+
+        UserActionProto[] workload = workload(actions);
+
+        System.out.printf("Действий %d, задержка брокера %d мс, клиентов %d, партиций %d%n",
+                actions, brokerLatencyMs, clients, partitions);
+        System.out.printf("%-7s %-8s %14s %10s %10s %14s%n",
+                "ключ", "вызов", "действий/с", "p50, мс", "p99, мс", "перекос партиций");
+
+        for (KeyingStrategy keying : KeyingStrategy.values()) {
+            for (boolean streaming : new boolean[]{false, true}) {
+                run(keying, streaming, workload, brokerLatencyMs, clients, partitions);
+            }
+        }
+    }
+
+    private static void run(KeyingStrategy keying, boolean streaming, UserActionProto[] workload,
+                            long brokerLatencyMs, int clients, int partitions) throws Exception {
+        KeyHashPartitioner partitioner = new KeyHashPartitioner(partitions);
+        MockProducer<Long, SpecificRecordBase> mockProducer = new MockProducer<>(cluster(partitions), false, partitioner,
+                new LongSerializer(), new GeneralAvroSerializer());
+        Thread broker = broker(mockProducer, brokerLatencyMs);
+
+        KafkaConfig kafkaConfig = new KafkaConfig();
+        KafkaConfig.UserActions userActions = new KafkaConfig.UserActions();
+        userActions.setTopics(List.of(TOPIC));
+        kafkaConfig.setUserActions(userActions);
+        JournalConfig journalConfig = new JournalConfig();
+        journalConfig.setEnabled(false);
+        UserActionJournal journal = new UserActionJournal(new KafkaUserActionProducer(mockProducer, keying), journalConfig);
+        // Без фильтра повторов: прогрев повторяет начало нагрузки, и замер отсеял бы эти действия
+        DedupConfig dedupConfig = new DedupConfig();
+        dedupConfig.setEnabled(false);
+        UserActionController controller = new UserActionController(kafkaConfig, journal, new UserActionMapperImpl(),
+                new UserActionDeduplicator(dedupConfig, new SimpleMeterRegistry()), new IngestConfig());
+
+        String name = "collector-" + keying + "-" + streaming;
+        Server server = InProcessServerBuilder.forName(name).addService(controller).build().start();
+        ManagedChannel channel = InProcessChannelBuilder.forName(name).build();
+        UserActionControllerGrpc.UserActionControllerStub stub = UserActionControllerGrpc.newStub(channel);
+
+        try {
+            // Прогрев, затем замер
+            UserActionProto[] warmup = Arrays.copyOf(workload, workload.length / 10);
+            load(stub, streaming, warmup, clients);
+            mockProducer.clear();
+            partitioner.reset();
+
+            long started = System.nanoTime();
+            long[] latencies = load(stub, streaming, workload, clients);
+            double seconds = (System.nanoTime() - started) / 1e9;
+
+            Arrays.sort(latencies);
+            System.out.printf("%-7s %-8s %14.0f %10.1f %10.1f %14.2f%n", keying, streaming ? "поток" : "одиночный",
+                    workload.length / seconds, percentile(latencies, 0.50) / 1e6,
+                    percentile(latencies, 0.99) / 1e6, partitioner.skew());
+        } finally {
+            channel.shutdownNow().awaitTermination(10, TimeUnit.SECONDS);
+            server.shutdownNow().awaitTermination(10, TimeUnit.SECONDS);
+            controller.shutdown();
+            broker.interrupt();
+            broker.join();
+        }
+    }
+
+    private static long[] load(UserActionControllerGrpc.UserActionControllerStub stub, boolean streaming,
+                               UserActionProto[] workload, int clients) throws InterruptedException {
+        return streaming ? loadStreams(stub, workload, clients) : loadUnary(stub, workload, clients);
+    }
+
+    private static long[] loadUnary(UserActionControllerGrpc.UserActionControllerStub stub,
+                                    UserActionProto[] workload, int concurrency) throws InterruptedException {
+        long[] latencies = new long[workload.length];
+        Semaphore inFlight = new Semaphore(concurrency);
+        CountDownLatch done = new CountDownLatch(workload.length);
+        AtomicInteger failed = new AtomicInteger();
+
+        for (int i = 0; i < workload.length; i++) {
+            inFlight.acquire();
+            int call = i;
+            long started = System.nanoTime();
+            stub.collectUserAction(workload[call], new StreamObserver<>() {
+                @Override
+                public void onNext(Empty value) {
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    failed.incrementAndGet();
+                    finish();
+                }
+
+                @Override
+                public void onCompleted() {
+                    finish();
+                }
+
+                private void finish() {
+                    latencies[call] = System.nanoTime() - started;
+                    inFlight.release();
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        if (failed.get() > 0) {
+            throw new IllegalStateException("Неуспешных вызовов: " + failed.get());
+        }
+        return latencies;
+    }
+
+    // Каждый поток отправляет свою часть действий, пока сервер их запрашивает, и отмечает задержку
+    // каждого действия при получении подтверждения, которое его покрывает
+    private static long[] loadStreams(UserActionControllerGrpc.UserActionControllerStub stub,
+                                      UserActionProto[] workload, int streams) throws InterruptedException {
+        long[] latencies = new long[workload.length];
+        long[] sentAt = new long[workload.length];
+        CountDownLatch done = new CountDownLatch(streams);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        int perStream = (workload.length + streams - 1) / streams;
+        for (int s = 0; s < streams; s++) {
+            int from = Math.min(s * perStream, workload.length);
+            int to = Math.min(from + perStream, workload.length);
+            stub.collectUserActions(new ClientResponseObserver<UserActionProto, UserActionsAckProto>() {
+                private int next = from;
+                private int acked = from;
+                private boolean completed;
+
+                @Override
+                public void beforeStart(ClientCallStreamObserver<UserActionProto> requests) {
+                    requests.setOnReadyHandler(() -> {
+                        while (requests.isReady() && next < to) {
+                            sentAt[next] = System.nanoTime();
+                            requests.onNext(workload[next++]);
+                        }
+                        if (next == to && !completed) {
+                            completed = true;
+                            requests.onCompleted();
+                        }
+                    });
+                }
+
+                @Override
+                public void onNext(UserActionsAckProto ack) {
+                    long now = System.nanoTime();
+                    int ackedTo = from + (int) ack.getAckedCount();
+                    for (; acked < ackedTo; acked++) {
+                        latencies[acked] = now - sentAt[acked];
+                    }
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    failure.compareAndSet(null, t);
+                    done.countDown();
+                }
+
+                @Override
+                public void onCompleted() {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        if (failure.get() != null) {
+            throw new IllegalStateException("Поток завершился с ошибкой", failure.get());
+        }
+        return latencies;
+    }
+
+    // Подтверждает все накопленные записи раз в brokerLatencyMs
+    private static Thread broker(MockProducer<Long, SpecificRecordBase> producer, long latencyMs) {
+        Thread broker = new Thread(() -> {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    Thread.sleep(latencyMs);
+                    while (producer.completeNext()) {
+                        // все записи, накопленные за задержку
+                    }
+                }
+            } catch (InterruptedException ignored) {
+                // остановка
+            }
+        }, "broker-stand-in");
+        broker.setDaemon(true);
+        broker.start();
+        return broker;
+    }
+
+    private static Cluster cluster(int partitions) {
+        Node node = new Node(0, "localhost", 9092);
+        List<PartitionInfo> infos = new ArrayList<>(partitions);
+        for (int p = 0; p < partitions; p++) {
+            infos.add(new PartitionInfo(TOPIC, p, node, new Node[]{node}, new Node[]{node}));
+        }
+        return new Cluster("benchmark", List.of(node), infos, Set.of(), Set.of());
+    }
+
+    private static UserActionProto[] workload(int actions) {
+        Random random = new Random(42);
+        double[] cumulative = new double[EVENTS];
+        double sum = 0;
+        for (int i = 0; i < EVENTS; i++) {
+            sum += 1.0 / (i + 1);
+            cumulative[i] = sum;
+        }
+
+        ActionTypeProto[] types = {ActionTypeProto.ACTION_VIEW, ActionTypeProto.ACTION_REGISTER, ActionTypeProto.ACTION_LIKE};
+        long now = System.currentTimeMillis() / 1000;
+        UserActionProto[] workload = new UserActionProto[actions];
+        for (int i = 0; i < actions; i++) {
+            int event = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+            workload[i] = UserActionProto.newBuilder()
+                    .setUserId(random.nextInt(USERS))
+                    .setEventId(event < 0 ? -event - 1 : event)
+                    .setActionType(types[random.nextInt(types.length)])
+                    .setTimestamp(Timestamp.newBuilder().setSeconds(now).build())
+                    .build();
+        }
+        return workload;
+    }
+
+    // Партиция выбирается так же, как в клиенте Kafka по умолчанию: murmur2 от сериализованного ключа
+    private static class KeyHashPartitioner implements Partitioner {
+
+        private final AtomicLongArray counts;
+
+        KeyHashPartitioner(int partitions) {
+            counts = new AtomicLongArray(partitions);
+        }
+
+        @Override
+        public int partition(String topic, Object key, byte[] keyBytes, Object value, byte[] valueBytes, Cluster cluster) {
+            int partition = Utils.toPositive(Utils.murmur2(keyBytes)) % counts.length();
+            counts.incrementAndGet(partition);
+            return partition;
+        }
+
+        void reset() {
+            for (int p = 0; p < counts.length(); p++) {
+                counts.set(p, 0);
+            }
+        }
+
+        // Во сколько раз самая нагруженная партиция больше средней
+        double skew() {
+            long max = 0;
+            long total = 0;
+            for (int p = 0; p < counts.length(); p++) {
+                max = Math.max(max, counts.get(p));
+                total += counts.get(p);
+            }
+            return total == 0 ? 0 : max / ((double) total / counts.length());
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void configure(Map<String, ?> configs) {
+        }
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(quantile * sorted.length) - 1)];
+    }
+
+}
@@ -0,0 +1,22 @@
+package ru.practicum.stats.collector.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "stats.collector.dedup")
+@Getter
+@Setter
+public class DedupConfig {
+    // Повторные действия пользователя с мероприятием, которые не повышают вес, не отправляются в Kafka
+    private boolean enabled = true;
+    // Действие запоминается не дольше windowMs. При включённом затухании повтор позже на windowMs мог бы
+    // повысить затухший вес; с halfLifeMs в 7 дней за 10 минут вес теряет меньше 0.1%
+    private Long windowMs = Duration.ofMinutes(10).toMillis();
+    // Сколько пар пользователь-мероприятие помнится одновременно; при заполнении окно сокращается
+    private int capacity = 1_000_000;
+}
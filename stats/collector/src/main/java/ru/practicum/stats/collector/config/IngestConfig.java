@@ -0,0 +1,24 @@
+package ru.practicum.stats.collector.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "stats.collector.ingest")
+@Getter
+@Setter
+public class IngestConfig {
+    // Сколько действий потока CollectUserActions отправляется в Kafka одной пачкой
+    private int batchSize = 500;
+    // Неполная пачка отправляется через столько мс после первого действия в ней
+    private Long lingerMs = 20L;
+    // Сколько пачек потока может ждать записи в Kafka; дальше действия у клиента не запрашиваются
+    private int maxInFlightBatches = 4;
+    // Сколько пачек и одиночных действий ждёт передачи продюсеру; не поместившиеся пишутся сразу в журнал,
+    // а без журнала отклоняются с RESOURCE_EXHAUSTED
+    private int senderQueueCapacity = 10_000;
+    // Сколько при остановке ждать передачи очереди продюсеру; оставшееся пишется в журнал
+    private Long shutdownTimeoutMs = 10_000L;
+}
@@ -0,0 +1,44 @@
+package ru.practicum.stats.collector.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Properties;
+
+@Configuration
+@ConfigurationProperties(prefix = "stats.collector.journal")
+@Getter
+@Setter
+public class JournalConfig {
+    // Действия, не записанные в Kafka, сохраняются в локальный журнал и отправляются повторно
+    private boolean enabled = true;
+    private String directory = "journal/user-actions";
+    private int segmentBytes = 64 * 1024 * 1024;
+    // Сбрасывать ли сегмент на диск после каждой записи; без этого журнал переживает падение процесса,
+    // но не падение ОС
+    private boolean force = false;
+    // Не больше стольких действий в секунду отправляется из журнала, чтобы не вытеснять текущий поток
+    private int replayRatePerSec = 2_000;
+    private int replayBatchSize = 500;
+    // Пауза после неудачной отправки из журнала и опрос пустого журнала
+    private Long retryBackoffMs = 1_000L;
+    private Long replayTimeoutMs = 10_000L;
+    // С журналом продюсер не должен долго ждать Kafka: отправка при нехватке буфера или метаданных
+    // и доставка быстро завершаются ошибкой, и действия уходят в журнал. Явно заданные свойства продюсера важнее
+    private Long producerMaxBlockMs = 500L;
+    private Long producerRequestTimeoutMs = 2_000L;
+    // Не меньше linger.ms + request.timeout.ms, иначе продюсер не создаётся
+    private Long producerDeliveryTimeoutMs = 5_000L;
+
+    // Короткие таймауты продюсера, если журнал включён и они не заданы явно
+    public void applyProducerTimeouts(Properties properties) {
+        if (!enabled) {
+            return;
+        }
+        properties.putIfAbsent("max.block.ms", String.valueOf(producerMaxBlockMs));
+        properties.putIfAbsent("request.timeout.ms", String.valueOf(producerRequestTimeoutMs));
+        properties.putIfAbsent("delivery.timeout.ms", String.valueOf(producerDeliveryTimeoutMs));
+    }
+}
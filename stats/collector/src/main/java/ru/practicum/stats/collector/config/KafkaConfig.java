@@ -4,6 +4,8 @@ import lombok.Getter;
 import lombok.Setter;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
+import ru.practicum.stats.collector.kafka.KeyingStrategy;
+import ru.practicum.stats.collector.kafka.ProducerProfile;
 
 import java.util.List;
 import java.util.Properties;
@@ -19,14 +21,23 @@ public class KafkaConfig {
     public static class UserActions {
         private Properties properties;
         private List<String> topics;
+        private ProducerProfile profile = ProducerProfile.DEFAULT;
+        private KeyingStrategy keying = KeyingStrategy.EVENT;
     }
 
     public List<String> getUserActionsTopics() {
         return userActions.getTopics();
     }
 
+    // Набор настроек профиля, поверх него явно заданные свойства
     public Properties getUserActionsProperties() {
-        return userActions.getProperties();
+        Properties properties = userActions.getProfile().getProperties();
+        properties.putAll(userActions.getProperties());
+        return properties;
+    }
+
+    public KeyingStrategy getUserActionsKeying() {
+        return userActions.getKeying();
     }
 
 }
@@ -3,17 +3,31 @@ package ru.practicum.stats.collector.controller;
 import com.google.protobuf.Empty;
 import io.grpc.Status;
 import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import net.devh.boot.grpc.server.service.GrpcService;
 import ru.practicum.ewm.stats.avro.UserActionAvro;
 import ru.practicum.ewm.stats.proto.UserActionControllerGrpc;
 import ru.practicum.ewm.stats.proto.UserActionProto;
+import ru.practicum.ewm.stats.proto.UserActionsAckProto;
+import ru.practicum.stats.collector.config.IngestConfig;
 import ru.practicum.stats.collector.config.KafkaConfig;
-import ru.practicum.stats.collector.kafka.KafkaUserActionProducer;
+import ru.practicum.stats.collector.dedup.UserActionDeduplicator;
+import ru.practicum.stats.collector.journal.UserActionJournal;
 import ru.practicum.stats.collector.mapper.useraction.UserActionMapper;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 @GrpcService
 @Slf4j
@@ -21,14 +35,41 @@ public class UserActionController extends UserActionControllerGrpc.UserActionCon
 
     private final List<String> topics;
 
-    private final KafkaUserActionProducer userActionProducer;
+    private final UserActionJournal userActionJournal;
 
     private final UserActionMapper userActionMapper;
 
-    public UserActionController(KafkaConfig kafkaConfig, KafkaUserActionProducer userActionProducer, UserActionMapper userActionMapper) {
+    private final UserActionDeduplicator userActionDeduplicator;
+
+    private final IngestConfig ingestConfig;
+
+    // Таймеры lingerMs и подтверждения записанных пачек. Подтверждения не отправляются из потока Kafka,
+    // а в этом потоке ничего не ждёт Kafka, поэтому подтверждения не задерживаются заполненным буфером продюсера
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "user-actions-batcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Передаёт действия продюсеру вне потоков gRPC: send ждёт место в буфере продюсера до max.block.ms, и onNext
+    // с таймерами ждали бы вместе с ним. Один поток сохраняет порядок пачек. Очередь ограничена
+    // senderQueueCapacity, чтобы при недоступной Kafka действия копились в журнале, а не в памяти
+    private final ThreadPoolExecutor sender;
+
+    public UserActionController(KafkaConfig kafkaConfig, UserActionJournal userActionJournal,
+                                UserActionMapper userActionMapper, UserActionDeduplicator userActionDeduplicator,
+                                IngestConfig ingestConfig) {
         this.topics = kafkaConfig.getUserActionsTopics();
-        this.userActionProducer = userActionProducer;
+        this.userActionJournal = userActionJournal;
         this.userActionMapper = userActionMapper;
+        this.userActionDeduplicator = userActionDeduplicator;
+        this.ingestConfig = ingestConfig;
+        this.sender = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(ingestConfig.getSenderQueueCapacity()), runnable -> {
+                    Thread thread = new Thread(runnable, "user-actions-sender");
+                    thread.setDaemon(true);
+                    return thread;
+                });
     }
 
     @Override
@@ -38,14 +79,21 @@ public class UserActionController extends UserActionControllerGrpc.UserActionCon
 
             UserActionAvro userActionAvro = userActionMapper.map(request);
 
-            log.info("Отправка UserAction Avro в Kafka: {}", userActionAvro.toString());
+            if (userActionDeduplicator.isRepeated(userActionAvro)) {
+                log.debug("Повторное действие не отправляется в Kafka: {}", userActionAvro);
+            } else {
+                log.info("Отправка UserAction Avro в Kafka: {}", userActionAvro.toString());
 
-            topics.forEach(topic -> userActionProducer
-                    .send(topic, userActionAvro.getTimestamp().toEpochMilli(), userActionAvro.getEventId(), userActionAvro)
-            );
+                // Ответ не ждёт Kafka: продюсер может ждать место в буфере до max.block.ms, поэтому отправка идёт
+                // в потоке sender. Не записанное в Kafka действие попадёт в журнал, а без журнала только в лог
+                submit(List.of(userActionAvro));
+            }
 
             responseObserver.onNext(Empty.getDefaultInstance());
             responseObserver.onCompleted();
+        } catch (StatusRuntimeException e) {
+            log.warn("Действие не принято: {}", e.getStatus());
+            responseObserver.onError(e);
         } catch (Exception e) {
             log.error("Ошибка при отправке UserAction в Kafka", e);
             responseObserver.onError(new StatusRuntimeException(
@@ -56,4 +104,261 @@ public class UserActionController extends UserActionControllerGrpc.UserActionCon
         }
     }
 
+    @Override
+    public StreamObserver<UserActionProto> collectUserActions(StreamObserver<UserActionsAckProto> responseObserver) {
+        log.info("Открыт поток действий пользователей");
+
+        ServerCallStreamObserver<UserActionsAckProto> acks = (ServerCallStreamObserver<UserActionsAckProto>) responseObserver;
+        acks.disableAutoRequest();
+        ActionBatcher batcher = new ActionBatcher(acks);
+        acks.setOnCancelHandler(batcher::cancel);
+        acks.request(ingestConfig.getBatchSize() * ingestConfig.getMaxInFlightBatches());
+        return batcher;
+    }
+
+    // Очередь sender передаётся продюсеру до остановки журнала, поэтому не записанное в Kafka попадает в журнал.
+    // Не переданное за shutdownTimeoutMs пишется в журнал сразу
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        sender.shutdown();
+        if (!sender.awaitTermination(ingestConfig.getShutdownTimeoutMs(), TimeUnit.MILLISECONDS)) {
+            List<Runnable> queued = sender.shutdownNow();
+            log.warn("Очередь отправки не передана продюсеру при остановке, осталось {} отправок", queued.size());
+            for (Runnable task : queued) {
+                try {
+                    ((Sending) task).journal();
+                } catch (Exception e) {
+                    log.error("Действия из очереди отправки потеряны при остановке", e);
+                }
+            }
+        }
+        scheduler.shutdownNow();
+    }
+
+    // Отправляет действия в потоке sender. Если его очередь заполнена, действия сразу пишутся в журнал
+    // в текущем потоке, а без журнала отклоняются с RESOURCE_EXHAUSTED
+    private CompletableFuture<Void> submit(List<UserActionAvro> actions) {
+        Sending sending = new Sending(actions);
+        try {
+            sender.execute(sending);
+        } catch (RejectedExecutionException e) {
+            sending.journal();
+        }
+        return sending.written;
+    }
+
+    // Записывает действия во все топики. Не записанные забываются фильтром повторов, иначе их повтор
+    // клиентом был бы отсеян
+    private CompletableFuture<Void> send(List<UserActionAvro> actions) {
+        CompletableFuture<?>[] sent = topics.stream()
+                .map(topic -> userActionJournal.sendOrAppend(topic, actions))
+                .toArray(CompletableFuture[]::new);
+        CompletableFuture<Void> written = CompletableFuture.allOf(sent);
+        written.whenComplete((ignored, exception) -> {
+            if (exception != null) {
+                userActionDeduplicator.forget(actions);
+            }
+        });
+        return written;
+    }
+
+    // Действия, ожидающие потока sender. Результат завершается, когда они записаны в Kafka или в журнал
+    private class Sending implements Runnable {
+
+        private final List<UserActionAvro> actions;
+
+        private final CompletableFuture<Void> written = new CompletableFuture<>();
+
+        Sending(List<UserActionAvro> actions) {
+            this.actions = actions;
+        }
+
+        @Override
+        public void run() {
+            try {
+                send(actions).whenComplete((ignored, exception) -> {
+                    if (exception != null) {
+                        written.completeExceptionally(exception);
+                    } else {
+                        written.complete(null);
+                    }
+                });
+            } catch (Exception e) {
+                userActionDeduplicator.forget(actions);
+                written.completeExceptionally(e);
+            }
+        }
+
+        void journal() {
+            if (!userActionJournal.isEnabled()) {
+                userActionDeduplicator.forget(actions);
+                throw new StatusRuntimeException(Status.RESOURCE_EXHAUSTED
+                        .withDescription("Очередь отправки в Kafka заполнена"));
+            }
+            try {
+                topics.forEach(topic -> userActionJournal.append(topic, actions));
+            } catch (RuntimeException e) {
+                userActionDeduplicator.forget(actions);
+                written.completeExceptionally(e);
+                throw e;
+            }
+            written.complete(null);
+        }
+    }
+
+    // Действия одного потока копятся в пачку до batchSize или lingerMs и отправляются в Kafka вместе.
+    // Подтверждения идут в порядке пачек: ackedCount растёт, только когда все предыдущие пачки записаны
+    // в Kafka или, если она недоступна, в журнал.
+    // Клиенту разрешается прислать новые действия по мере подтверждения пачек, поэтому в памяти потока
+    // не больше batchSize * maxInFlightBatches неподтверждённых действий.
+    // Отсеянные повторы в пачку не попадают, но считаются в её размере и подтверждаются вместе с ней.
+    // Колбэки gRPC, таймер и подтверждения синхронизируются на этом объекте; в Kafka пачки передаёт sender,
+    // а при заполненной очереди sender пачка сразу пишется в журнал
+    private class ActionBatcher implements StreamObserver<UserActionProto> {
+
+        private final ServerCallStreamObserver<UserActionsAckProto> acks;
+
+        private List<UserActionAvro> batch = new ArrayList<>();
+
+        // Полученные действия текущей пачки вместе с отсеянными повторами
+        private int pending;
+
+        // Номер текущей пачки, чтобы таймер не отправил уже отправленную по размеру
+        private long batchNumber;
+
+        private long received;
+
+        private long acked;
+
+        private CompletableFuture<Void> previous = CompletableFuture.completedFuture(null);
+
+        private boolean done;
+
+        ActionBatcher(ServerCallStreamObserver<UserActionsAckProto> acks) {
+            this.acks = acks;
+        }
+
+        @Override
+        public synchronized void onNext(UserActionProto action) {
+            if (done) {
+                return;
+            }
+            log.debug("Получен UserAction из потока: {}", action);
+
+            try {
+                UserActionAvro userActionAvro = userActionMapper.map(action);
+                if (!userActionDeduplicator.isRepeated(userActionAvro)) {
+                    batch.add(userActionAvro);
+                }
+            } catch (Exception e) {
+                fail(e);
+                return;
+            }
+            received++;
+            pending++;
+
+            if (pending >= ingestConfig.getBatchSize()) {
+                flush();
+            } else if (pending == 1) {
+                long number = batchNumber;
+                scheduler.schedule(() -> flushLingering(number), ingestConfig.getLingerMs(), TimeUnit.MILLISECONDS);
+            }
+        }
+
+        @Override
+        public synchronized void onError(Throwable t) {
+            log.warn("Клиент прервал поток действий пользователей, получено {}, подтверждено {}", received, acked, t);
+            done = true;
+        }
+
+        @Override
+        public synchronized void onCompleted() {
+            if (done) {
+                return;
+            }
+            flush();
+            previous.thenRunAsync(this::complete, scheduler);
+        }
+
+        synchronized void cancel() {
+            log.debug("Клиент отменил поток действий пользователей, получено {}, подтверждено {}", received, acked);
+            done = true;
+        }
+
+        private synchronized void flushLingering(long number) {
+            if (!done && number == batchNumber) {
+                flush();
+            }
+        }
+
+        private void flush() {
+            batchNumber++;
+            if (pending == 0) {
+                return;
+            }
+
+            List<UserActionAvro> sending = batch;
+            int size = pending;
+            batch = new ArrayList<>(ingestConfig.getBatchSize());
+            pending = 0;
+            long count = received;
+
+            CompletableFuture<Void> written = submitBatch(sending);
+            previous = previous.thenCompose(ignored -> written);
+            previous.whenCompleteAsync((ignored, exception) -> {
+                if (exception != null) {
+                    fail(exception instanceof CompletionException ? exception.getCause() : exception);
+                } else {
+                    ack(count, size);
+                }
+            }, scheduler);
+        }
+
+        private CompletableFuture<Void> submitBatch(List<UserActionAvro> sending) {
+            if (sending.isEmpty()) {
+                return CompletableFuture.completedFuture(null);
+            }
+            try {
+                return submit(sending);
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+
+        private synchronized void ack(long count, int size) {
+            if (done) {
+                return;
+            }
+            acked = count;
+            acks.onNext(UserActionsAckProto.newBuilder().setAckedCount(count).build());
+            acks.request(size);
+        }
+
+        private synchronized void complete() {
+            if (done) {
+                return;
+            }
+            done = true;
+            log.info("Закрыт поток действий пользователей, записано {}", acked);
+            acks.onCompleted();
+        }
+
+        private synchronized void fail(Throwable e) {
+            if (done) {
+                return;
+            }
+            done = true;
+            log.error("Ошибка при отправке потока UserAction в Kafka, подтверждено {} из {}", acked, received, e);
+            if (e instanceof StatusRuntimeException status) {
+                acks.onError(status);
+                return;
+            }
+            acks.onError(new StatusRuntimeException(
+                    Status.INTERNAL
+                            .withDescription(e.getLocalizedMessage())
+                            .withCause(e.getCause())
+            ));
+        }
+    }
+
 }
@@ -0,0 +1,226 @@
+package ru.practicum.stats.collector.dedup;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import ru.practicum.ewm.stats.avro.UserActionAvro;
+import ru.practicum.stats.collector.config.DedupConfig;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.function.LongSupplier;
+
+/**
+ * Отсеивает действия, которые не могут изменить состояние агрегатора и анализатора: оба сохраняют для пары
+ * пользователь-мероприятие только больший вес, поэтому повтор действия с тем же или меньшим весом ничего не меняет.
+ * <p>
+ * Для пары помнится самый тяжёлый тип действия. Пары хранятся в двух поколениях — открытых хеш-таблицах
+ * 64-битных отпечатков пары и рангов типа действия. Новые пары пишутся в текущее поколение; на границе каждого
+ * интервала windowMs / 2 или при заполнении поколения текущее становится предыдущим, а предыдущее очищается.
+ * Поэтому пара помнится меньше windowMs, а памяти занято от 18 до 36 байт на пару из capacity.
+ * Повтор не продлевает срок: после окна следующий повтор снова уйдёт в Kafka.
+ * <p>
+ * Действие новой пары с отпечатком, совпавшим с запомненным, будет отсеяно по ошибке; вероятность
+ * для одного действия порядка capacity / 2^64.
+ */
+@Slf4j
+@Component
+public class UserActionDeduplicator {
+
+    private final DedupConfig config;
+
+    // Текущее время в миллисекундах
+    private final LongSupplier clock;
+
+    private final long generationMs;
+
+    private Generation current;
+
+    private Generation previous;
+
+    // Номер интервала windowMs / 2, в котором начато текущее поколение
+    private long generation;
+
+    private final Counter checked;
+
+    private final Counter suppressed;
+
+    @Autowired
+    public UserActionDeduplicator(DedupConfig config, MeterRegistry registry) {
+        this(config, registry, System::currentTimeMillis);
+    }
+
+    public UserActionDeduplicator(DedupConfig config, MeterRegistry registry, LongSupplier clock) {
+        this.config = config;
+        this.clock = clock;
+        this.generationMs = Math.max(1, config.getWindowMs() / 2);
+        int generationCapacity = Math.max(1, config.getCapacity() / 2);
+        this.current = new Generation(generationCapacity);
+        this.previous = new Generation(generationCapacity);
+        this.generation = clock.getAsLong() / generationMs;
+
+        this.checked = Counter.builder("collector.user-actions.dedup.checked")
+                .description("Действия, проверенные на повтор")
+                .register(registry);
+        this.suppressed = Counter.builder("collector.user-actions.dedup.suppressed")
+                .description("Повторные действия, не отправленные в Kafka")
+                .register(registry);
+        Gauge.builder("collector.user-actions.dedup.hit-rate", this, UserActionDeduplicator::hitRate)
+                .description("Доля отсеянных действий с запуска")
+                .register(registry);
+    }
+
+    /**
+     * Возвращает true, если пара пользователь-мероприятие уже встречалась в окне с действием не легче этого.
+     * Иначе запоминает действие и возвращает false.
+     */
+    public boolean isRepeated(UserActionAvro action) {
+        if (!config.isEnabled()) {
+            return false;
+        }
+        checked.increment();
+
+        long fingerprint = fingerprint(action);
+        byte rank = rank(action);
+        synchronized (this) {
+            long interval = clock.getAsLong() / generationMs;
+            if (interval != generation) {
+                rotate();
+                // Без действий дольше интервала предыдущее поколение тоже устарело
+                if (interval > generation + 1) {
+                    rotate();
+                }
+                generation = interval;
+            }
+            if (Math.max(current.get(fingerprint), previous.get(fingerprint)) >= rank) {
+                suppressed.increment();
+                return true;
+            }
+            if (!current.put(fingerprint, rank)) {
+                log.debug("Поколение фильтра повторов заполнено раньше окна, {} пар", current.size);
+                rotate();
+                current.put(fingerprint, rank);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Забывает действия, которые не удалось записать, чтобы их повторная отправка клиентом не была отсеяна.
+     * Пара, для которой за это время запомнено более тяжёлое действие, не меняется.
+     */
+    public void forget(Collection<UserActionAvro> actions) {
+        if (!config.isEnabled()) {
+            return;
+        }
+        synchronized (this) {
+            for (UserActionAvro action : actions) {
+                long fingerprint = fingerprint(action);
+                byte rank = rank(action);
+                current.clear(fingerprint, rank);
+                previous.clear(fingerprint, rank);
+            }
+        }
+    }
+
+    private void rotate() {
+        Generation cleared = previous;
+        cleared.reset();
+        previous = current;
+        current = cleared;
+    }
+
+    private double hitRate() {
+        double total = checked.count();
+        return total == 0 ? 0 : suppressed.count() / total;
+    }
+
+    // Ранг растёт вместе с весом действия в агрегаторе и анализаторе; 0 означает, что пары нет
+    private static byte rank(UserActionAvro action) {
+        return switch (action.getActionType()) {
+            case VIEW -> 1;
+            case REGISTER -> 2;
+            case LIKE -> 3;
+        };
+    }
+
+    // Перемешивание splitmix64; 0 зарезервирован за пустой ячейкой
+    private static long fingerprint(UserActionAvro action) {
+        long hash = mix(action.getUserId() * 0x9E3779B97F4A7C15L + action.getEventId());
+        return hash == 0 ? 1 : hash;
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    // Открытая адресация с линейным пробированием, заполнение не больше половины таблицы.
+    // Забытая пара остаётся в таблице с рангом 0, поэтому удалять ячейки не нужно
+    private static class Generation {
+
+        private final long[] fingerprints;
+
+        private final byte[] ranks;
+
+        private final int mask;
+
+        private final int capacity;
+
+        private int size;
+
+        Generation(int capacity) {
+            int tableSize = Integer.highestOneBit(Math.max(2, capacity * 2 - 1)) << 1;
+            this.fingerprints = new long[tableSize];
+            this.ranks = new byte[tableSize];
+            this.mask = tableSize - 1;
+            this.capacity = capacity;
+        }
+
+        byte get(long fingerprint) {
+            int slot = find(fingerprint);
+            return fingerprints[slot] == fingerprint ? ranks[slot] : 0;
+        }
+
+        // false, если пары нет и поколение заполнено
+        boolean put(long fingerprint, byte rank) {
+            int slot = find(fingerprint);
+            if (fingerprints[slot] != fingerprint) {
+                if (size >= capacity) {
+                    return false;
+                }
+                fingerprints[slot] = fingerprint;
+                size++;
+            }
+            ranks[slot] = (byte) Math.max(ranks[slot], rank);
+            return true;
+        }
+
+        void clear(long fingerprint, byte rank) {
+            int slot = find(fingerprint);
+            if (fingerprints[slot] == fingerprint && ranks[slot] == rank) {
+                ranks[slot] = 0;
+            }
+        }
+
+        void reset() {
+            Arrays.fill(fingerprints, 0);
+            Arrays.fill(ranks, (byte) 0);
+            size = 0;
+        }
+
+        // Ячейка пары или пустая ячейка, куда её можно вставить
+        private int find(long fingerprint) {
+            int slot = (int) fingerprint & mask;
+            while (fingerprints[slot] != 0 && fingerprints[slot] != fingerprint) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+    }
+
+}
@@ -0,0 +1,198 @@
+package ru.practicum.stats.collector.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * Журнал записей только на добавление из файлов-сегментов фиксированного размера, отображённых в память.
+ * Запись в сегменте - длина и байты; нулевая длина или нехватка места до конца сегмента означает его конец,
+ * поэтому заполненный нулями хвост нового сегмента не нужно размечать. Запись, не помещающаяся
+ * в текущий сегмент, начинает следующий.
+ * <p>
+ * Позиция чтения хранится в файле cursor и сдвигается только commit, поэтому после перезапуска чтение
+ * продолжается с первой неподтверждённой записи. Полностью прочитанные сегменты удаляются.
+ */
+public class MappedJournal implements Closeable {
+
+    private static final String SEGMENT_SUFFIX = ".segment";
+
+    private final Path directory;
+
+    private final int segmentBytes;
+
+    private final boolean force;
+
+    private final FileChannel cursorChannel;
+
+    // Отображения сегментов от позиции чтения до сегмента записи
+    private final TreeMap<Long, MappedByteBuffer> segments = new TreeMap<>();
+
+    private long writeSegment;
+
+    private int writeOffset;
+
+    private Position readPosition;
+
+    public MappedJournal(Path directory, int segmentBytes, boolean force) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.force = force;
+        Files.createDirectories(directory);
+
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())))
+                    .forEach(segment -> segments.put(segment, null));
+        }
+
+        cursorChannel = FileChannel.open(directory.resolve("cursor"),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer cursor = ByteBuffer.allocate(Long.BYTES + Integer.BYTES);
+        boolean hasCursor = cursorChannel.read(cursor, 0) == cursor.capacity();
+        cursor.flip();
+
+        if (segments.isEmpty()) {
+            segments.put(0L, null);
+        }
+        readPosition = hasCursor
+                ? new Position(cursor.getLong(), cursor.getInt())
+                : new Position(segments.firstKey(), 0);
+        // Сегменты до позиции чтения могли остаться, если процесс остановился до их удаления
+        deleteBefore(readPosition.segment());
+        if (segments.isEmpty() || segments.firstKey() > readPosition.segment()) {
+            segments.put(readPosition.segment(), null);
+        }
+
+        writeSegment = segments.lastKey();
+        MappedByteBuffer last = segment(writeSegment);
+        writeOffset = writeSegment == readPosition.segment() ? readPosition.offset() : 0;
+        while (hasEntry(last, writeOffset)) {
+            writeOffset += Integer.BYTES + last.getInt(writeOffset);
+        }
+    }
+
+    public synchronized void append(List<byte[]> entries) throws IOException {
+        for (byte[] entry : entries) {
+            if (Integer.BYTES + entry.length > segmentBytes) {
+                throw new IllegalArgumentException("Запись длиной " + entry.length + " больше сегмента журнала");
+            }
+            if (segmentBytes - writeOffset < Integer.BYTES + entry.length) {
+                writeSegment++;
+                writeOffset = 0;
+            }
+            MappedByteBuffer segment = segment(writeSegment);
+            // Длина пишется последней: пока её нет, чтение видит конец журнала
+            segment.put(writeOffset + Integer.BYTES, entry);
+            segment.putInt(writeOffset, entry.length);
+            writeOffset += Integer.BYTES + entry.length;
+            if (force) {
+                segment.force();
+            }
+        }
+    }
+
+    /**
+     * Не больше max записей от позиции чтения. Позиция не сдвигается до commit с возвращённой позицией.
+     */
+    public synchronized Batch read(int max) throws IOException {
+        List<byte[]> entries = new ArrayList<>();
+        long segmentId = readPosition.segment();
+        int offset = readPosition.offset();
+        while (entries.size() < max) {
+            MappedByteBuffer segment = segment(segmentId);
+            if (!hasEntry(segment, offset)) {
+                if (segmentId >= writeSegment) {
+                    break;
+                }
+                segmentId++;
+                offset = 0;
+                continue;
+            }
+            byte[] entry = new byte[segment.getInt(offset)];
+            segment.get(offset + Integer.BYTES, entry);
+            entries.add(entry);
+            offset += Integer.BYTES + entry.length;
+        }
+        return new Batch(entries, new Position(segmentId, offset));
+    }
+
+    public synchronized void commit(Position position) throws IOException {
+        ByteBuffer cursor = ByteBuffer.allocate(Long.BYTES + Integer.BYTES)
+                .putLong(position.segment())
+                .putInt(position.offset())
+                .flip();
+        cursorChannel.write(cursor, 0);
+        if (force) {
+            cursorChannel.force(false);
+        }
+        readPosition = position;
+        deleteBefore(position.segment());
+    }
+
+    public synchronized boolean isEmpty() {
+        return readPosition.segment() == writeSegment && readPosition.offset() == writeOffset;
+    }
+
+    // Байты от позиции чтения до позиции записи с учётом незаполненных хвостов сегментов
+    public synchronized long pendingBytes() {
+        return (writeSegment - readPosition.segment()) * segmentBytes + writeOffset - readPosition.offset();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        for (MappedByteBuffer segment : segments.values()) {
+            if (segment != null) {
+                segment.force();
+            }
+        }
+        cursorChannel.close();
+    }
+
+    private boolean hasEntry(MappedByteBuffer segment, int offset) {
+        return segmentBytes - offset >= Integer.BYTES && segment.getInt(offset) > 0;
+    }
+
+    private MappedByteBuffer segment(long id) throws IOException {
+        MappedByteBuffer segment = segments.get(id);
+        if (segment == null) {
+            try (FileChannel channel = FileChannel.open(segmentPath(id),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+            }
+            segments.put(id, segment);
+        }
+        return segment;
+    }
+
+    // Отображение удалённого файла остаётся действительным до сборки мусора
+    private void deleteBefore(long segment) throws IOException {
+        Map<Long, MappedByteBuffer> deleted = segments.headMap(segment);
+        for (Long id : List.copyOf(deleted.keySet())) {
+            Files.deleteIfExists(segmentPath(id));
+            segments.remove(id);
+        }
+    }
+
+    private Path segmentPath(long id) {
+        return directory.resolve(String.format("%020d%s", id, SEGMENT_SUFFIX));
+    }
+
+    public record Position(long segment, int offset) {
+    }
+
+    public record Batch(List<byte[]> entries, Position next) {
+    }
+
+}
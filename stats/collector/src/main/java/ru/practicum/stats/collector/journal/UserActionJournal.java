@@ -0,0 +1,221 @@
+package ru.practicum.stats.collector.journal;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.BufferExhaustedException;
+import org.apache.kafka.common.errors.TimeoutException;
+import org.springframework.stereotype.Component;
+import ru.practicum.ewm.stats.avro.UserActionAvro;
+import ru.practicum.stats.collector.config.JournalConfig;
+import ru.practicum.stats.collector.kafka.KafkaUserActionProducer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Действия, которые не удалось записать в Kafka, сохраняются в MappedJournal вместе с топиком и отправляются
+ * повторно фоновым потоком в порядке записи. Отправка из журнала ограничена replayRatePerSec, поэтому
+ * после восстановления Kafka накопленное не вытесняет текущие действия; новые действия при этом идут
+ * в Kafka сразу, не дожидаясь журнала. Позиция чтения сдвигается только после подтверждения всей пачки.
+ * <p>
+ * Если Kafka не приняла действия за max.block.ms или delivery.timeout.ms, следующие retryBackoffMs
+ * действия пишутся сразу в журнал, не ожидая продюсера.
+ */
+@Slf4j
+@Component
+public class UserActionJournal {
+
+    private final KafkaUserActionProducer producer;
+
+    private final JournalConfig config;
+
+    private final Thread replayer = new Thread(this::replayLoop, "user-actions-journal-replay");
+
+    // Результаты отправки обрабатываются здесь, а не в сетевом потоке продюсера: запись в журнал
+    // ждёт диск, а сетевой поток тем временем не завершал бы другие отправки
+    private final ExecutorService appender = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "user-actions-journal-append");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // До этого момента действия пишутся сразу в журнал
+    private volatile long journalOnlyUntil;
+
+    private MappedJournal journal;
+
+    private volatile boolean running = true;
+
+    public UserActionJournal(KafkaUserActionProducer producer, JournalConfig config) {
+        this.producer = producer;
+        this.config = config;
+        replayer.setDaemon(true);
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!config.isEnabled()) {
+            return;
+        }
+        journal = new MappedJournal(Path.of(config.getDirectory()), config.getSegmentBytes(), config.isForce());
+        if (!journal.isEmpty()) {
+            log.info("В журнале {} остались неотправленные действия, около {} байт",
+                    config.getDirectory(), journal.pendingBytes());
+        }
+        replayer.start();
+    }
+
+    /**
+     * Отправляет действия в топик; если Kafka их не подтвердила, записывает в журнал. Результат завершается
+     * с ошибкой, только если не удалась и запись в журнал или журнал выключен.
+     */
+    public CompletableFuture<Void> sendOrAppend(String topic, List<UserActionAvro> actions) {
+        if (journal == null) {
+            return producer.sendAll(topic, actions);
+        }
+        if (System.currentTimeMillis() < journalOnlyUntil) {
+            return CompletableFuture.runAsync(() -> append(topic, actions), appender);
+        }
+        return producer.sendAll(topic, actions).handleAsync((ignored, exception) -> {
+            if (exception != null) {
+                if (isKafkaUnavailable(exception)) {
+                    journalOnlyUntil = System.currentTimeMillis() + config.getRetryBackoffMs();
+                }
+                append(topic, actions);
+            }
+            return null;
+        }, appender);
+    }
+
+    public boolean isEnabled() {
+        return journal != null;
+    }
+
+    /**
+     * Записывает действия сразу в журнал в текущем потоке, не отправляя в Kafka.
+     */
+    public void append(String topic, List<UserActionAvro> actions) {
+        if (journal == null) {
+            throw new IllegalStateException("Журнал действий выключен");
+        }
+        byte[] topicBytes = topic.getBytes(StandardCharsets.UTF_8);
+        List<byte[]> entries = new ArrayList<>(actions.size());
+        try {
+            for (UserActionAvro action : actions) {
+                ByteBuffer avro = action.toByteBuffer();
+                entries.add(ByteBuffer.allocate(Short.BYTES + topicBytes.length + avro.remaining())
+                        .putShort((short) topicBytes.length)
+                        .put(topicBytes)
+                        .put(avro)
+                        .array());
+            }
+            journal.append(entries);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        log.warn("Kafka недоступна, {} действий для топика {} записаны в журнал", actions.size(), topic);
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+        running = false;
+        if (journal == null) {
+            return;
+        }
+        // Дожидаемся ответа Kafka на уже переданные продюсеру действия: их обработка попадает в appender,
+        // и после его остановки не записанные в Kafka действия не попали бы в журнал
+        producer.flush();
+        appender.shutdown();
+        try {
+            if (!appender.awaitTermination(config.getReplayTimeoutMs(), TimeUnit.MILLISECONDS)) {
+                log.warn("Не все действия успели записаться в журнал при остановке");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Без interrupt: прерванный поток закрыл бы канал файла cursor посреди записи
+        try {
+            replayer.join(config.getReplayTimeoutMs() + config.getRetryBackoffMs());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        journal.close();
+    }
+
+    // Продюсер не получил место в буфере или метаданные за max.block.ms либо не доставил за delivery.timeout.ms
+    private static boolean isKafkaUnavailable(Throwable exception) {
+        Throwable cause = exception instanceof CompletionException ? exception.getCause() : exception;
+        return cause instanceof BufferExhaustedException || cause instanceof TimeoutException;
+    }
+
+    private void replayLoop() {
+        while (running) {
+            try {
+                if (journal.isEmpty()) {
+                    TimeUnit.MILLISECONDS.sleep(config.getRetryBackoffMs());
+                    continue;
+                }
+
+                long started = System.nanoTime();
+                MappedJournal.Batch batch = journal.read(config.getReplayBatchSize());
+                if (replay(batch.entries())) {
+                    journal.commit(batch.next());
+                    log.info("Из журнала повторно отправлено {} действий", batch.entries().size());
+                    // Пачка из n действий занимает не меньше n / replayRatePerSec секунд
+                    long minNanos = TimeUnit.SECONDS.toNanos(batch.entries().size()) / config.getReplayRatePerSec();
+                    TimeUnit.NANOSECONDS.sleep(minNanos - (System.nanoTime() - started));
+                } else {
+                    TimeUnit.MILLISECONDS.sleep(config.getRetryBackoffMs());
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                log.error("Ошибка при повторной отправке действий из журнала", e);
+                try {
+                    TimeUnit.MILLISECONDS.sleep(config.getRetryBackoffMs());
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private boolean replay(List<byte[]> entries) throws IOException, InterruptedException {
+        // Топики в порядке первой записи, действия каждого топика в порядке журнала
+        Map<String, List<UserActionAvro>> byTopic = new LinkedHashMap<>();
+        for (byte[] entry : entries) {
+            ByteBuffer buffer = ByteBuffer.wrap(entry);
+            byte[] topic = new byte[buffer.getShort()];
+            buffer.get(topic);
+            byTopic.computeIfAbsent(new String(topic, StandardCharsets.UTF_8), t -> new ArrayList<>())
+                    .add(UserActionAvro.fromByteBuffer(buffer));
+        }
+
+        CompletableFuture<?>[] sent = byTopic.entrySet().stream()
+                .map(topic -> producer.sendAll(topic.getKey(), topic.getValue()))
+                .toArray(CompletableFuture[]::new);
+        try {
+            CompletableFuture.allOf(sent).get(config.getReplayTimeoutMs(), TimeUnit.MILLISECONDS);
+            return true;
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            log.warn("Kafka всё ещё недоступна, {} действий остаются в журнале", entries.size());
+            return false;
+        }
+    }
+
+}
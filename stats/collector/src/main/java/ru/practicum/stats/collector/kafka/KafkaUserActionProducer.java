@@ -4,49 +4,93 @@ import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.avro.specific.SpecificRecordBase;
 import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.clients.producer.ProducerRecord;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
+import ru.practicum.ewm.stats.avro.UserActionAvro;
+import ru.practicum.stats.collector.config.JournalConfig;
 import ru.practicum.stats.collector.config.KafkaConfig;
 
 import java.time.Duration;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Component
 @Slf4j
 public class KafkaUserActionProducer {
 
-    private final KafkaProducer<Long, SpecificRecordBase> producer;
+    private final Producer<Long, SpecificRecordBase> producer;
 
-    public KafkaUserActionProducer(KafkaConfig kafkaConfig) {
-        producer = new KafkaProducer<>(kafkaConfig.getUserActionsProperties());
+    private final KeyingStrategy keying;
+
+    @Autowired
+    public KafkaUserActionProducer(KafkaConfig kafkaConfig, JournalConfig journalConfig) {
+        this(new KafkaProducer<>(properties(kafkaConfig, journalConfig)), kafkaConfig.getUserActionsKeying());
+        log.info("Продюсер действий пользователей создан, ключ сообщения: {}", keying);
+    }
+
+    private static Properties properties(KafkaConfig kafkaConfig, JournalConfig journalConfig) {
+        Properties properties = kafkaConfig.getUserActionsProperties();
+        journalConfig.applyProducerTimeouts(properties);
+        return properties;
+    }
+
+    KafkaUserActionProducer(Producer<Long, SpecificRecordBase> producer, KeyingStrategy keying) {
+        this.producer = producer;
+        this.keying = keying;
     }
 
-    public void send(String topic, Long eventTimestamp, Long key, SpecificRecordBase data) {
-        ProducerRecord<Long, SpecificRecordBase> record = new ProducerRecord<>(topic, null, eventTimestamp, key, data);
+    /**
+     * Отправляет действия с ключом, выбранным KeyingStrategy. Результат завершается, когда Kafka подтвердит все записи,
+     * или с первой ошибкой. После ошибки оставшиеся действия пачки не передаются продюсеру: каждое ждало бы
+     * max.block.ms, а пачка всё равно уходит в журнал целиком.
+     */
+    public CompletableFuture<Void> sendAll(String topic, List<UserActionAvro> actions) {
+        CompletableFuture<Void> sent = new CompletableFuture<>();
+        AtomicInteger remaining = new AtomicInteger(actions.size());
+        if (actions.isEmpty()) {
+            sent.complete(null);
+            return sent;
+        }
 
-        producer.send(record, (metadata, exception) -> {
-            String eventName = data != null ? data.getClass().getSimpleName() : "null";
+        try {
+            for (UserActionAvro action : actions) {
+                if (sent.isDone()) {
+                    break;
+                }
+                ProducerRecord<Long, SpecificRecordBase> record = new ProducerRecord<>(
+                        topic, null, action.getTimestamp().toEpochMilli(), keying.key(action), action);
+                producer.send(record, (metadata, exception) -> {
+                    if (exception != null) {
+                        sent.completeExceptionally(exception);
+                    } else if (remaining.decrementAndGet() == 0) {
+                        sent.complete(null);
+                    }
+                });
+            }
+        } catch (Exception e) {
+            sent.completeExceptionally(e);
+        }
+
+        return sent.whenComplete((ignored, exception) -> {
             if (exception == null) {
-                log.info("Событие {} было успешно сохранено в топик {}, в партицию {}, со смещением {}, ключ '{}', timestamp {}",
-                        eventName,
-                        metadata.topic(),
-                        metadata.partition(),
-                        metadata.offset(),
-                        key,
-                        eventTimestamp
-                );
+                log.debug("Пачка из {} действий записана в топик {}", actions.size(), topic);
             } else {
-                log.error(
-                        "Не удалось записать событие {} в топик {} (Ключ: {}). Ошибка: {}",
-                        eventName,
-                        topic,
-                        key,
-                        exception.getMessage(),
-                        exception
-                );
+                log.error("Не удалось записать пачку из {} действий в топик {}", actions.size(), topic, exception);
             }
         });
     }
 
+    /**
+     * Ждёт, пока Kafka ответит на все переданные продюсеру записи; колбэки отправки к этому моменту вызваны.
+     */
+    public void flush() {
+        producer.flush();
+    }
+
     @PreDestroy
     public void shutdown() {
         log.info("Shutting down producer");
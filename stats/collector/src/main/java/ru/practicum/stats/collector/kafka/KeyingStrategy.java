@@ -0,0 +1,26 @@
+package ru.practicum.stats.collector.kafka;
+
+import ru.practicum.ewm.stats.avro.UserActionAvro;
+
+/**
+ * Ключ сообщения действия, по которому Kafka выбирает партицию.
+ */
+public enum KeyingStrategy {
+    // Все действия с мероприятием в одной партиции; популярные мероприятия перегружают свою партицию
+    EVENT {
+        @Override
+        public long key(UserActionAvro action) {
+            return action.getEventId();
+        }
+    },
+    // Все действия пользователя в одной партиции: экземпляр агрегатора видит все мероприятия пользователя,
+    // нагрузка распределяется по партициям равномернее
+    USER {
+        @Override
+        public long key(UserActionAvro action) {
+            return action.getUserId();
+        }
+    };
+
+    public abstract long key(UserActionAvro action);
+}
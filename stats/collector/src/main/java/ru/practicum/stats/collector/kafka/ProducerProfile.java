@@ -0,0 +1,42 @@
+package ru.practicum.stats.collector.kafka;
+
+import java.util.Properties;
+
+/**
+ * Наборы настроек продюсера действий. Свойства из stats.collector.kafka.userActions.properties
+ * применяются поверх набора и могут переопределить любое из них.
+ */
+public enum ProducerProfile {
+    // Настройки клиента Kafka по умолчанию: пачка уходит сразу, без сжатия
+    DEFAULT(new Properties()),
+    // Пачки копятся до 20 мс и до 256 КБ на партицию и сжимаются lz4. Идемпотентность с acks=all
+    // не даёт повторной отправке продюсера задвоить или переставить действия партиции
+    HIGH_THROUGHPUT(properties(
+            "linger.ms", "20",
+            "batch.size", "262144",
+            "compression.type", "lz4",
+            "acks", "all",
+            "enable.idempotence", "true",
+            "max.in.flight.requests.per.connection", "5",
+            "buffer.memory", "67108864"));
+
+    private final Properties properties;
+
+    ProducerProfile(Properties properties) {
+        this.properties = properties;
+    }
+
+    public Properties getProperties() {
+        Properties copy = new Properties();
+        copy.putAll(properties);
+        return copy;
+    }
+
+    private static Properties properties(String... keyValues) {
+        Properties properties = new Properties();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            properties.put(keyValues[i], keyValues[i + 1]);
+        }
+        return properties;
+    }
+}
@@ -0,0 +1,128 @@
+package ru.practicum.stats.collector.dedup;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import ru.practicum.ewm.stats.avro.ActionTypeAvro;
+import ru.practicum.ewm.stats.avro.UserActionAvro;
+import ru.practicum.stats.collector.config.DedupConfig;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UserActionDeduplicatorTest {
+
+    // Поколение сменяется каждые 500 мс
+    private static final long WINDOW_MS = 1_000;
+
+    // Веса действий в агрегаторе и анализаторе
+    private static final Map<ActionTypeAvro, Double> WEIGHTS = Map.of(
+            ActionTypeAvro.VIEW, 0.4,
+            ActionTypeAvro.REGISTER, 0.8,
+            ActionTypeAvro.LIKE, 1.0);
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+
+    @Test
+    void actionIsRepeatedOnlyIfNotHeavierThanRemembered() {
+        UserActionDeduplicator deduplicator = deduplicator(100);
+        long userId = 0;
+        for (ActionTypeAvro first : ActionTypeAvro.values()) {
+            for (ActionTypeAvro second : ActionTypeAvro.values()) {
+                userId++;
+                assertFalse(deduplicator.isRepeated(action(userId, 1, first)));
+                assertEquals(WEIGHTS.get(second) <= WEIGHTS.get(first),
+                        deduplicator.isRepeated(action(userId, 1, second)), first + " затем " + second);
+            }
+        }
+    }
+
+    @Test
+    void actionIsRememberedForOneMoreGeneration() {
+        UserActionDeduplicator deduplicator = deduplicator(100);
+        assertFalse(deduplicator.isRepeated(action(1, 1, ActionTypeAvro.VIEW)));
+
+        now.addAndGet(WINDOW_MS / 2);
+        assertTrue(deduplicator.isRepeated(action(1, 1, ActionTypeAvro.VIEW)));
+
+        // Повтор срок не продлевает
+        now.addAndGet(WINDOW_MS / 2);
+        assertFalse(deduplicator.isRepeated(action(1, 1, ActionTypeAvro.VIEW)));
+    }
+
+    @Test
+    void bothGenerationsAreDroppedAfterIdleInterval() {
+        UserActionDeduplicator deduplicator = deduplicator(100);
+        assertFalse(deduplicator.isRepeated(action(1, 1, ActionTypeAvro.VIEW)));
+        assertFalse(deduplicator.isRepeated(action(2, 1, ActionTypeAvro.VIEW)));
+
+        // Одна смена поколения оставила бы действие в предыдущем
+        now.addAndGet(WINDOW_MS);
+        assertFalse(deduplicator.isRepeated(action(1, 1, ActionTypeAvro.VIEW)));
+        assertFalse(deduplicator.isRepeated(action(2, 1, ActionTypeAvro.VIEW)));
+    }
+
+    @Test
+    void fullGenerationRotatesBeforeInterval() {
+        // Два действия на поколение
+        UserActionDeduplicator deduplicator = deduplicator(4);
+        assertFalse(deduplicator.isRepeated(action(1, 1, ActionTypeAvro.VIEW)));
+        assertFalse(deduplicator.isRepeated(action(2, 1, ActionTypeAvro.VIEW)));
+
+        // Третье действие переводит первые два в предыдущее поколение
+        assertFalse(deduplicator.isRepeated(action(3, 1, ActionTypeAvro.VIEW)));
+        assertTrue(deduplicator.isRepeated(action(1, 1, ActionTypeAvro.VIEW)));
+        assertTrue(deduplicator.isRepeated(action(2, 1, ActionTypeAvro.VIEW)));
+
+        // Пятое снова заполняет поколение, и первые два забываются
+        assertFalse(deduplicator.isRepeated(action(4, 1, ActionTypeAvro.VIEW)));
+        assertFalse(deduplicator.isRepeated(action(5, 1, ActionTypeAvro.VIEW)));
+        assertTrue(deduplicator.isRepeated(action(3, 1, ActionTypeAvro.VIEW)));
+        assertFalse(deduplicator.isRepeated(action(1, 1, ActionTypeAvro.VIEW)));
+    }
+
+    @Test
+    void forgetClearsOnlySameAction() {
+        UserActionDeduplicator deduplicator = deduplicator(100);
+        assertFalse(deduplicator.isRepeated(action(1, 1, ActionTypeAvro.LIKE)));
+
+        // Неудавшаяся запись более лёгкого действия не стирает запомненный лайк
+        deduplicator.forget(List.of(action(1, 1, ActionTypeAvro.VIEW)));
+        assertTrue(deduplicator.isRepeated(action(1, 1, ActionTypeAvro.VIEW)));
+
+        deduplicator.forget(List.of(action(1, 1, ActionTypeAvro.LIKE)));
+        assertFalse(deduplicator.isRepeated(action(1, 1, ActionTypeAvro.VIEW)));
+    }
+
+    @Test
+    void forgetClearsPreviousGeneration() {
+        UserActionDeduplicator deduplicator = deduplicator(100);
+        assertFalse(deduplicator.isRepeated(action(1, 1, ActionTypeAvro.REGISTER)));
+        now.addAndGet(WINDOW_MS / 2);
+
+        deduplicator.forget(List.of(action(1, 1, ActionTypeAvro.REGISTER)));
+        assertFalse(deduplicator.isRepeated(action(1, 1, ActionTypeAvro.REGISTER)));
+    }
+
+    private UserActionDeduplicator deduplicator(int capacity) {
+        DedupConfig config = new DedupConfig();
+        config.setWindowMs(WINDOW_MS);
+        config.setCapacity(capacity);
+        return new UserActionDeduplicator(config, new SimpleMeterRegistry(), now::get);
+    }
+
+    private static UserActionAvro action(long userId, long eventId, ActionTypeAvro type) {
+        return UserActionAvro.newBuilder()
+                .setUserId(userId)
+                .setEventId(eventId)
+                .setActionType(type)
+                .setTimestamp(Instant.EPOCH)
+                .build();
+    }
+
+}
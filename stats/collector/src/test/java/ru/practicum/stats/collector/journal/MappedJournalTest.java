@@ -0,0 +1,140 @@
+package ru.practicum.stats.collector.journal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MappedJournalTest {
+
+    // В сегмент помещаются три записи по 16 байт вместе с длиной
+    private static final int SEGMENT_BYTES = 64;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsAppendedEntriesAcrossSegments() throws IOException {
+        try (MappedJournal journal = open()) {
+            assertTrue(journal.isEmpty());
+            journal.append(entries(0, 7));
+            assertFalse(journal.isEmpty());
+
+            MappedJournal.Batch batch = journal.read(100);
+            assertEquals(names(0, 7), strings(batch.entries()));
+            assertEquals(2, batch.next().segment());
+
+            journal.commit(batch.next());
+            assertTrue(journal.isEmpty());
+            assertEquals(0, journal.pendingBytes());
+        }
+    }
+
+    @Test
+    void readDoesNotMovePositionUntilCommit() throws IOException {
+        try (MappedJournal journal = open()) {
+            journal.append(entries(0, 5));
+
+            MappedJournal.Batch first = journal.read(2);
+            assertEquals(names(0, 2), strings(first.entries()));
+            assertEquals(names(0, 2), strings(journal.read(2).entries()));
+
+            journal.commit(first.next());
+            MappedJournal.Batch second = journal.read(10);
+            assertEquals(names(2, 5), strings(second.entries()));
+        }
+    }
+
+    @Test
+    void reopenContinuesFromCommittedPosition() throws IOException {
+        try (MappedJournal journal = open()) {
+            journal.append(entries(0, 8));
+            journal.commit(journal.read(4).next());
+        }
+
+        try (MappedJournal journal = open()) {
+            assertEquals(names(4, 8), strings(journal.read(100).entries()));
+
+            // Запись продолжается за последней записью последнего сегмента
+            journal.append(entries(8, 10));
+            MappedJournal.Batch batch = journal.read(100);
+            assertEquals(names(4, 10), strings(batch.entries()));
+            journal.commit(batch.next());
+        }
+
+        try (MappedJournal journal = open()) {
+            assertTrue(journal.isEmpty());
+            assertTrue(journal.read(100).entries().isEmpty());
+        }
+    }
+
+    @Test
+    void commitDeletesReadSegments() throws IOException {
+        try (MappedJournal journal = open()) {
+            journal.append(entries(0, 9));
+            assertEquals(3, segmentFiles());
+
+            journal.commit(journal.read(7).next());
+            assertEquals(1, segmentFiles());
+            assertEquals(names(7, 9), strings(journal.read(100).entries()));
+        }
+    }
+
+    @Test
+    void uncommittedEntriesAreReadAgainAfterReopen() throws IOException {
+        try (MappedJournal journal = open()) {
+            journal.append(entries(0, 4));
+            journal.read(4);
+        }
+
+        try (MappedJournal journal = open()) {
+            assertEquals(names(0, 4), strings(journal.read(100).entries()));
+        }
+    }
+
+    @Test
+    void rejectsEntryLargerThanSegment() throws IOException {
+        try (MappedJournal journal = open()) {
+            assertThrows(IllegalArgumentException.class, () -> journal.append(List.of(new byte[SEGMENT_BYTES])));
+        }
+    }
+
+    private MappedJournal open() throws IOException {
+        return new MappedJournal(directory, SEGMENT_BYTES, false);
+    }
+
+    private long segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(".segment")).count();
+        }
+    }
+
+    // Записи по 16 байт: "entry-0000000000", "entry-0000000001", ...
+    private static List<byte[]> entries(int from, int to) {
+        List<byte[]> entries = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            entries.add(String.format("entry-%010d", i).getBytes(StandardCharsets.UTF_8));
+        }
+        return entries;
+    }
+
+    private static List<String> names(int from, int to) {
+        return strings(entries(from, to));
+    }
+
+    private static List<String> strings(List<byte[]> entries) {
+        return entries.stream().map(entry -> new String(entry, StandardCharsets.UTF_8)).toList();
+    }
+
+}
@@ -0,0 +1,110 @@
+package ru.practicum.ewm.stats.avro.deserializer;
+
+import org.apache.avro.io.DatumReader;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.practicum.ewm.stats.avro.ActionTypeAvro;
+import ru.practicum.ewm.stats.avro.EventSimilarityAvro;
+import ru.practicum.ewm.stats.avro.UserActionAvro;
+import ru.practicum.ewm.stats.avro.serializer.GeneralAvroSerializer;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Время и выделяемая память на сообщение при десериализации: новая запись на каждое сообщение
+ * ({@code fresh*}), чтение в переиспользуемую запись ({@code reuse*}) и прежняя реализация с новым декодером
+ * на каждое сообщение ({@code legacy*}). Память показывает {@code -prof gc}, метрика gc.alloc.rate.norm.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BaseAvroDeserializerBenchmark {
+
+    private static final String TOPIC = "stats.benchmark";
+
+    private UserActionDeserializer userActionDeserializer;
+
+    private EventsSimilarityDeserializer eventSimilarityDeserializer;
+
+    private byte[] userActionBytes;
+
+    private byte[] eventSimilarityBytes;
+
+    private DatumReader<UserActionAvro> userActionReader;
+
+    private DatumReader<EventSimilarityAvro> eventSimilarityReader;
+
+    private UserActionAvro userAction;
+
+    private EventSimilarityAvro eventSimilarity;
+
+    @Setup
+    public void setUp() {
+        userActionDeserializer = new UserActionDeserializer();
+        eventSimilarityDeserializer = new EventsSimilarityDeserializer();
+        userActionReader = new SpecificDatumReader<>(UserActionAvro.getClassSchema());
+        eventSimilarityReader = new SpecificDatumReader<>(EventSimilarityAvro.getClassSchema());
+        userAction = new UserActionAvro();
+        eventSimilarity = new EventSimilarityAvro();
+
+        GeneralAvroSerializer serializer = new GeneralAvroSerializer();
+        userActionBytes = serializer.serialize(TOPIC, UserActionAvro.newBuilder()
+                .setUserId(123_456L)
+                .setEventId(7_890L)
+                .setActionType(ActionTypeAvro.REGISTER)
+                .setTimestamp(Instant.parse("2025-01-01T10:15:30Z"))
+                .build());
+        eventSimilarityBytes = serializer.serialize(TOPIC, EventSimilarityAvro.newBuilder()
+                .setEventA(7_890L)
+                .setEventB(7_891L)
+                .setScore(0.734)
+                .setTimestamp(Instant.parse("2025-01-01T10:15:30Z"))
+                .build());
+    }
+
+    @Benchmark
+    public UserActionAvro legacyUserAction() throws IOException {
+        return userActionReader.read(null, DecoderFactory.get().binaryDecoder(userActionBytes, null));
+    }
+
+    @Benchmark
+    public UserActionAvro freshUserAction() {
+        return userActionDeserializer.deserialize(TOPIC, userActionBytes);
+    }
+
+    @Benchmark
+    public UserActionAvro reuseUserAction() {
+        return userActionDeserializer.deserialize(TOPIC, userActionBytes, userAction);
+    }
+
+    @Benchmark
+    public EventSimilarityAvro legacyEventSimilarity() throws IOException {
+        return eventSimilarityReader.read(null, DecoderFactory.get().binaryDecoder(eventSimilarityBytes, null));
+    }
+
+    @Benchmark
+    public EventSimilarityAvro freshEventSimilarity() {
+        return eventSimilarityDeserializer.deserialize(TOPIC, eventSimilarityBytes);
+    }
+
+    @Benchmark
+    public EventSimilarityAvro reuseEventSimilarity() {
+        return eventSimilarityDeserializer.deserialize(TOPIC, eventSimilarityBytes, eventSimilarity);
+    }
+
+}
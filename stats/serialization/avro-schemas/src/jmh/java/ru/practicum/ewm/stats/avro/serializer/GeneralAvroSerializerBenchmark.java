@@ -0,0 +1,99 @@
+package ru.practicum.ewm.stats.avro.serializer;
+
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DatumWriter;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.avro.specific.SpecificRecordBase;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.practicum.ewm.stats.avro.ActionTypeAvro;
+import ru.practicum.ewm.stats.avro.EventSimilarityAvro;
+import ru.practicum.ewm.stats.avro.UserActionAvro;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Время и выделяемая память на сообщение для {@link GeneralAvroSerializer} и для прежней схемы,
+ * создававшей writer и поток на каждое сообщение (legacy*). Память показывает профилировщик:
+ * {@code -prof gc}, метрика gc.alloc.rate.norm.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GeneralAvroSerializerBenchmark {
+
+    private static final String TOPIC = "stats.benchmark";
+
+    private final EncoderFactory encoderFactory = EncoderFactory.get();
+
+    private GeneralAvroSerializer serializer;
+
+    private BinaryEncoder legacyEncoder;
+
+    private UserActionAvro userAction;
+
+    private EventSimilarityAvro eventSimilarity;
+
+    @Setup
+    public void setUp() {
+        serializer = new GeneralAvroSerializer();
+        userAction = UserActionAvro.newBuilder()
+                .setUserId(123_456L)
+                .setEventId(7_890L)
+                .setActionType(ActionTypeAvro.REGISTER)
+                .setTimestamp(Instant.parse("2025-01-01T10:15:30Z"))
+                .build();
+        eventSimilarity = EventSimilarityAvro.newBuilder()
+                .setEventA(7_890L)
+                .setEventB(7_891L)
+                .setScore(0.734)
+                .setTimestamp(Instant.parse("2025-01-01T10:15:30Z"))
+                .build();
+    }
+
+    @Benchmark
+    public byte[] userAction() {
+        return serializer.serialize(TOPIC, userAction);
+    }
+
+    @Benchmark
+    public byte[] eventSimilarity() {
+        return serializer.serialize(TOPIC, eventSimilarity);
+    }
+
+    @Benchmark
+    public byte[] legacyUserAction() throws IOException {
+        return legacySerialize(userAction);
+    }
+
+    @Benchmark
+    public byte[] legacyEventSimilarity() throws IOException {
+        return legacySerialize(eventSimilarity);
+    }
+
+    private byte[] legacySerialize(SpecificRecordBase data) throws IOException {
+        try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            DatumWriter<SpecificRecordBase> writer = new SpecificDatumWriter<>(data.getSchema());
+            legacyEncoder = encoderFactory.binaryEncoder(out, legacyEncoder);
+            writer.write(data, legacyEncoder);
+            legacyEncoder.flush();
+            return out.toByteArray();
+        }
+    }
+
+}
@@ -4,6 +4,7 @@ import org.apache.avro.Schema;
 import org.apache.avro.io.BinaryDecoder;
 import org.apache.avro.io.DatumReader;
 import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.ResolvingDecoder;
 import org.apache.avro.specific.SpecificDatumReader;
 import org.apache.avro.specific.SpecificRecordBase;
 import org.apache.kafka.common.serialization.Deserializer;
@@ -11,10 +12,14 @@ import ru.practicum.ewm.stats.avro.exception.DeserializationException;
 
 import java.io.IOException;
 
+/**
+ * Декодер переиспользуется между сообщениями, поэтому экземпляр, как и консьюмер Kafka, однопоточный.
+ */
 public class BaseAvroDeserializer<T extends SpecificRecordBase> implements Deserializer<T> {
 
     private final DecoderFactory decoderFactory;
     private final DatumReader<T> reader;
+    private BinaryDecoder decoder;
 
     public BaseAvroDeserializer(Schema schema) {
         this(DecoderFactory.get(), schema);
@@ -22,19 +27,56 @@ public class BaseAvroDeserializer<T extends SpecificRecordBase> implements Deser
 
     public BaseAvroDeserializer(DecoderFactory decoderFactory, Schema schema) {
         this.decoderFactory = decoderFactory;
-        this.reader = new SpecificDatumReader<>(schema);
+        this.reader = new ReusingDatumReader<>(schema);
     }
 
     @Override
     public T deserialize(String topic, byte[] data) {
+        return deserialize(topic, data, null);
+    }
+
+    /**
+     * Читает сообщение в переданную запись reuse, если она не null, и возвращает её же.
+     * Подходит для цикла, который обрабатывает сообщения по одному и не хранит записи после обработки.
+     */
+    public T deserialize(String topic, byte[] data, T reuse) {
         try {
             if (data != null) {
-                BinaryDecoder decoder = decoderFactory.binaryDecoder(data, null);
-                return reader.read(null, decoder);
+                decoder = decoderFactory.binaryDecoder(data, decoder);
+                return reader.read(reuse, decoder);
             }
             return null;
         } catch (IOException e) {
             throw new DeserializationException("Ошибка десериализации данных из топика [" + topic + "]", e);
         }
     }
+
+    // Прежнее значение поля нужно читателю только чтобы переиспользовать вложенную запись, строку или коллекцию.
+    // Для примитивных полей и перечислений SpecificDatumReader лишь упаковывает его в объект и выбрасывает
+    private static class ReusingDatumReader<T> extends SpecificDatumReader<T> {
+
+        ReusingDatumReader(Schema schema) {
+            super(schema);
+        }
+
+        @Override
+        protected Object readRecord(Object old, Schema expected, ResolvingDecoder in) throws IOException {
+            Object record = getData().newRecord(old, expected);
+            for (Schema.Field field : in.readFieldOrder()) {
+                Object oldDatum = null;
+                if (old != null && isReusable(field.schema())) {
+                    oldDatum = getData().getField(record, field.name(), field.pos());
+                }
+                readField(record, field, oldDatum, in, null);
+            }
+            return record;
+        }
+
+        private static boolean isReusable(Schema schema) {
+            return switch (schema.getType()) {
+                case NULL, BOOLEAN, INT, LONG, FLOAT, DOUBLE, ENUM -> false;
+                default -> true;
+            };
+        }
+    }
 }
@@ -0,0 +1,36 @@
+package ru.practicum.ewm.stats.avro.header;
+
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeader;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Версия обновления пары мероприятий в заголовке сообщения сходства. Значения и удаления пары
+ * от разных воркеров агрегатора приходят в произвольном порядке, анализатор применяет только более новую версию.
+ * Заголовок передаётся и с удалением, у которого нет значения.
+ */
+public final class SimilarityVersionHeader {
+
+    public static final String NAME = "similarity-version";
+
+    // Версия сообщений без заголовка
+    public static final long NO_VERSION = 0L;
+
+    private SimilarityVersionHeader() {
+    }
+
+    public static Header of(long version) {
+        return new RecordHeader(NAME, ByteBuffer.allocate(Long.BYTES).putLong(version).array());
+    }
+
+    public static long read(Headers headers) {
+        Header header = headers.lastHeader(NAME);
+        if (header == null || header.value() == null || header.value().length != Long.BYTES) {
+            return NO_VERSION;
+        }
+        return ByteBuffer.wrap(header.value()).getLong();
+    }
+
+}
@@ -1,5 +1,6 @@
 package ru.practicum.ewm.stats.avro.serializer;
 
+import org.apache.avro.Schema;
 import org.apache.avro.io.BinaryEncoder;
 import org.apache.avro.io.DatumWriter;
 import org.apache.avro.io.EncoderFactory;
@@ -10,29 +11,81 @@ import org.apache.kafka.common.serialization.Serializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Writer создаётся один раз на схему, буфер и энкодер переиспользуются в пределах потока:
+ * продюсер Kafka сериализует в потоке вызывающего send, и потоков может быть несколько.
+ * На сообщение выделяется только итоговый массив байт.
+ */
 public class GeneralAvroSerializer implements Serializer<SpecificRecordBase> {
 
+    private static final int INITIAL_BUFFER_SIZE = 256;
+
     private final Logger log = LoggerFactory.getLogger(GeneralAvroSerializer.class);
     private final EncoderFactory encoderFactory = EncoderFactory.get();
-    private BinaryEncoder encoder;
+    private final Map<Schema, DatumWriter<SpecificRecordBase>> writers = new ConcurrentHashMap<>();
+    private final ThreadLocal<Buffer> buffers = ThreadLocal.withInitial(Buffer::new);
 
     @Override
     public byte[] serialize(String topic, SpecificRecordBase data) {
-        log.debug("Serializing data to topic [{}], data type {}", topic, data.getClass().getName());
-        try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
-            if (data != null) {
-                DatumWriter<SpecificRecordBase> writer = new SpecificDatumWriter<>(data.getSchema());
-                encoder = encoderFactory.binaryEncoder(out, encoder);
-                writer.write(data, encoder);
-                encoder.flush();
-                return out.toByteArray();
-            }
+        if (data == null) {
             return null;
+        }
+        log.debug("Serializing data to topic [{}], data type {}", topic, data.getClass().getName());
+
+        DatumWriter<SpecificRecordBase> writer = writers.computeIfAbsent(data.getSchema(), SpecificDatumWriter::new);
+        Buffer buffer = buffers.get();
+        try {
+            buffer.out.reset();
+            buffer.encoder = encoderFactory.directBinaryEncoder(buffer.out, buffer.encoder);
+            writer.write(data, buffer.encoder);
+            buffer.encoder.flush();
+            return buffer.out.toByteArray();
         } catch (IOException ex) {
             throw new SerializationException("Ошибка сериализации данных для топика [" + topic + "]", ex);
         }
     }
+
+    private static class Buffer {
+        private final ReusableOutputStream out = new ReusableOutputStream();
+        private BinaryEncoder encoder;
+    }
+
+    // В отличие от ByteArrayOutputStream без синхронизации: буфер принадлежит одному потоку
+    private static class ReusableOutputStream extends OutputStream {
+        private byte[] bytes = new byte[INITIAL_BUFFER_SIZE];
+        private int count;
+
+        @Override
+        public void write(int b) {
+            ensureCapacity(count + 1);
+            bytes[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ensureCapacity(count + len);
+            System.arraycopy(b, off, bytes, count, len);
+            count += len;
+        }
+
+        void reset() {
+            count = 0;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, count);
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(capacity, bytes.length << 1));
+            }
+        }
+    }
 }
@@ -0,0 +1,107 @@
+package ru.practicum.ewm.stats.avro.deserializer;
+
+import org.apache.avro.Schema;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.avro.specific.SpecificRecordBase;
+import org.junit.jupiter.api.Test;
+import ru.practicum.ewm.stats.avro.ActionTypeAvro;
+import ru.practicum.ewm.stats.avro.EventSimilarityAvro;
+import ru.practicum.ewm.stats.avro.UserActionAvro;
+import ru.practicum.ewm.stats.avro.serializer.GeneralAvroSerializer;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class BaseAvroDeserializerTest {
+
+    private static final String TOPIC = "topic";
+
+    private static final int MESSAGES = 1_000;
+
+    private final GeneralAvroSerializer serializer = new GeneralAvroSerializer();
+
+    private final Random random = new Random(7);
+
+    @Test
+    void userActionsReadIntoReusedRecordMatchFreshReader() throws IOException {
+        assertReusedMatchesFresh(new UserActionDeserializer(), UserActionAvro.getClassSchema(), () ->
+                UserActionAvro.newBuilder()
+                        .setUserId(randomId())
+                        .setEventId(randomId())
+                        .setActionType(ActionTypeAvro.values()[random.nextInt(ActionTypeAvro.values().length)])
+                        .setTimestamp(randomTimestamp())
+                        .build());
+    }
+
+    @Test
+    void similaritiesReadIntoReusedRecordMatchFreshReader() throws IOException {
+        assertReusedMatchesFresh(new EventsSimilarityDeserializer(), EventSimilarityAvro.getClassSchema(), () ->
+                EventSimilarityAvro.newBuilder()
+                        .setEventA(randomId())
+                        .setEventB(randomId())
+                        .setScore(random.nextInt(10) == 0 ? 0.0 : random.nextDouble())
+                        .setTimestamp(randomTimestamp())
+                        .build());
+    }
+
+    @Test
+    void withoutReuseEveryMessageGetsNewRecord() {
+        UserActionDeserializer deserializer = new UserActionDeserializer();
+        byte[] data = serializer.serialize(TOPIC, UserActionAvro.newBuilder()
+                .setUserId(1)
+                .setEventId(2)
+                .setActionType(ActionTypeAvro.LIKE)
+                .setTimestamp(Instant.ofEpochMilli(3))
+                .build());
+
+        assertNotSame(deserializer.deserialize(TOPIC, data), deserializer.deserialize(TOPIC, data));
+        assertNull(deserializer.deserialize(TOPIC, null));
+    }
+
+    // Каждое сообщение читается в одну и ту же запись поверх предыдущего: ни одно поле не должно остаться от него
+    private <T extends SpecificRecordBase> void assertReusedMatchesFresh(
+            BaseAvroDeserializer<T> deserializer, Schema schema, Supplier<T> messages) throws IOException {
+        SpecificDatumReader<T> freshReader = new SpecificDatumReader<>(schema);
+        T reuse = null;
+        for (int i = 0; i < MESSAGES; i++) {
+            T message = messages.get();
+            byte[] data = serializer.serialize(TOPIC, message);
+
+            T fresh = freshReader.read(null, DecoderFactory.get().binaryDecoder(data, null));
+            T reused = deserializer.deserialize(TOPIC, data, reuse);
+            if (reuse != null) {
+                assertSame(reuse, reused);
+            }
+            reuse = reused;
+
+            assertEquals(message, fresh, "сообщение " + i);
+            assertEquals(fresh, reused, "сообщение " + i);
+            int timestamp = schema.getField("timestamp").pos();
+            assertInstanceOf(Instant.class, reused.get(timestamp));
+            assertEquals(fresh.get(timestamp), reused.get(timestamp));
+        }
+    }
+
+    // Крайние значения проверяют кодирование zig-zag varint длиной до 10 байт
+    private long randomId() {
+        return switch (random.nextInt(4)) {
+            case 0 -> Long.MIN_VALUE + random.nextInt(3);
+            case 1 -> Long.MAX_VALUE - random.nextInt(3);
+            default -> random.nextLong();
+        };
+    }
+
+    private Instant randomTimestamp() {
+        return Instant.ofEpochMilli(random.nextLong(-1_000_000_000_000L, 4_000_000_000_000L));
+    }
+
+}
@@ -3,6 +3,9 @@ package ru.practicum.client;
 import com.google.protobuf.Timestamp;
 import net.devh.boot.grpc.client.inject.GrpcClient;
 import org.springframework.stereotype.Component;
+import ru.practicum.client.config.UserActionClientConfig;
+import ru.practicum.client.useraction.UserActionClientMode;
+import ru.practicum.client.useraction.UserActionSender;
 import ru.practicum.ewm.stats.proto.ActionTypeProto;
 import ru.practicum.ewm.stats.proto.UserActionControllerGrpc.UserActionControllerBlockingStub;
 import ru.practicum.ewm.stats.proto.UserActionProto;
@@ -14,20 +17,36 @@ public class UserActionClient {
 
     private final UserActionControllerBlockingStub collectorClient;
 
-    public UserActionClient(@GrpcClient("collector") UserActionControllerBlockingStub collectorClient) {
+    private final UserActionSender sender;
+
+    private final boolean async;
+
+    public UserActionClient(@GrpcClient("collector") UserActionControllerBlockingStub collectorClient,
+                            UserActionSender sender, UserActionClientConfig config) {
         this.collectorClient = collectorClient;
+        this.sender = sender;
+        this.async = config.getMode() == UserActionClientMode.ASYNC;
     }
 
     public void sendViewEvent(long userId, long eventId) {
-        collectorClient.collectUserAction(getUserAction(userId, eventId, ActionTypeProto.ACTION_VIEW));
+        send(getUserAction(userId, eventId, ActionTypeProto.ACTION_VIEW));
     }
 
     public void sendRegistrationEvent(long userId, long eventId) {
-        collectorClient.collectUserAction(getUserAction(userId, eventId, ActionTypeProto.ACTION_REGISTER));
+        send(getUserAction(userId, eventId, ActionTypeProto.ACTION_REGISTER));
     }
 
     public void sendLikeEvent(long userId, long eventId) {
-        collectorClient.collectUserAction(getUserAction(userId, eventId, ActionTypeProto.ACTION_LIKE));
+        send(getUserAction(userId, eventId, ActionTypeProto.ACTION_LIKE));
+    }
+
+    // В асинхронном режиме поток запроса не ждёт коллектор и не получает его ошибок
+    private void send(UserActionProto action) {
+        if (async) {
+            sender.enqueue(action);
+        } else {
+            collectorClient.collectUserAction(action);
+        }
     }
 
     private UserActionProto getUserAction(long userId, long eventId, ActionTypeProto actionType) {
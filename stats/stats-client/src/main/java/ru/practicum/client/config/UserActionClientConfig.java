@@ -0,0 +1,35 @@
+package ru.practicum.client.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import ru.practicum.client.useraction.OverflowPolicy;
+import ru.practicum.client.useraction.UserActionClientMode;
+
+@Configuration
+@ConfigurationProperties(prefix = "stats.client.user-actions")
+@Getter
+@Setter
+public class UserActionClientConfig {
+    private UserActionClientMode mode = UserActionClientMode.SYNC;
+    // Сколько действий ждут отправки в памяти
+    private int capacity = 10_000;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+    // Сколько поток запроса ждёт места в очереди при BLOCK, после чего действие отбрасывается
+    private Long blockTimeoutMs = 100L;
+    // Сколько действий отправляется одним вызовом CollectUserActions
+    private int batchSize = 500;
+    // Сколько ждать первого действия пачки
+    private Long lingerMs = 20L;
+    private Long sendTimeoutMs = 5_000L;
+    // Пауза после неудачной отправки, удваивается до maxRetryBackoffMs
+    private Long retryBackoffMs = 100L;
+    private Long maxRetryBackoffMs = 5_000L;
+    // Файл для действий, не поместившихся в очередь при SPILL
+    private String spillPath = "user-actions.spill";
+    // Когда отправлено больше стольких байт файла переполнения и больше половины файла, остаток переписывается
+    private Long spillCompactBytes = 16L * 1024 * 1024;
+    // Сколько при остановке досылать накопленное
+    private Long shutdownTimeoutMs = 5_000L;
+}
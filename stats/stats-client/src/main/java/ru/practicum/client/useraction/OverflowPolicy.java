@@ -0,0 +1,10 @@
+package ru.practicum.client.useraction;
+
+public enum OverflowPolicy {
+    // Новое действие вытесняет самое старое в очереди
+    DROP_OLDEST,
+    // Поток запроса ждёт места до blockTimeoutMs, затем действие отбрасывается
+    BLOCK,
+    // Не поместившееся действие дописывается в файл и отправляется, когда очередь освободится
+    SPILL
+}
@@ -0,0 +1,8 @@
+package ru.practicum.client.useraction;
+
+public enum UserActionClientMode {
+    // Каждое действие отправляется блокирующим вызовом в потоке запроса
+    SYNC,
+    // Действия ставятся в очередь и отправляются пачками фоновым потоком
+    ASYNC
+}
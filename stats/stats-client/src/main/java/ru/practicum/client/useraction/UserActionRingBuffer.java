@@ -0,0 +1,122 @@
+package ru.practicum.client.useraction;
+
+import ru.practicum.ewm.stats.proto.UserActionProto;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Ограниченная кольцевая очередь действий. В отличие от ArrayBlockingQueue умеет атомарно вытеснить
+ * самое старое действие при добавлении в полную очередь.
+ */
+class UserActionRingBuffer {
+
+    private final UserActionProto[] ring;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition notEmpty = lock.newCondition();
+
+    private final Condition notFull = lock.newCondition();
+
+    private int head;
+
+    private int size;
+
+    UserActionRingBuffer(int capacity) {
+        this.ring = new UserActionProto[capacity];
+    }
+
+    boolean offer(UserActionProto action) {
+        lock.lock();
+        try {
+            if (size == ring.length) {
+                return false;
+            }
+            enqueue(action);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    boolean offer(UserActionProto action, long timeoutMs) throws InterruptedException {
+        long nanos = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        lock.lockInterruptibly();
+        try {
+            while (size == ring.length) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = notFull.awaitNanos(nanos);
+            }
+            enqueue(action);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Возвращает вытесненное действие или null, если место было
+    UserActionProto offerDroppingOldest(UserActionProto action) {
+        lock.lock();
+        try {
+            UserActionProto dropped = null;
+            if (size == ring.length) {
+                dropped = dequeue();
+            }
+            enqueue(action);
+            return dropped;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Переносит в target не больше max действий, ожидая первое не дольше timeoutMs
+    int drainTo(List<UserActionProto> target, int max, long timeoutMs) throws InterruptedException {
+        long nanos = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        lock.lockInterruptibly();
+        try {
+            while (size == 0) {
+                if (nanos <= 0) {
+                    return 0;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            int count = Math.min(max, size);
+            for (int i = 0; i < count; i++) {
+                target.add(dequeue());
+            }
+            notFull.signalAll();
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void enqueue(UserActionProto action) {
+        ring[(head + size) % ring.length] = action;
+        size++;
+        notEmpty.signal();
+    }
+
+    private UserActionProto dequeue() {
+        UserActionProto action = ring[head];
+        ring[head] = null;
+        head = (head + 1) % ring.length;
+        size--;
+        return action;
+    }
+
+}
@@ -0,0 +1,335 @@
+package ru.practicum.client.useraction;
+
+import io.grpc.stub.StreamObserver;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import net.devh.boot.grpc.client.inject.GrpcClient;
+import org.springframework.stereotype.Component;
+import ru.practicum.client.config.UserActionClientConfig;
+import ru.practicum.ewm.stats.proto.UserActionControllerGrpc.UserActionControllerStub;
+import ru.practicum.ewm.stats.proto.UserActionProto;
+import ru.practicum.ewm.stats.proto.UserActionsAckProto;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Очередь действий для асинхронного режима UserActionClient. Фоновый поток забирает действия пачками
+ * и отправляет каждую пачку вызовом CollectUserActions. Коллектор подтверждает, сколько действий вызова
+ * записано в Kafka, и после ошибки повторно отправляются только неподтверждённые, с растущей паузой.
+ * Пока коллектор недоступен, очередь заполняется, и новые действия обрабатываются по overflowPolicy.
+ * <p>
+ * Действия из файла переполнения дополняют пачку, когда в очереди их меньше batchSize, и удаляются
+ * из файла только после подтверждения коллектором.
+ * <p>
+ * Ошибка в самом потоке отправки не останавливает его: он продолжает с паузой, растущей до maxRetryBackoffMs.
+ */
+@Slf4j
+@Component
+public class UserActionSender {
+
+    private static final String METRIC_PREFIX = "stats.client.user-actions";
+
+    private final UserActionControllerStub collectorClient;
+
+    private final UserActionClientConfig config;
+
+    private final UserActionRingBuffer buffer;
+
+    private final UserActionSpillFile spill;
+
+    private final Counter sent;
+
+    private final Counter spilled;
+
+    private final Counter sendFailures;
+
+    private final MeterRegistry registry;
+
+    // Счётчики отброшенных действий по причине
+    private final Map<String, Counter> dropped = new ConcurrentHashMap<>();
+
+    private final Thread sender = new Thread(this::sendLoop, "user-action-sender");
+
+    private volatile boolean running = true;
+
+    // До какого момента при остановке досылаются накопленные действия
+    private volatile long stopDeadline = Long.MAX_VALUE;
+
+    public UserActionSender(@GrpcClient("collector") UserActionControllerStub collectorClient,
+                            UserActionClientConfig config, MeterRegistry registry) throws IOException {
+        this.collectorClient = collectorClient;
+        this.config = config;
+        this.registry = registry;
+        this.buffer = new UserActionRingBuffer(config.getCapacity());
+        this.spill = config.getMode() == UserActionClientMode.ASYNC && config.getOverflowPolicy() == OverflowPolicy.SPILL
+                ? new UserActionSpillFile(Path.of(config.getSpillPath()), config.getSpillCompactBytes())
+                : null;
+
+        Gauge.builder(METRIC_PREFIX + ".queue.depth", buffer, UserActionRingBuffer::size)
+                .description("Действия, ожидающие отправки в коллектор")
+                .register(registry);
+        if (spill != null) {
+            Gauge.builder(METRIC_PREFIX + ".spill.bytes", spill, UserActionSpillFile::pendingBytes)
+                    .description("Неотправленные байты файла переполнения")
+                    .baseUnit("bytes")
+                    .register(registry);
+        }
+        this.sent = Counter.builder(METRIC_PREFIX + ".sent")
+                .description("Действия, подтверждённые коллектором")
+                .register(registry);
+        this.spilled = Counter.builder(METRIC_PREFIX + ".spilled")
+                .description("Действия, записанные в файл переполнения")
+                .register(registry);
+        this.sendFailures = Counter.builder(METRIC_PREFIX + ".send.failures")
+                .description("Неудачные вызовы CollectUserActions")
+                .register(registry);
+        sender.setDaemon(true);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (config.getMode() == UserActionClientMode.ASYNC) {
+            sender.start();
+            log.info("Действия пользователей отправляются асинхронно, очередь на {} действий, при переполнении {}",
+                    config.getCapacity(), config.getOverflowPolicy());
+        }
+    }
+
+    /**
+     * Ставит действие в очередь, не дожидаясь отправки. Не бросает исключений: отброшенное действие
+     * только учитывается в метрике stats.client.user-actions.dropped.
+     */
+    public void enqueue(UserActionProto action) {
+        switch (config.getOverflowPolicy()) {
+            case DROP_OLDEST -> {
+                if (buffer.offerDroppingOldest(action) != null) {
+                    dropped("overflow", 1);
+                }
+            }
+            case BLOCK -> {
+                try {
+                    if (!buffer.offer(action, config.getBlockTimeoutMs())) {
+                        dropped("timeout", 1);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    dropped("interrupted", 1);
+                }
+            }
+            case SPILL -> {
+                if (!buffer.offer(action)) {
+                    spill(List.of(action));
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+        stopDeadline = System.currentTimeMillis() + config.getShutdownTimeoutMs();
+        running = false;
+        if (sender.isAlive()) {
+            try {
+                sender.join(config.getShutdownTimeoutMs() + config.getSendTimeoutMs());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (spill != null) {
+            spill.close();
+        }
+    }
+
+    private void sendLoop() {
+        long backoff = config.getRetryBackoffMs();
+        while (true) {
+            try {
+                Outgoing batch = nextBatch();
+                if (batch.actions().isEmpty()) {
+                    if (!running) {
+                        return;
+                    }
+                    continue;
+                }
+                deliver(batch);
+                backoff = config.getRetryBackoffMs();
+                if (System.currentTimeMillis() > stopDeadline) {
+                    List<UserActionProto> rest = new ArrayList<>();
+                    buffer.drainTo(rest, Integer.MAX_VALUE, 0);
+                    abandon(rest);
+                    return;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                if (System.currentTimeMillis() + backoff > stopDeadline) {
+                    log.error("Ошибка в потоке отправки действий пользователей при остановке", e);
+                    return;
+                }
+                log.error("Ошибка в потоке отправки действий пользователей, продолжение через {} мс", backoff, e);
+                try {
+                    TimeUnit.MILLISECONDS.sleep(backoff);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                backoff = Math.min(backoff * 2, config.getMaxRetryBackoffMs());
+            }
+        }
+    }
+
+    Outgoing nextBatch() throws InterruptedException, IOException {
+        List<UserActionProto> batch = new ArrayList<>(config.getBatchSize());
+        boolean hasSpilled = spill != null && spill.pendingBytes() > 0;
+        buffer.drainTo(batch, config.getBatchSize(), hasSpilled || !running ? 0 : config.getLingerMs());
+        int queued = batch.size();
+        UserActionSpillFile.Batch spilled = null;
+        if (hasSpilled && queued < config.getBatchSize()) {
+            try {
+                spilled = spill.read(config.getBatchSize() - queued);
+            } catch (IOException e) {
+                // Действия из очереди уже забраны, они отправляются без дополнения из файла
+                log.error("Не удалось прочитать файл переполнения {}", config.getSpillPath(), e);
+            }
+        }
+        if (spilled != null) {
+            if (spilled.actions().isEmpty()) {
+                // В файле остался только недописанный хвост
+                spill.commit(spilled.positionAfter(0));
+                spilled = null;
+            } else {
+                batch.addAll(spilled.actions());
+            }
+        }
+        return new Outgoing(batch, queued, spilled);
+    }
+
+    private void deliver(Outgoing batch) throws InterruptedException, IOException {
+        settle(batch, sendWithRetry(batch.actions()));
+    }
+
+    // Неподтверждённые действия из очереди при остановке уходят в файл переполнения, а действия из файла
+    // остаются в нём начиная с первого неподтверждённого
+    void settle(Outgoing batch, int acked) throws IOException {
+        if (acked < batch.queued()) {
+            abandon(batch.actions().subList(acked, batch.queued()));
+        }
+        if (batch.spilled() != null) {
+            spill.commit(batch.spilled().positionAfter(Math.max(0, acked - batch.queued())));
+        }
+    }
+
+    /**
+     * Отправляет пачку, пока коллектор не подтвердит её целиком или не истечёт время остановки.
+     *
+     * @return сколько первых действий пачки подтверждено
+     */
+    private int sendWithRetry(List<UserActionProto> batch) throws InterruptedException {
+        long backoff = config.getRetryBackoffMs();
+        int total = 0;
+        while (true) {
+            int acked = send(batch);
+            sent.increment(acked);
+            total += acked;
+            batch = batch.subList(acked, batch.size());
+            if (batch.isEmpty()) {
+                return total;
+            }
+
+            sendFailures.increment();
+            if (System.currentTimeMillis() + backoff > stopDeadline) {
+                return total;
+            }
+            log.warn("Коллектор подтвердил {} действий, осталось {}, повтор через {} мс", acked, batch.size(), backoff);
+            TimeUnit.MILLISECONDS.sleep(backoff);
+            backoff = Math.min(backoff * 2, config.getMaxRetryBackoffMs());
+        }
+    }
+
+    // Возвращает, сколько первых действий пачки коллектор записал в Kafka
+    private int send(List<UserActionProto> batch) throws InterruptedException {
+        AtomicLong acked = new AtomicLong();
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        StreamObserver<UserActionProto> requests = collectorClient
+                .withDeadlineAfter(config.getSendTimeoutMs(), TimeUnit.MILLISECONDS)
+                .collectUserActions(new StreamObserver<>() {
+                    @Override
+                    public void onNext(UserActionsAckProto ack) {
+                        acked.set(ack.getAckedCount());
+                    }
+
+                    @Override
+                    public void onError(Throwable t) {
+                        done.completeExceptionally(t);
+                    }
+
+                    @Override
+                    public void onCompleted() {
+                        done.complete(null);
+                    }
+                });
+
+        try {
+            for (UserActionProto action : batch) {
+                requests.onNext(action);
+            }
+            requests.onCompleted();
+            done.get();
+        } catch (ExecutionException e) {
+            log.debug("Ошибка при отправке {} действий в коллектор", batch.size(), e.getCause());
+        } catch (RuntimeException e) {
+            requests.onError(e);
+            log.debug("Ошибка при отправке {} действий в коллектор", batch.size(), e);
+        }
+        return (int) Math.min(acked.get(), batch.size());
+    }
+
+    private void abandon(List<UserActionProto> actions) {
+        if (actions.isEmpty()) {
+            return;
+        }
+        if (spill != null) {
+            spill(actions);
+        } else {
+            log.warn("При остановке не отправлено {} действий пользователей", actions.size());
+            dropped("shutdown", actions.size());
+        }
+    }
+
+    private void spill(List<UserActionProto> actions) {
+        try {
+            spill.append(actions);
+            spilled.increment(actions.size());
+        } catch (IOException e) {
+            log.error("Не удалось записать {} действий в файл переполнения {}", actions.size(), config.getSpillPath(), e);
+            dropped("spill-error", actions.size());
+        }
+    }
+
+    private void dropped(String reason, int count) {
+        dropped.computeIfAbsent(reason, tag -> Counter.builder(METRIC_PREFIX + ".dropped")
+                        .description("Действия, отброшенные без отправки в коллектор")
+                        .tag("reason", tag)
+                        .register(registry))
+                .increment(count);
+    }
+
+    // Пачка отправки: сначала queued действий из очереди, за ними прочитанные из файла переполнения
+    record Outgoing(List<UserActionProto> actions, int queued, UserActionSpillFile.Batch spilled) {
+    }
+
+}
@@ -0,0 +1,187 @@
+package ru.practicum.client.useraction;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import lombok.extern.slf4j.Slf4j;
+import ru.practicum.ewm.stats.proto.UserActionProto;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Файл действий, не поместившихся в очередь: сообщения с префиксом длины дописываются в конец и читаются
+ * с начала. Позиция чтения сдвигается только commit после отправки, поэтому прочитанные, но не отправленные
+ * действия остаются в файле. Файл, подтверждённый до конца, обрезается, а когда подтверждено больше
+ * compactBytes и больше половины файла, неподтверждённый остаток переписывается в новый файл.
+ * Позиция чтения в файле не сохраняется, поэтому после перезапуска файл читается с начала, и часть действий
+ * может быть отправлена повторно. При открытии файл обрезается до последнего целого сообщения: недописанное
+ * при аварийной остановке сообщение иначе оказалось бы перед новыми.
+ */
+@Slf4j
+class UserActionSpillFile implements Closeable {
+
+    private final Path path;
+
+    private final long compactBytes;
+
+    private FileChannel channel;
+
+    // Чтение через позицию канала; запись идёт по явной позиции в конец и позицию не двигает
+    private InputStream input;
+
+    private long readPosition;
+
+    UserActionSpillFile(Path path, long compactBytes) throws IOException {
+        this.path = path;
+        this.compactBytes = compactBytes;
+        // Файл сжатия, не переименованный до остановки; действия в нём есть и в основном файле
+        Files.deleteIfExists(compactPath());
+        open();
+        long complete = completeLength();
+        if (complete < channel.size()) {
+            log.warn("В файле переполнения {} отброшен недописанный хвост, {} байт", path, channel.size() - complete);
+            channel.truncate(complete);
+        }
+    }
+
+    synchronized void append(Collection<UserActionProto> actions) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (UserActionProto action : actions) {
+            action.writeDelimitedTo(bytes);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        long size = channel.size();
+        long position = size;
+        try {
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        } catch (IOException e) {
+            // Частично записанная пачка не должна оказаться перед следующими
+            channel.truncate(size);
+            throw e;
+        }
+    }
+
+    /**
+     * Не больше max действий от позиции чтения. Позиция не сдвигается до commit с позицией из Batch.
+     */
+    synchronized Batch read(int max) throws IOException {
+        List<UserActionProto> actions = new ArrayList<>();
+        List<Long> positions = new ArrayList<>();
+        positions.add(readPosition);
+        channel.position(readPosition);
+        // Разбор сообщения с префиксом длины читает из небуферизованного потока ровно его байты
+        try {
+            while (actions.size() < max && channel.position() < channel.size()) {
+                UserActionProto action = UserActionProto.parseDelimitedFrom(input);
+                if (action == null) {
+                    break;
+                }
+                actions.add(action);
+                positions.add(channel.position());
+            }
+        } catch (InvalidProtocolBufferException e) {
+            // Хвост обрезан при открытии, а неудачная запись откатывается, поэтому это повреждение файла:
+            // границы следующих сообщений неизвестны, и остаток пропускается вместе с последним действием
+            log.error("Файл переполнения {} повреждён с позиции {}, пропущено {} байт",
+                    path, positions.get(positions.size() - 1), channel.size() - positions.get(positions.size() - 1), e);
+            positions.set(positions.size() - 1, channel.size());
+        }
+        return new Batch(actions, positions.stream().mapToLong(Long::longValue).toArray());
+    }
+
+    // Сжатие меняет позиции, поэтому после commit позиции из прочитанных раньше Batch недействительны
+    synchronized void commit(long position) throws IOException {
+        readPosition = position;
+        long size = channel.size();
+        if (readPosition >= size) {
+            channel.truncate(0);
+            readPosition = 0;
+        } else if (readPosition >= compactBytes && readPosition >= size - readPosition) {
+            compact();
+        }
+    }
+
+    // Байты, ещё не прочитанные из файла
+    synchronized long pendingBytes() {
+        try {
+            return channel.size() - readPosition;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    private void open() throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        input = Channels.newInputStream(channel);
+    }
+
+    // Длина начала файла из целых сообщений
+    private long completeLength() throws IOException {
+        CodedInputStream coded = CodedInputStream.newInstance(
+                new BufferedInputStream(Channels.newInputStream(channel.position(0))));
+        long complete = 0;
+        try {
+            while (!coded.isAtEnd()) {
+                UserActionProto.parseFrom(coded.readRawBytes(coded.readRawVarint32()));
+                complete = coded.getTotalBytesRead();
+            }
+        } catch (InvalidProtocolBufferException e) {
+            // Сообщение обрывается или не разбирается: файл действителен до него
+        }
+        return complete;
+    }
+
+    // Остаток переписывается в новый файл, который атомарно заменяет старый: при остановке посреди сжатия
+    // остаётся либо старый файл, либо новый
+    private void compact() throws IOException {
+        Path compacted = compactPath();
+        try (FileChannel target = FileChannel.open(compacted, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long position = readPosition;
+            long size = channel.size();
+            while (position < size) {
+                position += channel.transferTo(position, size - position, target);
+            }
+        }
+        channel.close();
+        Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        open();
+        readPosition = 0;
+    }
+
+    private Path compactPath() {
+        return path.resolveSibling(path.getFileName() + ".compact");
+    }
+
+    /**
+     * @param positions позиция чтения до действий и после каждого из них
+     */
+    record Batch(List<UserActionProto> actions, long[] positions) {
+
+        // Позиция, до которой подтверждаются первые count действий
+        long positionAfter(int count) {
+            return positions[count];
+        }
+    }
+
+}
@@ -0,0 +1,106 @@
+package ru.practicum.client.useraction;
+
+import org.junit.jupiter.api.Test;
+import ru.practicum.ewm.stats.proto.UserActionProto;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static ru.practicum.client.useraction.UserActionSpillFileTest.actions;
+
+class UserActionRingBufferTest {
+
+    private final List<UserActionProto> actions = actions(1, 10);
+
+    @Test
+    void dropOldestEvictsHeadAndKeepsOrder() throws InterruptedException {
+        UserActionRingBuffer buffer = new UserActionRingBuffer(3);
+        for (int i = 0; i < 3; i++) {
+            assertNull(buffer.offerDroppingOldest(actions.get(i)));
+        }
+        // Кольцо уже провернулось: вытесняются по одному с головы
+        assertEquals(actions.get(0), buffer.offerDroppingOldest(actions.get(3)));
+        assertEquals(actions.get(1), buffer.offerDroppingOldest(actions.get(4)));
+        assertEquals(3, buffer.size());
+
+        List<UserActionProto> drained = new ArrayList<>();
+        assertEquals(3, buffer.drainTo(drained, 10, 0));
+        assertEquals(actions.subList(2, 5), drained);
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    void offerOnFullBufferWaitsForTimeout() throws InterruptedException {
+        UserActionRingBuffer buffer = new UserActionRingBuffer(1);
+        assertTrue(buffer.offer(actions.get(0)));
+        assertFalse(buffer.offer(actions.get(1)));
+
+        long started = System.nanoTime();
+        assertFalse(buffer.offer(actions.get(1), 50));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) >= 50);
+    }
+
+    @Test
+    void blockedOfferProceedsWhenDrained() throws Exception {
+        UserActionRingBuffer buffer = new UserActionRingBuffer(1);
+        buffer.offer(actions.get(0));
+
+        CompletableFuture<Boolean> offered = CompletableFuture.supplyAsync(() -> {
+            try {
+                return buffer.offer(actions.get(1), 10_000);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        TimeUnit.MILLISECONDS.sleep(50);
+        assertFalse(offered.isDone());
+
+        List<UserActionProto> drained = new ArrayList<>();
+        buffer.drainTo(drained, 10, 0);
+        assertTrue(offered.get(5, TimeUnit.SECONDS));
+        assertEquals(List.of(actions.get(0)), drained);
+        assertEquals(1, buffer.size());
+    }
+
+    @Test
+    void drainToWaitsLingerForFirstAction() throws InterruptedException {
+        UserActionRingBuffer buffer = new UserActionRingBuffer(4);
+        List<UserActionProto> drained = new ArrayList<>();
+
+        long started = System.nanoTime();
+        assertEquals(0, buffer.drainTo(drained, 10, 50));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) >= 50);
+
+        // Первое действие во время ожидания забирается сразу, не дожидаясь конца linger
+        CompletableFuture.runAsync(() -> {
+            try {
+                TimeUnit.MILLISECONDS.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            buffer.offer(actions.get(0));
+        });
+        started = System.nanoTime();
+        assertEquals(1, buffer.drainTo(drained, 10, 10_000));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) < 5_000);
+        assertEquals(List.of(actions.get(0)), drained);
+    }
+
+    @Test
+    void drainToTakesAtMostMax() throws InterruptedException {
+        UserActionRingBuffer buffer = new UserActionRingBuffer(4);
+        actions.subList(0, 4).forEach(buffer::offer);
+
+        List<UserActionProto> drained = new ArrayList<>();
+        assertEquals(3, buffer.drainTo(drained, 3, 0));
+        assertEquals(actions.subList(0, 3), drained);
+        assertEquals(1, buffer.size());
+    }
+
+}
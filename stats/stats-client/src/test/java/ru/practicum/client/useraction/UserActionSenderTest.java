@@ -0,0 +1,86 @@
+package ru.practicum.client.useraction;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.practicum.client.config.UserActionClientConfig;
+import ru.practicum.ewm.stats.proto.UserActionProto;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static ru.practicum.client.useraction.UserActionSpillFileTest.actions;
+
+class UserActionSenderTest {
+
+    private final List<UserActionProto> actions = actions(1, 5);
+
+    @TempDir
+    Path directory;
+
+    private UserActionSender sender;
+
+    // Очередь на два действия: первые два ждут в ней, следующие два уходят в файл переполнения
+    @BeforeEach
+    void fillQueueAndSpill() throws IOException, InterruptedException {
+        UserActionClientConfig config = new UserActionClientConfig();
+        config.setMode(UserActionClientMode.ASYNC);
+        config.setOverflowPolicy(OverflowPolicy.SPILL);
+        config.setCapacity(2);
+        config.setBatchSize(10);
+        config.setSpillPath(directory.resolve("actions.spill").toString());
+
+        sender = new UserActionSender(null, config, new SimpleMeterRegistry());
+        actions.forEach(sender::enqueue);
+    }
+
+    @AfterEach
+    void stop() throws IOException {
+        sender.stop();
+    }
+
+    @Test
+    void batchTakesQueuedActionsFirstThenSpilled() throws Exception {
+        UserActionSender.Outgoing batch = sender.nextBatch();
+
+        assertEquals(actions, batch.actions());
+        assertEquals(2, batch.queued());
+        assertEquals(actions.subList(2, 4), batch.spilled().actions());
+    }
+
+    @Test
+    void unackedQueuedActionsAreSpilledAfterSpilledOnes() throws Exception {
+        sender.settle(sender.nextBatch(), 1);
+
+        // Действия из файла остаются в нём, а неподтверждённое из очереди дописывается за ними
+        assertEquals(List.of(actions.get(2), actions.get(3), actions.get(1)), sender.nextBatch().actions());
+    }
+
+    @Test
+    void ackIntoSpilledPartCommitsOnlyAckedSpilledActions() throws Exception {
+        sender.settle(sender.nextBatch(), 3);
+
+        assertEquals(List.of(actions.get(3)), sender.nextBatch().actions());
+    }
+
+    @Test
+    void fullAckEmptiesSpillFile() throws Exception {
+        sender.settle(sender.nextBatch(), 4);
+
+        assertTrue(sender.nextBatch().actions().isEmpty());
+    }
+
+    @Test
+    void noAckKeepsSpilledActionsAndRespillsQueued() throws Exception {
+        sender.settle(sender.nextBatch(), 0);
+
+        assertEquals(List.of(actions.get(2), actions.get(3), actions.get(0), actions.get(1)),
+                sender.nextBatch().actions());
+    }
+
+}
@@ -0,0 +1,159 @@
+package ru.practicum.client.useraction;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.practicum.ewm.stats.proto.UserActionProto;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UserActionSpillFileTest {
+
+    private static final long NO_COMPACTION = Long.MAX_VALUE;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readDoesNotMovePositionUntilCommit() throws IOException {
+        try (UserActionSpillFile spill = open(NO_COMPACTION)) {
+            spill.append(actions(1, 5));
+
+            UserActionSpillFile.Batch first = spill.read(2);
+            assertEquals(actions(1, 3), first.actions());
+            assertEquals(actions(1, 3), spill.read(2).actions());
+
+            spill.commit(first.positionAfter(1));
+            assertEquals(actions(2, 5), spill.read(10).actions());
+        }
+    }
+
+    @Test
+    void fullyCommittedFileIsTruncated() throws IOException {
+        try (UserActionSpillFile spill = open(NO_COMPACTION)) {
+            spill.append(actions(1, 4));
+            spill.commit(spill.read(10).positionAfter(3));
+
+            assertEquals(0, spill.pendingBytes());
+            assertEquals(0, Files.size(path()));
+        }
+    }
+
+    @Test
+    void tornTailIsCutOnReopenSoNewActionsStayReadable() throws IOException {
+        try (UserActionSpillFile spill = open(NO_COMPACTION)) {
+            spill.append(actions(1, 4));
+        }
+        // Остановка посреди записи: сообщение с полным префиксом длины, но без части байтов
+        byte[] next = delimited(actions(4, 5));
+        Files.write(path(), Arrays.copyOf(next, next.length - 3), StandardOpenOption.APPEND);
+
+        try (UserActionSpillFile spill = open(NO_COMPACTION)) {
+            spill.append(actions(10, 12));
+            assertEquals(concat(actions(1, 4), actions(10, 12)), spill.read(100).actions());
+        }
+    }
+
+    @Test
+    void tornLengthPrefixIsCutOnReopen() throws IOException {
+        try (UserActionSpillFile spill = open(NO_COMPACTION)) {
+            spill.append(actions(1, 3));
+        }
+        // Первый байт многобайтового префикса длины
+        Files.write(path(), new byte[]{(byte) 0x80}, StandardOpenOption.APPEND);
+
+        try (UserActionSpillFile spill = open(NO_COMPACTION)) {
+            spill.append(actions(10, 11));
+            assertEquals(concat(actions(1, 3), actions(10, 11)), spill.read(100).actions());
+        }
+    }
+
+    @Test
+    void reopenReadsFromStart() throws IOException {
+        try (UserActionSpillFile spill = open(NO_COMPACTION)) {
+            spill.append(actions(1, 5));
+            spill.commit(spill.read(2).positionAfter(2));
+        }
+
+        // Позиция чтения не сохраняется: после перезапуска действия отправляются повторно
+        try (UserActionSpillFile spill = open(NO_COMPACTION)) {
+            assertEquals(actions(1, 5), spill.read(100).actions());
+        }
+    }
+
+    @Test
+    void committedPrefixIsCompacted() throws IOException {
+        long oneAction = delimited(actions(1, 2)).length;
+        try (UserActionSpillFile spill = open(oneAction * 3)) {
+            spill.append(actions(1, 11));
+
+            // Подтверждено меньше половины файла: сжатия нет
+            spill.commit(spill.read(4).positionAfter(4));
+            assertEquals(oneAction * 10, Files.size(path()));
+
+            spill.commit(spill.read(2).positionAfter(2));
+            assertEquals(oneAction * 4, Files.size(path()));
+            assertEquals(oneAction * 4, spill.pendingBytes());
+            assertFalse(Files.exists(directory.resolve("actions.spill.compact")));
+
+            spill.append(actions(20, 21));
+            assertEquals(concat(actions(7, 11), actions(20, 21)), spill.read(100).actions());
+        }
+
+        try (UserActionSpillFile spill = open(NO_COMPACTION)) {
+            assertEquals(concat(actions(7, 11), actions(20, 21)), spill.read(100).actions());
+        }
+    }
+
+    @Test
+    void leftoverCompactionFileIsDeleted() throws IOException {
+        Path compact = directory.resolve("actions.spill.compact");
+        Files.write(compact, delimited(actions(1, 2)));
+
+        try (UserActionSpillFile spill = open(NO_COMPACTION)) {
+            assertFalse(Files.exists(compact));
+            assertTrue(spill.read(100).actions().isEmpty());
+        }
+    }
+
+    private UserActionSpillFile open(long compactBytes) throws IOException {
+        return new UserActionSpillFile(path(), compactBytes);
+    }
+
+    private Path path() {
+        return directory.resolve("actions.spill");
+    }
+
+    static List<UserActionProto> actions(int from, int to) {
+        List<UserActionProto> actions = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            actions.add(UserActionProto.newBuilder().setUserId(i).setEventId(1_000 + i).build());
+        }
+        return actions;
+    }
+
+    private static List<UserActionProto> concat(List<UserActionProto> first, List<UserActionProto> second) {
+        List<UserActionProto> actions = new ArrayList<>(first);
+        actions.addAll(second);
+        return actions;
+    }
+
+    private static byte[] delimited(List<UserActionProto> actions) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (UserActionProto action : actions) {
+            action.writeDelimitedTo(bytes);
+        }
+        return bytes.toByteArray();
+    }
+
+}